@@ -208,7 +208,7 @@ const ConfigForm = () => {
     const { id } = useParams();
     const isEdit = id && id !== 'new';
     const {
-        publishers, configs, getConfigById, addConfig, updateConfig,
+        publishers, configs, loadFullConfig, addConfig, updateConfig,
         addPublisher, addJournalToPublisher,
     } = useConfigContext();
 
@@ -273,8 +273,10 @@ const ConfigForm = () => {
     };
 
     useEffect(() => {
-        if (isEdit) {
-            const cfg = getConfigById(Number(id));
+        if (!isEdit) return;
+        let cancelled = false;
+        loadFullConfig(Number(id)).then(cfg => {
+            if (cancelled) return;
             if (!cfg) { navigate('/'); return; }
             setPubId(cfg.pubId);
             setJcode(cfg.jcode);
@@ -286,7 +288,8 @@ const ConfigForm = () => {
                 leftMargin: { ...defaults.leftMargin, ...cfg.leftMargin },
                 rightMargin: { ...defaults.rightMargin, ...cfg.rightMargin },
             });
-        }
+        });
+        return () => { cancelled = true; };
     }, [id, isEdit]);
 
     const selectedPublisher = publishers.find(p => p.pubId === pubId);
@@ -1,4 +1,4 @@
-import { createContext, useContext, useState, useCallback, useEffect } from 'react';
+import { createContext, useContext, useState, useCallback, useEffect, useRef } from 'react';
 import publishersData from '../data/publishers.json';
 import { API_BASE } from '../config/api';
 
@@ -40,20 +40,53 @@ export const getDefaultConfig = () => ({
     rightMargin: { ...DEFAULT_SECTION },
 });
 
+const PAGE_SIZE = 200;
+const SYNC_INTERVAL_MS = 60000;
+
+const sameJournal = (a, b) => a.pubId === b.pubId && a.jcode === b.jcode;
+
+// Applies a delta from GET /configs?since=... — changed configs replace the local copy
+// (keeping its client id), tombstones mark the local copy archived.
+const applyDelta = (prev, changes) => {
+    let next = [...prev];
+    for (const change of changes) {
+        const idx = next.findIndex(c => sameJournal(c, change));
+        if (change.removed) {
+            if (idx >= 0) next[idx] = { ...next[idx], archived: true };
+        } else if (idx >= 0) {
+            next[idx] = { ...change, id: next[idx].id ?? change.id, archived: false };
+        } else {
+            next.push(change);
+        }
+    }
+    return next;
+};
+
 export const ConfigProvider = ({ children }) => {
     const [publishers, setPublishers] = useState(publishersData);
     const [configs, setConfigs] = useState([]);
     const [loading, setLoading] = useState(true);
 
-    // Load configs from backend on mount
+    // Cursor and ETag of the last listing, for delta sync
+    const syncState = useRef({ cursor: null, etag: null });
+
+    // Load config summaries (no logo payloads) page by page on mount
     useEffect(() => {
         const fetchConfigs = async () => {
             try {
-                const res = await fetch(`${API_BASE}/configs`);
-                if (res.ok) {
+                const all = [];
+                for (let page = 0; ; page++) {
+                    const res = await fetch(`${API_BASE}/configs?view=summary&page=${page}&size=${PAGE_SIZE}`);
+                    if (!res.ok) return;
                     const data = await res.json();
-                    setConfigs(data);
+                    all.push(...data);
+                    if (page === 0) {
+                        syncState.current = { cursor: res.headers.get('X-Config-Cursor'), etag: res.headers.get('ETag') };
+                    }
+                    const total = Number(res.headers.get('X-Total-Count') || all.length);
+                    if (data.length < PAGE_SIZE || all.length >= total) break;
                 }
+                setConfigs(all);
             } catch {
                 console.error('Failed to load configs from backend');
             } finally {
@@ -63,6 +96,49 @@ export const ConfigProvider = ({ children }) => {
         fetchConfigs();
     }, []);
 
+    // Pick up changes made elsewhere: only configs changed since the last cursor are sent
+    const syncConfigs = useCallback(async () => {
+        const { cursor, etag } = syncState.current;
+        if (!cursor) return;
+        try {
+            const res = await fetch(`${API_BASE}/configs?view=summary&since=${encodeURIComponent(cursor)}`, {
+                headers: etag ? { 'If-None-Match': etag } : {},
+            });
+            if (res.status === 304 || !res.ok) return;
+            const data = await res.json();
+            syncState.current = { cursor: res.headers.get('X-Config-Cursor'), etag: res.headers.get('ETag') };
+            if (res.headers.get('X-Config-Delta') === 'true') {
+                setConfigs(prev => applyDelta(prev, data));
+            } else {
+                setConfigs(prev => applyDelta(prev.map(c => ({ ...c, archived: true })), data));
+            }
+        } catch { /* next sync will retry */ }
+    }, []);
+
+    useEffect(() => {
+        const timer = setInterval(syncConfigs, SYNC_INTERVAL_MS);
+        window.addEventListener('focus', syncConfigs);
+        return () => {
+            clearInterval(timer);
+            window.removeEventListener('focus', syncConfigs);
+        };
+    }, [syncConfigs]);
+
+    // The list only holds summaries; fetch the full config (with logos) before editing it
+    const loadFullConfig = async (id) => {
+        const cfg = configs.find(c => c.id === id);
+        if (!cfg) return null;
+        try {
+            const res = await fetch(`${API_BASE}/configs/${cfg.pubId}/${cfg.jcode}`);
+            if (!res.ok) return cfg;
+            const full = { ...(await res.json()), id: cfg.id, archived: cfg.archived };
+            setConfigs(prev => prev.map(c => c.id === id ? full : c));
+            return full;
+        } catch {
+            return cfg;
+        }
+    };
+
     const getTableRows = useCallback(() => {
         return configs.filter(cfg => !cfg.archived).map((cfg, idx) => {
             const pub = publishers.find(p => p.pubId === cfg.pubId);
@@ -159,7 +235,7 @@ export const ConfigProvider = ({ children }) => {
     return (
         <ConfigContext.Provider value={{
             publishers, configs, loading,
-            getTableRows, addConfig, updateConfig, deleteConfig, getConfigById,
+            getTableRows, addConfig, updateConfig, deleteConfig, getConfigById, loadFullConfig,
             addPublisher, addJournalToPublisher,
             restoreConfig, getArchivedRows,
         }}>
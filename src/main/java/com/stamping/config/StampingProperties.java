@@ -20,8 +20,12 @@ import lombok.Data;
  *   allowed-pdf-base-path: /var/data/pdfs
  *   ads:
  *     base-url: https://bam-ads-presenter.highwire.org/api/ads
+ *     breaker-failure-threshold: 5
+ *     hedge-enabled: true
  *   cors:
  *     allowed-origins: https://myapp.example.com
+ *   resource-cache:
+ *     memory-max-bytes: 33554432
  *   pdf-download:
  *     connect-timeout: 5000
  *     read-timeout: 30000
@@ -33,8 +37,8 @@ import lombok.Data;
 @ConfigurationProperties(prefix = "stamping")
 public class StampingProperties {
 
-    /** Directory where downloaded and demo temp PDFs are written. Cleaned up by PdfDownloadService scheduler. */
-    private String tempDir;
+    /** Directory where downloaded and demo temp PDFs are written. Scratch files are owned by TempStorage. */
+    private String tempDir = "temp";
     private int defaultFontSize = 12;
     private String defaultFontColor = "#000000";
     private double defaultOpacity = 0.8;
@@ -52,6 +56,16 @@ public class StampingProperties {
     private Ads ads = new Ads();
     private Cors cors = new Cors();
     private PdfDownload pdfDownload = new PdfDownload();
+    private ResourceCache resourceCache = new ResourceCache();
+    private TempStorage tempStorage = new TempStorage();
+    private ConfigStore configStore = new ConfigStore();
+    private Plans plans = new Plans();
+    private Sanitizer sanitizer = new Sanitizer();
+    private Trace trace = new Trace();
+    private Capture capture = new Capture();
+    private SlowRequests slowRequests = new SlowRequests();
+    private Jobs jobs = new Jobs();
+    private Batch batch = new Batch();
 
     @Data
     public static class Ads {
@@ -59,6 +73,31 @@ public class StampingProperties {
         private String sectionPath = "xpdf";
         private int connectTimeout = 5000;
         private int readTimeout = 10000;
+        /** Consecutive failed fetches before the breaker opens and ad fetches fail fast to "no ads" */
+        private int breakerFailureThreshold = 5;
+        /** How long the breaker stays open (ms) before a single trial fetch is let through */
+        private long breakerOpenDuration = 30000;
+        /** Send a second (hedged) request when the first is slower than the observed latency percentile */
+        private boolean hedgeEnabled = false;
+        /** Latency percentile of successful fetches after which the hedged request is sent */
+        private double hedgePercentile = 0.95;
+        /** Lower bound (ms) for the hedge delay, so a fast percentile never doubles normal traffic */
+        private long hedgeMinDelay = 100;
+        /** How long a successful BAM response is reused per journal, in milliseconds (0 disables caching) */
+        private long cacheTtl = 300000;
+        private Prewarm prewarm = new Prewarm();
+    }
+
+    @Data
+    public static class Prewarm {
+        /** Periodically refresh ads (and their images) for active configs with adsBanner enabled */
+        private boolean enabled = true;
+        /** Delay between prewarm runs in milliseconds */
+        private long interval = 60000;
+        /** Refresh a journal's cached ads when they expire within this many milliseconds */
+        private long refreshAhead = 90000;
+        /** Upper bound on BAM fetches issued by the prewarmer per second */
+        private double maxFetchesPerSecond = 2.0;
     }
 
     @Data
@@ -74,5 +113,157 @@ public class StampingProperties {
         private int readTimeout = 30000;
         /** Maximum allowed PDF file size in bytes (default 50 MB) */
         private long maxFileSize = 52428800L;
+        /** Fetch large PDFs as parallel byte ranges when the origin advertises Accept-Ranges */
+        private boolean parallelRanges = true;
+        /** Minimum Content-Length in bytes before a download is split into ranges (default 8 MB) */
+        private long rangeThreshold = 8388608L;
+        /** Bytes per range request (default 4 MB) */
+        private long rangeChunkSize = 4194304L;
+        /** Concurrent range requests per download, including the initial GET */
+        private int rangeConcurrency = 4;
+        /** Threads fetching ranges, shared by all downloads; a download's own thread always fetches too */
+        private int rangeWorkers = 8;
+        /** Source PDF cache keyed by pdfUrl */
+        private Cache cache = new Cache();
+    }
+
+    @Data
+    public static class Cache {
+        /** Cache downloaded source PDFs by pdfUrl and revalidate with If-None-Match/If-Modified-Since */
+        private boolean enabled = true;
+        /** Sub-directory of temp-dir holding the disk tier */
+        private String dir = "pdf-cache";
+        /** Memory tier budget in bytes for hot articles (default 128 MB) */
+        private long memoryMaxBytes = 134217728L;
+        /** Disk tier budget in bytes (default 2 GB) */
+        private long diskMaxBytes = 2147483648L;
+    }
+
+    @Data
+    public static class TempStorage {
+        /** Maximum bytes of scratch files (downloads, demo PDFs) alive at once (default 1 GB) */
+        private long quotaBytes = 1073741824L;
+        /** How long a request waits for quota to free up before failing with 503, in ms */
+        private long acquireTimeout = 30000;
+    }
+
+    @Data
+    public static class ConfigStore {
+        /** Config repository: "file" (one JSON file per journal) or "log" (single append-only log) */
+        private String type = "file";
+        /** Log file used when type=log */
+        private String logFile = "config-store/configs.log";
+        /** Force every log write to disk before acknowledging it */
+        private boolean fsync = true;
+        /** Import config-dir/archive-dir into the log when it is created */
+        private boolean importOnEmpty = true;
+        /** Log size in bytes below which compaction never runs (default 1 MB) */
+        private long compactionMinBytes = 1048576L;
+        /** Compact when the log is this many times larger than its live records */
+        private double compactionRatio = 2.0;
+    }
+
+    @Data
+    public static class Plans {
+        /** Memory budget for pre-rendered static overlays of saved configs, in bytes (default 64 MB) */
+        private long overlayCacheBytes = 67108864L;
+    }
+
+    @Data
+    public static class Sanitizer {
+        /** Memory budget for memoized sanitized HTML, in bytes (default 8 MB); 0 disables the cache */
+        private long cacheBytes = 8388608L;
+    }
+
+    @Data
+    public static class Trace {
+        /** Send a Server-Timing header with per-stage durations on stamped PDF responses */
+        private boolean serverTiming = true;
+        /** Allow {@code trace=true} to add the full span list as JSON in {@code X-Stamp-Trace} */
+        private boolean debugHeader = true;
+    }
+
+    @Data
+    public static class Capture {
+        /** Record stamping requests as sanitized JSON lines for replay */
+        private boolean enabled = false;
+        /** Directory for the JSONL files and the blobs/ store of source PDFs and logos */
+        private String dir = "capture";
+        /** Fraction of requests captured, 0.0-1.0 */
+        private double sampleRate = 1.0;
+        /** Records waiting to be written; further records are dropped while it is full */
+        private int queueSize = 256;
+        /** Source PDF bytes held by waiting records; further records are dropped while over it (default 256 MB) */
+        private long queueMaxBytes = 268435456L;
+    }
+
+    @Data
+    public static class SlowRequests {
+        /** Keep a rolling JFR recording and dump it when a request exceeds the threshold */
+        private boolean enabled = true;
+        /** Request duration in ms from which the recording is dumped */
+        private long threshold = 10000;
+        /** Length of the rolling window in ms */
+        private long window = 120000;
+        /** Upper bound on the recording's disk usage */
+        private long maxBytes = 67108864L;
+        /** JFR settings: "default" (continuous, about 1% overhead) or "profile" (more detail, more overhead) */
+        private String settings = "default";
+        /** Directory for the .jfr dumps and their .json sidecars */
+        private String dir = "slow-requests";
+        /** Minimum time between two dumps in ms; slow requests in between are only counted */
+        private long minInterval = 300000;
+        /** Dumps kept; the oldest are deleted */
+        private int maxDumps = 20;
+    }
+
+    @Data
+    public static class Jobs {
+        /** Directory holding one sub-directory per job: request, state and result */
+        private String dir = "jobs";
+        /** Worker threads running jobs */
+        private int workers = 2;
+        /** Jobs waiting for a worker; further submissions are rejected with 503 */
+        private int maxQueued = 500;
+        /** How long a finished job and its result are kept, in ms (default 1 h) */
+        private long resultTtl = 3600000L;
+        /** Runs of a job interrupted by a restart before it is failed instead of retried */
+        private int maxAttempts = 2;
+        /** How long a progress event stream stays open, in ms */
+        private long sseTimeout = 600000L;
+    }
+
+    @Data
+    public static class Batch {
+        /** Items of one batch stamped at the same time */
+        private int parallelism = 4;
+        /** Threads shared by all running batches and compilations; further items wait for a free one */
+        private int workers = 8;
+        /** Largest number of items accepted in one batch */
+        private int maxItems = 500;
+        /** Largest number of items accepted in one compilation, which is built on the request thread */
+        private int maxCompilationItems = 100;
+    }
+
+    @Data
+    public static class ResourceCache {
+        /** Serve external images/stylesheets referenced by ad and template HTML from the cache */
+        private boolean enabled = true;
+        /** Sub-directory of temp-dir holding the disk tier */
+        private String dir = "resource-cache";
+        /** Memory tier budget in bytes (default 32 MB) */
+        private long memoryMaxBytes = 33554432L;
+        /** Disk tier budget in bytes (default 512 MB) */
+        private long diskMaxBytes = 536870912L;
+        /** How long a fetched resource is served without refetching, in milliseconds (default 24 h) */
+        private long ttl = 86400000L;
+        /** How long a failed fetch is remembered before retrying, in milliseconds */
+        private long negativeTtl = 60000L;
+        /** Connection timeout in milliseconds per resource fetch */
+        private int connectTimeout = 3000;
+        /** Total timeout in milliseconds per resource fetch */
+        private int readTimeout = 5000;
+        /** Largest single resource accepted, in bytes (default 5 MB) */
+        private long maxResourceSize = 5242880L;
     }
 }
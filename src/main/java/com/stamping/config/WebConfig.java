@@ -24,6 +24,8 @@ public class WebConfig implements WebMvcConfigurer {
                 .allowedOrigins(origins)
                 .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
                 .allowedHeaders("*")
+                .exposedHeaders("ETag", "X-Config-Cursor", "X-Config-Delta", "X-Total-Count",
+                        "Server-Timing", "X-Stamp-Trace", "Location")
                 .maxAge(3600);
     }
 }
@@ -0,0 +1,114 @@
+package com.stamping.controller;
+
+import java.net.URI;
+import java.nio.file.Path;
+
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.stamping.exception.StampingException;
+import com.stamping.model.JournalMetadataRequest;
+import com.stamping.model.StampResponse;
+import com.stamping.service.InputSanitizer;
+import com.stamping.service.job.StampJob;
+import com.stamping.service.job.StampJobService;
+import com.stamping.service.plan.StampingPlans;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Asynchronous stamping: submit a job, follow it by polling or Server-Sent Events, then download
+ * the result while it is retained. The request bodies are those of the synchronous stamp endpoints.
+ */
+@RestController
+@RequestMapping("/api/v1/jobs")
+@RequiredArgsConstructor
+public class JobController {
+
+    private final StampJobService jobService;
+    private final InputSanitizer inputSanitizer;
+    private final StampingPlans stampingPlans;
+
+    @PostMapping(value = "/journal-metadata", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StampJob> submit(@RequestBody JournalMetadataRequest request,
+                                           @RequestHeader(value = "Idempotency-Key", required = false) String key) {
+        return accepted(jobService.submitInline(request, key));
+    }
+
+    @PostMapping(value = "/journals/{pubId}/{jcode}", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> submitWithSavedConfig(@PathVariable String pubId, @PathVariable String jcode,
+                                                   @RequestBody JournalMetadataRequest request,
+                                                   @RequestHeader(value = "Idempotency-Key", required = false) String key) {
+        inputSanitizer.validateIdentifier(pubId, "pubId");
+        inputSanitizer.validateIdentifier(jcode, "jcode");
+        if (request.getPositions() != null && !request.getPositions().isEmpty()) {
+            throw new StampingException("positions are taken from the saved config; use /jobs/journal-metadata for inline positions");
+        }
+        if (stampingPlans.get(pubId, jcode) == null) {
+            return ResponseEntity.status(404).body(StampResponse.builder()
+                    .success(false).message("Configuration not found").build());
+        }
+        return accepted(jobService.submitSaved(pubId, jcode, request, key));
+    }
+
+    @GetMapping(value = "/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StampJob> get(@PathVariable String id) {
+        StampJob job = jobService.get(id);
+        return job == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(job);
+    }
+
+    /** Progress as Server-Sent Events: {@code status}, then {@code progress} per stage, then {@code done}. */
+    @GetMapping(value = "/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> events(@PathVariable String id) {
+        SseEmitter emitter = jobService.subscribe(id);
+        return emitter == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(emitter);
+    }
+
+    @GetMapping("/{id}/result")
+    public ResponseEntity<?> result(@PathVariable String id) {
+        StampJob job = jobService.get(id);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        Path result = jobService.result(id);
+        if (result == null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(StampResponse.builder()
+                    .success(false).message("Job is " + job.status().name().toLowerCase()
+                            + (job.error() != null ? ": " + job.error() : "")).build());
+        }
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + job.filename() + "\"")
+                .contentType(MediaType.APPLICATION_PDF)
+                .body(new FileSystemResource(result));
+    }
+
+    /** Deletes a queued or finished job and its result; a running job cannot be deleted. */
+    @DeleteMapping("/{id}")
+    public ResponseEntity<?> delete(@PathVariable String id) {
+        StampJob job = jobService.delete(id);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (job.status() == StampJob.Status.RUNNING) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(StampResponse.builder()
+                    .success(false).message("Job is running").build());
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    private static ResponseEntity<StampJob> accepted(StampJob job) {
+        return ResponseEntity.accepted().location(URI.create("/api/v1/jobs/" + job.id())).body(job);
+    }
+}
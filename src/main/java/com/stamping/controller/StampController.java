@@ -1,16 +1,15 @@
 package com.stamping.controller;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
 import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -19,18 +18,31 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.stamping.config.StampingProperties;
 import com.stamping.exception.StampingException;
+import com.stamping.model.BatchStampRequest;
+import com.stamping.model.IssueCompilationRequest;
 import com.stamping.model.JournalMetadataRequest;
 import com.stamping.model.StampResponse;
 import com.stamping.service.DemoStampService;
 import com.stamping.service.InputSanitizer;
 import com.stamping.service.StampOrchestrationService;
 import com.stamping.service.StampOrchestrationService.StampResult;
+import com.stamping.service.TempStorage;
+import com.stamping.service.batch.BatchStampService;
+import com.stamping.service.config.ConfigFileLayout;
+import com.stamping.service.config.ConfigListing;
+import com.stamping.service.config.ConfigRepository;
+import com.stamping.service.config.StoredConfig;
+import com.stamping.service.plan.StampingPlan;
+import com.stamping.service.plan.StampingPlans;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -44,25 +56,41 @@ public class StampController {
     private final InputSanitizer inputSanitizer;
     private final StampingProperties properties;
     private final DemoStampService demoStampService;
+    private final TempStorage tempStorage;
+    private final ConfigRepository configRepository;
+    private final ConfigListing configListing;
+    private final StampingPlans stampingPlans;
+    private final BatchStampService batchStampService;
 
     @Autowired
     public StampController(StampOrchestrationService orchestrationService,
                            ObjectMapper objectMapper,
                            InputSanitizer inputSanitizer,
                            StampingProperties properties,
-                           DemoStampService demoStampService) {
+                           DemoStampService demoStampService,
+                           TempStorage tempStorage,
+                           ConfigRepository configRepository,
+                           ConfigListing configListing,
+                           StampingPlans stampingPlans,
+                           BatchStampService batchStampService) {
         this.orchestrationService = orchestrationService;
         this.objectMapper = objectMapper;
         this.inputSanitizer = inputSanitizer;
         this.properties = properties;
         this.demoStampService = demoStampService;
+        this.tempStorage = tempStorage;
+        this.configRepository = configRepository;
+        this.configListing = configListing;
+        this.stampingPlans = stampingPlans;
+        this.batchStampService = batchStampService;
     }
 
     // ─── Stamping Endpoints ─────────────────────────────────────────────
 
     @PostMapping(value = "/stamp/journal-metadata", consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<byte[]> processJournalMetadata(@RequestBody JournalMetadataRequest request) {
-        File demoTempFile = null;
+    public ResponseEntity<byte[]> processJournalMetadata(@RequestBody JournalMetadataRequest request,
+                                                         @RequestParam(defaultValue = "false") boolean trace) {
+        TempStorage.Handle demoTempFile = null;
         try {
             request.applyDemoDefaults();
 
@@ -73,26 +101,113 @@ public class StampController {
 
             StampResult result = orchestrationService.processJournalMetadata(request);
 
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + result.filename() + "\"")
-                    .contentType(MediaType.APPLICATION_PDF)
-                    .contentLength(result.pdfBytes().length)
-                    .body(result.pdfBytes());
+            return pdfResponse(result, result.filename(), trace);
 
         } catch (StampingException e) {
             throw e;
         } catch (Exception e) {
             throw new StampingException("Failed to process journal metadata request: " + e.getMessage(), e);
         } finally {
-            if (demoTempFile != null && demoTempFile.exists()) {
-                demoTempFile.delete();
+            if (demoTempFile != null) {
+                demoTempFile.close();
             }
         }
     }
 
+    /**
+     * Stamps with the saved config of a journal. The body carries only the PDF source and article
+     * metadata ({@code pdfUrl}/{@code pdfFilePath}, {@code articleTitle}, {@code authors}, ...);
+     * positions come from the journal's precompiled stamping plan.
+     */
+    @PostMapping(value = "/stamp/journals/{pubId}/{jcode}", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> stampWithSavedConfig(@PathVariable String pubId, @PathVariable String jcode,
+                                                  @RequestBody JournalMetadataRequest request,
+                                                  @RequestParam(defaultValue = "false") boolean trace) {
+        inputSanitizer.validateIdentifier(pubId, "pubId");
+        inputSanitizer.validateIdentifier(jcode, "jcode");
+        if (request.getPositions() != null && !request.getPositions().isEmpty()) {
+            throw new StampingException("positions are taken from the saved config; use /stamp/journal-metadata for inline positions");
+        }
+
+        StampingPlan plan = stampingPlans.get(pubId, jcode);
+        if (plan == null) {
+            return ResponseEntity.status(404).body(StampResponse.builder()
+                    .success(false).message("Configuration not found").build());
+        }
+
+        try {
+            StampResult result = orchestrationService.processWithPlan(plan, request);
+
+            return pdfResponse(result, result.filename(), trace);
+        } catch (StampingException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new StampingException("Failed to stamp with saved config: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Stamps many articles with the saved config of a journal. The response is a ZIP streamed as
+     * items finish: one PDF per successful item, then {@code manifest.json} with the outcome of
+     * every item. Failed items are reported there and do not fail the response.
+     */
+    @PostMapping(value = "/stamp/journals/{pubId}/{jcode}/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> stampBatch(@PathVariable String pubId, @PathVariable String jcode,
+                                        @RequestBody BatchStampRequest request) {
+        inputSanitizer.validateIdentifier(pubId, "pubId");
+        inputSanitizer.validateIdentifier(jcode, "jcode");
+        batchStampService.validate(request.getItems());
+
+        StampingPlan plan = stampingPlans.get(pubId, jcode);
+        if (plan == null) {
+            return ResponseEntity.status(404).contentType(MediaType.APPLICATION_JSON)
+                    .body(json(StampResponse.builder().success(false).message("Configuration not found").build()));
+        }
+
+        StreamingResponseBody body = out -> batchStampService.write(plan, request.getItems(), out);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"" + pubId + "_" + jcode + "_batch.zip\"")
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .body(body);
+    }
+
+    /**
+     * Stamps many articles with the saved config of a journal and merges them into one PDF, in
+     * order: an optional shared cover, then every article under its own bookmark. Resources that
+     * are identical across articles are stored once. Fails as a whole if any article fails.
+     */
+    @PostMapping(value = "/stamp/journals/{pubId}/{jcode}/compilation", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> compileIssue(@PathVariable String pubId, @PathVariable String jcode,
+                                                              @RequestBody IssueCompilationRequest request) {
+        inputSanitizer.validateIdentifier(pubId, "pubId");
+        inputSanitizer.validateIdentifier(jcode, "jcode");
+        batchStampService.validateCompilation(request.getItems());
+
+        StampingPlan plan = stampingPlans.get(pubId, jcode);
+        if (plan == null) {
+            return ResponseEntity.status(404).contentType(MediaType.APPLICATION_JSON)
+                    .body(json(StampResponse.builder().success(false).message("Configuration not found").build()));
+        }
+
+        BatchStampService.Compilation compilation = batchStampService.compile(plan, request);
+        TempStorage.Handle file = compilation.file();
+        StreamingResponseBody body = out -> {
+            try (file) {
+                Files.copy(file.file().toPath(), out);
+            }
+        };
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + compilation.filename() + "\"")
+                .contentType(MediaType.APPLICATION_PDF)
+                .contentLength(file.file().length())
+                .body(body);
+    }
+
     @GetMapping(value = "/stamp/demo-pdf/{pubId}/{jcode}", produces = MediaType.APPLICATION_PDF_VALUE)
-    public ResponseEntity<byte[]> downloadDemoPdf(@PathVariable String pubId, @PathVariable String jcode) {
-        File tempFile = null;
+    public ResponseEntity<byte[]> downloadDemoPdf(@PathVariable String pubId, @PathVariable String jcode,
+                                                  @RequestParam(defaultValue = "false") boolean trace) {
+        TempStorage.Handle tempFile = null;
         try {
             inputSanitizer.validateIdentifier(pubId, "pubId");
             inputSanitizer.validateIdentifier(jcode, "jcode");
@@ -100,51 +215,94 @@ public class StampController {
             JournalMetadataRequest demoRequest = demoStampService.buildDemoRequest(pubId, jcode);
             byte[] blankPdf = demoStampService.createBlankPdf();
 
-            tempFile = File.createTempFile("demo_blank_", ".pdf");
-            tempFile.deleteOnExit();
-            Files.write(tempFile.toPath(), blankPdf);
-            demoRequest.setPdfFilePath(tempFile.getAbsolutePath());
+            tempFile = tempStorage.write("demo_blank_", ".pdf", blankPdf);
+            demoRequest.setPdfFilePath(tempFile.file().getAbsolutePath());
             demoRequest.setOutputPath(null);
 
             StampResult result = orchestrationService.processJournalMetadata(demoRequest);
 
             String filename = "demo_" + pubId + "_" + jcode + "_stamped.pdf";
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
-                    .contentType(MediaType.APPLICATION_PDF)
-                    .contentLength(result.pdfBytes().length)
-                    .body(result.pdfBytes());
+            return pdfResponse(result, filename, trace);
         } catch (StampingException e) {
             throw e;
         } catch (Exception e) {
             throw new StampingException("Failed to generate demo PDF: " + e.getMessage(), e);
         } finally {
-            if (tempFile != null && tempFile.exists()) tempFile.delete();
+            if (tempFile != null) tempFile.close();
+        }
+    }
+
+    /**
+     * Stamped PDF as an attachment, with the request's stage durations in {@code Server-Timing}
+     * and, when asked for with {@code trace=true}, the full span list in {@code X-Stamp-Trace}.
+     */
+    private ResponseEntity<byte[]> pdfResponse(StampResult result, String filename, boolean trace) throws Exception {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"");
+        if (properties.getTrace().isServerTiming()) {
+            response.header("Server-Timing", result.trace().serverTiming());
         }
+        if (trace && properties.getTrace().isDebugHeader()) {
+            response.header("X-Stamp-Trace", objectMapper.writeValueAsString(result.trace().summary()));
+        }
+        return response
+                .contentType(MediaType.APPLICATION_PDF)
+                .contentLength(result.pdfBytes().length)
+                .body(result.pdfBytes());
     }
 
     // ─── Config CRUD ────────────────────────────────────────────────────
 
+    /**
+     * Lists active configs. With no parameters this is the full array it always was.
+     * {@code view=summary} drops logo payloads; {@code pubId}, {@code jcode} and {@code section}
+     * filter; {@code page}/{@code size} page the result (total in {@code X-Total-Count}).
+     * Every response carries an ETag and an {@code X-Config-Cursor}; passing that cursor back as
+     * {@code since} returns only configs changed after it, plus {@code removed} tombstones.
+     */
     @GetMapping(value = "/configs", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<?> listConfigs() {
+    public ResponseEntity<StreamingResponseBody> listConfigs(@RequestParam(required = false) String pubId,
+                                         @RequestParam(required = false) String jcode,
+                                         @RequestParam(required = false) String section,
+                                         @RequestParam(defaultValue = "full") String view,
+                                         @RequestParam(defaultValue = "0") int page,
+                                         @RequestParam(required = false) Integer size,
+                                         @RequestParam(required = false) String since,
+                                         @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         try {
-            File configDir = new File(properties.getConfigDir());
-            List<Object> results = new ArrayList<>();
-            if (configDir.exists() && configDir.isDirectory()) {
-                File[] files = configDir.listFiles((dir, name) -> name.startsWith("config_") && name.endsWith(".json"));
-                if (files != null) {
-                    Arrays.sort(files);
-                    for (File f : files) {
-                        String content = Files.readString(f.toPath(), StandardCharsets.UTF_8);
-                        results.add(objectMapper.readValue(content, Object.class));
-                    }
-                }
+            if (pubId != null && !pubId.isBlank()) inputSanitizer.validateIdentifier(pubId, "pubId");
+            else pubId = null;
+            if (jcode != null && !jcode.isBlank()) inputSanitizer.validateIdentifier(jcode, "jcode");
+            else jcode = null;
+            if (section != null && !section.isBlank()) inputSanitizer.validateIdentifier(section, "section");
+            else section = null;
+            if (!"full".equals(view) && !"summary".equals(view)) {
+                throw new StampingException("view must be 'full' or 'summary'");
             }
-            return ResponseEntity.ok(results);
+
+            ConfigListing.Result result = configListing.query(new ConfigListing.Query(
+                    pubId, jcode, section, "summary".equals(view), page, size, since));
+
+            String etag = "\"" + result.cursor() + "\"";
+            if (etag.equals(ifNoneMatch)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag)
+                        .header("X-Config-Cursor", result.cursor()).build();
+            }
+
+            StreamingResponseBody body = out -> configListing.write(result, out);
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .eTag(etag)
+                    .header("X-Config-Cursor", result.cursor())
+                    .header("X-Config-Delta", String.valueOf(result.delta()))
+                    .header("X-Total-Count", String.valueOf(result.total()))
+                    .body(body);
+        } catch (StampingException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Failed to list configs", e);
-            return ResponseEntity.internalServerError().body(StampResponse.builder()
-                    .success(false).message("Failed to list configurations").build());
+            return ResponseEntity.internalServerError().contentType(MediaType.APPLICATION_JSON)
+                    .body(json(StampResponse.builder().success(false).message("Failed to list configurations").build()));
         }
     }
 
@@ -154,13 +312,12 @@ public class StampController {
             inputSanitizer.validateIdentifier(pubId, "pubId");
             inputSanitizer.validateIdentifier(jcode, "jcode");
 
-            File configFile = new File(properties.getConfigDir(), "config_" + pubId + "_" + jcode + ".json");
-            if (!configFile.exists()) {
+            StoredConfig entry = configRepository.get(pubId, jcode);
+            if (entry == null) {
                 return ResponseEntity.status(404).body(StampResponse.builder()
                         .success(false).message("No configuration found for pubId=" + pubId + ", jcode=" + jcode).build());
             }
-            String content = Files.readString(configFile.toPath(), StandardCharsets.UTF_8);
-            return ResponseEntity.ok(objectMapper.readValue(content, Object.class));
+            return ResponseEntity.ok(entry.config());
         } catch (StampingException e) {
             throw e;
         } catch (Exception e) {
@@ -193,18 +350,15 @@ public class StampController {
                 }
             }
 
-            File configDir = new File(properties.getConfigDir());
-            if (!configDir.exists()) configDir.mkdirs();
-
-            File outputFile = new File(configDir, "config_" + pubId + "_" + jcode + ".json");
-            String json = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(rawConfig);
-            Files.writeString(outputFile.toPath(), json, StandardCharsets.UTF_8);
+            StoredConfig saved = configRepository.save(pubId, jcode, rawConfig);
+            String location = configRepository.describeLocation(saved);
 
-            log.info("Config saved: {}", outputFile.getAbsolutePath());
+            log.info("Config saved: {} (version {})", location, saved.version());
+            stampingPlans.compile(saved);
 
             return ResponseEntity.ok(StampResponse.builder()
                     .success(true).message("Configuration saved successfully")
-                    .outputFilePath(outputFile.getAbsolutePath()).build());
+                    .outputFilePath(location).build());
         } catch (StampingException e) {
             throw e;
         } catch (Exception e) {
@@ -220,18 +374,11 @@ public class StampController {
             inputSanitizer.validateIdentifier(pubId, "pubId");
             inputSanitizer.validateIdentifier(jcode, "jcode");
 
-            File configFile = new File(properties.getConfigDir(), "config_" + pubId + "_" + jcode + ".json");
-            if (!configFile.exists()) {
+            if (!configRepository.archive(pubId, jcode)) {
                 return ResponseEntity.status(404).body(StampResponse.builder()
                         .success(false).message("Configuration not found in active directory").build());
             }
 
-            File archiveDir = new File(properties.getArchiveDir());
-            if (!archiveDir.exists()) archiveDir.mkdirs();
-
-            File archiveFile = new File(archiveDir, configFile.getName());
-            Files.move(configFile.toPath(), archiveFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-
             return ResponseEntity.ok(StampResponse.builder().success(true).message("Configuration archived successfully").build());
         } catch (StampingException e) {
             throw e;
@@ -248,18 +395,11 @@ public class StampController {
             inputSanitizer.validateIdentifier(pubId, "pubId");
             inputSanitizer.validateIdentifier(jcode, "jcode");
 
-            File archiveFile = new File(properties.getArchiveDir(), "config_" + pubId + "_" + jcode + ".json");
-            if (!archiveFile.exists()) {
+            if (!configRepository.restore(pubId, jcode)) {
                 return ResponseEntity.status(404).body(StampResponse.builder()
                         .success(false).message("Configuration not found in archive directory").build());
             }
 
-            File configDir = new File(properties.getConfigDir());
-            if (!configDir.exists()) configDir.mkdirs();
-
-            File configFile = new File(configDir, archiveFile.getName());
-            Files.move(archiveFile.toPath(), configFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-
             return ResponseEntity.ok(StampResponse.builder().success(true).message("Configuration restored successfully").build());
         } catch (StampingException e) {
             throw e;
@@ -270,9 +410,45 @@ public class StampController {
         }
     }
 
+    /**
+     * Exports every config (active and archived) in the original file layout as a ZIP:
+     * configs/config_{pubId}_{jcode}.json and archive_configs/config_{pubId}_{jcode}.json.
+     * Unzipping it into the working directory gives a tree the file store (or a fresh log
+     * store import) can read directly.
+     */
+    @GetMapping(value = "/configs/export", produces = "application/zip")
+    public ResponseEntity<byte[]> exportConfigs() {
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            try (ZipOutputStream zip = new ZipOutputStream(buffer)) {
+                for (StoredConfig c : configRepository.listAll()) {
+                    String dir = new File(c.archived() ? properties.getArchiveDir() : properties.getConfigDir()).getName();
+                    zip.putNextEntry(new ZipEntry(dir + "/" + c.key()));
+                    zip.write(ConfigFileLayout.toJson(c, objectMapper));
+                    zip.closeEntry();
+                }
+            }
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"configs-export.zip\"")
+                    .contentType(MediaType.parseMediaType("application/zip"))
+                    .body(buffer.toByteArray());
+        } catch (Exception e) {
+            throw new StampingException("Failed to export configurations: " + e.getMessage(), e);
+        }
+    }
+
     // ─── Helpers ────────────────────────────────────────────────────────
 
-    private File prepareDemoMode(JournalMetadataRequest request) throws Exception {
+    /**
+     * A JSON body for endpoints declared to return {@code ResponseEntity<StreamingResponseBody>};
+     * Spring only streams the body when the declared type says so, so their other responses
+     * must be streaming bodies too.
+     */
+    private StreamingResponseBody json(Object body) {
+        return out -> out.write(objectMapper.writeValueAsBytes(body));
+    }
+
+    private TempStorage.Handle prepareDemoMode(JournalMetadataRequest request) {
         if (request.getPositions() == null || request.getPositions().isEmpty()) {
             if (request.getPublisherId() != null && !request.getPublisherId().isBlank()
                     && request.getJcode() != null && !request.getJcode().isBlank()) {
@@ -283,14 +459,12 @@ public class StampController {
                         request.getPublisherId(), request.getJcode());
             }
         }
-        File demoTempFile = null;
+        TempStorage.Handle demoTempFile = null;
         if (request.getPdfFilePath() == null || request.getPdfFilePath().isBlank()) {
             byte[] blankPdf = demoStampService.createBlankPdf();
-            demoTempFile = File.createTempFile("demo_blank_", ".pdf");
-            demoTempFile.deleteOnExit();
-            Files.write(demoTempFile.toPath(), blankPdf);
-            request.setPdfFilePath(demoTempFile.getAbsolutePath());
-            log.info("  [DEMO] Created blank placeholder PDF: {}", demoTempFile.getAbsolutePath());
+            demoTempFile = tempStorage.write("demo_blank_", ".pdf", blankPdf);
+            request.setPdfFilePath(demoTempFile.file().getAbsolutePath());
+            log.info("  [DEMO] Created blank placeholder PDF: {}", demoTempFile.file().getAbsolutePath());
         }
         return demoTempFile;
     }
@@ -18,6 +18,18 @@ import lombok.extern.slf4j.Slf4j;
 @RestControllerAdvice
 public class GlobalExceptionHandler {
 
+    @ExceptionHandler(TempStorageExhaustedException.class)
+    public ResponseEntity<Map<String, Object>> handleTempStorageExhausted(TempStorageExhaustedException ex) {
+        log.warn("Temp storage exhausted: {}", ex.getMessage());
+        return buildResponse(HttpStatus.SERVICE_UNAVAILABLE, ex.getMessage());
+    }
+
+    @ExceptionHandler(JobQueueFullException.class)
+    public ResponseEntity<Map<String, Object>> handleJobQueueFull(JobQueueFullException ex) {
+        log.warn("Job queue full: {}", ex.getMessage());
+        return buildResponse(HttpStatus.SERVICE_UNAVAILABLE, ex.getMessage());
+    }
+
     @ExceptionHandler(StampingException.class)
     public ResponseEntity<Map<String, Object>> handleStampingException(StampingException ex) {
         log.error("Stamping error: {}", ex.getMessage(), ex);
@@ -0,0 +1,12 @@
+package com.stamping.exception;
+
+/**
+ * Thrown when the asynchronous job queue already holds its maximum of waiting jobs.
+ * Mapped to 503 so callers back off and retry instead of treating it as a bad request.
+ */
+public class JobQueueFullException extends StampingException {
+
+    public JobQueueFullException(String message) {
+        super(message);
+    }
+}
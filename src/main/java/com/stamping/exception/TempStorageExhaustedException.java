@@ -0,0 +1,12 @@
+package com.stamping.exception;
+
+/**
+ * Thrown when scratch storage stays over quota for the whole acquire timeout.
+ * Mapped to 503 so callers back off and retry instead of treating it as a bad request.
+ */
+public class TempStorageExhaustedException extends StampingException {
+
+    public TempStorageExhaustedException(String message) {
+        super(message);
+    }
+}
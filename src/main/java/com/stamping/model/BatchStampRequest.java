@@ -0,0 +1,19 @@
+package com.stamping.model;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Body of a batch stamp: articles stamped with the same saved config. Each item is the body of a
+ * single saved-config stamp (PDF source and article metadata, no positions).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchStampRequest {
+
+    private List<JournalMetadataRequest> items;
+}
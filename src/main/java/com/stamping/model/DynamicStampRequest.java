@@ -26,7 +26,7 @@ public class DynamicStampRequest {
     private Map<String, Configuration> positions;
 
     @Data
-    @Builder
+    @Builder(toBuilder = true)
     @NoArgsConstructor
     @AllArgsConstructor
     @JsonInclude(JsonInclude.Include.NON_NULL)
@@ -0,0 +1,26 @@
+package com.stamping.model;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Body of an issue compilation: articles stamped with the same saved config and merged, in order,
+ * into one PDF.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IssueCompilationRequest {
+
+    /** Document title, also used for the output file name */
+    private String title;
+
+    /** Metadata of the shared cover page, rendered from the config's newPage section; omit for no cover */
+    private JournalMetadataRequest cover;
+
+    /** Articles in output order, each a saved-config stamp body without positions */
+    private List<JournalMetadataRequest> items;
+}
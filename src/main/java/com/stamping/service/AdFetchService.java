@@ -1,58 +1,255 @@
 package com.stamping.service;
 
-import org.springframework.boot.web.client.RestTemplateBuilder;
-import org.springframework.http.ResponseEntity;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.stamping.config.StampingProperties;
 import com.stamping.model.ad.AdResponse;
+import com.stamping.service.cache.LruCache;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Client for the BAM ad presenter API.
+ *
+ * <p>Uses a shared JDK {@link HttpClient} (pooled keep-alive connections, non-blocking I/O)
+ * behind a {@link CircuitBreaker}: when BAM keeps failing or timing out, fetches fail fast
+ * to "no ads" instead of pinning every stamping thread for the full read timeout.
+ * Optionally hedges slow fetches with a second request once the first has exceeded the
+ * configured latency percentile. Breaker state and fetch latency histograms are published
+ * as {@code stamping.ads.*} metrics on the actuator. Successful responses are cached per URL
+ * for {@code stamping.ads.cache-ttl} and kept warm by {@link AdPrewarmService}.
+ */
 @Slf4j
 @Service
 public class AdFetchService {
 
-    private final RestTemplate restTemplate;
+    /** Successful fetches required before the latency percentile is trusted as a hedge delay. */
+    private static final long HEDGE_MIN_SAMPLES = 20;
+    /** One ad URL per journal; comfortably above the number of configured journals. */
+    private static final int AD_CACHE_SIZE = 4096;
+
+    private record CachedAds(AdResponse response, long expiresAt) {}
+
+    private final HttpClient httpClient;
     private final ObjectMapper objectMapper;
+    private final StampingProperties.Ads config;
+    private final CircuitBreaker breaker;
+    private final LruCache<String, CachedAds> cache = new LruCache<>(AD_CACHE_SIZE);
 
-    public AdFetchService(RestTemplateBuilder restTemplateBuilder,
-                          ObjectMapper objectMapper,
-                          StampingProperties properties) {
-        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
-        factory.setConnectTimeout(properties.getAds().getConnectTimeout());
-        factory.setReadTimeout(properties.getAds().getReadTimeout());
-        this.restTemplate = restTemplateBuilder.requestFactory(() -> factory).build();
+    private final Timer successTimer;
+    private final Timer failureTimer;
+    private final Counter shortCircuited;
+    private final Counter hedgedRequests;
+
+    public AdFetchService(ObjectMapper objectMapper,
+                          StampingProperties properties,
+                          MeterRegistry meterRegistry) {
+        this.config = properties.getAds();
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(config.getConnectTimeout()))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
         // Configure a dedicated mapper that ignores unknown properties
         this.objectMapper = objectMapper.copy()
                 .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        this.breaker = new CircuitBreaker(config.getBreakerFailureThreshold(),
+                Duration.ofMillis(config.getBreakerOpenDuration()));
+
+        this.successTimer = Timer.builder("stamping.ads.fetch")
+                .description("BAM ad fetch latency")
+                .tag("outcome", "success")
+                .publishPercentileHistogram()
+                .publishPercentiles(config.getHedgePercentile())
+                .register(meterRegistry);
+        this.failureTimer = Timer.builder("stamping.ads.fetch")
+                .description("BAM ad fetch latency")
+                .tag("outcome", "failure")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.shortCircuited = Counter.builder("stamping.ads.breaker.rejected")
+                .description("Ad fetches skipped because the circuit breaker was open")
+                .register(meterRegistry);
+        this.hedgedRequests = Counter.builder("stamping.ads.fetch.hedged")
+                .description("Hedged second requests sent for slow ad fetches")
+                .register(meterRegistry);
+        Gauge.builder("stamping.ads.breaker.state", breaker, b -> b.getState().ordinal())
+                .description("Ad circuit breaker state: 0=closed, 1=open, 2=half-open")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Builds the BAM ads URL for a journal. All callers (stamping, templates, prewarming)
+     * go through this so they share cache entries.
+     */
+    public String buildAdUrl(String publisherId, String jcode) {
+        return config.getBaseUrl()
+                + "?publisherId=" + publisherId
+                + "&jcode=" + jcode
+                + "&sectionPath=" + config.getSectionPath();
     }
 
     /**
-     * Fetches ads from the given BAM URL.
-     * Returns null (instead of throwing) when the fetch fails, so callers can
-     * decide whether to skip ads gracefully or retry.
+     * Returns ads for the given BAM URL, served from the response cache while fresh
+     * (see stamping.ads.cache-ttl), otherwise fetched from BAM.
+     * Returns null (instead of throwing) when the fetch fails or the breaker is open, so callers
+     * can decide whether to skip ads gracefully or retry.
      */
     public AdResponse fetchAds(String url) {
+        CachedAds cached = cache.get(url);
+        if (cached != null && System.currentTimeMillis() < cached.expiresAt()) {
+            return cached.response();
+        }
+        return refresh(url);
+    }
+
+    /**
+     * Fetches ads from BAM bypassing the cache, and caches a successful response.
+     * Used directly by the prewarmer to refresh entries ahead of expiry.
+     */
+    public AdResponse refresh(String url) {
+        AdResponse response = fetchRemote(url);
+        if (response != null && config.getCacheTtl() > 0) {
+            cache.put(url, new CachedAds(response, System.currentTimeMillis() + config.getCacheTtl()));
+        }
+        return response;
+    }
+
+    /** Epoch millis at which the cached response for this URL expires, or 0 when not cached. */
+    public long cacheExpiry(String url) {
+        CachedAds cached = cache.get(url);
+        return cached != null ? cached.expiresAt() : 0;
+    }
+
+    private AdResponse fetchRemote(String url) {
+        if (!breaker.tryAcquire()) {
+            shortCircuited.increment();
+            log.warn("Ad circuit breaker open, skipping fetch from URL: '{}'", url);
+            return null;
+        }
+
         log.info("Fetching ads from URL: '{}'", url);
+        long start = System.nanoTime();
+        CompletableFuture<HttpResponse<String>> future = null;
         try {
-            ResponseEntity<String> raw = restTemplate.getForEntity(url.trim(), String.class);
-            log.debug("Ad response status={}, body length={}", raw.getStatusCode(),
-                    raw.getBody() != null ? raw.getBody().length() : 0);
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create(url.trim()))
+                    .timeout(Duration.ofMillis(config.getReadTimeout()))
+                    .header("Accept", "application/json")
+                    .GET()
+                    .build();
+
+            future = sendHedged(request, hedgeDelayMillis());
+            // Hard upper bound on the whole exchange, body included
+            HttpResponse<String> raw = future.get(
+                    (long) config.getConnectTimeout() + config.getReadTimeout(), TimeUnit.MILLISECONDS);
+            log.debug("Ad response status={}, body length={}", raw.statusCode(),
+                    raw.body() != null ? raw.body().length() : 0);
 
-            if (raw.getBody() == null || raw.getBody().isBlank()) {
+            if (raw.statusCode() < 200 || raw.statusCode() >= 300) {
+                throw new IllegalStateException("BAM returned HTTP " + raw.statusCode());
+            }
+
+            AdResponse ads = null;
+            if (raw.body() == null || raw.body().isBlank()) {
                 log.warn("Empty response body from ad URL: {}", url);
-                return null;
+            } else {
+                ads = objectMapper.readValue(raw.body(), AdResponse.class);
             }
 
-            return objectMapper.readValue(raw.getBody(), AdResponse.class);
+            // Only a response that parsed counts as a success
+            breaker.onSuccess();
+            successTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return ads;
         } catch (Exception e) {
-            log.error("Failed to fetch/parse ads from URL '{}': {}", url, e.getMessage(), e);
+            if (future != null) future.cancel(true);
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            breaker.onFailure();
+            failureTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+            String reason = cause instanceof TimeoutException ? "timed out" : cause.getMessage();
+            log.error("Failed to fetch/parse ads from URL '{}': {}", url, reason);
             return null;
         }
     }
+
+    /** Current breaker state, exposed for diagnostics. */
+    public CircuitBreaker.State getBreakerState() {
+        return breaker.getState();
+    }
+
+    /**
+     * Sends the request and, if {@code hedgeDelayMs > 0} and no response has arrived by then,
+     * a second identical request. The first successful response wins; the exchange fails only
+     * when every request that was sent has failed.
+     */
+    private CompletableFuture<HttpResponse<String>> sendHedged(HttpRequest request, long hedgeDelayMs) {
+        CompletableFuture<HttpResponse<String>> primary =
+                httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+        if (hedgeDelayMs <= 0) {
+            return primary;
+        }
+
+        CompletableFuture<HttpResponse<String>> result = new CompletableFuture<>();
+        AtomicInteger outstanding = new AtomicInteger(1);
+        primary.whenComplete((r, e) -> settle(result, outstanding, r, e));
+
+        CompletableFuture.delayedExecutor(hedgeDelayMs, TimeUnit.MILLISECONDS).execute(() -> {
+            if (result.isDone()) return;
+            outstanding.incrementAndGet();
+            hedgedRequests.increment();
+            CompletableFuture<HttpResponse<String>> hedge =
+                    httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+            hedge.whenComplete((r, e) -> settle(result, outstanding, r, e));
+            result.whenComplete((r, e) -> hedge.cancel(true));
+        });
+        result.whenComplete((r, e) -> primary.cancel(true));
+        return result;
+    }
+
+    private void settle(CompletableFuture<HttpResponse<String>> result, AtomicInteger outstanding,
+                        HttpResponse<String> response, Throwable error) {
+        if (error == null && response.statusCode() >= 200 && response.statusCode() < 300) {
+            result.complete(response);
+        } else if (outstanding.decrementAndGet() == 0) {
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(response);
+            }
+        }
+    }
+
+    /**
+     * Hedge delay derived from the configured percentile of recent successful fetch latencies,
+     * or 0 (no hedging) when disabled or when there are too few samples to trust the percentile.
+     */
+    private long hedgeDelayMillis() {
+        if (!config.isHedgeEnabled() || successTimer.count() < HEDGE_MIN_SAMPLES) {
+            return 0;
+        }
+        for (ValueAtPercentile v : successTimer.takeSnapshot().percentileValues()) {
+            if (v.percentile() == config.getHedgePercentile()) {
+                return Math.max(config.getHedgeMinDelay(), (long) v.value(TimeUnit.MILLISECONDS));
+            }
+        }
+        return 0;
+    }
 }
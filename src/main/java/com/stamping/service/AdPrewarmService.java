@@ -0,0 +1,195 @@
+package com.stamping.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.stamping.config.StampingProperties;
+import com.stamping.model.DynamicStampRequest;
+import com.stamping.model.ad.AdData;
+import com.stamping.model.ad.AdLocation;
+import com.stamping.model.ad.AdResponse;
+import com.stamping.model.ad.Section;
+import com.stamping.service.config.ConfigRepository;
+import com.stamping.service.config.StoredConfig;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps BAM ads warm for every active config that has an ads banner enabled, so user-facing
+ * stamping requests hit the ad response cache and the resource cache instead of paying the
+ * BAM round trip and the ad-image downloads.
+ *
+ * <p>Each run enumerates the active configs in the {@link ConfigRepository}, refreshes any journal whose cached ads expire within
+ * {@code stamping.ads.prewarm.refresh-ahead}, rewrites the creatives (warming the processed-ad
+ * cache) and pre-fetches the images they reference. BAM fetches are rate limited to
+ * {@code max-fetches-per-second}. Coverage and lag are published as
+ * {@code stamping.ads.prewarm.*} metrics.
+ */
+@Slf4j
+@Service
+public class AdPrewarmService {
+
+    private static final Pattern IMG_SRC = Pattern.compile("src=\"(https?://[^\"]+)\"");
+
+    /** A journal to keep warm, with every legacyDomain its ad-enabled positions use. */
+    private record Target(String url, Set<String> legacyDomains) {}
+
+    private final AdFetchService adFetchService;
+    private final AdStampService adStampService;
+    private final CachingResourceRetriever resourceRetriever;
+    private final DemoConfigGeneratorService configGeneratorService;
+    private final ConfigRepository configRepository;
+    private final StampingProperties properties;
+
+    private final Counter refreshed;
+    private final Counter failed;
+    private volatile List<Target> targets = List.of();
+
+    public AdPrewarmService(AdFetchService adFetchService,
+                            AdStampService adStampService,
+                            CachingResourceRetriever resourceRetriever,
+                            DemoConfigGeneratorService configGeneratorService,
+                            ConfigRepository configRepository,
+                            StampingProperties properties,
+                            MeterRegistry meterRegistry) {
+        this.adFetchService = adFetchService;
+        this.adStampService = adStampService;
+        this.resourceRetriever = resourceRetriever;
+        this.configGeneratorService = configGeneratorService;
+        this.configRepository = configRepository;
+        this.properties = properties;
+
+        this.refreshed = Counter.builder("stamping.ads.prewarm.refreshed")
+                .description("Journals whose ads were refreshed by the prewarmer")
+                .register(meterRegistry);
+        this.failed = Counter.builder("stamping.ads.prewarm.failed")
+                .description("Prewarm refreshes that returned no ads")
+                .register(meterRegistry);
+        Gauge.builder("stamping.ads.prewarm.targets", this, s -> s.targets.size())
+                .description("Active configs with an ads banner enabled")
+                .register(meterRegistry);
+        Gauge.builder("stamping.ads.prewarm.coverage", this, AdPrewarmService::coverage)
+                .description("Fraction of ad-enabled journals with a fresh cached ad response")
+                .register(meterRegistry);
+        Gauge.builder("stamping.ads.prewarm.lag", this, AdPrewarmService::lagSeconds)
+                .description("Longest time a cached ad response has been past expiry, in seconds")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Scheduled prewarm — runs every stamping.ads.prewarm.interval ms (default 60 s).
+     */
+    @Scheduled(fixedDelayString = "${stamping.ads.prewarm.interval:60000}", initialDelay = 30 * 1000)
+    public void prewarm() {
+        StampingProperties.Prewarm config = properties.getAds().getPrewarm();
+        if (!config.isEnabled()) return;
+
+        List<Target> current = findTargets();
+        targets = current;
+        if (current.isEmpty()) return;
+
+        long pauseMillis = config.getMaxFetchesPerSecond() > 0
+                ? (long) (1000 / config.getMaxFetchesPerSecond()) : 0;
+        int refreshedThisRun = 0;
+
+        for (Target target : current) {
+            long expiresIn = adFetchService.cacheExpiry(target.url()) - System.currentTimeMillis();
+            if (expiresIn > config.getRefreshAhead()) continue;
+
+            if (refreshedThisRun > 0 && pauseMillis > 0) {
+                try {
+                    Thread.sleep(pauseMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            refreshedThisRun++;
+
+            AdResponse response = adFetchService.refresh(target.url());
+            if (response == null) {
+                failed.increment();
+                continue;
+            }
+            refreshed.increment();
+            warmCreatives(response, target.legacyDomains());
+        }
+
+        if (refreshedThisRun > 0) {
+            log.info("Ad prewarm: refreshed {} of {} ad-enabled journal(s), coverage {}%",
+                    refreshedThisRun, current.size(), Math.round(coverage() * 100));
+        }
+    }
+
+    /**
+     * Rewrites every creative in the response (populating the processed-ad cache) and
+     * pre-fetches the absolute image URLs it references into the resource cache.
+     */
+    private void warmCreatives(AdResponse response, Set<String> legacyDomains) {
+        if (response.getSection() == null) return;
+        for (Section section : response.getSection()) {
+            if (section.getAdLocation() == null) continue;
+            for (AdLocation location : section.getAdLocation()) {
+                if (location.getAdData() == null) continue;
+                for (AdData ad : location.getAdData()) {
+                    if (ad.getAdHtml() == null || ad.getAdHtml().isEmpty()) continue;
+                    for (String legacyDomain : legacyDomains) {
+                        String html = adStampService.processAd(ad, legacyDomain.isEmpty() ? null : legacyDomain);
+                        Matcher m = IMG_SRC.matcher(html);
+                        while (m.find()) {
+                            resourceRetriever.fetchCached(m.group(1));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private List<Target> findTargets() {
+        Map<String, Target> byUrl = new LinkedHashMap<>();
+        for (StoredConfig entry : configRepository.listActive()) {
+            try {
+                for (DynamicStampRequest.Configuration c : configGeneratorService.buildDemoPositions(entry.config()).values()) {
+                    if (!Boolean.TRUE.equals(c.getAdsEnabled())) continue;
+                    String url = adFetchService.buildAdUrl(entry.pubId(), entry.jcode());
+                    byUrl.computeIfAbsent(url, u -> new Target(u, new LinkedHashSet<>()))
+                            .legacyDomains().add(c.getLegacyDomain() != null ? c.getLegacyDomain().trim() : "");
+                }
+            } catch (Exception e) {
+                log.debug("Ad prewarm: skipping invalid config {}: {}", entry.key(), e.getMessage());
+            }
+        }
+        return new ArrayList<>(byUrl.values());
+    }
+
+    private double coverage() {
+        List<Target> current = targets;
+        if (current.isEmpty()) return 1.0;
+        long now = System.currentTimeMillis();
+        long warm = current.stream().filter(t -> adFetchService.cacheExpiry(t.url()) > now).count();
+        return (double) warm / current.size();
+    }
+
+    private double lagSeconds() {
+        long now = System.currentTimeMillis();
+        long worst = 0;
+        for (Target t : targets) {
+            long expiry = adFetchService.cacheExpiry(t.url());
+            if (expiry > 0 && expiry < now) worst = Math.max(worst, now - expiry);
+        }
+        return worst / 1000.0;
+    }
+}
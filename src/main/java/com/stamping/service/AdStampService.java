@@ -1,18 +1,18 @@
 package com.stamping.service;
 
-import java.io.ByteArrayInputStream;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
 import com.itextpdf.kernel.pdf.PdfDocument;
-import com.itextpdf.kernel.pdf.PdfReader;
 import com.stamping.exception.StampingException;
 import com.stamping.model.StampPosition;
 import com.stamping.model.StampRequest;
 import com.stamping.model.StampType;
+import com.stamping.model.ad.AdData;
+import com.stamping.service.cache.LruCache;
 import com.stamping.service.stamper.Stamper;
 
 import lombok.extern.slf4j.Slf4j;
@@ -25,9 +25,13 @@ public class AdStampService {
     private final MetadataFrontPageService metadataFrontPageService;
     private final Stamper htmlStamper;
 
-    /** Pre-compiled pattern for extracting redirect target URLs from ad click-through links. */
-    private static final Pattern AD_URL_PATTERN = Pattern.compile(
-            "href=\"[^\"]*?(?:\\\\?|&amp;|&)url=([^\"&]+)[^\"]*\"");
+    private static final String DEFAULT_AD_BASE_URL = "https://hwmaint.genome.cshlp.org/adsystem/";
+    /** Processed ad creatives are small; a few hundred covers every live campaign. */
+    private static final int PROCESSED_AD_CACHE_SIZE = 512;
+
+    private record ProcessedAd(int sourceHash, int sourceLength, String html) {}
+
+    private final LruCache<String, ProcessedAd> processedAds = new LruCache<>(PROCESSED_AD_CACHE_SIZE);
 
     public AdStampService(AdFetchService adFetchService,
                           MetadataFrontPageService metadataFrontPageService,
@@ -55,7 +59,7 @@ public class AdStampService {
 
         byte[] currentPdfBytes = pdfBytes;
 
-        String pdfAdOneHtml = null;
+        AdData pdfAdOne = null;
 
         if (adResponse != null && adResponse.getSection() != null) {
             for (var section : adResponse.getSection()) {
@@ -70,7 +74,7 @@ public class AdStampService {
                             for (var ad : location.getAdData()) {
                                 String htmlContent = ad.getAdHtml();
                                 if (htmlContent != null && !htmlContent.isEmpty()) {
-                                    htmlContent = processHtmlContent(htmlContent);
+                                    htmlContent = processAd(ad, null);
 
                                     log.info("Applying header ad stamp: id={}", ad.getAdId());
 
@@ -91,7 +95,7 @@ public class AdStampService {
 
                             for (var ad : location.getAdData()) {
                                 if (ad.getAdHtml() != null && !ad.getAdHtml().isEmpty()) {
-                                    pdfAdOneHtml = ad.getAdHtml();
+                                    pdfAdOne = ad;
                                     break; // Take the first valid HTML string
                                 }
                             }
@@ -102,15 +106,14 @@ public class AdStampService {
         }
 
         // 3. Process the "pdf ad one" page if found.
-        if (pdfAdOneHtml != null && !pdfAdOneHtml.isEmpty()) {
-            pdfAdOneHtml = processHtmlContent(pdfAdOneHtml);
-            pdfAdOneHtml = ensureHtml(pdfAdOneHtml);
+        if (pdfAdOne != null) {
+            String pdfAdOneHtml = ensureHtml(processAd(pdfAdOne, null));
 
             try {
                 // Get original page size
                 com.itextpdf.kernel.geom.Rectangle pageSize;
                 try (PdfDocument tempOriginal = new PdfDocument(
-                        new PdfReader(new ByteArrayInputStream(currentPdfBytes)))) {
+                        PdfIo.reader(currentPdfBytes))) {
                     pageSize = tempOriginal.getPage(1).getPageSize();
                 }
 
@@ -134,39 +137,128 @@ public class AdStampService {
         return processHtmlContent(htmlContent, null);
     }
 
+    /**
+     * Rewrites ad HTML in a single pass: unwraps adclick redirect links to their 'url' target
+     * and resolves root-relative src/href values against the legacy adsystem base URL.
+     */
     public String processHtmlContent(String htmlContent, String legacyDomain) {
-        // Extract the actual 'url' parameter from adclick redirect links
-        Matcher m = AD_URL_PATTERN.matcher(htmlContent);
-        StringBuffer sb = new StringBuffer();
-        while (m.find()) {
-            try {
-                String decodedUrl = java.net.URLDecoder.decode(m.group(1),
-                        java.nio.charset.StandardCharsets.UTF_8.name());
-                m.appendReplacement(sb, "href=\"" + decodedUrl + "\"");
-            } catch (Exception e) {
-                m.appendReplacement(sb, Matcher.quoteReplacement(m.group(0)));
+        String baseUrl = resolveAdBaseUrl(legacyDomain);
+        StringBuilder out = null;
+        int copied = 0;
+        int i = 0;
+
+        while (true) {
+            int eq = htmlContent.indexOf("=\"", i);
+            if (eq < 0) break;
+            int valueStart = eq + 2;
+            boolean isHref = isAttribute(htmlContent, "href", eq);
+            boolean isSrc = !isHref && isAttribute(htmlContent, "src", eq);
+            if (!isHref && !isSrc) {
+                i = valueStart;
+                continue;
+            }
+            int valueEnd = htmlContent.indexOf('"', valueStart);
+            if (valueEnd < 0) break;
+
+            String value = htmlContent.substring(valueStart, valueEnd);
+            String rewritten = value;
+            if (isHref) {
+                String target = extractClickThroughTarget(value);
+                if (target != null) rewritten = target;
             }
+            if (rewritten.startsWith("/")) {
+                rewritten = baseUrl + rewritten.substring(1);
+            }
+
+            if (!rewritten.equals(value)) {
+                if (out == null) out = new StringBuilder(htmlContent.length() + 64);
+                out.append(htmlContent, copied, valueStart).append(rewritten);
+                copied = valueEnd;
+            }
+            i = valueEnd + 1;
+        }
+
+        if (out == null) return htmlContent;
+        return out.append(htmlContent, copied, htmlContent.length()).toString();
+    }
+
+    /**
+     * Same as {@link #processHtmlContent(String, String)} for a BAM ad creative, memoized by
+     * adId + legacyDomain so hot ads are rewritten once. A cached entry is only reused while
+     * the creative's HTML is unchanged.
+     */
+    public String processAd(AdData ad, String legacyDomain) {
+        String html = ad.getAdHtml();
+        if (ad.getAdId() == null || ad.getAdId().isBlank()) {
+            return processHtmlContent(html, legacyDomain);
         }
-        m.appendTail(sb);
-        htmlContent = sb.toString();
-
-        // Fix relative paths for images and other links using legacyDomain if provided
-        String baseUrl;
-        if (legacyDomain != null && !legacyDomain.isBlank()) {
-            String domain = legacyDomain.trim();
-            if (!domain.startsWith("http")) {
-                domain = "https://" + domain;
+        String key = ad.getAdId() + "|" + (legacyDomain != null ? legacyDomain.trim() : "");
+        ProcessedAd cached = processedAds.get(key);
+        if (cached != null && cached.sourceHash() == html.hashCode() && cached.sourceLength() == html.length()) {
+            return cached.html();
+        }
+        String processed = processHtmlContent(html, legacyDomain);
+        processedAds.put(key, new ProcessedAd(html.hashCode(), html.length(), processed));
+        return processed;
+    }
+
+    /**
+     * True when the {@code ="} at {@code eq} closes attribute {@code name} itself, not a longer
+     * name ending in it such as {@code data-href}.
+     */
+    private static boolean isAttribute(String html, String name, int eq) {
+        int start = eq - name.length();
+        if (start < 1 || !html.startsWith(name, start)) return false;
+        char before = html.charAt(start - 1);
+        return Character.isWhitespace(before) || before == '"' || before == '\'' || before == '/';
+    }
+
+    /**
+     * Returns the decoded 'url' query parameter of an adclick redirect href, or the raw
+     * href when the parameter cannot be decoded, or null when there is no such parameter.
+     * Only a parameter named exactly 'url' counts, not returnurl=, redirect_url= and the like.
+     */
+    private String extractClickThroughTarget(String href) {
+        int from = 0;
+        while (true) {
+            int idx = href.indexOf("url=", from);
+            if (idx < 0) return null;
+            int start = idx + 4;
+            if (!isParameterStart(href, idx)) {
+                from = start;
+                continue;
             }
-            if (!domain.endsWith("/")) {
-                domain = domain + "/";
+            int end = start;
+            while (end < href.length() && href.charAt(end) != '&') end++;
+            if (end > start) {
+                try {
+                    return URLDecoder.decode(href.substring(start, end), StandardCharsets.UTF_8);
+                } catch (IllegalArgumentException e) {
+                    return href;
+                }
             }
-            baseUrl = domain + "adsystem/";
-        } else {
-            baseUrl = "https://hwmaint.genome.cshlp.org/adsystem/";
+            from = start;
+        }
+    }
+
+    private static boolean isParameterStart(String href, int idx) {
+        if (idx < 1) return false;
+        char before = href.charAt(idx - 1);
+        return before == '?' || before == '&' || (idx >= 5 && href.startsWith("&amp;", idx - 5));
+    }
+
+    private String resolveAdBaseUrl(String legacyDomain) {
+        if (legacyDomain == null || legacyDomain.isBlank()) {
+            return DEFAULT_AD_BASE_URL;
+        }
+        String domain = legacyDomain.trim();
+        if (!domain.startsWith("http")) {
+            domain = "https://" + domain;
+        }
+        if (!domain.endsWith("/")) {
+            domain = domain + "/";
         }
-        htmlContent = htmlContent.replace("src=\"/", "src=\"" + baseUrl);
-        htmlContent = htmlContent.replace("href=\"/", "href=\"" + baseUrl);
-        return htmlContent;
+        return domain + "adsystem/";
     }
 
     private String ensureHtml(String html) {
@@ -0,0 +1,251 @@
+package com.stamping.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.itextpdf.styledxmlparser.resolver.resource.DefaultResourceRetriever;
+import com.itextpdf.styledxmlparser.resolver.resource.IResourceRetriever;
+import com.stamping.config.StampingProperties;
+import com.stamping.service.cache.LruCache;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * html2pdf resource retriever that serves external images and stylesheets (e.g. ad creatives
+ * under the legacy adsystem base URL) from a bounded memory cache backed by a disk tier in the
+ * temp dir, so repeat renders never touch the network.
+ *
+ * <p>Only http/https URLs are cached; anything else (file:, classpath) is delegated to iText's
+ * {@link DefaultResourceRetriever}. Concurrent fetches of the same URL are collapsed into one,
+ * each fetch is bounded by a timeout and a size cap, and failures are remembered for a short
+ * negative TTL so a dead image host doesn't stall every render.
+ */
+@Slf4j
+@Component
+public class CachingResourceRetriever implements IResourceRetriever {
+
+    private record Entry(byte[] data, long fetchedAt) {}
+
+    private final StampingProperties.ResourceCache config;
+    private final HttpClient httpClient;
+    private final IResourceRetriever fallback = new DefaultResourceRetriever();
+    private final LruCache<String, Entry> memory;
+    private final ConcurrentHashMap<String, Long> failures = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+    private final File diskDir;
+
+    public CachingResourceRetriever(StampingProperties properties) {
+        this.config = properties.getResourceCache();
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(config.getConnectTimeout()))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        this.memory = new LruCache<>(config.getMemoryMaxBytes(), e -> e.data().length);
+        this.diskDir = new File(properties.getTempDir(), config.getDir());
+    }
+
+    @Override
+    public InputStream getInputStreamByUrl(URL url) throws IOException {
+        byte[] bytes = getByteArrayByUrl(url);
+        return bytes != null ? new ByteArrayInputStream(bytes) : null;
+    }
+
+    @Override
+    public byte[] getByteArrayByUrl(URL url) throws IOException {
+        if (!config.isEnabled() || !isHttp(url)) {
+            return fallback.getByteArrayByUrl(url);
+        }
+        return fetchCached(url.toExternalForm());
+    }
+
+    /**
+     * Returns the resource bytes for an http(s) URL from memory, disk or the network,
+     * or null if it cannot be fetched.
+     */
+    public byte[] fetchCached(String url) {
+        long now = System.currentTimeMillis();
+
+        Entry cached = memory.get(url);
+        if (cached != null && now - cached.fetchedAt() < config.getTtl()) {
+            return cached.data();
+        }
+
+        Long failedAt = failures.get(url);
+        if (failedAt != null && now - failedAt < config.getNegativeTtl()) {
+            return null;
+        }
+
+        File diskFile = diskFile(url);
+        if (diskFile.isFile() && now - diskFile.lastModified() < config.getTtl()) {
+            try {
+                byte[] data = Files.readAllBytes(diskFile.toPath());
+                memory.put(url, new Entry(data, diskFile.lastModified()));
+                return data;
+            } catch (IOException e) {
+                log.debug("Unreadable resource cache file {}: {}", diskFile, e.getMessage());
+            }
+        }
+
+        // Collapse concurrent misses for the same URL into a single fetch
+        CompletableFuture<byte[]> mine = new CompletableFuture<>();
+        CompletableFuture<byte[]> existing = inFlight.putIfAbsent(url, mine);
+        if (existing != null) {
+            try {
+                return existing.get(config.getConnectTimeout() + config.getReadTimeout(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (Exception e) {
+                return null;
+            }
+        }
+
+        byte[] data = null;
+        try {
+            data = fetchRemote(url);
+            if (data != null) {
+                memory.put(url, new Entry(data, System.currentTimeMillis()));
+                writeDisk(diskFile, data);
+                failures.remove(url);
+            } else {
+                failures.put(url, System.currentTimeMillis());
+            }
+            return data;
+        } finally {
+            mine.complete(data);
+            inFlight.remove(url, mine);
+        }
+    }
+
+    /**
+     * Scheduled sweep — runs every 10 minutes.
+     * Deletes expired disk entries, then the oldest ones until the disk tier is within budget.
+     */
+    @Scheduled(fixedRate = 10 * 60 * 1000, initialDelay = 60 * 1000)
+    public void sweepDiskCache() {
+        File[] files = diskDir.listFiles(File::isFile);
+        if (files == null || files.length == 0) return;
+
+        long now = System.currentTimeMillis();
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        long total = 0;
+        for (File f : files) total += f.length();
+
+        int deleted = 0;
+        for (File f : files) {
+            boolean expired = now - f.lastModified() >= config.getTtl();
+            if (!expired && total <= config.getDiskMaxBytes()) break;
+            long len = f.length();
+            if (f.delete()) {
+                total -= len;
+                deleted++;
+            }
+        }
+        failures.entrySet().removeIf(e -> now - e.getValue() >= config.getNegativeTtl());
+
+        if (deleted > 0) {
+            log.info("Resource cache sweep: deleted {} file(s), {} KB remain in {}",
+                    deleted, total / 1024, diskDir.getAbsolutePath());
+        }
+    }
+
+    private byte[] fetchRemote(String url) {
+        try {
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create(url))
+                    .timeout(Duration.ofMillis(config.getReadTimeout()))
+                    .GET()
+                    .build();
+            HttpResponse<InputStream> response = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
+                    .get(config.getConnectTimeout() + config.getReadTimeout(), TimeUnit.MILLISECONDS);
+
+            try (InputStream in = response.body()) {
+                if (response.statusCode() < 200 || response.statusCode() >= 300) {
+                    log.warn("Resource fetch returned HTTP {} for {}", response.statusCode(), url);
+                    return null;
+                }
+                long declared = response.headers().firstValueAsLong("Content-Length").orElse(-1L);
+                if (declared > config.getMaxResourceSize()) {
+                    log.warn("Resource {} too large ({} bytes), skipping", url, declared);
+                    return null;
+                }
+                return readCapped(in, config.getMaxResourceSize(), url);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            log.warn("Failed to fetch resource {}: {}", url, e.getMessage());
+            return null;
+        }
+    }
+
+    private byte[] readCapped(InputStream in, long maxBytes, String url) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        long total = 0;
+        int read;
+        while ((read = in.read(buf)) != -1) {
+            total += read;
+            if (total > maxBytes) {
+                log.warn("Resource {} exceeds {} bytes, skipping", url, maxBytes);
+                return null;
+            }
+            out.write(buf, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private void writeDisk(File target, byte[] data) {
+        try {
+            Files.createDirectories(diskDir.toPath());
+            Path tmp = Files.createTempFile(diskDir.toPath(), "res_", ".part");
+            Files.write(tmp, data);
+            Files.move(tmp, target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.debug("Could not persist resource to disk cache: {}", e.getMessage());
+        }
+    }
+
+    private File diskFile(String url) {
+        return new File(diskDir, sha256(url));
+    }
+
+    private static boolean isHttp(URL url) {
+        String protocol = url.getProtocol();
+        return "http".equalsIgnoreCase(protocol) || "https".equalsIgnoreCase(protocol);
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(md.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
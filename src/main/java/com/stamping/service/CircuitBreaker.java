@@ -0,0 +1,73 @@
+package com.stamping.service;
+
+import java.time.Duration;
+
+/**
+ * Minimal consecutive-failure circuit breaker for outbound dependencies.
+ *
+ * <p>CLOSED: calls pass through; after {@code failureThreshold} consecutive failures the
+ * breaker trips to OPEN. OPEN: calls are rejected until {@code openDuration} has elapsed,
+ * then a single trial call is let through (HALF_OPEN). A successful trial closes the
+ * breaker again, a failed one re-opens it for another full window.
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    public CircuitBreaker(int failureThreshold, Duration openDuration) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = openDuration.toNanos();
+    }
+
+    /**
+     * Returns true if a call may proceed. In HALF_OPEN only one trial call is admitted
+     * at a time; the caller must report its outcome via {@link #onSuccess()} / {@link #onFailure()}.
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openedAt < openNanos) return false;
+                state = State.HALF_OPEN;
+                trialInFlight = true;
+                return true;
+            case HALF_OPEN:
+            default:
+                if (trialInFlight) return false;
+                trialInFlight = true;
+                return true;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        trialInFlight = false;
+        state = State.CLOSED;
+    }
+
+    public synchronized void onFailure() {
+        trialInFlight = false;
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+        }
+    }
+
+    public synchronized State getState() {
+        // Report an expired OPEN window as HALF_OPEN so metrics reflect that the next call will probe
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+}
@@ -1,19 +1,16 @@
 package com.stamping.service;
 
 import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.springframework.stereotype.Service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.stamping.config.StampingProperties;
 import com.stamping.exception.StampingException;
 import com.stamping.model.DynamicStampRequest;
 import com.stamping.model.JournalMetadataRequest;
+import com.stamping.service.config.ConfigRepository;
+import com.stamping.service.config.StoredConfig;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -28,9 +25,8 @@ import lombok.extern.slf4j.Slf4j;
 @RequiredArgsConstructor
 public class DemoStampService {
 
-    private final ObjectMapper objectMapper;
     private final DemoConfigGeneratorService demoConfigGeneratorService;
-    private final StampingProperties properties;
+    private final ConfigRepository configRepository;
 
     // Default demo metadata values
     private static final String DEMO_ARTICLE_TITLE = "Sample Article Title for Demo Preview";
@@ -57,18 +53,16 @@ public class DemoStampService {
      * Builds a JournalMetadataRequest with demo default values from a saved config.
      * Any field enabled in the config gets populated with a demo placeholder value.
      */
-    @SuppressWarnings("unchecked")
     public JournalMetadataRequest buildDemoRequest(String pubId, String jcode) {
-        File configFile = new File(properties.getConfigDir(), "config_" + pubId + "_" + jcode + ".json");
-        if (!configFile.exists()) {
+        StoredConfig saved = configRepository.get(pubId, jcode);
+        if (saved == null) {
             // No saved config — fall back to the default demo request
             log.info("No saved config for {}/{}, using default demo request", pubId, jcode);
             return buildDefaultDemoRequest(pubId, jcode);
         }
 
         try {
-            String content = Files.readString(configFile.toPath(), StandardCharsets.UTF_8);
-            Map<String, Object> rawConfig = objectMapper.readValue(content, Map.class);
+            Map<String, Object> rawConfig = saved.config();
 
             Map<String, DynamicStampRequest.Configuration> positions =
                     demoConfigGeneratorService.buildDemoPositions(rawConfig);
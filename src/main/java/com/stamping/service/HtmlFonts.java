@@ -0,0 +1,46 @@
+package com.stamping.service;
+
+import org.springframework.stereotype.Component;
+
+import com.itextpdf.html2pdf.resolver.font.DefaultFontProvider;
+import com.itextpdf.layout.font.FontProvider;
+import com.itextpdf.layout.font.FontSet;
+import com.itextpdf.styledxmlparser.resolver.font.BasicFontProvider;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Font set shared by every HTML→PDF conversion.
+ *
+ * <p>Building a {@link DefaultFontProvider} scans the system font directories, which costs far more
+ * than laying out a cover page or stamp. The scan runs once here; each conversion gets a cheap
+ * provider over the shared set. Providers are not shared because they cache {@code PdfFont}s bound
+ * to one document. {@code @font-face} fonts extracted from the source PDF are added by pdfHTML to a
+ * per-conversion temporary set, so the shared set is never modified after construction.
+ */
+@Slf4j
+@Component
+public class HtmlFonts {
+
+    /** Default family of {@link DefaultFontProvider} */
+    private static final String DEFAULT_FAMILY = "Times";
+
+    private final FontSet fontSet;
+
+    public HtmlFonts() {
+        long start = System.currentTimeMillis();
+        // Standard, shipped and system fonts, all embedded (including standard ones) for PAC compliance
+        this.fontSet = new DefaultFontProvider(true, true, true).getFontSet();
+        log.info("HTML font set loaded: {} fonts in {}ms", fontSet.size(), System.currentTimeMillis() - start);
+    }
+
+    /** A provider for one conversion. */
+    public FontProvider newProvider() {
+        RequestTrace.count(RequestTrace.Work.FONT_PROVIDER);
+        return new BasicFontProvider(fontSet, DEFAULT_FAMILY);
+    }
+
+    int size() {
+        return fontSet.size();
+    }
+}
@@ -2,6 +2,11 @@ package com.stamping.service;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 import org.owasp.html.HtmlPolicyBuilder;
@@ -10,20 +15,55 @@ import org.springframework.stereotype.Component;
 
 import com.stamping.config.StampingProperties;
 import com.stamping.exception.StampingException;
+import com.stamping.service.cache.LruCache;
 
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * Centralizes input validation: file path traversal prevention,
  * identifier sanitization, and HTML sanitization via OWASP.
+ *
+ * <p>The HTML policy is static, so sanitized output is memoized by a SHA-256 digest of the input
+ * (bounded by {@code stamping.sanitizer.cache-bytes}). Each hit adds the time the original
+ * sanitization took to {@code stamping.sanitizer.time.saved}.
  */
 @Slf4j
 @Component
-@RequiredArgsConstructor
 public class InputSanitizer {
 
     private final StampingProperties properties;
+    private final LruCache<String, Sanitized> sanitized;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter timeSaved;
+
+    /** Sanitized HTML and how long producing it took. */
+    private record Sanitized(String html, long nanos) {}
+
+    public InputSanitizer(StampingProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        long cacheBytes = properties.getSanitizer().getCacheBytes();
+        // Keys are 64 hex chars; Strings are weighed at two bytes per char
+        this.sanitized = cacheBytes > 0
+                ? new LruCache<>(cacheBytes, s -> 128L + 2L * s.html().length())
+                : null;
+
+        this.hits = Counter.builder("stamping.sanitizer.requests").tag("result", "hit")
+                .description("Memoized HTML sanitization lookups").register(meterRegistry);
+        this.misses = Counter.builder("stamping.sanitizer.requests").tag("result", "miss")
+                .description("Memoized HTML sanitization lookups").register(meterRegistry);
+        this.timeSaved = Counter.builder("stamping.sanitizer.time.saved").baseUnit("seconds")
+                .description("Sanitization time avoided by serving memoized output")
+                .register(meterRegistry);
+        if (sanitized != null) {
+            Gauge.builder("stamping.sanitizer.cache.bytes", sanitized, LruCache::weight).baseUnit("bytes")
+                    .description("Bytes held by the sanitized HTML cache").register(meterRegistry);
+        }
+    }
 
     private static final Pattern SAFE_ID = Pattern.compile("^[a-zA-Z0-9_\\-]+$");
 
@@ -122,6 +162,31 @@ public class InputSanitizer {
         if (html == null || html.isBlank()) {
             return html;
         }
-        return HTML_POLICY.sanitize(html);
+        if (sanitized == null) {
+            return HTML_POLICY.sanitize(html);
+        }
+
+        String key = digest(html);
+        Sanitized cached = sanitized.get(key);
+        if (cached != null) {
+            hits.increment();
+            timeSaved.increment(cached.nanos() / (double) TimeUnit.SECONDS.toNanos(1));
+            return cached.html();
+        }
+
+        misses.increment();
+        long start = System.nanoTime();
+        String result = HTML_POLICY.sanitize(html);
+        sanitized.put(key, new Sanitized(result, System.nanoTime() - start));
+        return result;
+    }
+
+    private static String digest(String html) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(sha256.digest(html.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
     }
 }
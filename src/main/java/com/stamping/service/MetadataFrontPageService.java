@@ -1,15 +1,15 @@
 package com.stamping.service;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 
 import org.springframework.stereotype.Service;
 
+import com.itextpdf.commons.exceptions.ITextException;
 import com.itextpdf.html2pdf.ConverterProperties;
 import com.itextpdf.html2pdf.HtmlConverter;
 import com.itextpdf.kernel.pdf.PdfDocument;
-import com.itextpdf.kernel.pdf.PdfReader;
 import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.kernel.pdf.StampingProperties;
 import com.itextpdf.kernel.utils.PdfMerger;
 import com.stamping.exception.StampingException;
 
@@ -19,16 +19,23 @@ import lombok.extern.slf4j.Slf4j;
 @Service
 public class MetadataFrontPageService {
 
+    private final CachingResourceRetriever resourceRetriever;
+    private final HtmlFonts htmlFonts;
+
+    public MetadataFrontPageService(CachingResourceRetriever resourceRetriever, HtmlFonts htmlFonts) {
+        this.resourceRetriever = resourceRetriever;
+        this.htmlFonts = htmlFonts;
+    }
+
     public byte[] renderHtmlToPdf(String html, com.itextpdf.kernel.geom.Rectangle pageSize) {
         try (ByteArrayOutputStream os = new ByteArrayOutputStream()) {
-            PdfWriter writer = new PdfWriter(os);
+            PdfWriter writer = PdfIo.writer(os);
             PdfDocument pdfDoc = new PdfDocument(writer);
             pdfDoc.setDefaultPageSize(new com.itextpdf.kernel.geom.PageSize(pageSize));
 
             ConverterProperties props = new ConverterProperties();
-            com.itextpdf.layout.font.FontProvider fontProvider =
-                    new com.itextpdf.html2pdf.resolver.font.DefaultFontProvider(true, true, true);
-            props.setFontProvider(fontProvider);
+            props.setFontProvider(htmlFonts.newProvider());
+            props.setResourceRetriever(resourceRetriever);
             com.itextpdf.layout.Document document = HtmlConverter.convertToDocument(html, pdfDoc, props);
             document.close();
 
@@ -38,37 +45,75 @@ public class MetadataFrontPageService {
         }
     }
 
-    public byte[] prependPdf(byte[] originalPdfBytes, byte[] appendPdfBytes) {
-        try (ByteArrayOutputStream os = new ByteArrayOutputStream()) {
-            PdfDocument resultDoc = new PdfDocument(new PdfWriter(os));
-            PdfMerger merger = new PdfMerger(resultDoc);
-
-            PdfDocument appendDoc = new PdfDocument(new PdfReader(new ByteArrayInputStream(appendPdfBytes)));
-            PdfDocument originalDoc = new PdfDocument(new PdfReader(new ByteArrayInputStream(originalPdfBytes)));
+    /**
+     * Inserts the pages of {@code prependPdfBytes} before the first page of the original.
+     *
+     * @see #insertPages
+     */
+    public byte[] prependPdf(byte[] originalPdfBytes, byte[] prependPdfBytes) {
+        return insertPages(originalPdfBytes, prependPdfBytes, true);
+    }
 
-            merger.merge(appendDoc, 1, appendDoc.getNumberOfPages());
-            merger.merge(originalDoc, 1, originalDoc.getNumberOfPages());
+    /**
+     * Inserts the pages of {@code newPageBytes} after the last page of the original.
+     *
+     * @see #insertPages
+     */
+    public byte[] appendPdf(byte[] originalPdfBytes, byte[] newPageBytes) {
+        return insertPages(originalPdfBytes, newPageBytes, false);
+    }
 
-            appendDoc.close();
-            originalDoc.close();
-            resultDoc.close();
+    /**
+     * Opens the original in append mode and copies the new pages into its page tree. The original
+     * bytes are written through unchanged, followed by an incremental update holding the copied
+     * pages and the modified page tree, so the cost follows the inserted pages rather than the
+     * article, and outlines, named destinations and link annotations are left exactly as they were.
+     *
+     * <p>Append mode needs a well-formed file: if the reader had to rebuild the cross-reference
+     * table (or iText rejects the update for any other reason) the whole document is merged into a
+     * new file instead, as before.
+     */
+    private byte[] insertPages(byte[] originalPdfBytes, byte[] pageBytes, boolean atFront) {
+        try {
+            return insertInPlace(originalPdfBytes, pageBytes, atFront);
+        } catch (ITextException e) {
+            log.info("  [NEW_PAGE] In-place insert not possible ({}), merging into a new document", e.getMessage());
+            return merge(originalPdfBytes, pageBytes, atFront);
+        }
+    }
 
+    private byte[] insertInPlace(byte[] originalPdfBytes, byte[] pageBytes, boolean atFront) {
+        try (ByteArrayOutputStream os = new ByteArrayOutputStream(originalPdfBytes.length + pageBytes.length)) {
+            try (PdfDocument newDoc = new PdfDocument(PdfIo.reader(pageBytes));
+                 PdfDocument originalDoc = new PdfDocument(
+                         PdfIo.reader(originalPdfBytes), PdfIo.writer(os),
+                         new StampingProperties().useAppendMode())) {
+                int insertBefore = atFront ? 1 : originalDoc.getNumberOfPages() + 1;
+                newDoc.copyPagesTo(1, newDoc.getNumberOfPages(), originalDoc, insertBefore);
+            }
             return os.toByteArray();
+        } catch (ITextException e) {
+            throw e;
         } catch (Exception e) {
-            throw new StampingException("Failed to merge PDFs: " + e.getMessage(), e);
+            throw new StampingException("Failed to insert PDF page: " + e.getMessage(), e);
         }
     }
 
-    public byte[] appendPdf(byte[] originalPdfBytes, byte[] newPageBytes) {
+    private byte[] merge(byte[] originalPdfBytes, byte[] pageBytes, boolean atFront) {
         try (ByteArrayOutputStream os = new ByteArrayOutputStream()) {
-            PdfDocument resultDoc = new PdfDocument(new PdfWriter(os));
+            PdfDocument resultDoc = new PdfDocument(PdfIo.writer(os));
             PdfMerger merger = new PdfMerger(resultDoc);
 
-            PdfDocument originalDoc = new PdfDocument(new PdfReader(new ByteArrayInputStream(originalPdfBytes)));
-            PdfDocument newDoc = new PdfDocument(new PdfReader(new ByteArrayInputStream(newPageBytes)));
+            PdfDocument originalDoc = new PdfDocument(PdfIo.reader(originalPdfBytes));
+            PdfDocument newDoc = new PdfDocument(PdfIo.reader(pageBytes));
 
-            merger.merge(originalDoc, 1, originalDoc.getNumberOfPages());
-            merger.merge(newDoc, 1, newDoc.getNumberOfPages());
+            if (atFront) {
+                merger.merge(newDoc, 1, newDoc.getNumberOfPages());
+                merger.merge(originalDoc, 1, originalDoc.getNumberOfPages());
+            } else {
+                merger.merge(originalDoc, 1, originalDoc.getNumberOfPages());
+                merger.merge(newDoc, 1, newDoc.getNumberOfPages());
+            }
 
             originalDoc.close();
             newDoc.close();
@@ -76,7 +121,7 @@ public class MetadataFrontPageService {
 
             return os.toByteArray();
         } catch (Exception e) {
-            throw new StampingException("Failed to append PDF page: " + e.getMessage(), e);
+            throw new StampingException("Failed to merge PDFs: " + e.getMessage(), e);
         }
     }
 }
@@ -1,139 +1,408 @@
 package com.stamping.service;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.time.Duration;
-import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import com.stamping.config.StampingProperties;
 import com.stamping.exception.StampingException;
 
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * Downloads a remote PDF to a local temp file for processing.
- * Includes scheduled cleanup of stale temp files to prevent disk bloat.
+ * Scratch files are allocated from {@link TempStorage}, which deletes them when released.
+ * {@link #fetch(String)} serves repeat URLs from {@link PdfSourceCache}, revalidated with a
+ * conditional GET.
+ *
+ * <p>When the origin advertises {@code Accept-Ranges: bytes} and the PDF is larger than
+ * {@code pdf-download.range-threshold}, the body is fetched as parallel byte ranges written
+ * straight into a preallocated file; any range the origin refuses falls back to a single stream.
  */
 @Slf4j
 @Service
 public class PdfDownloadService {
 
     private static final String TEMP_FILE_PREFIX = "pdf_download_";
-    private static final long STALE_FILE_AGE_MINUTES = 30;
+    private static final int RANGE_BUFFER_SIZE = 64 * 1024;
+
+    /** Raised when the origin does not honour a range request; triggers the single-stream fallback. */
+    private static class RangeNotSupportedException extends IOException {
+        RangeNotSupportedException(String message) {
+            super(message);
+        }
+    }
 
     private final StampingProperties properties;
     private final HttpClient httpClient;
-    private final File tempDir;
+    private final TempStorage tempStorage;
+    private final PdfSourceCache sourceCache;
+    private final ExecutorService rangeExecutor;
 
-    public PdfDownloadService(StampingProperties properties) {
+    public PdfDownloadService(StampingProperties properties, PdfSourceCache sourceCache, TempStorage tempStorage) {
         this.properties = properties;
+        this.sourceCache = sourceCache;
+        this.tempStorage = tempStorage;
         this.httpClient = HttpClient.newBuilder()
                 .connectTimeout(Duration.ofMillis(properties.getPdfDownload().getConnectTimeout()))
                 .followRedirects(HttpClient.Redirect.NORMAL)
                 .build();
+        AtomicInteger threadCount = new AtomicInteger();
+        int rangeWorkers = properties.getPdfDownload().getRangeWorkers();
+        this.rangeExecutor = new ThreadPoolExecutor(rangeWorkers, rangeWorkers, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "pdf-range-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
 
-        // Use the configured temp dir, creating it if needed
-        this.tempDir = new File(properties.getTempDir());
-        if (!tempDir.exists()) {
-            tempDir.mkdirs();
-        }
+    /** Stops the range pool; downloads still fetching ranges fail. */
+    @PreDestroy
+    public void close() {
+        rangeExecutor.shutdownNow();
     }
 
     /**
-     * Downloads the PDF at the given URL to a temp file.
-     * The caller is responsible for deleting the returned file after use.
+     * Downloads the PDF at the given URL to a scratch file.
+     * The caller must close the returned handle, which deletes the file.
      */
-    public File download(String url) {
+    public TempStorage.Handle download(String url) {
         log.info("  Downloading PDF from URL: {}", url);
 
-        HttpRequest request;
+        HttpResponse<InputStream> response = send(requestBuilder(url).GET().build());
+        checkStatus(response, url);
+        checkDeclaredSize(response);
+
+        TempStorage.Handle handle = allocateFor(response);
         try {
-            request = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .timeout(Duration.ofMillis(properties.getPdfDownload().getReadTimeout()))
-                    .GET()
-                    .build();
-        } catch (IllegalArgumentException e) {
-            throw new StampingException("Invalid PDF URL: " + e.getMessage(), e);
+            receive(url, response, handle.file());
+            handle.settle();
+            log.info("  Downloaded {} KB to {}", handle.file().length() / 1024, handle.file().getAbsolutePath());
+            return handle;
+        } catch (IOException e) {
+            handle.close();
+            throw new StampingException("Failed to write downloaded PDF to temp file: " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            handle.close();
+            throw e;
         }
+    }
 
-        HttpResponse<InputStream> response;
-        try {
-            response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
-        } catch (IOException | InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new StampingException("Failed to connect to PDF URL: " + e.getMessage(), e);
+    /**
+     * Returns the PDF at the given URL as bytes. A cached copy is revalidated with
+     * If-None-Match / If-Modified-Since and reused on 304 Not Modified; otherwise the body is
+     * downloaded and, if the origin sent validators, admitted to the cache.
+     */
+    public byte[] fetch(String url) {
+        PdfSourceCache.Validators cached = sourceCache.validators(url);
+
+        HttpRequest.Builder builder = requestBuilder(url).GET();
+        if (cached != null) {
+            if (cached.etag() != null) builder.header("If-None-Match", cached.etag());
+            if (cached.lastModified() != null) builder.header("If-Modified-Since", cached.lastModified());
         }
+        HttpResponse<InputStream> response = send(builder.build());
 
-        if (response.statusCode() < 200 || response.statusCode() >= 300) {
-            throw new StampingException(
-                    "Remote server returned HTTP " + response.statusCode() + " for URL: " + url);
+        if (response.statusCode() == 304 && cached != null) {
+            closeQuietly(response.body());
+            byte[] bytes = sourceCache.loadRevalidated(url, cached);
+            if (bytes != null) {
+                log.info("  PDF not modified, served {} KB from {} cache: {}",
+                        bytes.length / 1024, cached.inMemory() ? "memory" : "disk", url);
+                return bytes;
+            }
+            // Entry disappeared between lookup and load: fall back to an unconditional GET
+            sourceCache.invalidate(url);
+            response = send(requestBuilder(url).GET().build());
         }
 
+        checkStatus(response, url);
+        checkDeclaredSize(response);
+        sourceCache.recordMiss();
+        log.info("  Downloading PDF from URL: {}", url);
         try {
-            File tempFile = File.createTempFile(TEMP_FILE_PREFIX, ".pdf", tempDir);
-            streamToFile(response.body(), tempFile);
-            log.info("  Downloaded {} KB to {}", tempFile.length() / 1024, tempFile.getAbsolutePath());
-            return tempFile;
+            byte[] bytes = isRangeable(response) ? receiveViaFile(url, response) : readAll(response.body());
+            sourceCache.store(url, bytes,
+                    response.headers().firstValue("ETag").orElse(null),
+                    response.headers().firstValue("Last-Modified").orElse(null));
+            log.info("  Downloaded {} KB", bytes.length / 1024);
+            return bytes;
         } catch (IOException e) {
-            throw new StampingException("Failed to write downloaded PDF to temp file: " + e.getMessage(), e);
+            throw new StampingException("Failed to read downloaded PDF: " + e.getMessage(), e);
         }
     }
 
+    // ─── Body transfer ──────────────────────────────────────────────────
+
+    /**
+     * Writes the body of a 2xx response to dest, as parallel ranges when the origin supports
+     * them and as a single stream otherwise.
+     */
+    private void receive(String url, HttpResponse<InputStream> response, File dest) throws IOException {
+        if (isRangeable(response)) {
+            long length = response.headers().firstValueAsLong("Content-Length").orElseThrow();
+            try {
+                receiveRanges(url, response, length, dest);
+                return;
+            } catch (RangeNotSupportedException e) {
+                log.info("  Range download not honoured ({}), falling back to a single stream", e.getMessage());
+                HttpResponse<InputStream> retry = send(requestBuilder(url).GET().build());
+                checkStatus(retry, url);
+                streamToFile(retry.body(), dest);
+                return;
+            }
+        }
+        streamToFile(response.body(), dest);
+    }
+
+    private byte[] receiveViaFile(String url, HttpResponse<InputStream> response) throws IOException {
+        try (TempStorage.Handle handle = allocateFor(response)) {
+            receive(url, response, handle.file());
+            return Files.readAllBytes(handle.file().toPath());
+        }
+    }
+
+    /** Reserves the declared Content-Length, or the max file size when the length is unknown. */
+    private TempStorage.Handle allocateFor(HttpResponse<InputStream> response) {
+        long expected = response.headers().firstValueAsLong("Content-Length")
+                .orElse(properties.getPdfDownload().getMaxFileSize());
+        try {
+            return tempStorage.allocate(TEMP_FILE_PREFIX, ".pdf", expected);
+        } catch (RuntimeException e) {
+            closeQuietly(response.body());
+            throw e;
+        }
+    }
+
+    private byte[] readAll(InputStream body) throws IOException {
+        try (InputStream in = body) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            copyCapped(in, out);
+            return out.toByteArray();
+        }
+    }
+
+    private boolean isRangeable(HttpResponse<InputStream> response) {
+        StampingProperties.PdfDownload config = properties.getPdfDownload();
+        if (!config.isParallelRanges() || config.getRangeConcurrency() < 2 || response.statusCode() != 200) {
+            return false;
+        }
+        long length = response.headers().firstValueAsLong("Content-Length").orElse(-1L);
+        return length >= config.getRangeThreshold()
+                && length > config.getRangeChunkSize()
+                && response.headers().firstValue("Accept-Ranges").map("bytes"::equalsIgnoreCase).orElse(false)
+                && response.headers().firstValue("Content-Encoding").isEmpty();
+    }
+
     /**
-     * Scheduled cleanup — runs every 15 minutes.
-     * Deletes any pdf_download_*.pdf files older than 30 minutes.
+     * Downloads length bytes into a preallocated file. The first chunk is read from the already
+     * open GET response while up to rangeConcurrency - 1 workers from the shared range pool fetch
+     * the remaining chunks with Range requests; every chunk is written at its offset with positional
+     * FileChannel writes. When the pool is busy the calling thread takes the chunks itself, and a
+     * worker that starts after every chunk is taken returns at once.
      */
-    @Scheduled(fixedRate = 15 * 60 * 1000, initialDelay = 5 * 60 * 1000)
-    public void cleanupStaleTempFiles() {
-        if (!tempDir.exists() || !tempDir.isDirectory()) return;
+    private void receiveRanges(String url, HttpResponse<InputStream> first, long length, File dest) throws IOException {
+        StampingProperties.PdfDownload config = properties.getPdfDownload();
+        long chunkSize = config.getRangeChunkSize();
+        int chunks = (int) ((length + chunkSize - 1) / chunkSize);
+        String ifRange = ifRangeValidator(first);
+        AtomicInteger next = new AtomicInteger(1);
 
-        File[] staleFiles = tempDir.listFiles((dir, name) ->
-                name.startsWith(TEMP_FILE_PREFIX) && name.endsWith(".pdf"));
+        try (RandomAccessFile raf = new RandomAccessFile(dest, "rw")) {
+            raf.setLength(length);
+            FileChannel channel = raf.getChannel();
 
-        if (staleFiles == null || staleFiles.length == 0) return;
+            Runnable worker = () -> {
+                int index;
+                while ((index = next.getAndIncrement()) < chunks) {
+                    long start = index * chunkSize;
+                    long end = Math.min(length, start + chunkSize) - 1;
+                    try {
+                        fetchRange(url, start, end, ifRange, channel);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            };
 
-        Instant cutoff = Instant.now().minus(Duration.ofMinutes(STALE_FILE_AGE_MINUTES));
-        int deleted = 0;
+            List<CompletableFuture<Void>> workers = new ArrayList<>();
+            int extraWorkers = Math.min(config.getRangeConcurrency() - 1, chunks - 1);
+            for (int i = 0; i < extraWorkers; i++) {
+                workers.add(CompletableFuture.runAsync(worker, rangeExecutor));
+            }
 
-        for (File file : staleFiles) {
-            if (Instant.ofEpochMilli(file.lastModified()).isBefore(cutoff)) {
-                if (file.delete()) {
-                    deleted++;
+            try {
+                try (InputStream in = first.body()) {
+                    writeAt(in, channel, 0, Math.min(chunkSize, length));
                 }
+                worker.run();
+                CompletableFuture.allOf(workers.toArray(new CompletableFuture[0])).join();
+            } catch (IOException | UncheckedIOException | CompletionException e) {
+                next.set(chunks); // stop the remaining workers picking up new chunks
+                awaitQuietly(workers); // in-flight ranges must finish before the channel is closed
+                Throwable cause = e instanceof IOException ? e
+                        : e.getCause() instanceof UncheckedIOException u ? u.getCause() : e.getCause();
+                if (cause instanceof IOException io) throw io;
+                if (cause instanceof RuntimeException re) throw re;
+                throw new IOException(cause);
             }
         }
+        log.info("  Fetched {} range(s) of up to {} KB in parallel", chunks, chunkSize / 1024);
+    }
 
-        if (deleted > 0) {
-            log.info("Temp cleanup: deleted {} stale PDF download(s) from {}", deleted, tempDir.getAbsolutePath());
+    private static void awaitQuietly(List<CompletableFuture<Void>> workers) {
+        for (CompletableFuture<Void> worker : workers) {
+            try {
+                worker.join();
+            } catch (CompletionException | CancellationException ignored) {
+                // the first failure is the one reported
+            }
+        }
+    }
+
+    private void fetchRange(String url, long start, long end, String ifRange, FileChannel channel) throws IOException {
+        HttpRequest.Builder builder = requestBuilder(url).GET().header("Range", "bytes=" + start + "-" + end);
+        if (ifRange != null) builder.header("If-Range", ifRange);
+
+        HttpResponse<InputStream> response;
+        try {
+            response = httpClient.send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching range", e);
+        }
+
+        try (InputStream in = response.body()) {
+            if (response.statusCode() != 206) {
+                throw new RangeNotSupportedException("HTTP " + response.statusCode() + " for range " + start + "-" + end);
+            }
+            String contentRange = response.headers().firstValue("Content-Range").orElse("");
+            if (!contentRange.startsWith("bytes " + start + "-" + end + "/")) {
+                throw new RangeNotSupportedException("unexpected Content-Range '" + contentRange + "'");
+            }
+            writeAt(in, channel, start, end - start + 1);
+        }
+    }
+
+    /** Copies exactly len bytes from the stream into the channel starting at position. */
+    private static void writeAt(InputStream in, FileChannel channel, long position, long len) throws IOException {
+        byte[] buf = new byte[(int) Math.min(RANGE_BUFFER_SIZE, len)];
+        long remaining = len;
+        while (remaining > 0) {
+            int read = in.read(buf, 0, (int) Math.min(buf.length, remaining));
+            if (read == -1) {
+                throw new IOException("Stream ended " + remaining + " bytes short of range at offset " + position);
+            }
+            ByteBuffer bb = ByteBuffer.wrap(buf, 0, read);
+            while (bb.hasRemaining()) {
+                position += channel.write(bb, position);
+            }
+            remaining -= read;
+        }
+    }
+
+    /** Strong ETag or Last-Modified, so ranges are only served from the same representation. */
+    private static String ifRangeValidator(HttpResponse<?> response) {
+        String etag = response.headers().firstValue("ETag").orElse(null);
+        if (etag != null && !etag.startsWith("W/")) return etag;
+        return response.headers().firstValue("Last-Modified").orElse(null);
+    }
+
+    // ─── HTTP helpers ───────────────────────────────────────────────────
+
+    private HttpRequest.Builder requestBuilder(String url) {
+        try {
+            return HttpRequest.newBuilder()
+                    .uri(URI.create(url))
+                    .timeout(Duration.ofMillis(properties.getPdfDownload().getReadTimeout()));
+        } catch (IllegalArgumentException e) {
+            throw new StampingException("Invalid PDF URL: " + e.getMessage(), e);
+        }
+    }
+
+    private HttpResponse<InputStream> send(HttpRequest request) {
+        try {
+            return httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (IOException | InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StampingException("Failed to connect to PDF URL: " + e.getMessage(), e);
+        }
+    }
+
+    private void checkStatus(HttpResponse<InputStream> response, String url) {
+        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+            closeQuietly(response.body());
+            throw new StampingException(
+                    "Remote server returned HTTP " + response.statusCode() + " for URL: " + url);
+        }
+    }
+
+    /** Rejects oversized PDFs from the Content-Length header before any of the body is read. */
+    private void checkDeclaredSize(HttpResponse<InputStream> response) {
+        long declared = response.headers().firstValueAsLong("Content-Length").orElse(-1L);
+        if (declared > properties.getPdfDownload().getMaxFileSize()) {
+            closeQuietly(response.body());
+            throw tooLarge();
         }
     }
 
     private void streamToFile(InputStream in, File dest) throws IOException {
+        try (InputStream body = in; OutputStream out = Files.newOutputStream(dest.toPath())) {
+            copyCapped(body, out);
+        }
+    }
+
+    private void copyCapped(InputStream in, OutputStream out) throws IOException {
         long maxBytes = properties.getPdfDownload().getMaxFileSize();
-        try (OutputStream out = Files.newOutputStream(dest.toPath())) {
-            byte[] buf = new byte[8192];
-            long total = 0;
-            int read;
-            while ((read = in.read(buf)) != -1) {
-                total += read;
-                if (total > maxBytes) {
-                    dest.delete();
-                    throw new StampingException(
-                            "Downloaded PDF exceeds maximum allowed size of " + (maxBytes / 1024 / 1024) + " MB");
-                }
-                out.write(buf, 0, read);
+        byte[] buf = new byte[8192];
+        long total = 0;
+        int read;
+        while ((read = in.read(buf)) != -1) {
+            total += read;
+            if (total > maxBytes) {
+                throw tooLarge();
             }
+            out.write(buf, 0, read);
+        }
+    }
+
+    private StampingException tooLarge() {
+        long maxBytes = properties.getPdfDownload().getMaxFileSize();
+        return new StampingException(
+                "Downloaded PDF exceeds maximum allowed size of " + (maxBytes / 1024 / 1024) + " MB");
+    }
+
+    private static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException ignored) {
+            // nothing to release
         }
     }
 }
@@ -1,6 +1,5 @@
 package com.stamping.service;
 
-import java.io.ByteArrayInputStream;
 import java.util.Base64;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -10,7 +9,6 @@ import org.springframework.stereotype.Service;
 import com.itextpdf.kernel.pdf.PdfDictionary;
 import com.itextpdf.kernel.pdf.PdfDocument;
 import com.itextpdf.kernel.pdf.PdfName;
-import com.itextpdf.kernel.pdf.PdfReader;
 import com.itextpdf.kernel.pdf.PdfStream;
 
 import lombok.extern.slf4j.Slf4j;
@@ -60,7 +58,7 @@ public class PdfFontExtractor {
      * @return FontInfo with font details, or null if no usable font found
      */
     public FontInfo extractPrimaryFont(byte[] pdfBytes) {
-        try (PdfDocument pdfDoc = new PdfDocument(new PdfReader(new ByteArrayInputStream(pdfBytes)))) {
+        try (PdfDocument pdfDoc = new PdfDocument(PdfIo.reader(pdfBytes))) {
             int totalPages = pdfDoc.getNumberOfPages();
             int pagesToScan = Math.min(totalPages, 3);
 
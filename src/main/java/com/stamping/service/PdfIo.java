@@ -0,0 +1,38 @@
+package com.stamping.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.kernel.pdf.WriterProperties;
+
+/**
+ * Readers and writers for the pipeline's in-memory PDFs. Each one is counted against the request
+ * whose stage is running on the calling thread, so an extra parse or serialization pass shows up
+ * in the trace and fails the performance budgets.
+ */
+public final class PdfIo {
+
+    private PdfIo() {
+    }
+
+    /** A reader over {@code pdf}; counted as one parse. */
+    public static PdfReader reader(byte[] pdf) throws IOException {
+        RequestTrace.count(RequestTrace.Work.PARSE);
+        return new PdfReader(new ByteArrayInputStream(pdf));
+    }
+
+    /** A writer to {@code out}; counted as one serialization. */
+    public static PdfWriter writer(OutputStream out) {
+        RequestTrace.count(RequestTrace.Work.WRITE);
+        return new PdfWriter(out);
+    }
+
+    /** A writer to {@code out} with {@code properties}; counted as one serialization. */
+    public static PdfWriter writer(OutputStream out, WriterProperties properties) {
+        RequestTrace.count(RequestTrace.Work.WRITE);
+        return new PdfWriter(out, properties);
+    }
+}
@@ -0,0 +1,225 @@
+package com.stamping.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Properties;
+
+import org.springframework.stereotype.Component;
+
+import com.stamping.config.StampingProperties;
+import com.stamping.service.cache.LruCache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Two-tier cache of downloaded source PDFs keyed by pdfUrl: a byte-bounded memory tier for hot
+ * articles and a disk tier under the temp dir. Entries carry the origin's ETag / Last-Modified
+ * validators; {@link PdfDownloadService} revalidates with a conditional GET and only transfers
+ * the body again when the origin reports a change. Entries without validators are not cached.
+ *
+ * <p>Hit ratio and bytes saved are published as {@code stamping.pdf.cache.*} metrics.
+ */
+@Slf4j
+@Component
+public class PdfSourceCache {
+
+    /** Cached PDF plus the validators needed to revalidate it. */
+    public record Entry(String url, byte[] data, String etag, String lastModified) {
+        public long size() { return data.length; }
+    }
+
+    /** Disk-tier lookup result; bytes are only read once the origin confirms freshness. */
+    public record Validators(String etag, String lastModified, long size, boolean inMemory) {}
+
+    private final StampingProperties.Cache config;
+    private final LruCache<String, Entry> memory;
+    private final File diskDir;
+    private long diskBytes = -1;
+
+    private final Counter memoryHits;
+    private final Counter diskHits;
+    private final Counter misses;
+    private final Counter bytesSaved;
+
+    public PdfSourceCache(StampingProperties properties, MeterRegistry meterRegistry) {
+        this.config = properties.getPdfDownload().getCache();
+        this.memory = new LruCache<>(config.getMemoryMaxBytes(), Entry::size);
+        this.diskDir = new File(properties.getTempDir(), config.getDir());
+
+        this.memoryHits = Counter.builder("stamping.pdf.cache.requests").tag("result", "memory-hit")
+                .description("Source PDF cache lookups").register(meterRegistry);
+        this.diskHits = Counter.builder("stamping.pdf.cache.requests").tag("result", "disk-hit")
+                .description("Source PDF cache lookups").register(meterRegistry);
+        this.misses = Counter.builder("stamping.pdf.cache.requests").tag("result", "miss")
+                .description("Source PDF cache lookups").register(meterRegistry);
+        this.bytesSaved = Counter.builder("stamping.pdf.cache.bytes.saved").baseUnit("bytes")
+                .description("Source PDF bytes not transferred thanks to revalidated cache hits")
+                .register(meterRegistry);
+        Gauge.builder("stamping.pdf.cache.hit.ratio", this, PdfSourceCache::hitRatio)
+                .description("Share of source PDF downloads served from cache").register(meterRegistry);
+        Gauge.builder("stamping.pdf.cache.memory.entries", memory, LruCache::size)
+                .description("Entries in the source PDF memory tier").register(meterRegistry);
+        Gauge.builder("stamping.pdf.cache.memory.bytes", memory, LruCache::weight).baseUnit("bytes")
+                .description("Bytes held in the source PDF memory tier").register(meterRegistry);
+        Gauge.builder("stamping.pdf.cache.disk.bytes", this, PdfSourceCache::diskBytes).baseUnit("bytes")
+                .description("Bytes held in the source PDF disk tier").register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /** Returns the stored validators for a URL, or null if it is not cached in either tier. */
+    public Validators validators(String url) {
+        if (!config.isEnabled()) return null;
+        Entry hot = memory.get(url);
+        if (hot != null) {
+            return new Validators(hot.etag(), hot.lastModified(), hot.size(), true);
+        }
+        File meta = metaFile(url);
+        if (!meta.isFile() || !dataFile(url).isFile()) return null;
+        try (InputStream in = Files.newInputStream(meta.toPath())) {
+            Properties p = new Properties();
+            p.load(in);
+            return new Validators(p.getProperty("etag"), p.getProperty("lastModified"),
+                    dataFile(url).length(), false);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Loads the cached bytes after the origin answered 304 Not Modified, promoting disk entries
+     * into the memory tier. Returns null if the entry vanished in the meantime.
+     */
+    public byte[] loadRevalidated(String url, Validators validators) {
+        Entry hot = memory.get(url);
+        if (hot != null) {
+            memoryHits.increment();
+            bytesSaved.increment(hot.size());
+            return hot.data();
+        }
+        File data = dataFile(url);
+        try {
+            byte[] bytes = Files.readAllBytes(data.toPath());
+            data.setLastModified(System.currentTimeMillis()); // LRU order for disk eviction
+            memory.put(url, new Entry(url, bytes, validators.etag(), validators.lastModified()));
+            diskHits.increment();
+            bytesSaved.increment(bytes.length);
+            return bytes;
+        } catch (IOException e) {
+            log.debug("Cached PDF for {} could not be read: {}", url, e.getMessage());
+            return null;
+        }
+    }
+
+    /** Records a download that could not be served from cache. */
+    public void recordMiss() {
+        misses.increment();
+    }
+
+    /**
+     * Admits a freshly downloaded PDF into both tiers. Responses without an ETag or
+     * Last-Modified header cannot be revalidated and are not cached.
+     */
+    public void store(String url, byte[] data, String etag, String lastModified) {
+        if (!config.isEnabled() || (etag == null && lastModified == null)) return;
+
+        memory.put(url, new Entry(url, data, etag, lastModified));
+        if (data.length > config.getDiskMaxBytes()) return;
+
+        try {
+            Files.createDirectories(diskDir.toPath());
+            Path tmp = Files.createTempFile(diskDir.toPath(), "pdf_", ".part");
+            Files.write(tmp, data);
+            Properties p = new Properties();
+            p.setProperty("url", url);
+            if (etag != null) p.setProperty("etag", etag);
+            if (lastModified != null) p.setProperty("lastModified", lastModified);
+            Path metaTmp = Files.createTempFile(diskDir.toPath(), "meta_", ".part");
+            try (OutputStream out = Files.newOutputStream(metaTmp)) {
+                p.store(out, null);
+            }
+            synchronized (this) {
+                long previous = dataFile(url).length();
+                Files.move(tmp, dataFile(url).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Files.move(metaTmp, metaFile(url).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                diskBytes = diskBytes() - previous + data.length;
+                evictDisk();
+            }
+        } catch (IOException e) {
+            log.debug("Could not persist PDF for {} to disk cache: {}", url, e.getMessage());
+        }
+    }
+
+    /** Drops a URL from both tiers, e.g. after the origin stopped returning it. */
+    public synchronized void invalidate(String url) {
+        memory.remove(url);
+        long len = dataFile(url).length();
+        if (dataFile(url).delete()) diskBytes = diskBytes() - len;
+        metaFile(url).delete();
+    }
+
+    private synchronized long diskBytes() {
+        if (diskBytes < 0) {
+            File[] files = diskDir.listFiles((dir, name) -> name.endsWith(".pdf"));
+            long total = 0;
+            if (files != null) for (File f : files) total += f.length();
+            diskBytes = total;
+        }
+        return diskBytes;
+    }
+
+    private void evictDisk() {
+        if (diskBytes <= config.getDiskMaxBytes()) return;
+        File[] files = diskDir.listFiles((dir, name) -> name.endsWith(".pdf"));
+        if (files == null) return;
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File f : files) {
+            if (diskBytes <= config.getDiskMaxBytes()) break;
+            long len = f.length();
+            String base = f.getName().substring(0, f.getName().length() - 4);
+            if (f.delete()) {
+                diskBytes -= len;
+                new File(diskDir, base + ".meta").delete();
+            }
+        }
+    }
+
+    private double hitRatio() {
+        double hits = memoryHits.count() + diskHits.count();
+        double total = hits + misses.count();
+        return total == 0 ? 0 : hits / total;
+    }
+
+    private File dataFile(String url) {
+        return new File(diskDir, sha256(url) + ".pdf");
+    }
+
+    private File metaFile(String url) {
+        return new File(diskDir, sha256(url) + ".meta");
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(md.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.stamping.service;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Records the stages of one stamping request for the {@code Server-Timing} header, the optional
+ * debug trace and the request's memory accounting. Created per request and passed through the
+ * pipeline.
+ *
+ * <p>Allocation is read from the JVM's per-thread allocation counters. The thread that created the
+ * trace is measured from creation onwards; stages that run on other threads add their own
+ * per-stage delta. Counters are unavailable on some JVMs, in which case allocation reads -1.
+ *
+ * <p>While a stage runs, its trace is the current trace of the stage's thread, and {@link #count}
+ * adds deterministic {@link Work} counts to it (PDF parses and writes, font providers). Unlike
+ * durations these do not vary between runs.
+ */
+public class RequestTrace {
+
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+    private static final ThreadLocal<RequestTrace> CURRENT = new ThreadLocal<>();
+
+    /** Countable units of work. */
+    public enum Work {
+        /** A PDF opened for reading */
+        PARSE("parse"),
+        /** A PDF serialized */
+        WRITE("write"),
+        /** A font provider built for an HTML→PDF conversion */
+        FONT_PROVIDER("font-provider");
+
+        private final String tag;
+
+        Work(String tag) {
+            this.tag = tag;
+        }
+
+        public String tag() {
+            return tag;
+        }
+    }
+
+    /**
+     * One timed stage.
+     *
+     * @param position       position the stage belongs to, or {@link StampingMetrics#NONE}
+     * @param startMs        offset from the start of the request
+     * @param allocatedBytes heap allocated by the stage's thread while it ran, or -1 if unknown
+     * @param bufferBytes    size of the byte array the stage produced, 0 if it produced none
+     */
+    public record Span(String stage, String position, double startMs, double durMs,
+                       long allocatedBytes, long bufferBytes) {}
+
+    private final String id = String.format("%012x", ThreadLocalRandom.current().nextLong() & 0xffffffffffffL);
+    private final long start = System.nanoTime();
+    private final long ownerThread = Thread.currentThread().getId();
+    private final long ownerAllocatedAtStart = currentThreadAllocatedBytes();
+    private final List<Span> spans = new ArrayList<>();
+    private long otherThreadsAllocated;
+    private final AtomicLongArray work = new AtomicLongArray(Work.values().length);
+    private final Consumer<Span> listener;
+
+    public RequestTrace() {
+        this(null);
+    }
+
+    /** A trace that also hands every finished span to {@code listener}, on the stage's thread. */
+    public RequestTrace(Consumer<Span> listener) {
+        this.listener = listener;
+    }
+
+    public void record(String stage, String position, long startNanos, long endNanos) {
+        record(stage, position, startNanos, endNanos, -1, 0);
+    }
+
+    public void record(String stage, String position, long startNanos, long endNanos,
+                       long allocatedBytes, long bufferBytes) {
+        Span span = new Span(stage, position, millis(startNanos - start), millis(endNanos - startNanos),
+                allocatedBytes, bufferBytes);
+        synchronized (this) {
+            spans.add(span);
+            if (allocatedBytes > 0 && Thread.currentThread().getId() != ownerThread) {
+                otherThreadsAllocated += allocatedBytes;
+            }
+        }
+        if (listener != null) {
+            listener.accept(span);
+        }
+    }
+
+    /** Random 12-hex-digit id for logs and diagnostics. */
+    public String id() {
+        return id;
+    }
+
+    public synchronized List<Span> spans() {
+        return List.copyOf(spans);
+    }
+
+    public double totalMs() {
+        return millis(System.nanoTime() - start);
+    }
+
+    /** Units of {@code kind} counted so far. */
+    public long work(Work kind) {
+        return work.get(kind.ordinal());
+    }
+
+    /** Counts one unit of work against the trace of the stage running on this thread, if any. */
+    public static void count(Work kind) {
+        RequestTrace trace = CURRENT.get();
+        if (trace != null) {
+            trace.work.incrementAndGet(kind.ordinal());
+        }
+    }
+
+    /** Makes {@code trace}, when given, current on this thread; returns the trace to restore. */
+    static RequestTrace enter(RequestTrace trace) {
+        RequestTrace outer = CURRENT.get();
+        if (trace != null) {
+            CURRENT.set(trace);
+        }
+        return outer;
+    }
+
+    static void exit(RequestTrace outer) {
+        if (outer == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(outer);
+        }
+    }
+
+    /** Heap allocated for this request so far, or -1 when allocation counters are unavailable. */
+    public synchronized long allocatedBytes() {
+        if (ownerAllocatedAtStart < 0) {
+            return -1;
+        }
+        long owner = THREADS.getThreadAllocatedBytes(ownerThread);
+        return owner < 0 ? -1 : owner - ownerAllocatedAtStart + otherThreadsAllocated;
+    }
+
+    /** Largest byte array produced by any stage (source PDF, rendered page, intermediate PDF). */
+    public synchronized long peakBufferBytes() {
+        return spans.stream().mapToLong(Span::bufferBytes).max().orElse(0);
+    }
+
+    /**
+     * W3C Server-Timing value: one entry per stage and position (repeated stages summed), plus
+     * {@code total}. For example {@code download;dur=182.4, render;desc="FOOTER";dur=41.0, total;dur=260.3}.
+     */
+    public synchronized String serverTiming() {
+        Map<String, double[]> totals = new LinkedHashMap<>();
+        for (Span span : spans) {
+            totals.computeIfAbsent(span.stage() + '|' + span.position(), k -> new double[1])[0] += span.durMs();
+        }
+        StringBuilder sb = new StringBuilder();
+        totals.forEach((key, dur) -> {
+            int bar = key.indexOf('|');
+            String position = key.substring(bar + 1);
+            sb.append(key, 0, bar);
+            if (!StampingMetrics.NONE.equals(position)) {
+                sb.append(";desc=\"").append(position).append('"');
+            }
+            sb.append(";dur=").append(format(dur[0])).append(", ");
+        });
+        return sb.append("total;dur=").append(format(totalMs())).toString();
+    }
+
+    /** Compact trace for the debug header: totals and every span in order. */
+    public synchronized Map<String, Object> summary() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("id", id);
+        summary.put("totalMs", round(totalMs()));
+        summary.put("allocatedBytes", allocatedBytes());
+        summary.put("peakBufferBytes", peakBufferBytes());
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Work kind : Work.values()) {
+            counts.put(kind.tag(), work(kind));
+        }
+        summary.put("work", counts);
+        summary.put("spans", spans.stream()
+                .map(s -> new Span(s.stage(), s.position(), round(s.startMs()), round(s.durMs()),
+                        s.allocatedBytes(), s.bufferBytes()))
+                .toList());
+        return summary;
+    }
+
+    /** Bytes allocated so far by the calling thread, or -1 when the JVM does not count them. */
+    static long currentThreadAllocatedBytes() {
+        return THREADS == null ? -1 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+            return bean;
+        }
+        return null;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static double round(double ms) {
+        return Math.round(ms * 10) / 10.0;
+    }
+
+    private static String format(double ms) {
+        return String.format(Locale.ROOT, "%.1f", ms);
+    }
+}
@@ -1,20 +1,19 @@
 package com.stamping.service;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.Base64;
-import java.util.Map;
+import java.util.HexFormat;
 
 import org.springframework.stereotype.Service;
 
 import com.itextpdf.kernel.geom.Rectangle;
 import com.itextpdf.kernel.pdf.PdfDocument;
-import com.itextpdf.kernel.pdf.PdfReader;
 import com.stamping.config.StampingProperties;
 import com.stamping.exception.StampingException;
 import com.stamping.model.DynamicStampRequest;
@@ -22,7 +21,15 @@ import com.stamping.model.JournalMetadataRequest;
 import com.stamping.model.StampPosition;
 import com.stamping.model.StampRequest;
 import com.stamping.model.StampType;
+import com.stamping.model.ad.AdData;
 import com.stamping.model.ad.AdResponse;
+import com.stamping.service.capture.RequestCapture;
+import com.stamping.service.diagnostics.SlowRequestRecorder;
+import com.stamping.service.diagnostics.StampingRequestEvent;
+import com.stamping.service.plan.PlannedPosition;
+import com.stamping.service.plan.StampingPlan;
+import com.stamping.service.plan.StampingPlanCompiler;
+import com.stamping.service.plan.StampingPlans;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -45,93 +52,171 @@ public class StampOrchestrationService {
     private final InputSanitizer inputSanitizer;
     private final StampingProperties properties;
     private final PdfDownloadService pdfDownloadService;
+    private final StampingPlanCompiler planCompiler;
+    private final StampingPlans stampingPlans;
+    private final StampingMetrics metrics;
+    private final RequestCapture requestCapture;
+    private final SlowRequestRecorder slowRequests;
 
     /**
-     * Result of the stamping pipeline — the stamped PDF bytes and a suggested filename.
+     * Result of the stamping pipeline — the stamped PDF bytes, a suggested filename and the
+     * stage trace of the request.
      */
-    public record StampResult(byte[] pdfBytes, String filename) {}
+    public record StampResult(byte[] pdfBytes, String filename, RequestTrace trace) {}
+
+    /**
+     * Font of the source PDF as used by every position of one request.
+     *
+     * @param cacheKey identifies the font for the static overlay cache; null when not needed
+     */
+    private record FontContext(PdfFontExtractor.FontInfo pdfFont, String fontFamily, String fontFaceCss,
+                               String cacheKey) {}
 
     /**
      * Runs the full stamping pipeline: validate → resolve PDF source → read PDF → extract font → process positions → return result.
      */
     public StampResult processJournalMetadata(JournalMetadataRequest request) {
-        long startTime = System.currentTimeMillis();
+        return processJournalMetadata(request, new RequestTrace());
+    }
 
+    /** As {@link #processJournalMetadata(JournalMetadataRequest)}, recording into the given trace. */
+    public StampResult processJournalMetadata(JournalMetadataRequest request, RequestTrace trace) {
         // 1. Validate inputs
         validateRequest(request);
 
-        // 2. Resolve PDF source — download from URL to temp file if pdfUrl is provided
-        File downloadedTempFile = null;
-        if (request.getPdfUrl() != null && !request.getPdfUrl().isBlank()) {
-            downloadedTempFile = pdfDownloadService.download(request.getPdfUrl());
-            request.setPdfFilePath(downloadedTempFile.getAbsolutePath());
+        StampingPlan plan = metrics.time(trace, StampingMetrics.PLAN, () -> planCompiler.compile(
+                request.getPublisherId(), request.getJcode(), request.getPositions(), request.isDemoMode()));
+        return execute(plan, request, trace);
+    }
+
+    /**
+     * Stamps with the precompiled plan of a saved config. The request only carries the PDF
+     * source and article metadata; positions come from the plan.
+     */
+    public StampResult processWithPlan(StampingPlan plan, JournalMetadataRequest request) {
+        return processWithPlan(plan, request, new RequestTrace());
+    }
+
+    /** As {@link #processWithPlan(StampingPlan, JournalMetadataRequest)}, recording into the given trace. */
+    public StampResult processWithPlan(StampingPlan plan, JournalMetadataRequest request, RequestTrace trace) {
+        request.setPublisherId(plan.pubId());
+        request.setJcode(plan.jcode());
+        validateSource(request);
+        return execute(plan, request, trace);
+    }
+
+    /**
+     * Checks a request the way {@link #processJournalMetadata} will, for callers that accept it
+     * now and stamp it later. {@code saved} requests take their positions from a saved config, so
+     * only the source and output are checked.
+     */
+    public void validate(JournalMetadataRequest request, boolean saved) {
+        if (saved) {
+            validateSource(request);
+        } else {
+            validateRequest(request);
         }
+    }
 
+    private StampResult execute(StampingPlan plan, JournalMetadataRequest request, RequestTrace trace) {
+        StampingRequestEvent event = slowRequests.begin(trace, request.getPublisherId(), request.getJcode());
+        boolean failed = true;
         try {
-            log.info("==========================================================");
-            log.info("  STAMP REQUEST  pubId={}  jcode={}  env={}",
-                    request.getPublisherId(), request.getJcode(),
-                    request.getEnv() != null ? request.getEnv() : "default");
-
-            // 3. Read PDF
-            byte[] currentPdfBytes = readPdf(request.getPdfFilePath());
-
-            // 4. Extract page size and font
-            Rectangle pageSize = extractPageSize(currentPdfBytes);
-            PdfFontExtractor.FontInfo pdfFont = pdfFontExtractor.extractPrimaryFont(currentPdfBytes);
-            String fontFamily = buildFontFamily(pdfFont);
-            logFontInfo(pdfFont, fontFamily);
-
-            log.info("----------------------------------------------------------");
-
-            // 5. Process each position
-            Map<String, DynamicStampRequest.Configuration> positions = request.getPositions();
-            log.info("  Positions: {}", positions.keySet());
-
-            int prependedPages = 0;
-            int appendedPages = 0;
-
-            for (var entry : positions.entrySet()) {
-                String posStr = entry.getKey();
-                DynamicStampRequest.Configuration c = entry.getValue();
-                if (c == null) continue;
-
-                if ("NEW_PAGE".equalsIgnoreCase(posStr)) {
-                    NewPageResult result = processNewPage(c, request, pdfFont, fontFamily, pageSize, currentPdfBytes);
-                    currentPdfBytes = result.pdfBytes;
-                    prependedPages += result.prepended;
-                    appendedPages += result.appended;
-                } else {
-                    currentPdfBytes = processOverlayPosition(posStr, c, request, pdfFont, fontFamily,
-                            pageSize, currentPdfBytes, prependedPages, appendedPages);
-                }
-            }
+            StampResult result = stamp(plan, request, trace);
+            failed = false;
+            return result;
+        } finally {
+            slowRequests.end(event, trace, failed);
+        }
+    }
+
+    private StampResult stamp(StampingPlan plan, JournalMetadataRequest request, RequestTrace trace) {
+        long startTime = System.currentTimeMillis();
 
-            // 6. Save to disk if outputPath provided
-            if (request.getOutputPath() != null && !request.getOutputPath().isBlank()) {
-                saveOutput(request.getOutputPath(), currentPdfBytes);
+        boolean fromUrl = request.getPdfUrl() != null && !request.getPdfUrl().isBlank();
+
+        log.info("==========================================================");
+        log.info("  STAMP REQUEST  id={}  pubId={}  jcode={}  env={}",
+                trace.id(), request.getPublisherId(), request.getJcode(),
+                request.getEnv() != null ? request.getEnv() : "default");
+
+        // 2-3. Resolve PDF source — fetch from URL (via the source cache) or read from disk
+        byte[] currentPdfBytes = fromUrl
+                ? metrics.time(trace, StampingMetrics.DOWNLOAD, () -> pdfDownloadService.fetch(request.getPdfUrl()))
+                : metrics.time(trace, StampingMetrics.READ, () -> readPdf(request.getPdfFilePath()));
+
+        // 4. Extract page size and font
+        byte[] sourcePdf = currentPdfBytes;
+        PageInfo pageInfo = metrics.time(trace, StampingMetrics.PAGE_SIZE, () -> extractPageSize(sourcePdf));
+        Rectangle pageSize = pageInfo.size();
+        metrics.recordInput(currentPdfBytes.length, pageInfo.count());
+        PdfFontExtractor.FontInfo pdfFont = metrics.time(trace, StampingMetrics.FONT,
+                () -> pdfFontExtractor.extractPrimaryFont(sourcePdf));
+        String fontFamily = buildFontFamily(pdfFont);
+        logFontInfo(pdfFont, fontFamily);
+        FontContext font = new FontContext(pdfFont, fontFamily, buildFontFaceCss(pdfFont),
+                plan.isSaved() ? fontCacheKey(pdfFont, fontFamily) : null);
+
+        log.info("----------------------------------------------------------");
+
+        // 5. Process each position
+        log.info("  Positions: {}{}", plan.positionNames(),
+                plan.isSaved() ? "  (saved config, version " + plan.source().version() + ")" : "");
+
+        int prependedPages = 0;
+        int appendedPages = 0;
+
+        for (PlannedPosition position : plan.positions()) {
+            if (position.isNewPage()) {
+                NewPageResult result = processNewPage(position, request, font, pageSize, currentPdfBytes, trace);
+                currentPdfBytes = result.pdfBytes;
+                prependedPages += result.prepended;
+                appendedPages += result.appended;
+            } else {
+                currentPdfBytes = processOverlayPosition(plan, position, request, font,
+                        pageSize, currentPdfBytes, prependedPages, appendedPages, trace);
             }
+        }
 
-            String sourceName = request.getPdfUrl() != null && !request.getPdfUrl().isBlank()
-                    ? request.getPdfUrl().substring(request.getPdfUrl().lastIndexOf('/') + 1)
-                    : new File(request.getPdfFilePath()).getName();
-            String outputFilename = buildOutputFilename(sourceName);
-            long elapsed = System.currentTimeMillis() - startTime;
-            log.info("----------------------------------------------------------");
-            log.info("  DONE  {}ms  output={}  size={} KB", elapsed, outputFilename, currentPdfBytes.length / 1024);
-            log.info("==========================================================");
+        metrics.recordOutput(currentPdfBytes.length, pageInfo.count() + prependedPages + appendedPages);
 
-            return new StampResult(currentPdfBytes, outputFilename);
-        } finally {
-            if (downloadedTempFile != null && downloadedTempFile.exists()) {
-                downloadedTempFile.delete();
-            }
+        // 6. Save to disk if outputPath provided
+        if (request.getOutputPath() != null && !request.getOutputPath().isBlank()) {
+            byte[] output = currentPdfBytes;
+            metrics.time(trace, StampingMetrics.WRITE, StampingMetrics.NONE, StampingMetrics.NONE,
+                    () -> saveOutput(request.getOutputPath(), output));
         }
+
+        String sourceName = fromUrl
+                ? request.getPdfUrl().substring(request.getPdfUrl().lastIndexOf('/') + 1)
+                : new File(request.getPdfFilePath()).getName();
+        String outputFilename = buildOutputFilename(sourceName);
+        long elapsed = System.currentTimeMillis() - startTime;
+        log.info("----------------------------------------------------------");
+        metrics.recordRequest(trace);
+        requestCapture.record(plan, request, sourcePdf, currentPdfBytes.length, trace.totalMs());
+        log.info("  DONE  {}ms  output={}  size={} KB  allocated={} MB  peakBuffer={} KB", elapsed, outputFilename,
+                currentPdfBytes.length / 1024, trace.allocatedBytes() / (1024 * 1024), trace.peakBufferBytes() / 1024);
+        log.info("  Stages: {}", trace.serverTiming());
+        log.info("==========================================================");
+
+        return new StampResult(currentPdfBytes, outputFilename, trace);
     }
 
     // ─── Validation ─────────────────────────────────────────────────────
 
     private void validateRequest(JournalMetadataRequest request) {
+        validateSource(request);
+
+        inputSanitizer.validateIdentifier(request.getPublisherId(), "publisherId");
+        inputSanitizer.validateIdentifier(request.getJcode(), "jcode");
+
+        if (request.getPositions() == null || request.getPositions().isEmpty()) {
+            throw new StampingException("positions map is required in the request JSON");
+        }
+    }
+
+    private void validateSource(JournalMetadataRequest request) {
         boolean hasUrl = request.getPdfUrl() != null && !request.getPdfUrl().isBlank();
         boolean hasPath = request.getPdfFilePath() != null && !request.getPdfFilePath().isBlank();
 
@@ -149,12 +234,6 @@ public class StampOrchestrationService {
             }
         }
 
-        inputSanitizer.validateIdentifier(request.getPublisherId(), "publisherId");
-        inputSanitizer.validateIdentifier(request.getJcode(), "jcode");
-
-        if (request.getPositions() == null || request.getPositions().isEmpty()) {
-            throw new StampingException("positions map is required in the request JSON");
-        }
         if (request.getOutputPath() != null && !request.getOutputPath().isBlank()) {
             inputSanitizer.validateFilePath(request.getOutputPath());
         }
@@ -171,12 +250,14 @@ public class StampOrchestrationService {
         }
     }
 
-    private Rectangle extractPageSize(byte[] pdfBytes) {
-        try (PdfDocument doc = new PdfDocument(new PdfReader(new ByteArrayInputStream(pdfBytes)))) {
+    private record PageInfo(Rectangle size, int count) {}
+
+    private PageInfo extractPageSize(byte[] pdfBytes) {
+        try (PdfDocument doc = new PdfDocument(PdfIo.reader(pdfBytes))) {
             Rectangle ps = doc.getPage(1).getPageSize();
             log.info("  PDF: {} pages, page size {}x{}pt",
                     doc.getNumberOfPages(), Math.round(ps.getWidth()), Math.round(ps.getHeight()));
-            return ps;
+            return new PageInfo(ps, doc.getNumberOfPages());
         } catch (Exception e) {
             throw new StampingException("Failed to read PDF page size: " + e.getMessage(), e);
         }
@@ -222,52 +303,35 @@ public class StampOrchestrationService {
 
     private record NewPageResult(byte[] pdfBytes, int prepended, int appended) {}
 
-    private NewPageResult processNewPage(DynamicStampRequest.Configuration c, JournalMetadataRequest request,
-                                         PdfFontExtractor.FontInfo pdfFont, String fontFamily,
-                                         Rectangle pageSize, byte[] currentPdfBytes) {
+    private NewPageResult processNewPage(PlannedPosition position, JournalMetadataRequest request,
+                                         FontContext font, Rectangle pageSize, byte[] currentPdfBytes,
+                                         RequestTrace trace) {
+        DynamicStampRequest.Configuration c = position.config();
         log.info("  [NEW_PAGE] template={}  pagePosition={}  ads={}",
                 c.getTemplateName() != null ? c.getTemplateName() : "default_metadata",
                 c.getPagePosition() != null ? c.getPagePosition() : "front",
                 Boolean.TRUE.equals(c.getAdsEnabled()) ? "enabled" : "disabled");
 
-        String html = "";
+        String templateTag = templateService.resolveTemplateName(c.getTemplateName());
 
-        // 1. Resolve template
-        if (c.getTemplateName() != null && !c.getTemplateName().isBlank()) {
-            html += templateService.renderTemplate(c, request, pdfFont);
-        } else if (c.getHtml() == null || c.getHtml().isBlank()) {
-            String orig = c.getTemplateName();
-            c.setTemplateName("default_metadata");
-            html += templateService.renderTemplate(c, request, pdfFont);
-            c.setTemplateName(orig);
-        }
+        // 1-2. Fill the precompiled template and append custom HTML
+        String html = buildNewPageHtml(position, request, font, templateTag, trace);
 
-        // 2. Append custom HTML if provided
-        if (c.getHtml() != null && !c.getHtml().isBlank()) {
-            String customHtml = inputSanitizer.sanitizeHtml(c.getHtml());
-            if (!html.isEmpty()) {
-                html = html.contains("</body>")
-                        ? html.replace("</body>", "<div>" + customHtml + "</div></body>")
-                        : html + "<div>" + customHtml + "</div>";
-            } else {
-                html = customHtml.contains("<html") ? customHtml
-                        : "<!DOCTYPE html><html><head><meta charset=\"UTF-8\"/></head>"
-                        + "<body style=\"margin: 50px; font-family: " + fontFamily + "; color: #000;\">"
-                        + customHtml + "</body></html>";
-            }
-        }
-
-        // 3. Render and prepend/append
-        byte[] htmlPageBytes = metadataFrontPageService.renderHtmlToPdf(html, pageSize);
+        // 3. Render at the article's page size and insert in place
         boolean appendToBack = "back".equalsIgnoreCase(c.getPagePosition());
         int prepended = 0, appended = 0;
+        String pageHtml = html;
+        byte[] pageBytes = metrics.time(trace, StampingMetrics.RENDER, "NEW_PAGE", templateTag,
+                () -> metadataFrontPageService.renderHtmlToPdf(pageHtml, pageSize));
+        byte[] sourcePdf = currentPdfBytes;
+        currentPdfBytes = metrics.time(trace, StampingMetrics.MERGE, "NEW_PAGE", templateTag, () -> appendToBack
+                ? metadataFrontPageService.appendPdf(sourcePdf, pageBytes)
+                : metadataFrontPageService.prependPdf(sourcePdf, pageBytes));
 
         if (appendToBack) {
-            currentPdfBytes = metadataFrontPageService.appendPdf(currentPdfBytes, htmlPageBytes);
             appended = 1;
             log.info("  [NEW_PAGE] Appended to back");
         } else {
-            currentPdfBytes = metadataFrontPageService.prependPdf(currentPdfBytes, htmlPageBytes);
             prepended = 1;
             log.info("  [NEW_PAGE] Prepended to front");
         }
@@ -275,30 +339,68 @@ public class StampOrchestrationService {
         return new NewPageResult(currentPdfBytes, prepended, appended);
     }
 
+    /**
+     * Renders the NEW_PAGE position of {@code plan} on its own, as a PDF of {@code pageSize} filled
+     * from {@code request}'s metadata. This is the shared cover of an issue compilation. There is
+     * no source PDF to take a font from, so the template uses the fallback fonts.
+     */
+    public byte[] renderNewPage(StampingPlan plan, JournalMetadataRequest request, Rectangle pageSize,
+                                RequestTrace trace) {
+        PlannedPosition position = plan.positions().stream()
+                .filter(PlannedPosition::isNewPage)
+                .findFirst()
+                .orElseThrow(() -> new StampingException("The config of " + plan.pubId() + "/" + plan.jcode()
+                        + " has no cover page (newPage) section"));
+        request.setPublisherId(plan.pubId());
+        request.setJcode(plan.jcode());
+        String fontFamily = buildFontFamily(null);
+        FontContext font = new FontContext(null, fontFamily, "", fontFamily);
+        String templateTag = templateService.resolveTemplateName(position.config().getTemplateName());
+        String html = buildNewPageHtml(position, request, font, templateTag, trace);
+        return metrics.time(trace, StampingMetrics.RENDER, "NEW_PAGE", templateTag,
+                () -> metadataFrontPageService.renderHtmlToPdf(html, pageSize));
+    }
+
+    private String buildNewPageHtml(PlannedPosition position, JournalMetadataRequest request, FontContext font,
+                                    String templateTag, RequestTrace trace) {
+        DynamicStampRequest.Configuration c = position.config();
+
+        // 1. Fill the precompiled template
+        String html = position.template() != null
+                ? metrics.time(trace, StampingMetrics.TEMPLATE, "NEW_PAGE", templateTag,
+                        () -> templateService.fillTemplate(position.template(), c, request, font.pdfFont()))
+                : "";
+
+        // 2. Append custom HTML (sanitized at compile time) if provided
+        String customHtml = position.fragment();
+        if (customHtml != null) {
+            if (!html.isEmpty()) {
+                html = html.contains("</body>")
+                        ? html.replace("</body>", "<div>" + customHtml + "</div></body>")
+                        : html + "<div>" + customHtml + "</div>";
+            } else {
+                html = customHtml.contains("<html") ? customHtml
+                        : "<!DOCTYPE html><html><head><meta charset=\"UTF-8\"/></head>"
+                        + "<body style=\"margin: 50px; font-family: " + font.fontFamily() + "; color: #000;\">"
+                        + customHtml + "</body></html>";
+            }
+        }
+        return html;
+    }
+
     // ─── Overlay position processing ────────────────────────────────────
 
-    private byte[] processOverlayPosition(String posStr, DynamicStampRequest.Configuration c,
-                                           JournalMetadataRequest request, PdfFontExtractor.FontInfo pdfFont,
-                                           String fontFamily, Rectangle pageSize, byte[] currentPdfBytes,
-                                           int prependedPages, int appendedPages) {
+    private byte[] processOverlayPosition(StampingPlan plan, PlannedPosition position,
+                                           JournalMetadataRequest request, FontContext font,
+                                           Rectangle pageSize, byte[] currentPdfBytes,
+                                           int prependedPages, int appendedPages, RequestTrace trace) {
+        String posStr = position.position();
+        DynamicStampRequest.Configuration c = position.config();
         log.info("  [{}] ads={}  text={}  html={}", posStr,
                 Boolean.TRUE.equals(c.getAdsEnabled()) ? "enabled" : "disabled",
                 c.getText() != null && !c.getText().isBlank() ? "yes" : "no",
                 c.getHtml() != null && !c.getHtml().isBlank() ? "yes" : "no");
 
-        StringBuilder htmlBuilder = new StringBuilder();
-        htmlBuilder.append("<div style=\"text-align: center;\">");
-
-        appendLogo(htmlBuilder, c);
-        appendText(htmlBuilder, c);
-        appendRawHtml(htmlBuilder, c);
-        appendDoi(htmlBuilder, c);
-        appendDate(htmlBuilder, c);
-        appendMetadataFields(htmlBuilder, c, request);
-        appendAds(htmlBuilder, posStr, c, request);
-
-        htmlBuilder.append("</div>");
-
         // Position-specific CSS and rotation
         float rotation = 0f;
         float sWidth = pageSize.getWidth();
@@ -324,15 +426,6 @@ public class StampOrchestrationService {
             default -> cssPosition = "position: absolute; left: 0; right: 0;";
         }
 
-        String fontFaceCss = buildFontFaceCss(pdfFont);
-        String overlayHtml = "<!DOCTYPE html><html><head><meta charset=\"UTF-8\"/><style>"
-                + fontFaceCss
-                + "body{margin:0;padding:0;font-family:" + fontFamily + ";}</style></head><body>"
-                + "<div style=\"" + cssPosition + "\">"
-                + "<div style=\"display: inline-block; padding: 2px 4px;\">"
-                + htmlBuilder
-                + "</div></div></body></html>";
-
         String targetPages = computeTargetPages(currentPdfBytes, prependedPages, appendedPages);
         log.info("  [{}] Stamping pages {}", posStr, targetPages);
 
@@ -347,44 +440,54 @@ public class StampOrchestrationService {
                 .stampHeight(sHeight)
                 .build();
 
-        return stampService.applyStamp(currentPdfBytes, htmlReq, overlayHtml.getBytes(StandardCharsets.UTF_8));
-    }
-
-    // ─── HTML fragment builders ─────────────────────────────────────────
-
-    private void appendLogo(StringBuilder sb, DynamicStampRequest.Configuration c) {
-        if (c.getLogo() != null && !c.getLogo().isBlank()) {
-            String mimeType = c.getLogoMimeType() != null ? c.getLogoMimeType() : "image/png";
-            sb.append("<img src=\"data:").append(mimeType).append(";base64,").append(c.getLogo())
-                    .append("\" style=\"max-width: 200px; display: block; margin: 0 auto; margin-bottom: 8px;\" />");
+        if (plan.isSaved() && position.staticOverlay()) {
+            // Nothing in this overlay depends on the article: reuse the rendering for this font and size
+            String key = plan.id() + ":" + posStr + ":" + sWidth + "x" + sHeight + ":" + font.cacheKey();
+            byte[] rendered = stampingPlans.renderedOverlay(key, () -> render(posStr, htmlReq,
+                    buildOverlayHtml(position, request, font, cssPosition, trace), trace));
+            return overlay(posStr, currentPdfBytes, htmlReq, rendered, trace);
         }
+
+        byte[] rendered = render(posStr, htmlReq,
+                buildOverlayHtml(position, request, font, cssPosition, trace), trace);
+        return overlay(posStr, currentPdfBytes, htmlReq, rendered, trace);
     }
 
-    private void appendText(StringBuilder sb, DynamicStampRequest.Configuration c) {
-        if (c.getText() != null && !c.getText().isBlank()) {
-            String safeText = inputSanitizer.sanitizeHtml(c.getText().replace("\n", "<br/>"));
-            sb.append("<p style=\"font-size: 14px; margin: 4px 0; font-weight: bold;\">")
-                    .append(safeText).append("</p>");
-        }
+    private byte[] render(String posStr, StampRequest htmlReq, String html, RequestTrace trace) {
+        return metrics.time(trace, StampingMetrics.RENDER, posStr, StampingMetrics.NONE,
+                () -> stampService.renderStamp(htmlReq, html.getBytes(StandardCharsets.UTF_8)));
     }
 
-    private void appendRawHtml(StringBuilder sb, DynamicStampRequest.Configuration c) {
-        if (c.getHtml() != null && !c.getHtml().isBlank()) {
-            String sanitized = inputSanitizer.sanitizeHtml(c.getHtml());
-            sb.append("<div style=\"margin: 8px 0;\">").append(sanitized).append("</div>");
-        }
+    private byte[] overlay(String posStr, byte[] pdfBytes, StampRequest htmlReq, byte[] rendered,
+                           RequestTrace trace) {
+        return metrics.time(trace, StampingMetrics.OVERLAY, posStr, StampingMetrics.NONE,
+                () -> stampService.applyRenderedStamp(pdfBytes, htmlReq, rendered));
     }
 
-    private void appendDoi(StringBuilder sb, DynamicStampRequest.Configuration c) {
-        if (c.getDoi() != null && !c.getDoi().isBlank()) {
-            String doiUrl = c.getDoi().startsWith("http") ? c.getDoi() : "https://doi.org/" + c.getDoi();
-            sb.append("<p style=\"margin: 4px 0; font-size: 12px; color: black;\">doi: ")
-                    .append("<a href=\"").append(doiUrl)
-                    .append("\" style=\"color: blue; text-decoration: none;\">")
-                    .append(doiUrl).append("</a></p>");
-        }
+    private String buildOverlayHtml(PlannedPosition position, JournalMetadataRequest request,
+                                    FontContext font, String cssPosition, RequestTrace trace) {
+        DynamicStampRequest.Configuration c = position.config();
+        StringBuilder htmlBuilder = new StringBuilder();
+        htmlBuilder.append("<div style=\"text-align: center;\">");
+
+        htmlBuilder.append(position.fragment());
+        appendDate(htmlBuilder, c);
+        appendMetadataFields(htmlBuilder, c, request);
+        appendAds(htmlBuilder, position.position(), c, request, trace);
+
+        htmlBuilder.append("</div>");
+
+        return "<!DOCTYPE html><html><head><meta charset=\"UTF-8\"/><style>"
+                + font.fontFaceCss()
+                + "body{margin:0;padding:0;font-family:" + font.fontFamily() + ";}</style></head><body>"
+                + "<div style=\"" + cssPosition + "\">"
+                + "<div style=\"display: inline-block; padding: 2px 4px;\">"
+                + htmlBuilder
+                + "</div></div></body></html>";
     }
 
+    // ─── HTML fragment builders ─────────────────────────────────────────
+
     private void appendDate(StringBuilder sb, DynamicStampRequest.Configuration c) {
         if (Boolean.TRUE.equals(c.getIncludeDate())) {
             String dateStr = LocalDate.now().format(DateTimeFormatter.ofPattern("MMMM d, yyyy"));
@@ -430,16 +533,17 @@ public class StampOrchestrationService {
     }
 
     private void appendAds(StringBuilder sb, String posStr, DynamicStampRequest.Configuration c,
-                            JournalMetadataRequest request) {
+                            JournalMetadataRequest request, RequestTrace trace) {
         if (!Boolean.TRUE.equals(c.getAdsEnabled())) return;
 
-        String adUrl = buildAdUrl(request.getPublisherId(), request.getJcode());
-        AdResponse adResponse = adFetchService.fetchAds(adUrl);
-        String extractedAdHtml = extractHeaderAdHtml(adResponse);
+        String adUrl = adFetchService.buildAdUrl(request.getPublisherId(), request.getJcode());
+        AdResponse adResponse = metrics.time(trace, StampingMetrics.ADS, posStr, StampingMetrics.NONE,
+                () -> adFetchService.fetchAds(adUrl));
+        AdData headerAd = extractHeaderAd(adResponse);
 
-        if (extractedAdHtml != null) {
-            log.info("  [{}] Ad injected ({} chars)", posStr, extractedAdHtml.length());
-            extractedAdHtml = adStampService.processHtmlContent(extractedAdHtml, c.getLegacyDomain());
+        if (headerAd != null) {
+            log.info("  [{}] Ad injected ({} chars)", posStr, headerAd.getAdHtml().length());
+            String extractedAdHtml = adStampService.processAd(headerAd, c.getLegacyDomain());
             sb.append("<div style=\"margin-top: 10px;\">").append(extractedAdHtml).append("</div>");
         } else {
             log.warn("  [{}] No 'header' ad found in response", posStr);
@@ -448,14 +552,7 @@ public class StampOrchestrationService {
 
     // ─── Shared utilities ───────────────────────────────────────────────
 
-    public String buildAdUrl(String publisherId, String jcode) {
-        return properties.getAds().getBaseUrl()
-                + "?publisherId=" + publisherId
-                + "&jcode=" + jcode
-                + "&sectionPath=" + properties.getAds().getSectionPath();
-    }
-
-    private String extractHeaderAdHtml(AdResponse adResponse) {
+    private AdData extractHeaderAd(AdResponse adResponse) {
         if (adResponse == null || adResponse.getSection() == null) return null;
         for (var section : adResponse.getSection()) {
             if (section.getAdLocation() == null) continue;
@@ -463,7 +560,7 @@ public class StampOrchestrationService {
                 if ("header".equalsIgnoreCase(location.getPositionName()) && location.getAdData() != null) {
                     for (var ad : location.getAdData()) {
                         if (ad.getAdHtml() != null && !ad.getAdHtml().isEmpty()) {
-                            return ad.getAdHtml();
+                            return ad;
                         }
                     }
                 }
@@ -480,8 +577,19 @@ public class StampOrchestrationService {
                 + "';src:url('data:" + mimeType + ";base64," + base64 + "');}";
     }
 
+    /** Identifies the source-PDF font for the overlay cache; hashing the bytes once per request. */
+    private String fontCacheKey(PdfFontExtractor.FontInfo pdfFont, String fontFamily) {
+        if (pdfFont == null || !pdfFont.isUsableForStamping()) return fontFamily;
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(pdfFont.getFontBytes());
+            return fontFamily + "#" + HexFormat.of().formatHex(digest);
+        } catch (Exception e) {
+            throw new StampingException("Failed to hash font: " + e.getMessage(), e);
+        }
+    }
+
     private String computeTargetPages(byte[] pdfBytes, int prependedPages, int appendedPages) {
-        try (PdfDocument doc = new PdfDocument(new PdfReader(new ByteArrayInputStream(pdfBytes)))) {
+        try (PdfDocument doc = new PdfDocument(PdfIo.reader(pdfBytes))) {
             int total = doc.getNumberOfPages();
             int first = prependedPages + 1;
             int last = total - appendedPages;
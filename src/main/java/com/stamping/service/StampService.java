@@ -41,4 +41,22 @@ public class StampService {
 
         return result;
     }
+
+    /**
+     * Render an HTML stamp without applying it, for stamps that are reused across PDFs.
+     * Apply the result with {@link #applyRenderedStamp}.
+     */
+    public byte[] renderStamp(StampRequest request, byte[] stampContent) {
+        return htmlStamper.render(request, stampContent);
+    }
+
+    /**
+     * Apply a stamp produced by {@link #renderStamp} to the given PDF.
+     */
+    public byte[] applyRenderedStamp(byte[] pdfBytes, StampRequest request, byte[] renderedStamp) {
+        if (pdfBytes == null || pdfBytes.length == 0) {
+            throw new StampingException("PDF file is required");
+        }
+        return htmlStamper.applyRendered(pdfBytes, request, renderedStamp);
+    }
 }
@@ -0,0 +1,220 @@
+package com.stamping.service;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Stage timers and size distributions for the stamping pipeline.
+ *
+ * <p>Every stage is recorded on {@code stamping.stage} with tags {@code stage}, {@code position}
+ * and {@code template}, with percentile histograms. Tags are kept to bounded sets: positions
+ * outside the known ones become {@code other}, templates are the resolved built-in name (unknown
+ * names fall back to {@code default_metadata} like the renderer does), and publisher or journal
+ * codes are never used as tags.
+ *
+ * <p>Each stage also records the heap its thread allocated ({@code stamping.stage.allocated}) and
+ * the size of the byte array it produced ({@code stamping.stage.buffer}), the intermediate PDFs
+ * that dominate a request's live memory. Per request, {@code stamping.request.allocated} and
+ * {@code stamping.request.buffer.peak} give the totals used to size pods and admission limits.
+ */
+@Component
+public class StampingMetrics {
+
+    public static final String PLAN = "plan";
+    public static final String DOWNLOAD = "download";
+    public static final String READ = "read";
+    public static final String PAGE_SIZE = "page-size";
+    public static final String FONT = "font";
+    public static final String TEMPLATE = "template";
+    public static final String SANITIZE = "sanitize";
+    public static final String ADS = "ads";
+    public static final String RENDER = "render";
+    public static final String OVERLAY = "overlay";
+    public static final String MERGE = "merge";
+    public static final String WRITE = "write";
+
+    /** Tag value for stages that do not belong to a position or template */
+    public static final String NONE = "none";
+
+    private static final Set<String> POSITIONS =
+            Set.of("NEW_PAGE", "HEADER", "FOOTER", "LEFT_MARGIN", "RIGHT_MARGIN", "CENTER");
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Timer> stageTimers = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> stageSummaries = new ConcurrentHashMap<>();
+    private final DistributionSummary inputBytes;
+    private final DistributionSummary outputBytes;
+    private final DistributionSummary inputPages;
+    private final DistributionSummary outputPages;
+    private final DistributionSummary requestAllocated;
+    private final DistributionSummary requestPeakBuffer;
+    private final Map<RequestTrace.Work, DistributionSummary> requestWork = new EnumMap<>(RequestTrace.Work.class);
+
+    public StampingMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.inputBytes = bytesSummary("input");
+        this.outputBytes = bytesSummary("output");
+        this.inputPages = pagesSummary("input");
+        this.outputPages = pagesSummary("output");
+        this.requestAllocated = DistributionSummary.builder("stamping.request.allocated")
+                .description("Heap allocated by one stamping request")
+                .baseUnit("bytes")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(64.0 * 1024)
+                .maximumExpectedValue(8.0 * 1024 * 1024 * 1024)
+                .register(meterRegistry);
+        this.requestPeakBuffer = DistributionSummary.builder("stamping.request.buffer.peak")
+                .description("Largest intermediate PDF buffer of one stamping request")
+                .baseUnit("bytes")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(1024.0)
+                .maximumExpectedValue(512.0 * 1024 * 1024)
+                .register(meterRegistry);
+        for (RequestTrace.Work kind : RequestTrace.Work.values()) {
+            requestWork.put(kind, DistributionSummary.builder("stamping.request.work")
+                    .description("PDF parses, PDF writes and font providers of one stamping request")
+                    .tag("op", kind.tag())
+                    .register(meterRegistry));
+        }
+    }
+
+    /** Runs {@code body} and records its duration, whether it returns or throws. */
+    public <T> T time(String stage, String position, String template, Supplier<T> body) {
+        return time(null, stage, position, template, body);
+    }
+
+    /** As {@link #time(String, String, String, Supplier)}, also adding a span to {@code trace} when given. */
+    public <T> T time(RequestTrace trace, String stage, String position, String template, Supplier<T> body) {
+        long start = System.nanoTime();
+        long allocatedAtStart = RequestTrace.currentThreadAllocatedBytes();
+        RequestTrace outer = RequestTrace.enter(trace);
+        T result = null;
+        try {
+            result = body.get();
+            return result;
+        } finally {
+            RequestTrace.exit(outer);
+            long end = System.nanoTime();
+            long allocated = allocatedAtStart < 0 ? -1 : RequestTrace.currentThreadAllocatedBytes() - allocatedAtStart;
+            long buffer = result instanceof byte[] bytes ? bytes.length : 0;
+            String pos = positionTag(position);
+            String tpl = template == null ? NONE : template;
+            stageTimer(stage, pos, tpl).record(Duration.ofNanos(end - start));
+            if (allocated >= 0) {
+                stageSummary("stamping.stage.allocated", "Heap allocated by one stamping pipeline stage",
+                        stage, pos, tpl).record(allocated);
+            }
+            if (buffer > 0) {
+                stageSummary("stamping.stage.buffer", "Size of the byte array a stamping pipeline stage produced",
+                        stage, pos, tpl).record(buffer);
+            }
+            if (trace != null) {
+                trace.record(stage, position == null ? NONE : position, start, end, allocated, buffer);
+            }
+        }
+    }
+
+    public void time(RequestTrace trace, String stage, String position, String template, Runnable body) {
+        time(trace, stage, position, template, () -> {
+            body.run();
+            return null;
+        });
+    }
+
+    /** Stage outside any position, added to {@code trace} when given. */
+    public <T> T time(RequestTrace trace, String stage, Supplier<T> body) {
+        return time(trace, stage, NONE, NONE, body);
+    }
+
+    public void time(String stage, String position, String template, Runnable body) {
+        time(stage, position, template, () -> {
+            body.run();
+            return null;
+        });
+    }
+
+    /** Stage outside any position (download, read, page-size, font, write). */
+    public <T> T time(String stage, Supplier<T> body) {
+        return time(stage, NONE, NONE, body);
+    }
+
+    public void recordInput(long bytes, int pages) {
+        inputBytes.record(bytes);
+        inputPages.record(pages);
+    }
+
+    public void recordOutput(long bytes, int pages) {
+        outputBytes.record(bytes);
+        outputPages.record(pages);
+    }
+
+    /** Records the memory totals of a finished request. */
+    public void recordRequest(RequestTrace trace) {
+        long allocated = trace.allocatedBytes();
+        if (allocated >= 0) {
+            requestAllocated.record(allocated);
+        }
+        requestPeakBuffer.record(trace.peakBufferBytes());
+        requestWork.forEach((kind, summary) -> summary.record(trace.work(kind)));
+    }
+
+    private static String positionTag(String position) {
+        return position == null || NONE.equals(position) ? NONE
+                : POSITIONS.contains(position.toUpperCase()) ? position.toUpperCase() : "other";
+    }
+
+    private DistributionSummary stageSummary(String name, String description, String stage, String pos, String tpl) {
+        return stageSummaries.computeIfAbsent(name + '|' + stage + '|' + pos + '|' + tpl,
+                k -> DistributionSummary.builder(name)
+                        .description(description)
+                        .baseUnit("bytes")
+                        .tag("stage", stage)
+                        .tag("position", pos)
+                        .tag("template", tpl)
+                        .register(meterRegistry));
+    }
+
+    private Timer stageTimer(String stage, String pos, String tpl) {
+        return stageTimers.computeIfAbsent(stage + '|' + pos + '|' + tpl, k -> Timer.builder("stamping.stage")
+                .description("Duration of one stamping pipeline stage")
+                .tag("stage", stage)
+                .tag("position", pos)
+                .tag("template", tpl)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(1))
+                .register(meterRegistry));
+    }
+
+    private DistributionSummary bytesSummary(String side) {
+        return DistributionSummary.builder("stamping.pdf.bytes")
+                .description("Size of source and stamped PDFs")
+                .baseUnit("bytes")
+                .tag("side", side)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(1024.0)
+                .maximumExpectedValue(512.0 * 1024 * 1024)
+                .register(meterRegistry);
+    }
+
+    private DistributionSummary pagesSummary(String side) {
+        return DistributionSummary.builder("stamping.pdf.pages")
+                .description("Page count of source and stamped PDFs")
+                .baseUnit("pages")
+                .tag("side", side)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(1.0)
+                .maximumExpectedValue(5000.0)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,235 @@
+package com.stamping.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.stamping.config.StampingProperties;
+import com.stamping.exception.StampingException;
+import com.stamping.exception.TempStorageExhaustedException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Owns every scratch file the service writes (PDF downloads, demo placeholder PDFs).
+ *
+ * <p>Files are handed out as reference-counted {@link Handle}s: the file is deleted as soon as
+ * the last holder closes its handle, so nothing depends on deleteOnExit or a periodic sweep.
+ * Each handle reserves bytes against {@code stamping.temp-storage.quota-bytes}; when the quota
+ * is used up, new allocations wait up to {@code acquire-timeout} for space and then fail with
+ * {@link TempStorageExhaustedException} (HTTP 503) instead of filling the volume.
+ * Usage is published as {@code stamping.temp.*} metrics.
+ */
+@Slf4j
+@Component
+public class TempStorage {
+
+    private static final long LEAK_WARN_AGE_MS = 30 * 60 * 1000;
+
+    private final StampingProperties.TempStorage config;
+    private final File dir;
+    private final Map<File, Handle> live = new ConcurrentHashMap<>();
+    private long reservedBytes;
+
+    private final Counter waits;
+    private final Counter rejections;
+
+    public TempStorage(StampingProperties properties, MeterRegistry meterRegistry) {
+        this.config = properties.getTempStorage();
+        this.dir = new File(properties.getTempDir(), "scratch");
+        purgeLeftovers();
+
+        this.waits = Counter.builder("stamping.temp.waits")
+                .description("Scratch allocations that had to wait for quota")
+                .register(meterRegistry);
+        this.rejections = Counter.builder("stamping.temp.rejected")
+                .description("Scratch allocations rejected after waiting for quota")
+                .register(meterRegistry);
+        Gauge.builder("stamping.temp.usage.bytes", this, TempStorage::usedBytes).baseUnit("bytes")
+                .description("Bytes reserved by live scratch files").register(meterRegistry);
+        Gauge.builder("stamping.temp.quota.bytes", config, StampingProperties.TempStorage::getQuotaBytes)
+                .baseUnit("bytes").description("Scratch storage quota").register(meterRegistry);
+        Gauge.builder("stamping.temp.handles", live, Map::size)
+                .description("Live scratch files").register(meterRegistry);
+    }
+
+    /**
+     * Creates an empty scratch file, reserving {@code expectedBytes} of quota for it.
+     * Blocks while the quota is exhausted. The returned handle holds one reference.
+     */
+    public Handle allocate(String prefix, String suffix, long expectedBytes) {
+        reserve(expectedBytes);
+        try {
+            Files.createDirectories(dir.toPath());
+            File file = File.createTempFile(prefix, suffix, dir);
+            Handle handle = new Handle(file, expectedBytes);
+            live.put(file, handle);
+            return handle;
+        } catch (IOException e) {
+            release(expectedBytes);
+            throw new StampingException("Failed to create temp file: " + e.getMessage(), e);
+        }
+    }
+
+    /** Allocates a scratch file and writes the given bytes to it. */
+    public Handle write(String prefix, String suffix, byte[] data) {
+        Handle handle = allocate(prefix, suffix, data.length);
+        try {
+            Files.write(handle.file().toPath(), data);
+            return handle;
+        } catch (IOException e) {
+            handle.close();
+            throw new StampingException("Failed to write temp file: " + e.getMessage(), e);
+        }
+    }
+
+    /** Bytes currently reserved by live handles. */
+    public synchronized long usedBytes() {
+        return reservedBytes;
+    }
+
+    /**
+     * Scheduled check — runs every 15 minutes.
+     * Warns about handles held for more than 30 minutes (a caller that never closed its handle)
+     * and deletes files in the scratch dir that no live handle owns.
+     */
+    @Scheduled(fixedRate = 15 * 60 * 1000, initialDelay = 5 * 60 * 1000)
+    public void auditScratchDir() {
+        long now = System.currentTimeMillis();
+        for (Handle h : live.values()) {
+            if (now - h.createdAt > LEAK_WARN_AGE_MS) {
+                log.warn("Temp storage: {} held for {} min, refs={} — possible leak",
+                        h.file().getName(), (now - h.createdAt) / 60000, h.refs.get());
+            }
+        }
+        File[] files = dir.listFiles(File::isFile);
+        if (files == null) return;
+        int deleted = 0;
+        for (File f : files) {
+            if (!live.containsKey(f) && now - f.lastModified() > LEAK_WARN_AGE_MS && f.delete()) {
+                deleted++;
+            }
+        }
+        if (deleted > 0) {
+            log.info("Temp storage: deleted {} orphaned scratch file(s) from {}", deleted, dir.getAbsolutePath());
+        }
+    }
+
+    private synchronized void reserve(long bytes) {
+        if (bytes > config.getQuotaBytes()) {
+            rejections.increment();
+            throw new TempStorageExhaustedException(
+                    "Temp file of " + bytes / 1024 / 1024 + " MB exceeds the temp storage quota");
+        }
+        if (reservedBytes + bytes > config.getQuotaBytes()) {
+            waits.increment();
+            long deadline = System.currentTimeMillis() + config.getAcquireTimeout();
+            while (reservedBytes + bytes > config.getQuotaBytes()) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    rejections.increment();
+                    throw new TempStorageExhaustedException("Temp storage is full, try again later");
+                }
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new TempStorageExhaustedException("Interrupted while waiting for temp storage");
+                }
+            }
+        }
+        reservedBytes += bytes;
+    }
+
+    private synchronized void release(long bytes) {
+        reservedBytes -= bytes;
+        notifyAll();
+    }
+
+    /** Adjusts a reservation in place; growing never blocks since the bytes are already on disk. */
+    private synchronized void adjust(long delta) {
+        reservedBytes += delta;
+        if (delta < 0) notifyAll();
+    }
+
+    private void purgeLeftovers() {
+        File[] files = dir.listFiles(File::isFile);
+        if (files == null) return;
+        int deleted = 0;
+        for (File f : files) {
+            if (f.delete()) deleted++;
+        }
+        if (deleted > 0) {
+            log.info("Temp storage: removed {} scratch file(s) left by a previous run", deleted);
+        }
+    }
+
+    /**
+     * Reference-counted scratch file. Every {@link #retain()} must be matched by a
+     * {@link #close()}; the file is deleted and its quota released when the count reaches zero.
+     */
+    public final class Handle implements AutoCloseable {
+
+        private final File file;
+        private final AtomicInteger refs = new AtomicInteger(1);
+        private final long createdAt = System.currentTimeMillis();
+        private long reserved;
+
+        private Handle(File file, long reserved) {
+            this.file = file;
+            this.reserved = reserved;
+        }
+
+        public File file() {
+            return file;
+        }
+
+        /** Adds a reference for another holder (e.g. an async consumer of the file). */
+        public Handle retain() {
+            if (refs.getAndUpdate(n -> n > 0 ? n + 1 : n) <= 0) {
+                throw new IllegalStateException("Temp file already released: " + file.getName());
+            }
+            return this;
+        }
+
+        /**
+         * Reserves {@code bytes} more for a file written in parts whose size is not known up
+         * front. Blocks like {@link TempStorage#allocate} while the quota is used up.
+         */
+        public void grow(long bytes) {
+            reserve(bytes);
+            synchronized (this) {
+                reserved += bytes;
+            }
+        }
+
+        /** Replaces the up-front reservation with the file's actual size once it is written. */
+        public synchronized void settle() {
+            long actual = file.length();
+            adjust(actual - reserved);
+            reserved = actual;
+        }
+
+        @Override
+        public void close() {
+            if (refs.decrementAndGet() != 0) return;
+            live.remove(file);
+            if (!file.delete() && file.exists()) {
+                log.warn("Temp storage: could not delete {}", file.getAbsolutePath());
+            }
+            synchronized (this) {
+                release(reserved);
+                reserved = 0;
+            }
+        }
+    }
+}
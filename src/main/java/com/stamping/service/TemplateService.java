@@ -25,14 +25,17 @@ public class TemplateService {
     private final AdStampService adStampService;
     private final PdfFontExtractor pdfFontExtractor;
     private final StampingProperties properties;
+    private final StampingMetrics metrics;
     private final Map<String, String> templates;
 
     public TemplateService(AdFetchService adFetchService, AdStampService adStampService,
-                           PdfFontExtractor pdfFontExtractor, StampingProperties properties) {
+                           PdfFontExtractor pdfFontExtractor, StampingProperties properties,
+                           StampingMetrics metrics) {
         this.adFetchService = adFetchService;
         this.adStampService = adStampService;
         this.pdfFontExtractor = pdfFontExtractor;
         this.properties = properties;
+        this.metrics = metrics;
         templates = new HashMap<>();
 
         templates.put("journal_article", 
@@ -161,21 +164,25 @@ public class TemplateService {
 
     public String renderTemplate(DynamicStampRequest.Configuration config, JournalMetadataRequest request,
                                  PdfFontExtractor.FontInfo fontInfo) {
-        String templateName = config.getTemplateName() != null ? config.getTemplateName() : "default_metadata";
-        String template = templates.getOrDefault(templateName, templates.get("default_metadata"));
+        return fillTemplate(compileTemplate(config, request.isDemoMode()), config, request, fontInfo);
+    }
 
-        // Inject extracted PDF font into the template
-        if (fontInfo != null) {
-            template = pdfFontExtractor.injectFontIntoHtml(template, fontInfo);
-        }
-        
-        // Date
-        if (Boolean.TRUE.equals(config.getIncludeDate())) {
-            String dateStr = LocalDate.now().format(DateTimeFormatter.ofPattern("MMMM d, yyyy"));
-            template = template.replace("{{DATE}}", dateStr);
-        } else {
+    /** The built-in template used for {@code templateName}: unknown or missing names fall back to default_metadata. */
+    public String resolveTemplateName(String templateName) {
+        return templateName != null && templates.containsKey(templateName) ? templateName : "default_metadata";
+    }
+
+    /**
+     * Resolves everything in the template that depends only on the config: template choice,
+     * logo, link, and removal of blocks the config switches off. The result is reused by
+     * {@link #fillTemplate} for every article stamped with the same config.
+     */
+    public String compileTemplate(DynamicStampRequest.Configuration config, boolean demo) {
+        String template = templates.get(resolveTemplateName(config.getTemplateName()));
+
+        if (!Boolean.TRUE.equals(config.getIncludeDate())) {
             template = template.replace("{{DATE}}", "");
-            template = template.replaceAll("<[^>]*class=\"date-block\"[^>]*>[\\s\\S]*?</[^>]+>", "");
+            template = removeBlock(template, "date-block");
         }
 
         // Logo
@@ -183,38 +190,26 @@ public class TemplateService {
         if (logoBase64 != null && !logoBase64.isBlank()) {
             String mime = config.getLogoMimeType() != null ? config.getLogoMimeType() : "image/png";
             template = template.replace("{{LOGO}}", "<img src=\"data:" + mime + ";base64," + logoBase64 + "\" style=\"max-width: 200px; display: block; margin-bottom: 16px;\" />");
-        } else if (request.isDemoMode()) {
+        } else if (demo) {
             // In demo mode, inject the HighWire logo SVG when no custom logo is provided
             template = template.replace("{{LOGO}}", DemoStampService.getHighWireLogoSvg());
         } else {
             template = template.replace("{{LOGO}}", "");
         }
 
-        // Title
-        if (Boolean.TRUE.equals(config.getIncludeArticleTitle()) && request.getArticleTitle() != null && !request.getArticleTitle().isBlank()) {
-            template = template.replace("{{ARTICLE_TITLE}}", request.getArticleTitle());
-        } else {
+        if (!Boolean.TRUE.equals(config.getIncludeArticleTitle())) {
             template = template.replace("{{ARTICLE_TITLE}}", "");
-            template = template.replaceAll("<[^>]*class=\"article-title-block\"[^>]*>[\\s\\S]*?</[^>]+>", "");
+            template = removeBlock(template, "article-title-block");
         }
-
-        // Authors
-        if (Boolean.TRUE.equals(config.getIncludeAuthors()) && request.getAuthors() != null && !request.getAuthors().isBlank()) {
-            template = template.replace("{{AUTHORS}}", request.getAuthors());
-        } else {
+        if (!Boolean.TRUE.equals(config.getIncludeAuthors())) {
             template = template.replace("{{AUTHORS}}", "");
-            template = template.replaceAll("<[^>]*class=\"authors-block\"[^>]*>[\\s\\S]*?</[^>]+>", "");
+            template = removeBlock(template, "authors-block");
         }
-
-        // DOI
-        if (Boolean.TRUE.equals(config.getIncludeDoi()) && request.getDoiValue() != null && !request.getDoiValue().isBlank()) {
-            String doiUrl = request.getDoiValue().startsWith("http") ? request.getDoiValue() : "https://doi.org/" + request.getDoiValue();
-            template = template.replace("{{DOI}}", doiUrl);
-        } else {
+        if (!Boolean.TRUE.equals(config.getIncludeDoi())) {
             template = template.replace("{{DOI}}", "");
-            template = template.replaceAll("<[^>]*class=\"doi-block\"[^>]*>[\\s\\S]*?</[^>]+>", "");
+            template = removeBlock(template, "doi-block");
         }
-        
+
         // Link
         String linkUrl = config.getLinkUrl();
         String linkText = config.getLinkText();
@@ -222,18 +217,68 @@ public class TemplateService {
             template = template.replace("{{LINK_URL}}", linkUrl);
             template = template.replace("{{LINK_TEXT}}", linkText);
         } else {
-            template = template.replaceAll("<[^>]*class=\"link-block\"[^>]*>[\\s\\S]*?</[^>]+>", "");
+            template = removeBlock(template, "link-block");
+        }
+
+        if (!Boolean.TRUE.equals(config.getIncludeCurrentUser())) {
+            template = template.replace("{{USER}}", "");
+        }
+        return template;
+    }
+
+    /**
+     * Fills a template from {@link #compileTemplate} with per-request values: extracted font,
+     * date, article metadata and the ad banner.
+     */
+    public String fillTemplate(String template, DynamicStampRequest.Configuration config,
+                               JournalMetadataRequest request, PdfFontExtractor.FontInfo fontInfo) {
+        // Inject extracted PDF font into the template
+        if (fontInfo != null) {
+            template = pdfFontExtractor.injectFontIntoHtml(template, fontInfo);
+        }
+
+        // Date
+        if (template.contains("{{DATE}}")) {
+            String dateStr = LocalDate.now().format(DateTimeFormatter.ofPattern("MMMM d, yyyy"));
+            template = template.replace("{{DATE}}", dateStr);
+        }
+
+        // Title
+        if (template.contains("{{ARTICLE_TITLE}}")) {
+            if (request.getArticleTitle() != null && !request.getArticleTitle().isBlank()) {
+                template = template.replace("{{ARTICLE_TITLE}}", request.getArticleTitle());
+            } else {
+                template = template.replace("{{ARTICLE_TITLE}}", "");
+                template = removeBlock(template, "article-title-block");
+            }
+        }
+
+        // Authors
+        if (template.contains("{{AUTHORS}}")) {
+            if (request.getAuthors() != null && !request.getAuthors().isBlank()) {
+                template = template.replace("{{AUTHORS}}", request.getAuthors());
+            } else {
+                template = template.replace("{{AUTHORS}}", "");
+                template = removeBlock(template, "authors-block");
+            }
+        }
+
+        // DOI
+        if (template.contains("{{DOI}}")) {
+            if (request.getDoiValue() != null && !request.getDoiValue().isBlank()) {
+                String doiUrl = request.getDoiValue().startsWith("http") ? request.getDoiValue() : "https://doi.org/" + request.getDoiValue();
+                template = template.replace("{{DOI}}", doiUrl);
+            } else {
+                template = template.replace("{{DOI}}", "");
+                template = removeBlock(template, "doi-block");
+            }
         }
 
         // Additional Metadata Fields
         template = template.replace("{{COPYRIGHT}}", request.getArticleCopyright() != null ? request.getArticleCopyright() : "");
         template = template.replace("{{ISSN}}", request.getArticleIssn() != null ? request.getArticleIssn() : "");
         template = template.replace("{{ARTICLE_ID}}", request.getArticleId() != null ? request.getArticleId() : "");
-        if (Boolean.TRUE.equals(config.getIncludeCurrentUser()) && request.getDownloadedBy() != null && !request.getDownloadedBy().isBlank()) {
-            template = template.replace("{{USER}}", request.getDownloadedBy());
-        } else {
-            template = template.replace("{{USER}}", "");
-        }
+        template = template.replace("{{USER}}", request.getDownloadedBy() != null ? request.getDownloadedBy() : "");
 
         // Ad Banner — fetch and inject if ads are enabled and template has the placeholder
         // For NEW_PAGE templates, only use ads with position "pdf ad one"
@@ -242,11 +287,9 @@ public class TemplateService {
             if (Boolean.TRUE.equals(config.getAdsEnabled())
                     && request.getPublisherId() != null && !request.getPublisherId().isBlank()
                     && request.getJcode() != null && !request.getJcode().isBlank()) {
-                String adUrl = properties.getAds().getBaseUrl()
-                        + "?publisherId=" + request.getPublisherId()
-                        + "&jcode=" + request.getJcode()
-                        + "&sectionPath=" + properties.getAds().getSectionPath();
-                AdResponse adResponse = adFetchService.fetchAds(adUrl);
+                String adUrl = adFetchService.buildAdUrl(request.getPublisherId(), request.getJcode());
+                AdResponse adResponse = metrics.time(StampingMetrics.ADS, "NEW_PAGE",
+                        resolveTemplateName(config.getTemplateName()), () -> adFetchService.fetchAds(adUrl));
                 if (adResponse != null && adResponse.getSection() != null) {
                     outer:
                     for (Section sec : adResponse.getSection()) {
@@ -257,7 +300,7 @@ public class TemplateService {
                                         && location.getAdData() != null) {
                                     for (AdData ad : location.getAdData()) {
                                         if (ad.getAdHtml() != null && !ad.getAdHtml().isEmpty()) {
-                                            adHtml = adStampService.processHtmlContent(ad.getAdHtml(), config.getLegacyDomain());
+                                            adHtml = adStampService.processAd(ad, config.getLegacyDomain());
                                             break outer;
                                         }
                                     }
@@ -276,10 +319,14 @@ public class TemplateService {
             }
             template = template.replace("{{AD_BANNER}}", adHtml);
             if (adHtml.isEmpty()) {
-                template = template.replaceAll("<[^>]*class=\"ad-banner-block\"[^>]*>[\\s\\S]*?</[^>]+>", "");
+                template = removeBlock(template, "ad-banner-block");
             }
         }
 
         return template;
     }
+
+    private static String removeBlock(String template, String cssClass) {
+        return template.replaceAll("<[^>]*class=\"" + cssClass + "\"[^>]*>[\\s\\S]*?</[^>]+>", "");
+    }
 }
@@ -0,0 +1,396 @@
+package com.stamping.service.batch;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.itextpdf.kernel.geom.Rectangle;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfOutline;
+import com.itextpdf.kernel.pdf.PdfPage;
+import com.itextpdf.kernel.pdf.WriterProperties;
+import com.itextpdf.kernel.pdf.navigation.PdfExplicitDestination;
+import com.stamping.config.StampingProperties;
+import com.stamping.exception.StampingException;
+import com.stamping.model.IssueCompilationRequest;
+import com.stamping.model.JournalMetadataRequest;
+import com.stamping.service.AdFetchService;
+import com.stamping.service.PdfIo;
+import com.stamping.service.RequestTrace;
+import com.stamping.service.StampOrchestrationService;
+import com.stamping.service.StampOrchestrationService.StampResult;
+import com.stamping.service.TempStorage;
+import com.stamping.service.plan.PlannedPosition;
+import com.stamping.service.plan.StampingPlan;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Stamps a list of articles with one saved config, either into a ZIP of separate PDFs
+ * ({@link #write}) or into one compiled issue PDF ({@link #compile}).
+ *
+ * <p>All items go through the same {@link StampingPlan}, so the config-derived work (sanitized
+ * HTML, resolved templates, decoded logos, pre-rendered static overlays) is done once for the
+ * batch. Ads are fetched once up front so concurrent items hit the ad cache instead of all missing
+ * it together. At most {@code batch.parallelism} items of a batch are in flight, and each result is
+ * written out as soon as it can be, so memory stays bounded by the window rather than the batch.
+ * Items run on a pool of {@code batch.workers} threads shared by all batches, so concurrent
+ * batches queue for a thread instead of each adding its own.
+ *
+ * <p>In a ZIP, items that fail do not stop the batch, and every item, successful or not, is listed
+ * in the final {@code manifest.json} entry. A compilation needs every article, so the first
+ * failure stops it.
+ */
+@Slf4j
+@Service
+public class BatchStampService {
+
+    public static final String MANIFEST = "manifest.json";
+
+    /** Manifest line of one item; {@code entry} is its file in the ZIP, absent when it failed. */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record ItemResult(int index, String articleId, String status, String entry, Long bytes,
+                             long durationMs, String serverTiming, String error) {}
+
+    public record Manifest(String pubId, String jcode, int items, int succeeded, int failed, long durationMs,
+                           List<ItemResult> results) {}
+
+    private record Outcome(ItemResult result, byte[] pdf) {}
+
+    /** A compiled issue in a scratch file; the caller closes the handle once it is sent. */
+    public record Compilation(TempStorage.Handle file, String filename, int articles, int pages) {}
+
+    private final StampingProperties.Batch config;
+    private final StampOrchestrationService orchestrationService;
+    private final AdFetchService adFetchService;
+    private final ObjectMapper objectMapper;
+    private final TempStorage tempStorage;
+    private final ExecutorService executor;
+    private final Counter succeeded;
+    private final Counter failed;
+
+    public BatchStampService(StampingProperties properties, StampOrchestrationService orchestrationService,
+                             AdFetchService adFetchService, ObjectMapper objectMapper, TempStorage tempStorage,
+                             MeterRegistry meterRegistry) {
+        this.config = properties.getBatch();
+        this.orchestrationService = orchestrationService;
+        this.adFetchService = adFetchService;
+        this.objectMapper = objectMapper;
+        this.tempStorage = tempStorage;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(config.getWorkers(), config.getWorkers(), 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "stamp-batch-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.succeeded = Counter.builder("stamping.batch.items").tag("result", "succeeded")
+                .description("Batch items stamped").register(meterRegistry);
+        this.failed = Counter.builder("stamping.batch.items").tag("result", "failed")
+                .description("Batch items stamped").register(meterRegistry);
+    }
+
+    /** Stops the shared pool; items still running get a grace period before they are interrupted. */
+    @PreDestroy
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Rejects an empty or oversized batch, or items that carry their own positions. */
+    public void validate(List<JournalMetadataRequest> items) {
+        if (items == null || items.isEmpty()) {
+            throw new StampingException("items is required");
+        }
+        if (items.size() > config.getMaxItems()) {
+            throw new StampingException("A batch holds at most " + config.getMaxItems() + " items, got " + items.size());
+        }
+        for (JournalMetadataRequest item : items) {
+            if (item == null) {
+                throw new StampingException("items must not contain null");
+            }
+            if (item.getPositions() != null && !item.getPositions().isEmpty()) {
+                throw new StampingException("positions are taken from the saved config; items must not carry positions");
+            }
+        }
+    }
+
+    /**
+     * Rejects a compilation that {@link #validate} rejects or that holds more than
+     * {@code batch.max-compilation-items}: a compilation is built before its response starts, so
+     * its size bounds how long it holds a request thread.
+     */
+    public void validateCompilation(List<JournalMetadataRequest> items) {
+        validate(items);
+        if (items.size() > config.getMaxCompilationItems()) {
+            throw new StampingException("A compilation holds at most " + config.getMaxCompilationItems()
+                    + " items, got " + items.size());
+        }
+    }
+
+    /**
+     * Stamps every item with {@code plan} and writes the ZIP to {@code out}: one PDF entry per
+     * successful item, in completion order, then {@code manifest.json}. If writing fails (the
+     * client went away), items not yet started are cancelled.
+     */
+    public Manifest write(StampingPlan plan, List<JournalMetadataRequest> items, OutputStream out) throws IOException {
+        long start = System.currentTimeMillis();
+        log.info("  BATCH START  pubId={}  jcode={}  items={}  parallelism={}", plan.pubId(), plan.jcode(),
+                items.size(), config.getParallelism());
+        prefetchAds(plan);
+
+        int width = String.valueOf(items.size()).length();
+        ItemResult[] results = new ItemResult[items.size()];
+        CompletionService<Outcome> completion = new ExecutorCompletionService<>(executor);
+        List<Future<Outcome>> futures = new ArrayList<>();
+        int next = 0;
+        int pending = 0;
+        try {
+            ZipOutputStream zip = new ZipOutputStream(out);
+            for (; next < Math.min(config.getParallelism(), items.size()); next++, pending++) {
+                futures.add(submit(completion, plan, items.get(next), next, width));
+            }
+            while (pending > 0) {
+                Outcome outcome = completion.take().get();
+                pending--;
+                if (next < items.size()) {
+                    futures.add(submit(completion, plan, items.get(next), next, width));
+                    next++;
+                    pending++;
+                }
+                if (outcome.pdf() != null) {
+                    writeStored(zip, outcome.result().entry(), outcome.pdf());
+                }
+                results[outcome.result().index()] = outcome.result();
+            }
+            Manifest manifest = manifest(plan, results, start);
+            zip.putNextEntry(new ZipEntry(MANIFEST));
+            zip.write(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(manifest));
+            zip.closeEntry();
+            zip.finish();
+            log.info("  BATCH DONE  pubId={}  jcode={}  succeeded={}  failed={}  {} ms", plan.pubId(), plan.jcode(),
+                    manifest.succeeded(), manifest.failed(), manifest.durationMs());
+            return manifest;
+        } catch (IOException e) {
+            futures.forEach(f -> f.cancel(false));
+            log.warn("  BATCH ABORTED  pubId={}  jcode={}  after {} of {} items: {}", plan.pubId(), plan.jcode(),
+                    Arrays.stream(results).filter(r -> r != null).count(), items.size(), e.getMessage());
+            throw e;
+        } catch (InterruptedException e) {
+            futures.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new StampingException("Batch interrupted", e);
+        } catch (ExecutionException e) {
+            // Items report their own failures; this is a bug
+            futures.forEach(f -> f.cancel(true));
+            throw new StampingException("Batch failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Stamps every item with {@code plan} and merges them, in order, into one PDF: the shared cover
+     * (when {@code request.cover} is set), then each article's pages under a bookmark of its own.
+     * The config's newPage section is used only for the shared cover, never per article.
+     *
+     * <p>Articles are stamped ahead in a window of {@code batch.parallelism} and appended to the
+     * output one at a time. Each article's pages are flushed to the scratch file as soon as they are
+     * copied, so memory is bounded by the window, not the issue. Before each one is appended, the
+     * scratch file's temp storage reservation grows by its stamped size, so a compilation waits for
+     * (or is refused) quota like any other scratch file. The writer runs in smart mode:
+     * objects identical across articles (overlay XObjects, fonts, logos) are written once and
+     * shared by every page that uses them.
+     */
+    public Compilation compile(StampingPlan plan, IssueCompilationRequest request) {
+        long start = System.currentTimeMillis();
+        List<JournalMetadataRequest> items = request.getItems();
+        StampingPlan articlePlan = new StampingPlan(plan.id(), plan.pubId(), plan.jcode(), plan.source(),
+                plan.positions().stream().filter(p -> !p.isNewPage()).toList());
+        if (request.getCover() != null && plan.positions().stream().noneMatch(PlannedPosition::isNewPage)) {
+            throw new StampingException("The config of " + plan.pubId() + "/" + plan.jcode()
+                    + " has no cover page (newPage) section");
+        }
+        log.info("  COMPILATION START  pubId={}  jcode={}  articles={}  cover={}  parallelism={}", plan.pubId(),
+                plan.jcode(), items.size(), request.getCover() != null, config.getParallelism());
+        prefetchAds(plan);
+
+        List<Future<StampResult>> futures = new ArrayList<>();
+        for (int i = 0; i < Math.min(config.getParallelism(), items.size()); i++) {
+            futures.add(submitArticle(articlePlan, items.get(i)));
+        }
+        TempStorage.Handle handle = tempStorage.allocate("compilation_", ".pdf", 0);
+        long articleBytes = 0;
+        int pages;
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(handle.file()));
+             PdfDocument out = new PdfDocument(PdfIo.writer(os,
+                     new WriterProperties().useSmartMode().setFullCompressionMode(true)))) {
+            if (request.getTitle() != null && !request.getTitle().isBlank()) {
+                out.getDocumentInfo().setTitle(request.getTitle());
+            }
+            PdfOutline outline = out.getOutlines(false);
+            for (int i = 0; i < items.size(); i++) {
+                StampResult article = awaitArticle(futures, i, items.get(i));
+                if (futures.size() < items.size()) {
+                    futures.add(submitArticle(articlePlan, items.get(futures.size())));
+                }
+                futures.set(i, null);
+                if (i == 0 && request.getCover() != null) {
+                    byte[] cover = orchestrationService.renderNewPage(plan, request.getCover(),
+                            firstPageSize(article.pdfBytes()), new RequestTrace());
+                    handle.grow(cover.length);
+                    append(out, outline, cover, bookmark(request.getCover(), "Cover"));
+                }
+                handle.grow(article.pdfBytes().length);
+                append(out, outline, article.pdfBytes(), bookmark(items.get(i), "Article " + (i + 1)));
+                articleBytes += article.pdfBytes().length;
+            }
+            pages = out.getNumberOfPages();
+        } catch (IOException | RuntimeException e) {
+            futures.stream().filter(f -> f != null).forEach(f -> f.cancel(true));
+            handle.close();
+            throw e instanceof StampingException se ? se
+                    : new StampingException("Failed to write compilation: " + e.getMessage(), e);
+        }
+        handle.settle();
+        log.info("  COMPILATION DONE  pubId={}  jcode={}  articles={}  pages={}  size={} KB"
+                        + "  (articles stamped separately: {} KB)  {} ms", plan.pubId(), plan.jcode(), items.size(),
+                pages, handle.file().length() / 1024, articleBytes / 1024, System.currentTimeMillis() - start);
+        return new Compilation(handle, filename(plan, request.getTitle()), items.size(), pages);
+    }
+
+    private Future<StampResult> submitArticle(StampingPlan plan, JournalMetadataRequest item) {
+        return executor.submit(() -> orchestrationService.processWithPlan(plan, item));
+    }
+
+    private static StampResult awaitArticle(List<Future<StampResult>> futures, int index,
+                                            JournalMetadataRequest item) {
+        try {
+            return futures.get(index).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StampingException("Compilation interrupted", e);
+        } catch (ExecutionException e) {
+            String message = e.getCause() instanceof StampingException ? e.getCause().getMessage()
+                    : "An unexpected error occurred";
+            if (!(e.getCause() instanceof StampingException)) {
+                log.error("  COMPILATION article {} failed", index + 1, e.getCause());
+            }
+            throw new StampingException("Article " + (index + 1)
+                    + (item.getArticleId() != null ? " (" + item.getArticleId() + ")" : "") + ": " + message,
+                    e.getCause());
+        }
+    }
+
+    /** Copies every page of {@code pdf} to the end of {@code out} under a new top-level bookmark. */
+    private static void append(PdfDocument out, PdfOutline outline, byte[] pdf, String title) throws IOException {
+        try (PdfDocument source = new PdfDocument(PdfIo.reader(pdf))) {
+            List<PdfPage> copied = source.copyPagesTo(1, source.getNumberOfPages(), out);
+            outline.addOutline(title).addDestination(PdfExplicitDestination.createFit(copied.get(0)));
+            out.flushCopiedObjects(source);
+        }
+    }
+
+    private static Rectangle firstPageSize(byte[] pdf) throws IOException {
+        try (PdfDocument doc = new PdfDocument(PdfIo.reader(pdf))) {
+            return doc.getPage(1).getPageSize();
+        }
+    }
+
+    private static String bookmark(JournalMetadataRequest item, String fallback) {
+        if (item.getArticleTitle() != null && !item.getArticleTitle().isBlank()) {
+            return item.getArticleTitle();
+        }
+        return item.getArticleId() != null && !item.getArticleId().isBlank() ? item.getArticleId() : fallback;
+    }
+
+    private static String filename(StampingPlan plan, String title) {
+        String base = title != null && !title.isBlank()
+                ? title.trim().replaceAll("[^A-Za-z0-9._-]+", "_")
+                : plan.pubId() + "_" + plan.jcode() + "_compilation";
+        return base + ".pdf";
+    }
+
+    private Future<Outcome> submit(CompletionService<Outcome> completion, StampingPlan plan,
+                                   JournalMetadataRequest item, int index, int width) {
+        return completion.submit(() -> stamp(plan, item, index, width));
+    }
+
+    private Outcome stamp(StampingPlan plan, JournalMetadataRequest item, int index, int width) {
+        long start = System.currentTimeMillis();
+        try {
+            StampResult result = orchestrationService.processWithPlan(plan, item);
+            String entry = String.format("%0" + width + "d-%s", index + 1,
+                    result.filename().replace('/', '_').replace('\\', '_'));
+            succeeded.increment();
+            return new Outcome(new ItemResult(index, item.getArticleId(), "ok", entry,
+                    (long) result.pdfBytes().length, System.currentTimeMillis() - start,
+                    result.trace().serverTiming(), null), result.pdfBytes());
+        } catch (Exception e) {
+            String message = e instanceof StampingException ? e.getMessage() : "An unexpected error occurred";
+            log.warn("  BATCH ITEM {} FAILED: {}", index, e.getMessage(), e instanceof StampingException ? null : e);
+            failed.increment();
+            return new Outcome(new ItemResult(index, item.getArticleId(), "error", null, null,
+                    System.currentTimeMillis() - start, null, message), null);
+        }
+    }
+
+    /** Warms the ad cache once when any position shows ads; a failure here is left to the items. */
+    private void prefetchAds(StampingPlan plan) {
+        boolean ads = plan.positions().stream()
+                .map(PlannedPosition::config)
+                .anyMatch(c -> c != null && Boolean.TRUE.equals(c.getAdsEnabled()));
+        if (ads) {
+            adFetchService.fetchAds(adFetchService.buildAdUrl(plan.pubId(), plan.jcode()));
+        }
+    }
+
+    /** PDFs are compressed already, so entries are stored rather than deflated again. */
+    private static void writeStored(ZipOutputStream zip, String name, byte[] bytes) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(bytes.length);
+        entry.setCompressedSize(bytes.length);
+        entry.setCrc(crc.getValue());
+        zip.putNextEntry(entry);
+        zip.write(bytes);
+        zip.closeEntry();
+        zip.flush();
+    }
+
+    private static Manifest manifest(StampingPlan plan, ItemResult[] results, long start) {
+        int ok = (int) Arrays.stream(results).filter(r -> "ok".equals(r.status())).count();
+        return new Manifest(plan.pubId(), plan.jcode(), results.length, ok, results.length - ok,
+                System.currentTimeMillis() - start, List.of(results));
+    }
+}
@@ -0,0 +1,69 @@
+package com.stamping.service.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Small thread-safe LRU cache bounded by total weight (entry count by default, or e.g. bytes).
+ * Entries heavier than the whole budget are never admitted.
+ */
+public class LruCache<K, V> {
+
+    private final LinkedHashMap<K, V> map = new LinkedHashMap<>(16, 0.75f, true);
+    private final ToLongFunction<V> weigher;
+    private final long maxWeight;
+    private long weight;
+    private long hits;
+    private long misses;
+
+    /** Cache bounded by number of entries. */
+    public LruCache(long maxEntries) {
+        this(maxEntries, v -> 1L);
+    }
+
+    /** Cache bounded by the summed weight of its values. */
+    public LruCache(long maxWeight, ToLongFunction<V> weigher) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    public synchronized V get(K key) {
+        V value = map.get(key);
+        if (value != null) hits++; else misses++;
+        return value;
+    }
+
+    public synchronized void put(K key, V value) {
+        long w = weigher.applyAsLong(value);
+        V previous = map.remove(key);
+        if (previous != null) weight -= weigher.applyAsLong(previous);
+        if (w > maxWeight) return;
+
+        map.put(key, value);
+        weight += w;
+        Iterator<Map.Entry<K, V>> it = map.entrySet().iterator();
+        while (weight > maxWeight && it.hasNext()) {
+            Map.Entry<K, V> eldest = it.next();
+            weight -= weigher.applyAsLong(eldest.getValue());
+            it.remove();
+        }
+    }
+
+    public synchronized V remove(K key) {
+        V previous = map.remove(key);
+        if (previous != null) weight -= weigher.applyAsLong(previous);
+        return previous;
+    }
+
+    public synchronized void clear() {
+        map.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() { return map.size(); }
+    public synchronized long weight() { return weight; }
+    public synchronized long hits() { return hits; }
+    public synchronized long misses() { return misses; }
+}
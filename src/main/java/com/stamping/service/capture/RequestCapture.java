@@ -0,0 +1,212 @@
+package com.stamping.service.capture;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.stamping.config.StampingProperties;
+import com.stamping.model.JournalMetadataRequest;
+import com.stamping.service.plan.PlannedPosition;
+import com.stamping.service.plan.StampingPlan;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Optional capture of stamping traffic for replay (stamping.capture.enabled).
+ *
+ * <p>Each sampled request becomes one {@link CaptureRecord} line in
+ * {@code <dir>/requests-<yyyy-MM-dd>.jsonl}, with the positions it was actually stamped with (the
+ * plan's, so saved-config requests replay inline) and its original duration and output size.
+ * Records are sanitized: source PDFs and logos are stored once under {@code <dir>/blobs/} named by
+ * SHA-256 and referenced as {@code sha256:<hex>}; the PDF URL or path and the output path are
+ * dropped and {@code downloadedBy} is masked to its length.
+ *
+ * <p>Hashing and writing happen on one background thread behind a queue bounded both by record
+ * count and by the source PDF bytes the waiting records hold; when either bound is reached the
+ * record is dropped rather than slowing the request.
+ */
+@Slf4j
+@Component
+public class RequestCapture {
+
+    /** Prefix of blob references in captured records */
+    public static final String BLOB_REF = "sha256:";
+
+    /**
+     * One captured request.
+     *
+     * @param request      sanitized {@link JournalMetadataRequest} JSON, positions included
+     * @param source       blob reference of the source PDF
+     * @param durationMs   pipeline duration when captured
+     * @param outputBytes  stamped PDF size when captured
+     */
+    public record CaptureRecord(String id, long timestamp, String mode, String pubId, String jcode,
+                                String source, long sourceBytes, JsonNode request,
+                                double durationMs, long outputBytes) {}
+
+    private final StampingProperties.Capture config;
+    private final ObjectMapper objectMapper;
+    private final ThreadPoolExecutor writer;
+    private final Path dir;
+    private final Path blobs;
+    private final AtomicLong sequence = new AtomicLong();
+    /** Source PDF bytes pinned by records queued or being written */
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final Counter written;
+    private final Counter dropped;
+
+    public RequestCapture(StampingProperties properties, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.config = properties.getCapture();
+        this.objectMapper = objectMapper;
+        this.dir = Path.of(config.getDir());
+        this.blobs = dir.resolve("blobs");
+        this.writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, config.getQueueSize())), r -> {
+                    Thread t = new Thread(r, "request-capture");
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.written = Counter.builder("stamping.capture.records").tag("result", "written")
+                .description("Stamping requests captured for replay").register(meterRegistry);
+        this.dropped = Counter.builder("stamping.capture.records").tag("result", "dropped")
+                .description("Stamping requests captured for replay").register(meterRegistry);
+        if (config.isEnabled()) {
+            log.info("Request capture enabled: dir={} sampleRate={}", dir.toAbsolutePath(), config.getSampleRate());
+        }
+    }
+
+    /**
+     * Captures a completed request if capture is enabled and it is sampled. The request is
+     * snapshotted here; the PDF bytes must not be modified afterwards.
+     */
+    public void record(StampingPlan plan, JournalMetadataRequest request, byte[] sourcePdf,
+                       long outputBytes, double durationMs) {
+        if (!config.isEnabled() || ThreadLocalRandom.current().nextDouble() >= config.getSampleRate()) {
+            return;
+        }
+        ObjectNode snapshot = objectMapper.valueToTree(request);
+        ObjectNode positions = snapshot.putObject("positions");
+        for (PlannedPosition position : plan.positions()) {
+            positions.set(position.position(), objectMapper.valueToTree(position.config()));
+        }
+        long timestamp = System.currentTimeMillis();
+        String id = timestamp + "-" + sequence.incrementAndGet();
+        String mode = plan.isSaved() ? "saved" : "inline";
+        long weight = sourcePdf.length;
+        if (pendingBytes.addAndGet(weight) > config.getQueueMaxBytes()) {
+            pendingBytes.addAndGet(-weight);
+            dropped.increment();
+            return;
+        }
+        try {
+            writer.execute(() -> {
+                try {
+                    write(id, () -> new CaptureRecord(id, timestamp, mode, plan.pubId(), plan.jcode(),
+                            storeBlob(sourcePdf), sourcePdf.length, sanitize(snapshot), durationMs, outputBytes));
+                } finally {
+                    pendingBytes.addAndGet(-weight);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingBytes.addAndGet(-weight);
+            dropped.increment();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Waits until every record queued so far is written (the writer is a single FIFO thread). */
+    void awaitIdle(long timeoutMillis) throws Exception {
+        writer.submit(() -> { }).get(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private ObjectNode sanitize(ObjectNode request) {
+        request.remove("pdfUrl");
+        request.remove("pdfFilePath");
+        request.remove("outputPath");
+        JsonNode user = request.get("downloadedBy");
+        if (user != null && user.isTextual()) {
+            request.put("downloadedBy", "x".repeat(user.asText().length()));
+        }
+        for (Iterator<Map.Entry<String, JsonNode>> it = request.get("positions").fields(); it.hasNext(); ) {
+            JsonNode position = it.next().getValue();
+            JsonNode logo = position.get("logo");
+            if (logo != null && logo.isTextual() && !logo.asText().isEmpty()) {
+                ((ObjectNode) position).put("logo", storeBlob(logo.asText().getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+        return request;
+    }
+
+    private String storeBlob(byte[] bytes) {
+        String digest = sha256(bytes);
+        Path blob = blobs.resolve(digest);
+        try {
+            if (!Files.exists(blob)) {
+                Files.createDirectories(blobs);
+                Path tmp = Files.createTempFile(blobs, digest, ".tmp");
+                Files.write(tmp, bytes);
+                Files.move(tmp, blob, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return BLOB_REF + digest;
+    }
+
+    /** Builds the record (storing its blobs) and appends it to today's file. */
+    private void write(String id, Supplier<CaptureRecord> record) {
+        try {
+            byte[] line = (objectMapper.writeValueAsString(record.get()) + "\n").getBytes(StandardCharsets.UTF_8);
+            Files.createDirectories(dir);
+            Files.write(dir.resolve("requests-" + LocalDate.now(ZoneOffset.UTC) + ".jsonl"), line,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            written.increment();
+        } catch (IOException | UncheckedIOException e) {
+            dropped.increment();
+            log.warn("Failed to capture request {}: {}", id, e.getMessage());
+        }
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.stamping.service.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The original on-disk layout: {@code config_{pubId}_{jcode}.json} files in the config dir
+ * (active) and the archive dir (archived). Used directly by {@link FileConfigRepository} and
+ * as the import/export format for {@link LogConfigRepository}.
+ */
+public final class ConfigFileLayout {
+
+    private ConfigFileLayout() {
+    }
+
+    public static String fileName(String pubId, String jcode) {
+        return "config_" + pubId + "_" + jcode + ".json";
+    }
+
+    public static boolean isConfigFile(String name) {
+        return name.startsWith("config_") && name.endsWith(".json");
+    }
+
+    /** Parses a config file, or returns null if it is unreadable or lacks pubId/jcode. */
+    @SuppressWarnings("unchecked")
+    public static StoredConfig read(File file, ObjectMapper objectMapper, boolean archived) {
+        try {
+            Map<String, Object> config = objectMapper.readValue(
+                    Files.readString(file.toPath(), StandardCharsets.UTF_8), Map.class);
+            if (!(config.get("pubId") instanceof String pubId) || !(config.get("jcode") instanceof String jcode)) {
+                return null;
+            }
+            long modified = file.lastModified();
+            return new StoredConfig(pubId, jcode, Collections.unmodifiableMap(config), modified, archived, modified);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /** Reads every config file in a directory, skipping unreadable ones. */
+    public static List<StoredConfig> readAll(File dir, ObjectMapper objectMapper, boolean archived) {
+        List<StoredConfig> result = new ArrayList<>();
+        File[] files = dir.listFiles((d, name) -> isConfigFile(name));
+        if (files == null) return result;
+        for (File f : files) {
+            StoredConfig config = read(f, objectMapper, archived);
+            if (config != null) result.add(config);
+        }
+        return result;
+    }
+
+    /** Pretty-printed JSON, as written by the admin UI since the first release. */
+    public static byte[] toJson(StoredConfig config, ObjectMapper objectMapper) throws IOException {
+        return objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(config.config());
+    }
+}
@@ -0,0 +1,182 @@
+package com.stamping.service.config;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stamping.exception.StampingException;
+
+/**
+ * Query side of {@code GET /configs}: filtering, paging, delta sync and streamed output.
+ *
+ * <p>Every query reads one {@link ConfigSnapshot}, so the items, the total and the cursor
+ * always describe the same state. The cursor is {@code <epoch>.<generation>}; the epoch
+ * changes when the service restarts (generations start again from 1), so a cursor from a
+ * previous run, or from another instance, gets a full listing instead of a wrong delta.
+ *
+ * <p>The {@code summary} view leaves out {@code logo.value} in every section: base64 logos are
+ * most of a config's size and the table view never shows them. Configs are written straight
+ * from the shared maps to the response stream without building an intermediate list.
+ */
+@Component
+public class ConfigListing {
+
+    public static final int MAX_PAGE_SIZE = 500;
+
+    private final ConfigRepository configRepository;
+    private final ObjectMapper objectMapper;
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    public ConfigListing(ConfigRepository configRepository, ObjectMapper objectMapper) {
+        this.configRepository = configRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Filters are optional and combine with AND. {@code page}/{@code size} apply to full listings;
+     * a null size means everything. {@code since} is a cursor from a previous response.
+     */
+    public record Query(String pubId, String jcode, String section, boolean summary,
+                        int page, Integer size, String since) {
+    }
+
+    /**
+     * @param items   configs to send, in key order
+     * @param removed tombstones: configs the client should drop (archived, deleted, or no longer
+     *                matching the filters); only set for deltas
+     * @param total   matching configs before paging (full listings) or items + removed (deltas)
+     * @param delta   true if the response only carries changes since the requested cursor
+     */
+    public record Result(List<StoredConfig> items, List<StoredConfig> removed, int total,
+                         String cursor, boolean delta, boolean summary) {
+    }
+
+    public Result query(Query query) {
+        if (query.page() < 0) {
+            throw new StampingException("page must be >= 0");
+        }
+        if (query.size() != null && (query.size() < 1 || query.size() > MAX_PAGE_SIZE)) {
+            throw new StampingException("size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        ConfigSnapshot snapshot = configRepository.snapshot();
+        String cursor = epoch + "." + snapshot.generation();
+        Long since = parseCursor(query.since(), snapshot.generation());
+
+        if (since != null) {
+            List<StoredConfig> items = new ArrayList<>();
+            List<StoredConfig> removed = new ArrayList<>();
+            for (String key : snapshot.changedSince(since)) {
+                StoredConfig active = snapshot.byKey().get(key);
+                if (active != null && matches(active, query)) {
+                    items.add(active);
+                } else {
+                    StoredConfig last = active != null ? active : snapshot.removed().get(key);
+                    if (last != null && matchesIdentity(last, query)) removed.add(last);
+                }
+            }
+            items.sort((a, b) -> a.key().compareTo(b.key()));
+            return new Result(items, removed, items.size() + removed.size(), cursor, true, query.summary());
+        }
+
+        List<StoredConfig> matching = filter(snapshot, query);
+        int total = matching.size();
+        if (query.size() != null) {
+            long from = Math.min((long) query.page() * query.size(), total);
+            int to = (int) Math.min(from + query.size(), total);
+            matching = matching.subList((int) from, to);
+        }
+        return new Result(matching, List.of(), total, cursor, false, query.summary());
+    }
+
+    /** Writes the result as a JSON array: configs, then {@code {pubId, jcode, removed: true}} tombstones. */
+    public void write(Result result, OutputStream out) throws IOException {
+        try (JsonGenerator gen = objectMapper.getFactory().createGenerator(out)) {
+            gen.writeStartArray();
+            for (StoredConfig c : result.items()) {
+                if (result.summary()) {
+                    writeSummary(gen, c.config(), false);
+                } else {
+                    gen.writeObject(c.config());
+                }
+            }
+            for (StoredConfig c : result.removed()) {
+                gen.writeStartObject();
+                gen.writeStringField("pubId", c.pubId());
+                gen.writeStringField("jcode", c.jcode());
+                gen.writeBooleanField("removed", true);
+                gen.writeEndObject();
+            }
+            gen.writeEndArray();
+        }
+    }
+
+    /** Starts from the smallest index that covers the filters, then applies the rest. */
+    private List<StoredConfig> filter(ConfigSnapshot snapshot, Query query) {
+        if (query.pubId() != null && query.jcode() != null) {
+            StoredConfig c = snapshot.get(query.pubId(), query.jcode());
+            return c != null && matches(c, query) ? List.of(c) : List.of();
+        }
+        List<StoredConfig> base;
+        if (query.pubId() != null) {
+            base = snapshot.publisher(query.pubId());
+        } else if (query.section() != null) {
+            base = snapshot.section(query.section());
+        } else {
+            base = snapshot.entries();
+        }
+        if (query.jcode() == null && (query.section() == null || query.pubId() == null)) {
+            return base;
+        }
+        List<StoredConfig> result = new ArrayList<>();
+        for (StoredConfig c : base) {
+            if (matches(c, query)) result.add(c);
+        }
+        return result;
+    }
+
+    private static boolean matches(StoredConfig c, Query query) {
+        if (!matchesIdentity(c, query)) return false;
+        return query.section() == null
+                || c.config().get(query.section()) instanceof Map<?, ?> s && Boolean.TRUE.equals(s.get("enabled"));
+    }
+
+    private static boolean matchesIdentity(StoredConfig c, Query query) {
+        return (query.pubId() == null || query.pubId().equals(c.pubId()))
+                && (query.jcode() == null || query.jcode().equals(c.jcode()));
+    }
+
+    /** The generation to diff from, or null when the cursor is absent, foreign or from the future. */
+    private Long parseCursor(String cursor, long current) {
+        if (cursor == null || cursor.isBlank()) return null;
+        int dot = cursor.indexOf('.');
+        if (dot < 0 || !cursor.substring(0, dot).equals(epoch)) return null;
+        try {
+            long generation = Long.parseLong(cursor.substring(dot + 1));
+            return generation <= current ? generation : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void writeSummary(JsonGenerator gen, Map<?, ?> map, boolean logo) throws IOException {
+        gen.writeStartObject();
+        for (Map.Entry<?, ?> e : map.entrySet()) {
+            String name = String.valueOf(e.getKey());
+            if (logo && "value".equals(name)) continue;
+            gen.writeFieldName(name);
+            if (e.getValue() instanceof Map<?, ?> child) {
+                writeSummary(gen, child, "logo".equals(name));
+            } else {
+                gen.writeObject(e.getValue());
+            }
+        }
+        gen.writeEndObject();
+    }
+}
@@ -0,0 +1,45 @@
+package com.stamping.service.config;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storage for publisher/journal stamping configs.
+ *
+ * <p>Selected by {@code stamping.config-store.type}: {@code file} (default) keeps one JSON file
+ * per journal in the config/archive dirs; {@code log} keeps every config in a single
+ * append-only log with atomic writes and per-config versions. Reads are served from memory
+ * by both implementations.
+ */
+public interface ConfigRepository {
+
+    /** The active config for a journal, or null if none is saved (or it is archived). */
+    StoredConfig get(String pubId, String jcode);
+
+    /** All active configs, ordered by pubId then jcode. */
+    List<StoredConfig> listActive();
+
+    /** Active configs of one publisher, ordered by jcode. */
+    List<StoredConfig> listByPublisher(String pubId);
+
+    /** Every config including archived ones, for export. */
+    List<StoredConfig> listAll();
+
+    /** Creates or replaces the active config for a journal and returns the stored version. */
+    StoredConfig save(String pubId, String jcode, Map<String, Object> config);
+
+    /** Archives an active config. Returns false if there is no active config to archive. */
+    boolean archive(String pubId, String jcode);
+
+    /** Restores an archived config. Returns false if there is no archived config to restore. */
+    boolean restore(String pubId, String jcode);
+
+    /** Increases on every change to the active set; cheap to poll. */
+    long generation();
+
+    /** The current immutable view of the active configs, for consistent multi-step reads. */
+    ConfigSnapshot snapshot();
+
+    /** Human-readable location of a config, reported back to the admin UI after a save. */
+    String describeLocation(StoredConfig config);
+}
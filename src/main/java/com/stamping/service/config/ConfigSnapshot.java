@@ -0,0 +1,99 @@
+package com.stamping.service.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Immutable view of the active configs, published by a repository through a single volatile
+ * write so readers never lock. Holds the primary index (by file-layout key, which orders by
+ * pubId then jcode) and secondary indexes by publisher and by enabled section.
+ *
+ * <p>Each snapshot also records the generation at which every key last changed, including keys
+ * that were archived or deleted (kept as tombstones with their last known config), so a client
+ * holding generation N can be sent only what changed after N.
+ */
+public record ConfigSnapshot(NavigableMap<String, StoredConfig> byKey,
+                             List<StoredConfig> entries,
+                             Map<String, List<StoredConfig>> byPublisher,
+                             Map<String, List<StoredConfig>> bySection,
+                             Map<String, StoredConfig> removed,
+                             NavigableMap<Long, List<String>> changeLog,
+                             long generation) {
+
+    static final ConfigSnapshot EMPTY = build(new TreeMap<>(), Map.of(), Map.of(), 0);
+
+    /**
+     * The snapshot that follows this one when the active set becomes {@code active}. Entries are
+     * compared by identity: repositories replace a {@link StoredConfig} only when it changed.
+     */
+    ConfigSnapshot next(TreeMap<String, StoredConfig> active) {
+        long nextGeneration = generation + 1;
+        Map<String, Long> changedAt = new HashMap<>();
+        changeLog.forEach((gen, keys) -> keys.forEach(k -> changedAt.put(k, gen)));
+        Map<String, StoredConfig> gone = new HashMap<>(removed);
+
+        for (Map.Entry<String, StoredConfig> e : active.entrySet()) {
+            if (byKey.get(e.getKey()) != e.getValue()) {
+                changedAt.put(e.getKey(), nextGeneration);
+                gone.remove(e.getKey());
+            }
+        }
+        for (Map.Entry<String, StoredConfig> e : byKey.entrySet()) {
+            if (!active.containsKey(e.getKey())) {
+                changedAt.put(e.getKey(), nextGeneration);
+                gone.put(e.getKey(), e.getValue());
+            }
+        }
+        return build(active, changedAt, gone, nextGeneration);
+    }
+
+    private static ConfigSnapshot build(TreeMap<String, StoredConfig> active, Map<String, Long> changedAt,
+                                        Map<String, StoredConfig> removed, long generation) {
+        Map<String, List<StoredConfig>> byPublisher = new HashMap<>();
+        Map<String, List<StoredConfig>> bySection = new HashMap<>();
+        for (StoredConfig c : active.values()) {
+            byPublisher.computeIfAbsent(c.pubId(), p -> new ArrayList<>()).add(c);
+            for (Map.Entry<String, Object> e : c.config().entrySet()) {
+                if (e.getValue() instanceof Map<?, ?> section && Boolean.TRUE.equals(section.get("enabled"))) {
+                    bySection.computeIfAbsent(e.getKey(), s -> new ArrayList<>()).add(c);
+                }
+            }
+        }
+        byPublisher.replaceAll((p, list) -> List.copyOf(list));
+        bySection.replaceAll((s, list) -> List.copyOf(list));
+
+        TreeMap<Long, List<String>> changeLog = new TreeMap<>();
+        changedAt.forEach((key, gen) -> changeLog.computeIfAbsent(gen, g -> new ArrayList<>()).add(key));
+        changeLog.replaceAll((gen, keys) -> List.copyOf(keys));
+
+        return new ConfigSnapshot(Collections.unmodifiableNavigableMap(active), List.copyOf(active.values()),
+                Map.copyOf(byPublisher), Map.copyOf(bySection), Map.copyOf(removed),
+                Collections.unmodifiableNavigableMap(changeLog), generation);
+    }
+
+    public StoredConfig get(String pubId, String jcode) {
+        return byKey.get(ConfigFileLayout.fileName(pubId, jcode));
+    }
+
+    /** Active configs of one publisher, ordered by jcode. */
+    public List<StoredConfig> publisher(String pubId) {
+        return byPublisher.getOrDefault(pubId, List.of());
+    }
+
+    /** Active configs with the given top-level section (newPage, header, ...) enabled. */
+    public List<StoredConfig> section(String name) {
+        return bySection.getOrDefault(name, List.of());
+    }
+
+    /** Keys that changed after {@code since}: present in {@link #byKey} if active, else in {@link #removed}. */
+    public List<String> changedSince(long since) {
+        List<String> keys = new ArrayList<>();
+        changeLog.tailMap(since, false).values().forEach(keys::addAll);
+        return keys;
+    }
+}
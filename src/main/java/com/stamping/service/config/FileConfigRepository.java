@@ -0,0 +1,270 @@
+package com.stamping.service.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stamping.config.StampingProperties;
+import com.stamping.exception.StampingException;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Config repository over the original layout: one pretty-printed JSON file per journal in the
+ * config dir, moved to the archive dir when archived.
+ *
+ * <p>Active configs are indexed in memory as an immutable {@link ConfigSnapshot}, so listing and
+ * lookups never touch the filesystem or take a lock. Writes through this repository re-read
+ * only the file they changed; a {@link WatchService} daemon does the same for edits made outside
+ * the API.
+ *
+ * <p>A config's version starts at its file's last-modified time and is kept above the last
+ * version handed out for that journal, so it still moves forward when two saves land in the same
+ * millisecond or a restore brings back a file with an older timestamp. The versions handed out
+ * are held in memory, so after a restart they are seeded from the file timestamps again.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "stamping.config-store", name = "type", havingValue = "file", matchIfMissing = true)
+public class FileConfigRepository implements ConfigRepository {
+
+    private final ObjectMapper objectMapper;
+    private final File configDir;
+    private final File archiveDir;
+    private volatile ConfigSnapshot snapshot = ConfigSnapshot.EMPTY;
+    private volatile WatchService watchService;
+    /** Last version handed out per journal, archived ones included. Written under this. */
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+
+    public FileConfigRepository(ObjectMapper objectMapper, StampingProperties properties, MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.configDir = new File(properties.getConfigDir());
+        this.archiveDir = new File(properties.getArchiveDir());
+        reloadAll();
+
+        Gauge.builder("stamping.configs.active", this, r -> r.snapshot.entries().size())
+                .description("Active configs held in memory")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public StoredConfig get(String pubId, String jcode) {
+        return snapshot.get(pubId, jcode);
+    }
+
+    @Override
+    public List<StoredConfig> listActive() {
+        return snapshot.entries();
+    }
+
+    @Override
+    public List<StoredConfig> listByPublisher(String pubId) {
+        return snapshot.publisher(pubId);
+    }
+
+    @Override
+    public List<StoredConfig> listAll() {
+        List<StoredConfig> all = new ArrayList<>(snapshot.entries());
+        for (StoredConfig c : ConfigFileLayout.readAll(archiveDir, objectMapper, true)) {
+            Long last = versions.get(c.key());
+            all.add(last != null && last > c.version() ? withVersion(c, last) : c);
+        }
+        return all;
+    }
+
+    @Override
+    public StoredConfig save(String pubId, String jcode, Map<String, Object> config) {
+        String name = ConfigFileLayout.fileName(pubId, jcode);
+        Path part = null;
+        try {
+            Files.createDirectories(configDir.toPath());
+            String json = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(config);
+            // Write-then-rename so the watcher never sees a half-written file; a file per call so
+            // concurrent saves of one journal never share it
+            part = Files.createTempFile(configDir.toPath(), name, ".part");
+            Files.writeString(part, json);
+            Files.move(part, configDir.toPath().resolve(name),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            deleteQuietly(part);
+            throw new StampingException("Failed to write config file: " + e.getMessage(), e);
+        }
+        refresh(name);
+        return get(pubId, jcode);
+    }
+
+    @Override
+    public boolean archive(String pubId, String jcode) {
+        return move(ConfigFileLayout.fileName(pubId, jcode), configDir, archiveDir);
+    }
+
+    @Override
+    public boolean restore(String pubId, String jcode) {
+        return move(ConfigFileLayout.fileName(pubId, jcode), archiveDir, configDir);
+    }
+
+    @Override
+    public long generation() {
+        return snapshot.generation();
+    }
+
+    @Override
+    public ConfigSnapshot snapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public String describeLocation(StoredConfig config) {
+        return new File(config.archived() ? archiveDir : configDir, config.key()).getAbsolutePath();
+    }
+
+    /**
+     * Re-reads a single config file and publishes a new snapshot: the entry is replaced if the
+     * file parses, removed if the file is gone, and left as-is if it is mid-write and unparsable.
+     */
+    public synchronized void refresh(String fileName) {
+        if (!ConfigFileLayout.isConfigFile(fileName)) return;
+
+        ConfigSnapshot current = snapshot;
+        File file = new File(configDir, fileName);
+        StoredConfig updated = file.isFile() ? ConfigFileLayout.read(file, objectMapper, false) : null;
+        StoredConfig previous = current.byKey().get(fileName);
+
+        if (updated == null && file.isFile()) return; // keep the last good copy until the write completes
+        if (updated == null && previous == null) return;
+
+        TreeMap<String, StoredConfig> next = new TreeMap<>(current.byKey());
+        if (updated != null) {
+            next.put(fileName, versioned(updated, previous));
+        } else {
+            next.remove(fileName);
+            retire(previous);
+        }
+        snapshot = current.next(next);
+    }
+
+    /** Rebuilds the whole index from the config dir. */
+    public synchronized void reloadAll() {
+        Map<String, StoredConfig> previous = snapshot.byKey();
+        TreeMap<String, StoredConfig> next = new TreeMap<>();
+        for (StoredConfig c : ConfigFileLayout.readAll(configDir, objectMapper, false)) {
+            next.put(c.key(), versioned(c, previous.get(c.key())));
+        }
+        for (StoredConfig gone : previous.values()) {
+            if (!next.containsKey(gone.key())) retire(gone);
+        }
+        snapshot = snapshot.next(next);
+        log.info("Config index loaded {} config(s) from {}", next.size(), configDir.getAbsolutePath());
+    }
+
+    /**
+     * Versions a freshly read file: a re-read of an unchanged file keeps its version, anything
+     * else gets the file time or one past the last version handed out, whichever is higher.
+     */
+    private StoredConfig versioned(StoredConfig read, StoredConfig previous) {
+        if (previous != null && previous.updatedAt() == read.updatedAt() && previous.config().equals(read.config())) {
+            return previous;
+        }
+        Long last = versions.get(read.key());
+        long version = last != null ? Math.max(last + 1, read.version()) : read.version();
+        versions.put(read.key(), version);
+        return withVersion(read, version);
+    }
+
+    /** Counts an archive or delete of the active file as a change of its own. */
+    private void retire(StoredConfig previous) {
+        versions.put(previous.key(), previous.version() + 1);
+    }
+
+    private static StoredConfig withVersion(StoredConfig c, long version) {
+        return new StoredConfig(c.pubId(), c.jcode(), c.config(), version, c.archived(), c.updatedAt());
+    }
+
+    @PostConstruct
+    void startWatcher() {
+        try {
+            Files.createDirectories(configDir.toPath());
+            WatchService ws = FileSystems.getDefault().newWatchService();
+            configDir.toPath().register(ws,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+            watchService = ws;
+            Thread t = new Thread(() -> watch(ws), "config-index-watcher");
+            t.setDaemon(true);
+            t.start();
+        } catch (IOException e) {
+            log.warn("Config index: file watching unavailable ({}), relying on API updates only", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void stopWatcher() throws IOException {
+        WatchService ws = watchService;
+        if (ws != null) ws.close();
+    }
+
+    private boolean move(String fileName, File fromDir, File toDir) {
+        File source = new File(fromDir, fileName);
+        if (!source.exists()) return false;
+        try {
+            Files.createDirectories(toDir.toPath());
+            Files.move(source.toPath(), new File(toDir, fileName).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new StampingException("Failed to move config file: " + e.getMessage(), e);
+        }
+        refresh(fileName);
+        return true;
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) return;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete {}: {}", file, e.getMessage());
+        }
+    }
+
+    private void watch(WatchService ws) {
+        try {
+            while (true) {
+                WatchKey key = ws.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        reloadAll();
+                    } else if (event.context() instanceof Path p) {
+                        refresh(p.getFileName().toString());
+                    }
+                }
+                if (!key.reset()) {
+                    log.warn("Config index: watch on {} is no longer valid", configDir.getAbsolutePath());
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // shutting down
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package com.stamping.service.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stamping.config.StampingProperties;
+import com.stamping.exception.StampingException;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Config repository backed by a single append-only log file.
+ *
+ * <p>Every save, archive or restore appends one self-contained record
+ * {@code [int length][int crc32][json]} carrying the full config, its new version and its
+ * archived flag, then forces it to disk. A write is therefore atomic: after a crash the record
+ * is either complete with a valid checksum or it is cut off at recovery. On startup the log is
+ * replayed sequentially (last record per journal wins) and any torn tail is truncated.
+ * When superseded records make up most of the file, the log is compacted by rewriting the live
+ * records to a new file and renaming it into place.
+ *
+ * <p>State lives in memory as an immutable {@link ConfigSnapshot} with a primary index by
+ * journal and a secondary index by publisher. If the log does not exist yet, the existing
+ * config/archive dirs are imported on first start into a complete log that is renamed into
+ * place; {@link #listAll()} feeds the file-layout export.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "stamping.config-store", name = "type", havingValue = "log")
+public class LogConfigRepository implements ConfigRepository {
+
+    private static final int HEADER_BYTES = 8;
+    /** Sanity bound on a single record; anything larger is treated as corruption. */
+    private static final int MAX_RECORD_BYTES = 16 * 1024 * 1024;
+
+    private final ObjectMapper objectMapper;
+    private final StampingProperties.ConfigStore config;
+    private final Path logFile;
+    private FileChannel channel;
+
+    /** Latest record per journal, archived ones included. Guarded by this. */
+    private final Map<String, StoredConfig> all = new HashMap<>();
+    /** Encoded size of the latest record per journal, for compaction decisions. Guarded by this. */
+    private final Map<String, Integer> liveRecordBytes = new HashMap<>();
+    private long liveBytes;
+    private volatile ConfigSnapshot snapshot = ConfigSnapshot.EMPTY;
+
+    public LogConfigRepository(ObjectMapper objectMapper, StampingProperties properties, MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.config = properties.getConfigStore();
+        this.logFile = Path.of(config.getLogFile());
+
+        try {
+            if (logFile.getParent() != null) Files.createDirectories(logFile.getParent());
+            if (!Files.exists(logFile) && config.isImportOnEmpty()) {
+                importLayout(new File(properties.getConfigDir()), new File(properties.getArchiveDir()));
+            }
+            channel = openChannel();
+            long start = System.currentTimeMillis();
+            int records = replay();
+            log.info("Config store: replayed {} record(s), {} config(s) from {} in {}ms",
+                    records, all.size(), logFile.toAbsolutePath(), System.currentTimeMillis() - start);
+            maybeCompact();
+        } catch (IOException e) {
+            throw new StampingException("Failed to open config store " + logFile + ": " + e.getMessage(), e);
+        }
+
+        Gauge.builder("stamping.configs.active", this, r -> r.snapshot.entries().size())
+                .description("Active configs held in memory")
+                .register(meterRegistry);
+        Gauge.builder("stamping.configs.log.bytes", this, LogConfigRepository::logSize)
+                .description("Size of the config store log")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public StoredConfig get(String pubId, String jcode) {
+        return snapshot.get(pubId, jcode);
+    }
+
+    @Override
+    public List<StoredConfig> listActive() {
+        return snapshot.entries();
+    }
+
+    @Override
+    public List<StoredConfig> listByPublisher(String pubId) {
+        return snapshot.publisher(pubId);
+    }
+
+    @Override
+    public synchronized List<StoredConfig> listAll() {
+        List<StoredConfig> result = new ArrayList<>(all.values());
+        result.sort((a, b) -> a.key().compareTo(b.key()));
+        return result;
+    }
+
+    @Override
+    public synchronized StoredConfig save(String pubId, String jcode, Map<String, Object> configMap) {
+        StoredConfig previous = all.get(ConfigFileLayout.fileName(pubId, jcode));
+        long version = previous != null ? previous.version() + 1 : 1;
+        return append(new StoredConfig(pubId, jcode, Collections.unmodifiableMap(new LinkedHashMap<>(configMap)),
+                version, false, System.currentTimeMillis()));
+    }
+
+    @Override
+    public synchronized boolean archive(String pubId, String jcode) {
+        return setArchived(pubId, jcode, true);
+    }
+
+    @Override
+    public synchronized boolean restore(String pubId, String jcode) {
+        return setArchived(pubId, jcode, false);
+    }
+
+    @Override
+    public long generation() {
+        return snapshot.generation();
+    }
+
+    @Override
+    public ConfigSnapshot snapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public String describeLocation(StoredConfig stored) {
+        return logFile.toAbsolutePath() + "#" + stored.key() + "@v" + stored.version();
+    }
+
+    /** Rewrites the log with only the latest record per journal. */
+    public synchronized void compact() throws IOException {
+        Path tmp = logFile.resolveSibling(logFile.getFileName() + ".compact");
+        long written = writeLog(tmp, listAll());
+        channel.close();
+        try {
+            Files.move(tmp, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            // Reopen whichever log is now in place, so a failed move does not leave the store unwritable
+            channel = openChannel();
+        }
+        liveBytes = written;
+        log.info("Config store: compacted to {} KB ({} config(s))", written / 1024, all.size());
+    }
+
+    @PreDestroy
+    synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private boolean setArchived(String pubId, String jcode, boolean archived) {
+        StoredConfig current = all.get(ConfigFileLayout.fileName(pubId, jcode));
+        if (current == null || current.archived() == archived) return false;
+        append(new StoredConfig(pubId, jcode, current.config(), current.version() + 1,
+                archived, System.currentTimeMillis()));
+        return true;
+    }
+
+    private StoredConfig append(StoredConfig stored) {
+        try {
+            ByteBuffer record = encode(stored);
+            int size = record.remaining();
+            long start = channel.size();
+            try {
+                long position = start;
+                while (record.hasRemaining()) {
+                    position += channel.write(record, position);
+                }
+                if (config.isFsync()) channel.force(false);
+            } catch (IOException e) {
+                // Cut off the partial record, or every record appended after it is lost on replay
+                discardFrom(start, e);
+                throw e;
+            }
+            apply(stored, size);
+            publish();
+        } catch (IOException e) {
+            throw new StampingException("Failed to write config store: " + e.getMessage(), e);
+        }
+        maybeCompact();
+        return stored;
+    }
+
+    private void discardFrom(long position, IOException failure) {
+        try {
+            channel.truncate(position);
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    private void apply(StoredConfig stored, int recordSize) {
+        all.put(stored.key(), stored);
+        Integer previous = liveRecordBytes.put(stored.key(), recordSize);
+        liveBytes += recordSize - (previous != null ? previous : 0);
+    }
+
+    private void publish() {
+        TreeMap<String, StoredConfig> active = new TreeMap<>();
+        for (StoredConfig c : all.values()) {
+            if (!c.archived()) active.put(c.key(), c);
+        }
+        snapshot = snapshot.next(active);
+    }
+
+    /**
+     * Compacts when superseded records dominate the log. A failure is only logged: the records are
+     * already durable and published, and the log just stays larger until the next attempt.
+     */
+    private void maybeCompact() {
+        try {
+            long size = channel.size();
+            if (size > config.getCompactionMinBytes() && size > liveBytes * config.getCompactionRatio()) {
+                compact();
+            }
+        } catch (IOException e) {
+            log.warn("Config store: compaction failed: {}", e.getMessage());
+        }
+    }
+
+    /** Replays the log into memory, truncating a torn or corrupt tail. Returns the record count. */
+    private synchronized int replay() throws IOException {
+        long size = channel.size();
+        long position = 0;
+        int records = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+
+        while (position + HEADER_BYTES <= size) {
+            header.clear();
+            readFully(header, position);
+            header.flip();
+            int length = header.getInt();
+            int crc = header.getInt();
+            if (length <= 0 || length > MAX_RECORD_BYTES || position + HEADER_BYTES + length > size) break;
+
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(payload, position + HEADER_BYTES);
+            if (crc32(payload.array()) != crc) break;
+
+            StoredConfig stored = decode(payload.array());
+            if (stored == null) break;
+            apply(stored, HEADER_BYTES + length);
+            position += HEADER_BYTES + length;
+            records++;
+        }
+
+        if (position < size) {
+            log.warn("Config store: discarding {} byte(s) of torn or corrupt data at offset {}", size - position, position);
+            channel.truncate(position);
+            channel.force(true);
+        }
+        publish();
+        return records;
+    }
+
+    /**
+     * Writes the config/archive dirs as a complete log beside the log file and renames it into
+     * place. Until the rename there is no log, so an import cut short by a crash runs again in
+     * full on the next start.
+     */
+    private void importLayout(File activeDir, File archivedDir) throws IOException {
+        Map<String, StoredConfig> imported = new LinkedHashMap<>();
+        for (StoredConfig c : ConfigFileLayout.readAll(activeDir, objectMapper, false)) {
+            imported.put(c.key(), new StoredConfig(c.pubId(), c.jcode(), c.config(), 1, false, c.updatedAt()));
+        }
+        for (StoredConfig c : ConfigFileLayout.readAll(archivedDir, objectMapper, true)) {
+            // An active copy wins
+            imported.putIfAbsent(c.key(), new StoredConfig(c.pubId(), c.jcode(), c.config(), 1, true, c.updatedAt()));
+        }
+        Path tmp = logFile.resolveSibling(logFile.getFileName() + ".import");
+        writeLog(tmp, imported.values());
+        Files.move(tmp, logFile, StandardCopyOption.ATOMIC_MOVE);
+        if (!imported.isEmpty()) {
+            log.info("Config store: imported {} config(s) from {} and {}", imported.size(),
+                    activeDir.getAbsolutePath(), archivedDir.getAbsolutePath());
+        }
+    }
+
+    /** Writes {@code configs} as a new log at {@code file}, forced to disk. Returns its size. */
+    private long writeLog(Path file, Collection<StoredConfig> configs) throws IOException {
+        long written = 0;
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (StoredConfig c : configs) {
+                ByteBuffer record = encode(c);
+                written += record.remaining();
+                while (record.hasRemaining()) out.write(record);
+            }
+            out.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return written;
+    }
+
+    private ByteBuffer encode(StoredConfig stored) throws IOException {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("pubId", stored.pubId());
+        record.put("jcode", stored.jcode());
+        record.put("version", stored.version());
+        record.put("archived", stored.archived());
+        record.put("updatedAt", stored.updatedAt());
+        record.put("config", stored.config());
+        byte[] payload = objectMapper.writeValueAsBytes(record);
+
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        buf.putInt(payload.length).putInt(crc32(payload)).put(payload);
+        buf.flip();
+        return buf;
+    }
+
+    @SuppressWarnings("unchecked")
+    private StoredConfig decode(byte[] payload) {
+        try {
+            Map<String, Object> record = objectMapper.readValue(payload, Map.class);
+            return new StoredConfig((String) record.get("pubId"), (String) record.get("jcode"),
+                    Collections.unmodifiableMap((Map<String, Object>) record.get("config")),
+                    ((Number) record.get("version")).longValue(),
+                    Boolean.TRUE.equals(record.get("archived")),
+                    ((Number) record.get("updatedAt")).longValue());
+        } catch (Exception e) {
+            log.warn("Config store: unreadable record: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void readFully(ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int read = channel.read(buf, position);
+            if (read < 0) throw new IOException("Unexpected end of config store");
+            position += read;
+        }
+    }
+
+    /** Package-private so tests can substitute a channel that fails on demand. */
+    FileChannel openChannel() throws IOException {
+        return FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private long logSize() {
+        try {
+            return Files.size(logFile);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static int crc32(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return (int) crc.getValue();
+    }
+}
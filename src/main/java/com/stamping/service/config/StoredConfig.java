@@ -0,0 +1,22 @@
+package com.stamping.service.config;
+
+import java.util.Map;
+
+/**
+ * One journal's stamping config as held by a {@link ConfigRepository}.
+ * The config map is shared between readers and must be treated as read-only.
+ *
+ * @param version   increases by at least one on every save, archive or restore of this config
+ * @param updatedAt epoch millis of the last change
+ */
+public record StoredConfig(String pubId,
+                           String jcode,
+                           Map<String, Object> config,
+                           long version,
+                           boolean archived,
+                           long updatedAt) {
+
+    public String key() {
+        return ConfigFileLayout.fileName(pubId, jcode);
+    }
+}
@@ -0,0 +1,37 @@
+package com.stamping.service.diagnostics;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * {@code /actuator/slowrequests} lists the JFR dumps of slow requests, newest first;
+ * {@code /actuator/slowrequests/{name}} downloads one for JDK Mission Control or {@code jfr print}.
+ */
+@Component
+@Endpoint(id = "slowrequests")
+@RequiredArgsConstructor
+public class SlowRequestEndpoint {
+
+    private final SlowRequestRecorder recorder;
+
+    @ReadOperation
+    public List<Map<String, Object>> dumps() {
+        return recorder.dumps();
+    }
+
+    @ReadOperation
+    public Resource dump(@Selector String name) {
+        Path file = recorder.dumpFile(name);
+        return file != null ? new FileSystemResource(file) : null;
+    }
+}
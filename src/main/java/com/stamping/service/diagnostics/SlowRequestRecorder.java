@@ -0,0 +1,260 @@
+package com.stamping.service.diagnostics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stamping.config.StampingProperties;
+import com.stamping.service.RequestTrace;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Always-on JFR recording over a rolling window, dumped to disk when a stamping request runs longer
+ * than {@code stamping.slow-requests.threshold}.
+ *
+ * <p>Each dump is {@code <dir>/<utc time>-<request id>-<pubId>-<jcode>.jfr} with a {@code .json}
+ * sidecar holding the request's identity, duration, Server-Timing stages and full trace. Every
+ * request is also a {@link StampingRequestEvent} in the recording. Dumps are written on a
+ * background thread, at most one per {@code min-interval}, and only the newest {@code max-dumps}
+ * are kept. They are listed and downloaded through the {@code slowrequests} actuator endpoint, which
+ * is not exposed over HTTP by default.
+ *
+ * <p>The events in {@link #EXCLUDED_EVENTS} are switched off whatever the settings: they carry the
+ * process environment, system properties and command line, which hold credentials.
+ */
+@Slf4j
+@Component
+public class SlowRequestRecorder {
+
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    /** Events never recorded, since dumps leave the process */
+    static final List<String> EXCLUDED_EVENTS = List.of(
+            "jdk.InitialEnvironmentVariable", "jdk.InitialSystemProperty", "jdk.JVMInformation");
+
+    private final StampingProperties.SlowRequests config;
+    private final ObjectMapper objectMapper;
+    private final Path dir;
+    private final ThreadPoolExecutor dumper;
+    private final AtomicLong lastDump = new AtomicLong();
+    private final Counter written;
+    private final Counter suppressed;
+    private final Counter failed;
+    private volatile Recording recording;
+
+    public SlowRequestRecorder(StampingProperties properties, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.config = properties.getSlowRequests();
+        this.objectMapper = objectMapper;
+        this.dir = Path.of(config.getDir());
+        this.dumper = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1), r -> {
+            Thread t = new Thread(r, "slow-request-dump");
+            t.setDaemon(true);
+            return t;
+        });
+        this.written = counter(meterRegistry, "written");
+        this.suppressed = counter(meterRegistry, "suppressed");
+        this.failed = counter(meterRegistry, "failed");
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        try {
+            Recording r = new Recording(Configuration.getConfiguration(config.getSettings()));
+            r.setName("stamping-rolling");
+            r.setToDisk(true);
+            r.setMaxAge(Duration.ofMillis(config.getWindow()));
+            r.setMaxSize(config.getMaxBytes());
+            EXCLUDED_EVENTS.forEach(r::disable);
+            r.start();
+            recording = r;
+            log.info("Slow-request JFR recording started: settings={} window={}s threshold={}ms dir={}",
+                    config.getSettings(), config.getWindow() / 1000, config.getThreshold(), dir.toAbsolutePath());
+        } catch (IOException | ParseException | IllegalStateException | SecurityException e) {
+            log.warn("Slow-request JFR recording not started: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        dumper.shutdown();
+        try {
+            dumper.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Recording r = recording;
+        recording = null;
+        if (r != null) {
+            r.close();
+        }
+    }
+
+    /** Opens the request's JFR event; pass it to {@link #end} when the request finishes. */
+    public StampingRequestEvent begin(RequestTrace trace, String pubId, String jcode) {
+        StampingRequestEvent event = new StampingRequestEvent();
+        event.requestId = trace.id();
+        event.pubId = pubId;
+        event.jcode = jcode;
+        event.begin();
+        return event;
+    }
+
+    /** Closes the request's event and dumps the recording if the request was slow. */
+    public void end(StampingRequestEvent event, RequestTrace trace, boolean requestFailed) {
+        event.failed = requestFailed;
+        event.commit();
+        double totalMs = trace.totalMs();
+        if (recording == null || totalMs < config.getThreshold()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long last = lastDump.get();
+        if (now - last < config.getMinInterval() || !lastDump.compareAndSet(last, now)) {
+            suppressed.increment();
+            log.info("  Slow request {} ({} ms) not dumped: previous dump {}s ago", trace.id(), Math.round(totalMs),
+                    (now - last) / 1000);
+            return;
+        }
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("id", trace.id());
+        info.put("pubId", event.pubId);
+        info.put("jcode", event.jcode);
+        info.put("failed", requestFailed);
+        info.put("timestamp", now);
+        info.put("totalMs", Math.round(totalMs * 10) / 10.0);
+        info.put("serverTiming", trace.serverTiming());
+        info.put("trace", trace.summary());
+        String name = LocalDateTime.now(ZoneOffset.UTC).format(FILE_TIME) + "-" + trace.id() + "-"
+                + fileSafe(event.pubId) + "-" + fileSafe(event.jcode);
+        try {
+            dumper.execute(() -> dump(name, info));
+            log.warn("  Slow request {} ({} ms), dumping JFR recording to {}.jfr", trace.id(), Math.round(totalMs), name);
+        } catch (RejectedExecutionException e) {
+            suppressed.increment();
+        }
+    }
+
+    /** Sidecars of the kept dumps, newest first, each with its {@code name} and {@code jfrBytes}. */
+    public List<Map<String, Object>> dumps() {
+        List<Path> newestFirst = new ArrayList<>(jfrFiles());
+        Collections.reverse(newestFirst);
+        List<Map<String, Object>> dumps = new ArrayList<>();
+        for (Path jfr : newestFirst) {
+            String name = baseName(jfr);
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("name", name);
+            try {
+                entry.put("jfrBytes", Files.size(jfr));
+                Path sidecar = dir.resolve(name + ".json");
+                if (Files.exists(sidecar)) {
+                    entry.putAll(objectMapper.readValue(sidecar.toFile(), new TypeReference<Map<String, Object>>() {}));
+                }
+            } catch (IOException e) {
+                continue;
+            }
+            dumps.add(entry);
+        }
+        return dumps;
+    }
+
+    /** The dump called {@code name} (as listed by {@link #dumps()}), or null. */
+    public Path dumpFile(String name) {
+        return jfrFiles().stream().filter(f -> baseName(f).equals(name)).findFirst().orElse(null);
+    }
+
+    /** Waits until the dump queued so far is written. */
+    void awaitIdle(long timeoutMillis) throws Exception {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (dumper.getActiveCount() > 0 || !dumper.getQueue().isEmpty()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Dump still running after " + timeoutMillis + " ms");
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    private void dump(String name, Map<String, Object> info) {
+        Recording r = recording;
+        if (r == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(dir);
+            r.dump(dir.resolve(name + ".jfr"));
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(dir.resolve(name + ".json").toFile(), info);
+            written.increment();
+            prune();
+        } catch (IOException | IllegalStateException e) {
+            failed.increment();
+            log.warn("Failed to dump JFR recording for {}: {}", info.get("id"), e.getMessage());
+        }
+    }
+
+    /** Deletes the oldest dumps beyond {@code max-dumps}; names start with the UTC time. */
+    private void prune() throws IOException {
+        List<Path> jfr = jfrFiles();
+        for (int i = 0; i < jfr.size() - config.getMaxDumps(); i++) {
+            Files.deleteIfExists(jfr.get(i));
+            Files.deleteIfExists(dir.resolve(baseName(jfr.get(i)) + ".json"));
+        }
+    }
+
+    /** Dump files, oldest first. */
+    private List<Path> jfrFiles() {
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(f -> f.getFileName().toString().endsWith(".jfr"))
+                    .sorted(Comparator.comparing(f -> f.getFileName().toString()))
+                    .toList();
+        } catch (IOException e) {
+            return List.of();
+        }
+    }
+
+    private static String baseName(Path jfr) {
+        String file = jfr.getFileName().toString();
+        return file.substring(0, file.length() - ".jfr".length());
+    }
+
+    private static String fileSafe(String value) {
+        return value == null ? "none" : value.replaceAll("[^A-Za-z0-9_.-]", "_");
+    }
+
+    private static Counter counter(MeterRegistry registry, String result) {
+        return Counter.builder("stamping.slow.dumps").tag("result", result)
+                .description("JFR dumps triggered by slow stamping requests").register(registry);
+    }
+}
@@ -0,0 +1,30 @@
+package com.stamping.service.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event spanning one stamping request, so a dump shows which request each thread was serving
+ * alongside the rolling recording's samples, allocations and locks.
+ */
+@Name("com.stamping.Request")
+@Label("Stamping Request")
+@Category("Stamping")
+@Description("One stamping pipeline run")
+public class StampingRequestEvent extends Event {
+
+    @Label("Request Id")
+    String requestId;
+
+    @Label("Publisher")
+    String pubId;
+
+    @Label("Journal")
+    String jcode;
+
+    @Label("Failed")
+    boolean failed;
+}
@@ -0,0 +1,74 @@
+package com.stamping.service.job;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * State of one asynchronous stamping job, as stored in its {@code job.json} and returned by the
+ * job endpoints. Immutable; every transition returns a new instance.
+ *
+ * @param mode             {@code inline} (positions in the request) or {@code saved} (the journal's saved config)
+ * @param attempts         runs started, including runs interrupted by a restart
+ * @param stage            last finished pipeline stage, e.g. {@code render FOOTER}
+ * @param stagesCompleted  pipeline stages finished in the current run
+ * @param serverTiming     stage durations of the successful run, as in the Server-Timing header
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record StampJob(String id,
+                       Status status,
+                       String mode,
+                       String pubId,
+                       String jcode,
+                       String idempotencyKey,
+                       long createdAt,
+                       Long startedAt,
+                       Long finishedAt,
+                       int attempts,
+                       String stage,
+                       int stagesCompleted,
+                       String filename,
+                       Long resultBytes,
+                       String serverTiming,
+                       String error) {
+
+    public enum Status { QUEUED, RUNNING, SUCCEEDED, FAILED }
+
+    public static final String INLINE = "inline";
+    public static final String SAVED = "saved";
+
+    static StampJob queued(String id, String mode, String pubId, String jcode, String idempotencyKey) {
+        return new StampJob(id, Status.QUEUED, mode, pubId, jcode, idempotencyKey, System.currentTimeMillis(),
+                null, null, 0, null, 0, null, null, null, null);
+    }
+
+    @JsonIgnore
+    public boolean isFinished() {
+        return status == Status.SUCCEEDED || status == Status.FAILED;
+    }
+
+    StampJob running() {
+        return new StampJob(id, Status.RUNNING, mode, pubId, jcode, idempotencyKey, createdAt,
+                System.currentTimeMillis(), null, attempts + 1, null, 0, null, null, null, null);
+    }
+
+    StampJob progress(String finishedStage) {
+        return new StampJob(id, status, mode, pubId, jcode, idempotencyKey, createdAt, startedAt, finishedAt,
+                attempts, finishedStage, stagesCompleted + 1, filename, resultBytes, serverTiming, error);
+    }
+
+    StampJob succeeded(String resultFilename, long bytes, String timing) {
+        return new StampJob(id, Status.SUCCEEDED, mode, pubId, jcode, idempotencyKey, createdAt, startedAt,
+                System.currentTimeMillis(), attempts, stage, stagesCompleted, resultFilename, bytes, timing, null);
+    }
+
+    StampJob failed(String message) {
+        return new StampJob(id, Status.FAILED, mode, pubId, jcode, idempotencyKey, createdAt, startedAt,
+                System.currentTimeMillis(), attempts, stage, stagesCompleted, null, null, null, message);
+    }
+
+    /** Back in the queue after a restart interrupted or preempted it. */
+    StampJob requeued() {
+        return new StampJob(id, Status.QUEUED, mode, pubId, jcode, idempotencyKey, createdAt, null, null,
+                attempts, null, 0, null, null, null, null);
+    }
+}
@@ -0,0 +1,440 @@
+package com.stamping.service.job;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stamping.config.StampingProperties;
+import com.stamping.exception.JobQueueFullException;
+import com.stamping.exception.StampingException;
+import com.stamping.model.JournalMetadataRequest;
+import com.stamping.service.RequestTrace;
+import com.stamping.service.StampOrchestrationService;
+import com.stamping.service.StampOrchestrationService.StampResult;
+import com.stamping.service.StampingMetrics;
+import com.stamping.service.plan.StampingPlan;
+import com.stamping.service.plan.StampingPlans;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Asynchronous stamping jobs on a durable local queue.
+ *
+ * <p>Each job is a directory under {@code stamping.jobs.dir} holding the request
+ * ({@code request.json}), its state ({@code job.json}, written last on submit and atomically on
+ * every transition) and, once done, {@code result.pdf}. The directory is the queue: on startup,
+ * queued jobs and jobs that were running when the service stopped are queued again in submission
+ * order. A job whose runs keep being interrupted is failed after {@code max-attempts}, so one
+ * document that takes the process down cannot do it on every restart.
+ *
+ * <p>Jobs run on a dedicated pool of {@code workers} threads, not on request threads. Finished
+ * stages are published to Server-Sent Events subscribers as they happen. Finished jobs and their
+ * results are deleted {@code result-ttl} after they finish. A repeated submission with the same
+ * {@code Idempotency-Key} returns the existing job instead of stamping twice.
+ */
+@Slf4j
+@Service
+public class StampJobService {
+
+    private static final String JOB = "job.json";
+    private static final String REQUEST = "request.json";
+    private static final String RESULT = "result.pdf";
+
+    private final StampingProperties.Jobs config;
+    private final ObjectMapper objectMapper;
+    private final StampOrchestrationService orchestrationService;
+    private final StampingPlans stampingPlans;
+    private final Path dir;
+    private final ThreadPoolExecutor workers;
+    private final Map<String, StampJob> jobs = new ConcurrentHashMap<>();
+    private final Map<String, String> idempotencyKeys = new ConcurrentHashMap<>();
+    private final Map<String, List<SseEmitter>> subscribers = new ConcurrentHashMap<>();
+    private final Counter succeeded;
+    private final Counter failed;
+    private final Timer queueWait;
+    private volatile boolean closing;
+
+    public StampJobService(StampingProperties properties, ObjectMapper objectMapper,
+                           StampOrchestrationService orchestrationService, StampingPlans stampingPlans,
+                           MeterRegistry meterRegistry) {
+        this.config = properties.getJobs();
+        this.objectMapper = objectMapper;
+        this.orchestrationService = orchestrationService;
+        this.stampingPlans = stampingPlans;
+        this.dir = Path.of(config.getDir());
+        AtomicInteger threads = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(config.getWorkers(), config.getWorkers(), 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "stamp-job-" + threads.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        for (StampJob.Status status : StampJob.Status.values()) {
+            Gauge.builder("stamping.jobs", jobs, m -> m.values().stream().filter(j -> j.status() == status).count())
+                    .tag("status", status.name().toLowerCase())
+                    .description("Asynchronous stamping jobs held, by status")
+                    .register(meterRegistry);
+        }
+        this.succeeded = Counter.builder("stamping.jobs.completed").tag("result", "succeeded")
+                .description("Asynchronous stamping jobs finished").register(meterRegistry);
+        this.failed = Counter.builder("stamping.jobs.completed").tag("result", "failed")
+                .description("Asynchronous stamping jobs finished").register(meterRegistry);
+        this.queueWait = Timer.builder("stamping.jobs.wait")
+                .description("Time asynchronous stamping jobs waited for a worker")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    // ─── Lifecycle ──────────────────────────────────────────────────────
+
+    /**
+     * Loads the jobs left on disk and queues the unfinished ones again. Runs while the context
+     * starts, before the web server takes submissions; jobs already held are left alone.
+     */
+    @PostConstruct
+    public void recover() {
+        List<StampJob> loaded = new ArrayList<>();
+        if (Files.isDirectory(dir)) {
+            try (Stream<Path> dirs = Files.list(dir)) {
+                for (Path jobDir : dirs.filter(Files::isDirectory).toList()) {
+                    Path state = jobDir.resolve(JOB);
+                    if (!Files.exists(state)) {
+                        // Submission did not complete; nothing was accepted
+                        deleteDir(jobDir);
+                        continue;
+                    }
+                    try {
+                        loaded.add(objectMapper.readValue(state.toFile(), StampJob.class));
+                    } catch (IOException e) {
+                        log.warn("Skipping unreadable job {}: {}", jobDir.getFileName(), e.getMessage());
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        loaded.sort(Comparator.comparingLong(StampJob::createdAt));
+        int queued = 0;
+        for (StampJob job : loaded) {
+            if (jobs.containsKey(job.id())) {
+                continue;
+            }
+            if (job.status() == StampJob.Status.RUNNING) {
+                job = job.attempts() >= config.getMaxAttempts()
+                        ? job.failed("Interrupted by a restart " + job.attempts() + " time(s)")
+                        : job.requeued();
+                persist(job);
+            }
+            jobs.put(job.id(), job);
+            if (job.idempotencyKey() != null) {
+                idempotencyKeys.put(job.idempotencyKey(), job.id());
+            }
+            if (job.status() == StampJob.Status.QUEUED) {
+                enqueue(job.id());
+                queued++;
+            }
+        }
+        if (!loaded.isEmpty()) {
+            log.info("Stamping jobs recovered from {}: {} queued, {} finished", dir.toAbsolutePath(), queued,
+                    loaded.size() - queued);
+        }
+    }
+
+    /**
+     * Stops taking jobs off the queue and gives running jobs a grace period. Jobs still queued or
+     * running stay that way on disk and run after the next start.
+     */
+    @PreDestroy
+    public void close() {
+        closing = true;
+        workers.shutdown();
+        try {
+            workers.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ─── Submission and queries ─────────────────────────────────────────
+
+    /** Queues a request with inline positions. */
+    public StampJob submitInline(JournalMetadataRequest request, String idempotencyKey) {
+        return submit(StampJob.INLINE, request.getPublisherId(), request.getJcode(), request, idempotencyKey);
+    }
+
+    /** Queues a request stamped with the saved config of {@code pubId}/{@code jcode}. */
+    public StampJob submitSaved(String pubId, String jcode, JournalMetadataRequest request, String idempotencyKey) {
+        return submit(StampJob.SAVED, pubId, jcode, request, idempotencyKey);
+    }
+
+    public StampJob get(String id) {
+        return jobs.get(id);
+    }
+
+    /** The stamped PDF of a succeeded job, or null. */
+    public Path result(String id) {
+        StampJob job = jobs.get(id);
+        return job != null && job.status() == StampJob.Status.SUCCEEDED ? dir.resolve(id).resolve(RESULT) : null;
+    }
+
+    /**
+     * Deletes a queued or finished job and its result. Returns the job as it was, or null if
+     * unknown; a running job is returned unchanged and not deleted.
+     */
+    public StampJob delete(String id) {
+        StampJob[] before = new StampJob[1];
+        jobs.computeIfPresent(id, (k, job) -> {
+            before[0] = job;
+            return job.status() == StampJob.Status.RUNNING ? job : null;
+        });
+        if (before[0] != null && before[0].status() != StampJob.Status.RUNNING) {
+            forget(before[0]);
+        }
+        return before[0];
+    }
+
+    /**
+     * Progress stream of a job: a {@code status} event with its current state, a {@code progress}
+     * event per finished stage, and a {@code done} event with the final state, after which the
+     * stream completes. Null if the job is unknown.
+     */
+    public SseEmitter subscribe(String id) {
+        StampJob job = jobs.get(id);
+        if (job == null) {
+            return null;
+        }
+        SseEmitter emitter = new SseEmitter(config.getSseTimeout());
+        List<SseEmitter> list = subscribers.computeIfAbsent(id, k -> new CopyOnWriteArrayList<>());
+        list.add(emitter);
+        emitter.onCompletion(() -> list.remove(emitter));
+        emitter.onTimeout(() -> list.remove(emitter));
+        emitter.onError(e -> list.remove(emitter));
+        send(emitter, "status", job);
+        StampJob current = jobs.getOrDefault(id, job);
+        if (current.isFinished()) {
+            send(emitter, "done", current);
+            emitter.complete();
+        }
+        return emitter;
+    }
+
+    /** Deletes finished jobs older than the result TTL. */
+    @Scheduled(fixedRate = 60 * 1000, initialDelay = 60 * 1000)
+    public void expire() {
+        long cutoff = System.currentTimeMillis() - config.getResultTtl();
+        int expired = 0;
+        for (StampJob job : jobs.values()) {
+            if (job.isFinished() && job.finishedAt() < cutoff && jobs.remove(job.id(), job)) {
+                forget(job);
+                expired++;
+            }
+        }
+        if (expired > 0) {
+            log.info("Expired {} stamping job(s)", expired);
+        }
+    }
+
+    private synchronized StampJob submit(String mode, String pubId, String jcode, JournalMetadataRequest request,
+                                         String idempotencyKey) {
+        if (idempotencyKey != null) {
+            String existing = idempotencyKeys.get(idempotencyKey);
+            StampJob job = existing != null ? jobs.get(existing) : null;
+            if (job != null) {
+                return job;
+            }
+        }
+        if (request.isDemoMode()) {
+            throw new StampingException("Demo mode is not supported for jobs");
+        }
+        orchestrationService.validate(request, StampJob.SAVED.equals(mode));
+        long queued = jobs.values().stream().filter(j -> j.status() == StampJob.Status.QUEUED).count();
+        if (queued >= config.getMaxQueued()) {
+            throw new JobQueueFullException("Job queue is full (" + queued + " waiting); retry later");
+        }
+
+        StampJob job = StampJob.queued(UUID.randomUUID().toString(), mode, pubId, jcode, idempotencyKey);
+        try {
+            Files.createDirectories(dir.resolve(job.id()));
+            write(dir.resolve(job.id()).resolve(REQUEST), objectMapper.writeValueAsBytes(request));
+        } catch (IOException e) {
+            throw new StampingException("Failed to store job: " + e.getMessage(), e);
+        }
+        persist(job);
+        jobs.put(job.id(), job);
+        if (idempotencyKey != null) {
+            idempotencyKeys.put(idempotencyKey, job.id());
+        }
+        enqueue(job.id());
+        log.info("  JOB QUEUED  id={}  mode={}  pubId={}  jcode={}  queued={}", job.id(), mode, pubId, jcode,
+                queued + 1);
+        return job;
+    }
+
+    // ─── Running ────────────────────────────────────────────────────────
+
+    private void enqueue(String id) {
+        try {
+            workers.execute(() -> run(id));
+        } catch (RejectedExecutionException e) {
+            // Shutting down; the job stays queued on disk and runs after the next start
+        }
+    }
+
+    private void run(String id) {
+        if (closing) {
+            return;
+        }
+        StampJob job = jobs.computeIfPresent(id,
+                (k, j) -> j.status() == StampJob.Status.QUEUED ? j.running() : j);
+        if (job == null || job.status() != StampJob.Status.RUNNING) {
+            return;
+        }
+        queueWait.record(Duration.ofMillis(job.startedAt() - job.createdAt()));
+        try {
+            persist(job);
+            publish(job, "status");
+            JournalMetadataRequest request = objectMapper.readValue(
+                    dir.resolve(id).resolve(REQUEST).toFile(), JournalMetadataRequest.class);
+            RequestTrace trace = new RequestTrace(span -> progress(id, span));
+            StampResult result;
+            if (StampJob.SAVED.equals(job.mode())) {
+                StampingPlan plan = stampingPlans.get(job.pubId(), job.jcode());
+                if (plan == null) {
+                    throw new StampingException("Configuration not found: " + job.pubId() + "/" + job.jcode());
+                }
+                result = orchestrationService.processWithPlan(plan, request, trace);
+            } else {
+                result = orchestrationService.processJournalMetadata(request, trace);
+            }
+            write(dir.resolve(id).resolve(RESULT), result.pdfBytes());
+            finish(id, j -> j.succeeded(result.filename(), result.pdfBytes().length, trace.serverTiming()));
+            succeeded.increment();
+        } catch (Exception e) {
+            String message = e instanceof StampingException ? e.getMessage() : "An unexpected error occurred";
+            log.warn("  JOB FAILED  id={}: {}", id, e.getMessage(), e instanceof StampingException ? null : e);
+            finish(id, j -> j.failed(message));
+            failed.increment();
+        }
+    }
+
+    private void progress(String id, RequestTrace.Span span) {
+        String stage = StampingMetrics.NONE.equals(span.position())
+                ? span.stage() : span.stage() + " " + span.position();
+        StampJob job = jobs.computeIfPresent(id, (k, j) -> j.progress(stage));
+        if (job != null) {
+            publish(job, "progress");
+        }
+    }
+
+    private void finish(String id, UnaryOperator<StampJob> transition) {
+        StampJob job = jobs.computeIfPresent(id, (k, j) -> transition.apply(j));
+        if (job == null) {
+            return;
+        }
+        try {
+            persist(job);
+        } catch (UncheckedIOException e) {
+            // Subscribers still get the outcome; the stale state on disk runs the job again after a restart
+            log.warn("  Failed to save state of job {}: {}", id, e.getMessage());
+        }
+        log.info("  JOB {}  id={}  attempts={}", job.status(), id, job.attempts());
+        publish(job, "done");
+        List<SseEmitter> list = subscribers.remove(id);
+        if (list != null) {
+            list.forEach(SseEmitter::complete);
+        }
+    }
+
+    private void publish(StampJob job, String event) {
+        for (SseEmitter emitter : subscribers.getOrDefault(job.id(), List.of())) {
+            send(emitter, event, job);
+        }
+    }
+
+    private static void send(SseEmitter emitter, String event, StampJob job) {
+        try {
+            emitter.send(SseEmitter.event().name(event).data(job, MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException e) {
+            emitter.completeWithError(e);
+        }
+    }
+
+    // ─── Storage ────────────────────────────────────────────────────────
+
+    private void persist(StampJob job) {
+        try {
+            write(dir.resolve(job.id()).resolve(JOB), objectMapper.writeValueAsBytes(job));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void forget(StampJob job) {
+        if (job.idempotencyKey() != null) {
+            idempotencyKeys.remove(job.idempotencyKey(), job.id());
+        }
+        List<SseEmitter> list = subscribers.remove(job.id());
+        if (list != null) {
+            list.forEach(SseEmitter::complete);
+        }
+        deleteDir(dir.resolve(job.id()));
+    }
+
+    /** Replaces {@code file} atomically, so a crash leaves either the old or the new content. */
+    private static void write(Path file, byte[] bytes) throws IOException {
+        Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        Files.write(tmp, bytes);
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void deleteDir(Path jobDir) {
+        try (Stream<Path> files = Files.list(jobDir)) {
+            for (Path file : files.toList()) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(jobDir);
+        } catch (IOException e) {
+            log.warn("Failed to delete job directory {}: {}", jobDir, e.getMessage());
+        }
+    }
+
+    /** Waits until no job is queued or running (tests). */
+    void awaitIdle(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (workers.getActiveCount() > 0 || !workers.getQueue().isEmpty()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Jobs still running after " + timeoutMillis + " ms");
+            }
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.stamping.service.plan;
+
+import com.stamping.model.DynamicStampRequest;
+
+/**
+ * One compiled position of a {@link StampingPlan}.
+ *
+ * @param position      NEW_PAGE, HEADER, FOOTER, LEFT_MARGIN, RIGHT_MARGIN, ...
+ * @param config        private copy of the position config with the logo decoded and normalised;
+ *                      shared by every request using the plan and must not be modified
+ * @param template      NEW_PAGE only: template with all config-dependent parts resolved, or null
+ * @param fragment      NEW_PAGE: sanitized custom HTML, or null. Overlays: the sanitized
+ *                      logo/text/html/doi markup that opens the overlay
+ * @param staticOverlay overlays only: nothing in the overlay depends on the request (no date,
+ *                      metadata or ads), so its rendered form can be reused
+ */
+public record PlannedPosition(String position,
+                              DynamicStampRequest.Configuration config,
+                              String template,
+                              String fragment,
+                              boolean staticOverlay) {
+
+    public boolean isNewPage() {
+        return "NEW_PAGE".equalsIgnoreCase(position);
+    }
+}
@@ -0,0 +1,29 @@
+package com.stamping.service.plan;
+
+import java.util.List;
+
+import com.stamping.service.config.StoredConfig;
+
+/**
+ * A journal's stamping config in the form the pipeline consumes directly: positions in stamping
+ * order, with HTML fragments already sanitized, templates resolved and logos decoded.
+ * Only article metadata, the source PDF and ads are left for request time.
+ *
+ * <p>Plans compiled from a saved config carry their {@code source} and a unique {@code id}, which
+ * keys the cache of pre-rendered static overlays. Plans compiled from an inline request
+ * ({@code positions} in the JSON) have neither and are used once.
+ */
+public record StampingPlan(long id,
+                           String pubId,
+                           String jcode,
+                           StoredConfig source,
+                           List<PlannedPosition> positions) {
+
+    public boolean isSaved() {
+        return source != null;
+    }
+
+    public List<String> positionNames() {
+        return positions.stream().map(PlannedPosition::position).toList();
+    }
+}
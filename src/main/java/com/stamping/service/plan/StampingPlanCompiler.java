@@ -0,0 +1,176 @@
+package com.stamping.service.plan;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.stereotype.Component;
+
+import com.stamping.model.DynamicStampRequest;
+import com.stamping.service.DemoConfigGeneratorService;
+import com.stamping.service.InputSanitizer;
+import com.stamping.service.StampingMetrics;
+import com.stamping.service.TemplateService;
+import com.stamping.service.config.StoredConfig;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Turns a positions map into a {@link StampingPlan}: everything that depends only on the config
+ * (HTML sanitization, template resolution, logo decoding, overlay markup) is done here once,
+ * instead of on every stamp request.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StampingPlanCompiler {
+
+    private final TemplateService templateService;
+    private final InputSanitizer inputSanitizer;
+    private final DemoConfigGeneratorService demoConfigGeneratorService;
+    private final StampingMetrics metrics;
+
+    private final AtomicLong ids = new AtomicLong();
+
+    /** Compiles a saved frontend config. */
+    public StampingPlan compile(StoredConfig stored) {
+        Map<String, DynamicStampRequest.Configuration> positions =
+                demoConfigGeneratorService.buildDemoPositions(stored.config());
+        return new StampingPlan(ids.incrementAndGet(), stored.pubId(), stored.jcode(), stored,
+                compilePositions(positions, false));
+    }
+
+    /** Compiles the inline positions of a single request. */
+    public StampingPlan compile(String pubId, String jcode,
+                                Map<String, DynamicStampRequest.Configuration> positions, boolean demo) {
+        return new StampingPlan(0, pubId, jcode, null, compilePositions(positions, demo));
+    }
+
+    private List<PlannedPosition> compilePositions(Map<String, DynamicStampRequest.Configuration> positions,
+                                                   boolean demo) {
+        List<PlannedPosition> compiled = new ArrayList<>();
+        for (var entry : positions.entrySet()) {
+            if (entry.getValue() == null) continue;
+            compiled.add(compilePosition(entry.getKey(), entry.getValue().toBuilder().build(), demo));
+        }
+        return List.copyOf(compiled);
+    }
+
+    private PlannedPosition compilePosition(String position, DynamicStampRequest.Configuration c, boolean demo) {
+        normaliseLogo(position, c);
+
+        if ("NEW_PAGE".equalsIgnoreCase(position)) {
+            boolean hasHtml = c.getHtml() != null && !c.getHtml().isBlank();
+            boolean hasTemplate = c.getTemplateName() != null && !c.getTemplateName().isBlank();
+            // Without a template or custom HTML the page falls back to default_metadata
+            String template = hasTemplate || !hasHtml ? templateService.compileTemplate(c, demo) : null;
+            String customHtml = hasHtml ? sanitize(position, c, c.getHtml()) : null;
+            return new PlannedPosition(position, c, template, customHtml, false);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        appendLogo(sb, c);
+        appendText(sb, position, c);
+        appendRawHtml(sb, position, c);
+        appendDoi(sb, c);
+        return new PlannedPosition(position, c, null, sb.toString(), !isDynamic(c));
+    }
+
+    private String sanitize(String position, DynamicStampRequest.Configuration c, String html) {
+        String template = "NEW_PAGE".equalsIgnoreCase(position)
+                ? templateService.resolveTemplateName(c.getTemplateName()) : StampingMetrics.NONE;
+        return metrics.time(StampingMetrics.SANITIZE, position, template, () -> inputSanitizer.sanitizeHtml(html));
+    }
+
+    /** True if the overlay contains anything that changes per request: date, article metadata or ads. */
+    private boolean isDynamic(DynamicStampRequest.Configuration c) {
+        return Boolean.TRUE.equals(c.getIncludeDate())
+                || Boolean.TRUE.equals(c.getIncludeArticleTitle())
+                || Boolean.TRUE.equals(c.getIncludeAuthors())
+                || Boolean.TRUE.equals(c.getIncludeDoi())
+                || Boolean.TRUE.equals(c.getIncludeCopyright())
+                || Boolean.TRUE.equals(c.getIncludeIssn())
+                || Boolean.TRUE.equals(c.getIncludeArticleId())
+                || Boolean.TRUE.equals(c.getIncludeCurrentUser())
+                || Boolean.TRUE.equals(c.getAdsEnabled());
+    }
+
+    /**
+     * Decodes the logo once: invalid base64 is dropped with a warning instead of producing a
+     * broken image on every page, line-wrapped base64 is re-encoded compactly, and a missing
+     * MIME type is detected from the image bytes.
+     */
+    private void normaliseLogo(String position, DynamicStampRequest.Configuration c) {
+        if (c.getLogo() == null || c.getLogo().isBlank()) return;
+        try {
+            byte[] image = Base64.getMimeDecoder().decode(c.getLogo());
+            if (image.length == 0) {
+                c.setLogo(null);
+                return;
+            }
+            c.setLogo(Base64.getEncoder().encodeToString(image));
+            if (c.getLogoMimeType() == null || c.getLogoMimeType().isBlank()) {
+                c.setLogoMimeType(sniffImageType(image));
+            }
+        } catch (IllegalArgumentException e) {
+            log.warn("  [{}] Logo is not valid base64 and will be left out: {}", position, e.getMessage());
+            c.setLogo(null);
+        }
+    }
+
+    private static String sniffImageType(byte[] image) {
+        if (image.length >= 4 && (image[0] & 0xFF) == 0x89 && image[1] == 'P' && image[2] == 'N' && image[3] == 'G') {
+            return "image/png";
+        }
+        if (image.length >= 2 && (image[0] & 0xFF) == 0xFF && (image[1] & 0xFF) == 0xD8) {
+            return "image/jpeg";
+        }
+        if (image.length >= 4 && image[0] == 'G' && image[1] == 'I' && image[2] == 'F' && image[3] == '8') {
+            return "image/gif";
+        }
+        String head = new String(image, 0, Math.min(image.length, 256), StandardCharsets.US_ASCII).trim();
+        if (head.startsWith("<svg") || (head.startsWith("<?xml") && head.contains("<svg"))) {
+            return "image/svg+xml";
+        }
+        return "image/png";
+    }
+
+    // ─── Static overlay fragments ───────────────────────────────────────
+
+    private void appendLogo(StringBuilder sb, DynamicStampRequest.Configuration c) {
+        if (c.getLogo() != null && !c.getLogo().isBlank()) {
+            String mimeType = c.getLogoMimeType() != null ? c.getLogoMimeType() : "image/png";
+            sb.append("<img src=\"data:").append(mimeType).append(";base64,").append(c.getLogo())
+                    .append("\" style=\"max-width: 200px; display: block; margin: 0 auto; margin-bottom: 8px;\" />");
+        }
+    }
+
+    private void appendText(StringBuilder sb, String position, DynamicStampRequest.Configuration c) {
+        if (c.getText() != null && !c.getText().isBlank()) {
+            String safeText = sanitize(position, c, c.getText().replace("\n", "<br/>"));
+            sb.append("<p style=\"font-size: 14px; margin: 4px 0; font-weight: bold;\">")
+                    .append(safeText).append("</p>");
+        }
+    }
+
+    private void appendRawHtml(StringBuilder sb, String position, DynamicStampRequest.Configuration c) {
+        if (c.getHtml() != null && !c.getHtml().isBlank()) {
+            String sanitized = sanitize(position, c, c.getHtml());
+            sb.append("<div style=\"margin: 8px 0;\">").append(sanitized).append("</div>");
+        }
+    }
+
+    private void appendDoi(StringBuilder sb, DynamicStampRequest.Configuration c) {
+        if (c.getDoi() != null && !c.getDoi().isBlank()) {
+            String doiUrl = c.getDoi().startsWith("http") ? c.getDoi() : "https://doi.org/" + c.getDoi();
+            sb.append("<p style=\"margin: 4px 0; font-size: 12px; color: black;\">doi: ")
+                    .append("<a href=\"").append(doiUrl)
+                    .append("\" style=\"color: blue; text-decoration: none;\">")
+                    .append(doiUrl).append("</a></p>");
+        }
+    }
+}
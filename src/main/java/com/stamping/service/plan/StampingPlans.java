@@ -0,0 +1,102 @@
+package com.stamping.service.plan;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+import com.stamping.config.StampingProperties;
+import com.stamping.service.cache.LruCache;
+import com.stamping.service.config.ConfigFileLayout;
+import com.stamping.service.config.ConfigRepository;
+import com.stamping.service.config.StoredConfig;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Holds the compiled {@link StampingPlan} of every saved config in use.
+ *
+ * <p>saveConfig compiles the new plan straight away. Configs that reach the repository any other
+ * way (startup, file edits, restore) are compiled on first use: a plan is reused only while its
+ * source is still the repository's current {@link StoredConfig}, so an edited or archived config
+ * never stamps with a stale plan.
+ *
+ * <p>Also caches rendered static overlays (see {@link PlannedPosition#staticOverlay()}) by plan,
+ * position, stamp size and source-PDF font, bounded by {@code stamping.plans.overlay-cache-bytes}.
+ */
+@Slf4j
+@Component
+public class StampingPlans {
+
+    private final ConfigRepository configRepository;
+    private final StampingPlanCompiler compiler;
+    private final Map<String, StampingPlan> plans = new ConcurrentHashMap<>();
+    private final LruCache<String, byte[]> renderedOverlays;
+
+    private final Counter compilations;
+    private final Counter overlayHits;
+    private final Counter overlayMisses;
+
+    public StampingPlans(ConfigRepository configRepository, StampingPlanCompiler compiler,
+                         StampingProperties properties, MeterRegistry meterRegistry) {
+        this.configRepository = configRepository;
+        this.compiler = compiler;
+        this.renderedOverlays = new LruCache<>(properties.getPlans().getOverlayCacheBytes(), b -> b.length);
+
+        this.compilations = Counter.builder("stamping.plans.compiled")
+                .description("Stamping plans compiled from saved configs")
+                .register(meterRegistry);
+        this.overlayHits = Counter.builder("stamping.plans.overlay.requests").tag("result", "hit")
+                .description("Static overlay lookups").register(meterRegistry);
+        this.overlayMisses = Counter.builder("stamping.plans.overlay.requests").tag("result", "miss")
+                .description("Static overlay lookups").register(meterRegistry);
+        Gauge.builder("stamping.plans.active", plans, Map::size)
+                .description("Compiled stamping plans held in memory").register(meterRegistry);
+        Gauge.builder("stamping.plans.overlay.bytes", renderedOverlays, LruCache::weight).baseUnit("bytes")
+                .description("Bytes of cached pre-rendered overlays").register(meterRegistry);
+    }
+
+    /** Compiles and installs the plan for a config that was just saved. */
+    public StampingPlan compile(StoredConfig stored) {
+        long start = System.currentTimeMillis();
+        StampingPlan plan = compiler.compile(stored);
+        plans.put(stored.key(), plan);
+        compilations.increment();
+        log.info("Stamping plan compiled for {}/{} (version {}, positions {}) in {}ms",
+                stored.pubId(), stored.jcode(), stored.version(), plan.positionNames(),
+                System.currentTimeMillis() - start);
+        return plan;
+    }
+
+    /** The plan for the active config of a journal, or null if it has none. */
+    public StampingPlan get(String pubId, String jcode) {
+        String key = ConfigFileLayout.fileName(pubId, jcode);
+        StoredConfig stored = configRepository.get(pubId, jcode);
+        if (stored == null) {
+            plans.remove(key);
+            return null;
+        }
+        StampingPlan plan = plans.get(key);
+        if (plan != null && plan.source() == stored) {
+            return plan;
+        }
+        return compile(stored);
+    }
+
+    /** Returns the cached rendering for {@code key}, rendering and caching it on a miss. */
+    public byte[] renderedOverlay(String key, Supplier<byte[]> renderer) {
+        byte[] rendered = renderedOverlays.get(key);
+        if (rendered != null) {
+            overlayHits.increment();
+            return rendered;
+        }
+        overlayMisses.increment();
+        rendered = renderer.get();
+        renderedOverlays.put(key, rendered);
+        return rendered;
+    }
+}
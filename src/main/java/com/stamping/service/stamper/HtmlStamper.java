@@ -7,9 +7,7 @@ import com.itextpdf.kernel.geom.Rectangle;
 import com.itextpdf.kernel.pdf.PdfDocument;
 import com.itextpdf.kernel.pdf.PdfName;
 import com.itextpdf.kernel.pdf.PdfPage;
-import com.itextpdf.kernel.pdf.PdfReader;
 import com.itextpdf.kernel.pdf.PdfString;
-import com.itextpdf.kernel.pdf.PdfWriter;
 import com.itextpdf.kernel.pdf.PdfDictionary;
 import com.itextpdf.kernel.pdf.action.PdfAction;
 import com.itextpdf.kernel.pdf.annot.PdfAnnotation;
@@ -19,9 +17,11 @@ import com.itextpdf.kernel.pdf.xobject.PdfFormXObject;
 import com.stamping.exception.StampingException;
 import com.stamping.model.StampPosition;
 import com.stamping.model.StampRequest;
+import com.stamping.service.CachingResourceRetriever;
+import com.stamping.service.HtmlFonts;
+import com.stamping.service.PdfIo;
 import org.springframework.stereotype.Component;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
@@ -35,22 +35,32 @@ import java.util.Set;
 @Component("htmlStamper")
 public class HtmlStamper implements Stamper {
 
+    private final CachingResourceRetriever resourceRetriever;
+    private final HtmlFonts htmlFonts;
+
+    public HtmlStamper(CachingResourceRetriever resourceRetriever, HtmlFonts htmlFonts) {
+        this.resourceRetriever = resourceRetriever;
+        this.htmlFonts = htmlFonts;
+    }
+
     @Override
     public byte[] stamp(byte[] pdfBytes, StampRequest request, byte[] stampContent) {
+        // Step 1: Render HTML to PDF (iText creates native link annotations)
+        byte[] htmlPdfBytes = render(request, stampContent);
+
+        // Step 2: Overlay HTML PDF onto source PDF with proper annotation transfer
+        return applyRendered(pdfBytes, request, htmlPdfBytes);
+    }
+
+    @Override
+    public byte[] render(StampRequest request, byte[] stampContent) {
         if (stampContent == null || stampContent.length == 0) {
             throw new StampingException("HTML content is required for HTML stamp type");
         }
 
         try {
             String html = new String(stampContent, StandardCharsets.UTF_8);
-            html = ensureHtml(html);
-
-            // Step 1: Render HTML to PDF (iText creates native link annotations)
-            byte[] htmlPdfBytes = renderHtmlToPdf(html, request);
-
-            // Step 2: Overlay HTML PDF onto source PDF with proper annotation transfer
-            return overlayHtmlPdf(pdfBytes, htmlPdfBytes, request);
-
+            return renderHtmlToPdf(ensureHtml(html), request);
         } catch (StampingException e) {
             throw e;
         } catch (Exception e) {
@@ -58,17 +68,21 @@ public class HtmlStamper implements Stamper {
         }
     }
 
+    @Override
+    public byte[] applyRendered(byte[] pdfBytes, StampRequest request, byte[] renderedStamp) {
+        return overlayHtmlPdf(pdfBytes, renderedStamp, request);
+    }
+
     private byte[] renderHtmlToPdf(String html, StampRequest request) {
         try (ByteArrayOutputStream os = new ByteArrayOutputStream()) {
             ConverterProperties props = new ConverterProperties();
 
             // Font provider that embeds all fonts (including standard ones) for PAC compliance
-            com.itextpdf.layout.font.FontProvider fontProvider =
-                    new com.itextpdf.html2pdf.resolver.font.DefaultFontProvider(true, true, true);
-            props.setFontProvider(fontProvider);
+            props.setFontProvider(htmlFonts.newProvider());
+            props.setResourceRetriever(resourceRetriever);
 
             if (request.getStampWidth() != null && request.getStampHeight() != null) {
-                com.itextpdf.kernel.pdf.PdfWriter writer = new com.itextpdf.kernel.pdf.PdfWriter(os);
+                com.itextpdf.kernel.pdf.PdfWriter writer = PdfIo.writer(os);
                 com.itextpdf.kernel.pdf.PdfDocument pdfDoc = new com.itextpdf.kernel.pdf.PdfDocument(writer);
                 pdfDoc.setDefaultPageSize(
                         new com.itextpdf.kernel.geom.PageSize(request.getStampWidth(), request.getStampHeight()));
@@ -76,7 +90,7 @@ public class HtmlStamper implements Stamper {
                 document.close();
                 return os.toByteArray();
             } else {
-                HtmlConverter.convertToPdf(html, os, props);
+                HtmlConverter.convertToPdf(html, PdfIo.writer(os), props);
                 return os.toByteArray();
             }
         } catch (Exception e) {
@@ -92,11 +106,11 @@ public class HtmlStamper implements Stamper {
         try (ByteArrayOutputStream os = new ByteArrayOutputStream()) {
 
             PdfDocument sourceDoc = new PdfDocument(
-                    new PdfReader(new ByteArrayInputStream(sourcePdfBytes)),
-                    new PdfWriter(os));
+                    PdfIo.reader(sourcePdfBytes),
+                    PdfIo.writer(os));
 
             PdfDocument htmlDoc = new PdfDocument(
-                    new PdfReader(new ByteArrayInputStream(htmlPdfBytes)));
+                    PdfIo.reader(htmlPdfBytes));
 
             PdfPage htmlPage = htmlDoc.getPage(1);
             Rectangle htmlBox = htmlPage.getMediaBox();
@@ -16,4 +16,13 @@ public interface Stamper {
      * @return the stamped PDF as a byte array
      */
     byte[] stamp(byte[] pdfBytes, StampRequest request, byte[] stampContent);
+
+    /**
+     * Renders the stamp content on its own, without a target PDF. The result depends only on
+     * the content and the stamp dimensions, so it can be cached and applied to many PDFs.
+     */
+    byte[] render(StampRequest request, byte[] stampContent);
+
+    /** Applies a stamp previously produced by {@link #render} to the given PDF. */
+    byte[] applyRendered(byte[] pdfBytes, StampRequest request, byte[] renderedStamp);
 }
@@ -0,0 +1,44 @@
+package com.stamping.perf;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.stamping.service.AdStampService;
+
+/** Ad creative rewriting (adclick unwrapping and legacy-domain resolution). */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class AdStampBenchmark {
+
+    @Param({"1", "10", "100"})
+    int links;
+
+    private AdStampService adStampService;
+    private String html;
+
+    @Setup
+    public void setup() {
+        adStampService = PerfContext.bean(AdStampService.class);
+        html = FixtureCorpus.adHtml(links);
+    }
+
+    @Benchmark
+    public String processHtmlContent() {
+        return adStampService.processHtmlContent(html, "hwmaint.genome.cshlp.org");
+    }
+}
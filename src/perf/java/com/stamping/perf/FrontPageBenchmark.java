@@ -0,0 +1,62 @@
+package com.stamping.perf;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.itextpdf.kernel.geom.PageSize;
+import com.stamping.model.DynamicStampRequest;
+import com.stamping.service.MetadataFrontPageService;
+import com.stamping.service.TemplateService;
+
+/** NEW_PAGE covers: rendering the cover and inserting it before or after the article. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class FrontPageBenchmark {
+
+    @Param({"20", "200"})
+    int pages;
+
+    private MetadataFrontPageService frontPageService;
+    private String coverHtml;
+    private byte[] cover;
+    private byte[] pdf;
+
+    @Setup
+    public void setup() {
+        frontPageService = PerfContext.bean(MetadataFrontPageService.class);
+        DynamicStampRequest.Configuration config = FixtureCorpus.config("default_metadata");
+        coverHtml = PerfContext.bean(TemplateService.class).renderTemplate(config, FixtureCorpus.request());
+        cover = frontPageService.renderHtmlToPdf(coverHtml, PageSize.LETTER);
+        pdf = FixtureCorpus.article(pages, 10);
+    }
+
+    @Benchmark
+    public byte[] renderCover() {
+        return frontPageService.renderHtmlToPdf(coverHtml, PageSize.LETTER);
+    }
+
+    @Benchmark
+    public byte[] prepend() {
+        return frontPageService.prependPdf(pdf, cover);
+    }
+
+    @Benchmark
+    public byte[] append() {
+        return frontPageService.appendPdf(pdf, cover);
+    }
+}
@@ -0,0 +1,53 @@
+package com.stamping.perf;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.stamping.model.StampRequest;
+import com.stamping.service.stamper.HtmlStamper;
+
+/** HTML overlay on every page, by page count and link annotations per page (links are re-created on each stamped page). */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class HtmlStamperBenchmark {
+
+    @Param({"1", "20", "200"})
+    int pages;
+
+    @Param({"0", "50"})
+    int links;
+
+    private HtmlStamper stamper;
+    private byte[] pdf;
+    private byte[] html;
+    private StampRequest request;
+
+    @Setup
+    public void setup() {
+        stamper = PerfContext.bean(HtmlStamper.class);
+        pdf = FixtureCorpus.article(pages, links);
+        html = FixtureCorpus.footerHtml().getBytes(StandardCharsets.UTF_8);
+        request = FixtureCorpus.footerRequest();
+    }
+
+    @Benchmark
+    public byte[] stamp() {
+        return stamper.stamp(pdf, request, html);
+    }
+}
@@ -0,0 +1,44 @@
+package com.stamping.perf;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.stamping.service.PdfFontExtractor;
+
+/** Primary-font detection on articles with a fully embedded TrueType font. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class PdfFontExtractorBenchmark {
+
+    @Param({"1", "20", "200"})
+    int pages;
+
+    private PdfFontExtractor extractor;
+    private byte[] pdf;
+
+    @Setup
+    public void setup() {
+        extractor = PerfContext.bean(PdfFontExtractor.class);
+        pdf = FixtureCorpus.article(pages, 0);
+    }
+
+    @Benchmark
+    public PdfFontExtractor.FontInfo extractPrimaryFont() {
+        return extractor.extractPrimaryFont(pdf);
+    }
+}
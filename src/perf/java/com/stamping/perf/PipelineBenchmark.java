@@ -0,0 +1,63 @@
+package com.stamping.perf;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.stamping.model.DynamicStampRequest;
+import com.stamping.model.JournalMetadataRequest;
+import com.stamping.service.StampOrchestrationService;
+
+/**
+ * The full inline pipeline from a source file on disk: read, font extraction, plan compilation
+ * and every position, for a footer only and for a cover page plus footer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@State(Scope.Benchmark)
+public class PipelineBenchmark {
+
+    @Param({"1", "20", "200"})
+    int pages;
+
+    @Param({"FOOTER", "NEW_PAGE,FOOTER"})
+    String positions;
+
+    private StampOrchestrationService orchestrationService;
+    private Path source;
+
+    @Setup
+    public void setup() {
+        orchestrationService = PerfContext.bean(StampOrchestrationService.class);
+        source = FixtureCorpus.write(PerfContext.workDir().resolve("sources"), "article-" + pages + ".pdf",
+                FixtureCorpus.article(pages, 10));
+    }
+
+    @Benchmark
+    public byte[] processJournalMetadata() {
+        JournalMetadataRequest request = FixtureCorpus.request();
+        request.setPdfFilePath(source.toString());
+        Map<String, DynamicStampRequest.Configuration> configs = new LinkedHashMap<>();
+        for (String position : positions.split(",")) {
+            configs.put(position, FixtureCorpus.config("default_metadata"));
+        }
+        request.setPositions(configs);
+        return orchestrationService.processJournalMetadata(request).pdfBytes();
+    }
+}
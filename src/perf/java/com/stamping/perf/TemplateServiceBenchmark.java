@@ -0,0 +1,55 @@
+package com.stamping.perf;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.stamping.model.DynamicStampRequest;
+import com.stamping.model.JournalMetadataRequest;
+import com.stamping.service.TemplateService;
+
+/** Cover template rendering: the full inline path and the fill of a plan's precompiled template. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class TemplateServiceBenchmark {
+
+    @Param({"default_metadata", "journal_article", "genome_last_page"})
+    String templateName;
+
+    private TemplateService templateService;
+    private DynamicStampRequest.Configuration config;
+    private JournalMetadataRequest request;
+    private String compiled;
+
+    @Setup
+    public void setup() {
+        templateService = PerfContext.bean(TemplateService.class);
+        config = FixtureCorpus.config(templateName);
+        request = FixtureCorpus.request();
+        compiled = templateService.compileTemplate(config, false);
+    }
+
+    @Benchmark
+    public String renderTemplate() {
+        return templateService.renderTemplate(config, request);
+    }
+
+    @Benchmark
+    public String fillCompiled() {
+        return templateService.fillTemplate(compiled, config, request, null);
+    }
+}
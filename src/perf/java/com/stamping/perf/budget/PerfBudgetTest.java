@@ -0,0 +1,69 @@
+package com.stamping.perf.budget;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * Latency budgets for the scenarios of {@link PipelineBudgetTest} ({@code mvn -Pperf test}).
+ *
+ * <p>Latency is the fastest measured run in units of a fixed CPU calibration workload timed in the
+ * same JVM, checked against {@code <scenario>.latency} in {@code perf-budgets.properties}. It is
+ * the only timing budget, so it has the widest headroom and is kept out of the default build;
+ * work counts, memory and output size are checked on every build by {@link PipelineBudgetTest}.
+ */
+class PerfBudgetTest {
+
+    private static double calibrationMs;
+
+    @BeforeAll
+    static void setUp() {
+        calibrationMs = calibrate();
+        PipelineBudgets.record("calibration-ms", calibrationMs);
+    }
+
+    @AfterAll
+    static void writeMeasured() throws IOException {
+        PipelineBudgets.writeMeasured();
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("com.stamping.perf.budget.PipelineBudgets#scenarios")
+    void pipelineStaysWithinLatencyBudget(PipelineBudgets.Scenario scenario) {
+        PipelineBudgets.Measurement measurement = PipelineBudgets.measure(scenario);
+        PipelineBudgets.check(scenario, Map.of("latency", measurement.fastestMs() / calibrationMs));
+    }
+
+    /**
+     * Fastest of several runs of a fixed CPU and allocation workload: deflating 4 MB of
+     * pseudo-random text. Latency budgets are multiples of it, so they hold across machines
+     * of different speeds.
+     */
+    private static double calibrate() {
+        byte[] input = new byte[4 * 1024 * 1024];
+        long seed = 42;
+        for (int i = 0; i < input.length; i++) {
+            seed = seed * 6364136223846793005L + 1442695040888963407L;
+            input[i] = (byte) ('a' + ((seed >>> 33) % 16));
+        }
+        byte[] output = new byte[input.length];
+        double best = Double.MAX_VALUE;
+        for (int run = 0; run < 7; run++) {
+            long start = System.nanoTime();
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+            deflater.setInput(input);
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflater.deflate(output);
+            }
+            deflater.end();
+            best = Math.min(best, (System.nanoTime() - start) / 1e6);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,55 @@
+package com.stamping.perf.load;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import com.stamping.perf.FixtureCorpus;
+
+/**
+ * Writes a synthetic article corpus for load tests. Each option takes a comma-separated list and
+ * files cycle through every combination, so a small {@code --count} already mixes sizes.
+ *
+ * <pre>
+ * mvn -Pperf test-compile exec:java -Dexec.mainClass=com.stamping.perf.load.CorpusGenerator \
+ *     -Dexec.args="--out=target/corpus --count=40 --pages=1,12,80 --page-size=LETTER,A4 --font=serif,sans-subset,helvetica --images=0,2 --image-size=600"
+ * </pre>
+ */
+public final class CorpusGenerator {
+
+    private CorpusGenerator() {
+    }
+
+    public static void main(String[] argv) {
+        Args args = new Args(argv);
+        Path out = Path.of(args.string("out", "target/corpus"));
+        int count = args.integer("count", 20);
+        List<String> pages = args.list("pages", "1,12,40");
+        List<String> links = args.list("links", "10");
+        List<String> pageSizes = args.list("page-size", "LETTER,A4");
+        List<String> fonts = args.list("font", "serif,sans-subset,helvetica");
+        List<String> images = args.list("images", "0,1");
+        int imageSize = args.integer("image-size", 600);
+
+        long totalBytes = 0;
+        for (int i = 0; i < count; i++) {
+            // Mixed radix over the option lists so consecutive files differ in every dimension
+            int n = i;
+            FixtureCorpus.Spec spec = new FixtureCorpus.Spec(
+                    Integer.parseInt(pick(pages, n)),
+                    Integer.parseInt(pick(links, n /= pages.size())),
+                    pick(pageSizes, n /= links.size()),
+                    pick(fonts, n /= pageSizes.size()),
+                    Integer.parseInt(pick(images, n / fonts.size())),
+                    imageSize);
+            byte[] pdf = FixtureCorpus.generate(spec);
+            totalBytes += pdf.length;
+            Path file = FixtureCorpus.write(out, String.format("article-%04d-%s.pdf", i, spec.name()), pdf);
+            System.out.printf("%s  %,d bytes%n", file, pdf.length);
+        }
+        System.out.printf("%d files, %,d bytes in %s%n", count, totalBytes, out.toAbsolutePath());
+    }
+
+    private static String pick(List<String> values, int n) {
+        return values.get(n % values.size()).trim();
+    }
+}
@@ -0,0 +1,245 @@
+package com.stamping.perf.load;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stamping.model.DynamicStampRequest;
+import com.stamping.model.JournalMetadataRequest;
+import com.stamping.perf.FixtureCorpus;
+
+/**
+ * Closed-loop load driver for a running instance on localhost: {@code --concurrency} workers each
+ * send the next stamping request as soon as the previous one returns. Requests pick a random PDF
+ * from {@code --corpus} and a random jcode out of {@code --journals}, so ad cache entries are
+ * spread the way many journals spread them.
+ *
+ * <p>After {@code --warmup}, every request is recorded for {@code --duration}; the report gives
+ * throughput, errors by status and exact latency percentiles (p50/p90/p99/p999/max), plus the
+ * mean of each {@code Server-Timing} stage.
+ *
+ * <pre>
+ * mvn -Pperf test-compile exec:java -Dexec.mainClass=com.stamping.perf.load.LoadDriver \
+ *     -Dexec.args="--corpus=target/corpus --concurrency=8 --duration=60s --positions=NEW_PAGE,FOOTER --ads"
+ * </pre>
+ *
+ * With {@code --source=url} the PDFs are fetched by the service from {@code --stub} (a
+ * {@link StubAdServer} started with the same {@code --corpus}) instead of read from disk.
+ */
+public final class LoadDriver {
+
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final URI endpoint;
+    private final List<Path> corpus;
+    private final String source;
+    private final String stub;
+    private final List<String> positions;
+    private final boolean ads;
+    private final int journals;
+
+    private volatile boolean recording;
+    private volatile boolean stopped;
+    private final List<Samples> samples = Collections.synchronizedList(new ArrayList<>());
+    private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+    private final Map<String, double[]> stages = new LinkedHashMap<>();
+    private final AtomicLong bytes = new AtomicLong();
+
+    /** Latencies of successful requests recorded by one worker; read after the workers stop. */
+    private static final class Samples {
+        private long[] nanos = new long[4096];
+        private int count;
+
+        void add(long value) {
+            if (count == nanos.length) {
+                nanos = Arrays.copyOf(nanos, count * 2);
+            }
+            nanos[count++] = value;
+        }
+    }
+
+    LoadDriver(Args args) throws IOException {
+        this.endpoint = URI.create(args.string("target", "http://localhost:8080") + "/api/v1/stamp/journal-metadata");
+        Path dir = Path.of(args.string("corpus", "target/corpus")).toAbsolutePath();
+        try (Stream<Path> files = Files.list(dir)) {
+            this.corpus = files.filter(f -> f.toString().endsWith(".pdf")).sorted().toList();
+        }
+        if (corpus.isEmpty()) {
+            throw new IllegalArgumentException("No PDFs in " + dir + "; run CorpusGenerator first");
+        }
+        this.source = args.string("source", "file");
+        this.stub = args.string("stub", "http://localhost:8099");
+        this.positions = args.list("positions", "FOOTER");
+        this.ads = args.flag("ads");
+        this.journals = args.integer("journals", 20);
+    }
+
+    public static void main(String[] argv) throws Exception {
+        Args args = new Args(argv);
+        LoadDriver driver = new LoadDriver(args);
+        int concurrency = args.integer("concurrency", 8);
+        Duration warmup = args.duration("warmup", "10s");
+        Duration duration = args.duration("duration", "60s");
+
+        System.out.printf("%s  corpus=%d PDFs  source=%s  positions=%s  ads=%s  concurrency=%d  warmup=%ds  duration=%ds%n",
+                driver.endpoint, driver.corpus.size(), driver.source, driver.positions, driver.ads,
+                concurrency, warmup.toSeconds(), duration.toSeconds());
+
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            workers.submit(driver::loop);
+        }
+        Thread.sleep(warmup.toMillis());
+        driver.recording = true;
+        long start = System.nanoTime();
+        long reportEvery = TimeUnit.SECONDS.toNanos(5);
+        long nextReport = start + reportEvery;
+        while (System.nanoTime() - start < duration.toNanos()) {
+            Thread.sleep(100);
+            if (System.nanoTime() >= nextReport) {
+                System.out.printf("  %3ds  %d requests%n", TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start),
+                        driver.recorded());
+                nextReport += reportEvery;
+            }
+        }
+        driver.recording = false;
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        driver.stopped = true;
+        workers.shutdown();
+        workers.awaitTermination(2, TimeUnit.MINUTES);
+        driver.report(elapsed);
+    }
+
+    private void loop() {
+        Samples mine = new Samples();
+        samples.add(mine);
+        while (!stopped) {
+            long start = System.nanoTime();
+            int status;
+            String serverTiming = null;
+            try {
+                HttpResponse<byte[]> response = httpClient.send(request(), HttpResponse.BodyHandlers.ofByteArray());
+                status = response.statusCode();
+                serverTiming = response.headers().firstValue("Server-Timing").orElse(null);
+                if (recording) {
+                    bytes.addAndGet(response.body().length);
+                }
+            } catch (IOException e) {
+                status = -1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            long latency = System.nanoTime() - start;
+            if (!recording) {
+                continue;
+            }
+            statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+            if (status != 200) {
+                continue;
+            }
+            mine.add(latency);
+            if (serverTiming != null) {
+                recordStages(serverTiming);
+            }
+        }
+    }
+
+    private HttpRequest request() throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Path pdf = corpus.get(random.nextInt(corpus.size()));
+        JournalMetadataRequest request = FixtureCorpus.request();
+        request.setJcode("load" + random.nextInt(journals));
+        if ("url".equals(source)) {
+            request.setPdfUrl(stub + "/pdf/" + pdf.getFileName());
+        } else {
+            request.setPdfFilePath(pdf.toString());
+        }
+        Map<String, DynamicStampRequest.Configuration> configs = new LinkedHashMap<>();
+        for (String position : positions) {
+            DynamicStampRequest.Configuration c = FixtureCorpus.config("default_metadata");
+            c.setAdsEnabled(ads);
+            configs.put(position.trim(), c);
+        }
+        request.setPositions(configs);
+        return HttpRequest.newBuilder(endpoint)
+                .timeout(Duration.ofMinutes(2))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(request)))
+                .build();
+    }
+
+    /** Adds each {@code name;desc="POS";dur=12.3} entry to the per-stage totals. */
+    private void recordStages(String serverTiming) {
+        synchronized (stages) {
+            for (String entry : serverTiming.split(",\\s*")) {
+                String name = null;
+                String desc = null;
+                double dur = 0;
+                for (String part : entry.split(";")) {
+                    if (name == null) name = part.trim();
+                    else if (part.startsWith("desc=")) desc = part.substring(5).replace("\"", "");
+                    else if (part.startsWith("dur=")) dur = Double.parseDouble(part.substring(4));
+                }
+                double[] total = stages.computeIfAbsent(desc != null ? name + " " + desc : name, k -> new double[2]);
+                total[0] += dur;
+                total[1]++;
+            }
+        }
+    }
+
+    private long recorded() {
+        return statuses.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    private void report(double elapsedSeconds) {
+        long[] all = samples.stream()
+                .flatMapToLong(s -> Arrays.stream(s.nanos, 0, s.count))
+                .sorted()
+                .toArray();
+        long total = recorded();
+        Map<Integer, Long> byStatus = new TreeMap<>();
+        statuses.forEach((status, count) -> byStatus.put(status, count.sum()));
+        System.out.println();
+        System.out.printf("Requests     %d in %.1fs  (%d failed; by status %s, -1 = I/O error)%n",
+                total, elapsedSeconds, total - all.length, byStatus);
+        System.out.printf("Throughput   %.2f req/s  %.2f MB/s out%n", all.length / elapsedSeconds,
+                bytes.get() / elapsedSeconds / (1024 * 1024));
+        if (all.length > 0) {
+            System.out.printf("Latency ms   p50=%.1f  p90=%.1f  p99=%.1f  p999=%.1f  max=%.1f%n",
+                    percentile(all, 0.50), percentile(all, 0.90), percentile(all, 0.99), percentile(all, 0.999),
+                    all[all.length - 1] / 1e6);
+        }
+        if (!stages.isEmpty()) {
+            System.out.println("Server-Timing mean ms per request with the stage");
+            stages.forEach((stage, t) -> System.out.printf("  %-24s %8.1f%n", stage, t[0] / t[1]));
+        }
+    }
+
+    /** Nearest-rank percentile of sorted nanosecond latencies, in milliseconds. */
+    static double percentile(long[] sorted, double p) {
+        int rank = (int) Math.ceil(p * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)] / 1e6;
+    }
+}
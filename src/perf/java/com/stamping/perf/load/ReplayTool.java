@@ -0,0 +1,272 @@
+package com.stamping.perf.load;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.stamping.service.capture.RequestCapture;
+
+/**
+ * Replays requests captured with {@code stamping.capture.enabled} against a local instance, and
+ * compares two replays.
+ *
+ * <p>Replay re-issues every record of {@code --capture} (the capture directory) through
+ * {@code /stamp/journal-metadata}, with the source PDF and logos restored from its blob store, at
+ * the original inter-arrival times divided by {@code --speed} ({@code 0} = back to back). At most
+ * {@code --concurrency} requests are in flight; requests that had to wait are counted as late.
+ * Per-request results go to {@code --out} as JSON lines.
+ *
+ * <pre>
+ * mvn -Pperf test-compile exec:java -Dexec.mainClass=com.stamping.perf.load.ReplayTool \
+ *     -Dexec.args="--capture=capture --speed=2 --out=target/replay-before.jsonl"
+ * mvn -Pperf test-compile exec:java -Dexec.mainClass=com.stamping.perf.load.ReplayTool \
+ *     -Dexec.args="--compare=target/replay-before.jsonl,target/replay-after.jsonl"
+ * </pre>
+ *
+ * Compare matches records by capture id and reports client and server latency percentiles for
+ * both runs, per position set, and every record whose output size changed.
+ */
+public final class ReplayTool {
+
+    /** One replayed request. */
+    record Result(String id, String positions, int status, double latencyMs, double serverMs, long outputBytes,
+                  double capturedMs, long capturedBytes, boolean late) {}
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private ReplayTool() {
+    }
+
+    public static void main(String[] argv) throws Exception {
+        Args args = new Args(argv);
+        String compare = args.string("compare", null);
+        if (compare != null) {
+            String[] files = compare.split(",");
+            compare(read(Path.of(files[0])), read(Path.of(files[1])));
+        } else {
+            replay(args);
+        }
+    }
+
+    // ─── Replay ─────────────────────────────────────────────────────────
+
+    private static void replay(Args args) throws Exception {
+        Path capture = Path.of(args.string("capture", "capture")).toAbsolutePath();
+        Path blobs = capture.resolve("blobs");
+        URI endpoint = URI.create(args.string("target", "http://localhost:8080") + "/api/v1/stamp/journal-metadata");
+        double speed = args.decimal("speed", 1.0);
+        int limit = args.integer("limit", Integer.MAX_VALUE);
+        boolean fromUrl = "url".equals(args.string("source", "file"));
+        String stub = args.string("stub", "http://localhost:8099");
+        Path out = Path.of(args.string("out", "target/replay-" + System.currentTimeMillis() + ".jsonl"));
+
+        List<JsonNode> records = captured(capture);
+        if (records.size() > limit) {
+            records = records.subList(0, limit);
+        }
+        System.out.printf("Replaying %d records from %s to %s at %s%n", records.size(), capture, endpoint,
+                speed > 0 ? speed + "x" : "full speed");
+
+        HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        Semaphore inFlight = new Semaphore(args.integer("concurrency", 16));
+        ConcurrentLinkedQueue<Result> results = new ConcurrentLinkedQueue<>();
+        List<CompletableFuture<?>> pending = new ArrayList<>();
+        long firstTimestamp = records.isEmpty() ? 0 : records.get(0).get("timestamp").asLong();
+        long start = System.nanoTime();
+
+        for (JsonNode record : records) {
+            if (speed > 0) {
+                long due = start + (long) ((record.get("timestamp").asLong() - firstTimestamp) * 1_000_000 / speed);
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+                }
+            }
+            boolean waited = !inFlight.tryAcquire();
+            if (waited) {
+                inFlight.acquire();
+            }
+            boolean late = waited && speed > 0;
+            String positions = String.join(",", iterable(record.get("request").get("positions").fieldNames()));
+            HttpRequest request = HttpRequest.newBuilder(endpoint)
+                    .timeout(Duration.ofMinutes(2))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(
+                            MAPPER.writeValueAsBytes(restore(record, blobs, fromUrl, stub))))
+                    .build();
+            long sent = System.nanoTime();
+            pending.add(httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                    .handle((response, error) -> {
+                        inFlight.release();
+                        double latency = (System.nanoTime() - sent) / 1e6;
+                        results.add(new Result(record.get("id").asText(), positions,
+                                response != null ? response.statusCode() : -1, latency,
+                                response != null ? serverTotal(response) : -1,
+                                response != null ? response.body().length : 0,
+                                record.get("durationMs").asDouble(), record.get("outputBytes").asLong(), late));
+                        return null;
+                    }));
+        }
+        CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).join();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        List<Result> sorted = results.stream().sorted(Comparator.comparing(Result::id)).toList();
+        Files.createDirectories(out.toAbsolutePath().getParent());
+        try (BufferedWriter writer = Files.newBufferedWriter(out)) {
+            for (Result result : sorted) {
+                writer.write(MAPPER.writeValueAsString(result));
+                writer.newLine();
+            }
+        }
+        long ok = sorted.stream().filter(r -> r.status() == 200).count();
+        long late = sorted.stream().filter(Result::late).count();
+        System.out.printf("%d requests in %.1fs (%.2f req/s), %d failed, %d late%n",
+                sorted.size(), elapsed, sorted.size() / elapsed, sorted.size() - ok, late);
+        summary("replay", sorted);
+        System.out.println("Results in " + out.toAbsolutePath());
+    }
+
+    /** Every captured record in capture-time order. */
+    private static List<JsonNode> captured(Path capture) throws IOException {
+        List<JsonNode> records = new ArrayList<>();
+        try (Stream<Path> files = Files.list(capture)) {
+            for (Path file : files.filter(f -> f.getFileName().toString().endsWith(".jsonl")).sorted().toList()) {
+                for (String line : Files.readAllLines(file)) {
+                    if (!line.isBlank()) {
+                        records.add(MAPPER.readTree(line));
+                    }
+                }
+            }
+        }
+        records.sort(Comparator.comparingLong(r -> r.get("timestamp").asLong()));
+        return records;
+    }
+
+    /** The captured request with its PDF source and logos resolved from the blob store. */
+    private static JsonNode restore(JsonNode record, Path blobs, boolean fromUrl, String stub) throws IOException {
+        ObjectNode request = record.get("request").deepCopy();
+        String source = digest(record.get("source").asText());
+        if (fromUrl) {
+            request.put("pdfUrl", stub + "/pdf/" + source);
+        } else {
+            request.put("pdfFilePath", blobs.resolve(source).toString());
+        }
+        for (Iterator<JsonNode> it = request.get("positions").elements(); it.hasNext(); ) {
+            ObjectNode position = (ObjectNode) it.next();
+            JsonNode logo = position.get("logo");
+            if (logo != null && logo.asText().startsWith(RequestCapture.BLOB_REF)) {
+                position.put("logo", Files.readString(blobs.resolve(digest(logo.asText()))));
+            }
+        }
+        return request;
+    }
+
+    private static String digest(String ref) {
+        return ref.substring(RequestCapture.BLOB_REF.length());
+    }
+
+    /** {@code total} of the Server-Timing header, or -1. */
+    private static double serverTotal(HttpResponse<?> response) {
+        String header = response.headers().firstValue("Server-Timing").orElse("");
+        int total = header.lastIndexOf("total;dur=");
+        return total < 0 ? -1 : Double.parseDouble(header.substring(total + "total;dur=".length()).split("[,;]")[0]);
+    }
+
+    // ─── Compare ────────────────────────────────────────────────────────
+
+    private static List<Result> read(Path file) throws IOException {
+        List<Result> results = new ArrayList<>();
+        for (String line : Files.readAllLines(file)) {
+            if (!line.isBlank()) {
+                results.add(MAPPER.readValue(line, Result.class));
+            }
+        }
+        return results;
+    }
+
+    private static void compare(List<Result> base, List<Result> candidate) {
+        Map<String, Result> byId = new LinkedHashMap<>();
+        base.stream().filter(r -> r.status() == 200).forEach(r -> byId.put(r.id(), r));
+        List<Result[]> pairs = candidate.stream()
+                .filter(r -> r.status() == 200 && byId.containsKey(r.id()))
+                .map(r -> new Result[] {byId.get(r.id()), r})
+                .toList();
+        System.out.printf("%d base / %d candidate records, %d succeeded in both%n", base.size(), candidate.size(),
+                pairs.size());
+        List<Result> a = pairs.stream().map(p -> p[0]).toList();
+        List<Result> b = pairs.stream().map(p -> p[1]).toList();
+        summary("base", a);
+        summary("candidate", b);
+
+        Map<String, List<Result[]>> byPositions = new TreeMap<>();
+        pairs.forEach(p -> byPositions.computeIfAbsent(p[0].positions(), k -> new ArrayList<>()).add(p));
+        System.out.println("Server p50 ms by positions           base  candidate   change");
+        byPositions.forEach((positions, group) -> {
+            double before = percentile(group.stream().mapToDouble(p -> p[0].serverMs()).toArray(), 0.5);
+            double after = percentile(group.stream().mapToDouble(p -> p[1].serverMs()).toArray(), 0.5);
+            System.out.printf("  %-30s %8.1f %10.1f %+8.1f%%  (%d)%n", positions, before, after,
+                    (after - before) / before * 100, group.size());
+        });
+
+        List<Result[]> changed = pairs.stream().filter(p -> p[0].outputBytes() != p[1].outputBytes()).toList();
+        System.out.printf("Output size changed for %d of %d records%n", changed.size(), pairs.size());
+        changed.stream()
+                .sorted(Comparator.comparingDouble((Result[] p) -> -Math.abs(sizeChange(p))))
+                .limit(10)
+                .forEach(p -> System.out.printf("  %-20s %-24s %,10d -> %,10d bytes (%+.1f%%)%n", p[0].id(),
+                        p[0].positions(), p[0].outputBytes(), p[1].outputBytes(), sizeChange(p)));
+    }
+
+    private static double sizeChange(Result[] pair) {
+        return (pair[1].outputBytes() - pair[0].outputBytes()) * 100.0 / pair[0].outputBytes();
+    }
+
+    private static void summary(String label, List<Result> results) {
+        double[] client = results.stream().filter(r -> r.status() == 200).mapToDouble(Result::latencyMs).toArray();
+        double[] server = results.stream().filter(r -> r.serverMs() >= 0).mapToDouble(Result::serverMs).toArray();
+        if (client.length == 0) {
+            return;
+        }
+        System.out.printf("%-10s client ms p50=%.1f p90=%.1f p99=%.1f p999=%.1f | server ms p50=%.1f p99=%.1f | "
+                        + "output %,d bytes%n", label,
+                percentile(client, 0.5), percentile(client, 0.9), percentile(client, 0.99), percentile(client, 0.999),
+                percentile(server, 0.5), percentile(server, 0.99),
+                results.stream().mapToLong(Result::outputBytes).sum());
+    }
+
+    /** Nearest-rank percentile. */
+    private static double percentile(double[] values, double p) {
+        if (values.length == 0) {
+            return Double.NaN;
+        }
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(p * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+
+    private static Iterable<String> iterable(Iterator<String> iterator) {
+        return () -> iterator;
+    }
+}
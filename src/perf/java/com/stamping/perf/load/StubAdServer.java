@@ -0,0 +1,199 @@
+package com.stamping.perf.load;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stamping.model.ad.AdData;
+import com.stamping.model.ad.AdLocation;
+import com.stamping.model.ad.AdResponse;
+import com.stamping.model.ad.Section;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-in for the BAM ads API, so load tests need no outbound network.
+ *
+ * <ul>
+ *   <li>{@code GET /api/ads?publisherId=..&jcode=..} — an {@link AdResponse} with one {@code header} ad
+ *       whose creative links through {@code /adclick} and shows {@code /creative.png}</li>
+ *   <li>{@code GET /creative.png} — the ad image, fetched by the HTML renderer</li>
+ *   <li>{@code GET /pdf/<name>} — files from {@code --corpus}, for {@code pdfUrl} sources</li>
+ * </ul>
+ *
+ * Ad responses are delayed by {@code --latency} ± {@code --jitter} and fail with 503 at
+ * {@code --failure-rate}. Point the service at it with
+ * {@code --stamping.ads.base-url=http://localhost:<port>/api/ads}.
+ */
+public final class StubAdServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "stub-ads");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final long latencyMs;
+    private final long jitterMs;
+    private final double failureRate;
+    private final Path corpus;
+    private final byte[] creative;
+    private final AtomicLong served = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public StubAdServer(int port, long latencyMs, long jitterMs, double failureRate, Path corpus) throws IOException {
+        this.latencyMs = latencyMs;
+        this.jitterMs = jitterMs;
+        this.failureRate = failureRate;
+        this.corpus = corpus;
+        this.creative = creativePng();
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 256);
+        server.setExecutor(executor);
+        server.createContext("/api/ads", this::ads);
+        server.createContext("/creative.png", exchange -> send(exchange, 200, "image/png", creative));
+        server.createContext("/pdf/", this::pdf);
+        server.start();
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    public long served() {
+        return served.get();
+    }
+
+    public long failed() {
+        return failed.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public static void main(String[] argv) throws Exception {
+        Args args = new Args(argv);
+        String corpus = args.string("corpus", null);
+        StubAdServer stub = new StubAdServer(args.integer("port", 8099),
+                args.duration("latency", "50ms").toMillis(), args.duration("jitter", "20ms").toMillis(),
+                args.decimal("failure-rate", 0.0), corpus != null ? Path.of(corpus) : null);
+        Runtime.getRuntime().addShutdownHook(new Thread(stub::close));
+        System.out.printf("Stub BAM on http://localhost:%d/api/ads  latency=%dms+-%dms  failure-rate=%.2f%s%n",
+                stub.port(), stub.latencyMs, stub.jitterMs, stub.failureRate,
+                corpus != null ? "  corpus=/pdf/ from " + corpus : "");
+        while (true) {
+            Thread.sleep(10_000);
+            System.out.printf("served=%d failed=%d%n", stub.served(), stub.failed());
+        }
+    }
+
+    private void ads(HttpExchange exchange) throws IOException {
+        try {
+            long delay = latencyMs + (jitterMs > 0 ? ThreadLocalRandom.current().nextLong(-jitterMs, jitterMs + 1) : 0);
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (ThreadLocalRandom.current().nextDouble() < failureRate) {
+            failed.incrementAndGet();
+            send(exchange, 503, "text/plain", "stub failure".getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        Map<String, String> query = query(exchange.getRequestURI());
+        String base = "http://localhost:" + port();
+        served.incrementAndGet();
+        send(exchange, 200, "application/json", objectMapper.writeValueAsBytes(
+                response(query.get("publisherId"), query.get("jcode"), base)));
+    }
+
+    private void pdf(HttpExchange exchange) throws IOException {
+        String name = exchange.getRequestURI().getPath().substring("/pdf/".length());
+        Path file = corpus != null && !name.contains("/") && !name.contains("..") ? corpus.resolve(name) : null;
+        if (file == null || !Files.isRegularFile(file)) {
+            send(exchange, 404, "text/plain", "not found".getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        send(exchange, 200, "application/pdf", Files.readAllBytes(file));
+    }
+
+    private static AdResponse response(String publisherId, String jcode, String base) {
+        AdData ad = new AdData();
+        ad.setAdId("stub-" + jcode);
+        ad.setAdHtml("<div class=\"bam-ad\"><a href=\"" + base + "/adclick/?adid=1&amp;url="
+                + "https%3A%2F%2Fexample.org%2Foffer\" target=\"_blank\"><img src=\"" + base
+                + "/creative.png\" width=\"300\" height=\"50\" alt=\"Offer\"/></a></div>");
+        AdLocation location = new AdLocation();
+        location.setPositionId("1");
+        location.setPositionName("header");
+        location.setAdData(List.of(ad));
+        Section section = new Section();
+        section.setSectionId("1");
+        section.setSectionPath(List.of("xpdf"));
+        section.setAdLocation(List.of(location));
+        AdResponse response = new AdResponse();
+        response.setPublisherId(publisherId);
+        response.setJournlcode(jcode);
+        response.setSection(List.of(section));
+        return response;
+    }
+
+    private static Map<String, String> query(URI uri) {
+        Map<String, String> params = new HashMap<>();
+        if (uri.getRawQuery() != null) {
+            for (String pair : uri.getRawQuery().split("&")) {
+                int eq = pair.indexOf('=');
+                if (eq > 0) params.put(pair.substring(0, eq), pair.substring(eq + 1));
+            }
+        }
+        return params;
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static byte[] creativePng() {
+        BufferedImage image = new BufferedImage(300, 50, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(new Color(0, 90, 160));
+        g.fillRect(0, 0, 300, 50);
+        g.setColor(Color.WHITE);
+        g.drawString("Stub advertisement", 90, 30);
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(image, "png", out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -1,15 +1,39 @@
 package com.stamping.controller;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stamping.config.StampingProperties;
 import com.stamping.service.DemoStampService;
+import com.stamping.service.config.ConfigListing;
+import com.stamping.service.config.FileConfigRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 class StampControllerTest {
 
@@ -18,22 +42,88 @@ class StampControllerTest {
     @InjectMocks
     private StampController stampController;
 
+    @TempDir
+    Path root;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
+    private FileConfigRepository configRepository;
+    private MockMvc mockMvc;
 
     @BeforeEach
-    void setUp() {
+    void setUp() throws Exception {
         MockitoAnnotations.openMocks(this);
-        try {
-            var field = StampController.class.getDeclaredField("objectMapper");
-            field.setAccessible(true);
-            field.set(stampController, objectMapper);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+        StampingProperties properties = new StampingProperties();
+        properties.setConfigDir(Files.createDirectories(root.resolve("configs")).toString());
+        properties.setArchiveDir(root.resolve("archive").toString());
+        configRepository = new FileConfigRepository(objectMapper, properties, new SimpleMeterRegistry());
+
+        setField("objectMapper", objectMapper);
+        setField("configRepository", configRepository);
+        setField("configListing", new ConfigListing(configRepository, objectMapper));
+        mockMvc = MockMvcBuilders.standaloneSetup(stampController).build();
     }
 
     @Test
     void testControllerInitialization() {
         assertNotNull(stampController);
     }
+
+    @Test
+    void testListConfigsStreamsArrayAndSupportsEtagAndDelta() throws Exception {
+        configRepository.save("aaa", "j1", config("aaa", "j1"));
+        configRepository.save("bbb", "j1", config("bbb", "j1"));
+
+        MvcResult full = mockMvc.perform(get("/api/v1/configs"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(full))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(header().string("X-Total-Count", "2"))
+                .andExpect(header().string("X-Config-Delta", "false"))
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].pubId").value("aaa"))
+                .andExpect(jsonPath("$[1].header.logo.value").value("data:image/png;base64,AAAA"));
+        String etag = full.getResponse().getHeader(HttpHeaders.ETAG);
+        String cursor = full.getResponse().getHeader("X-Config-Cursor");
+        assertNotNull(etag);
+        assertNotNull(cursor);
+
+        mockMvc.perform(get("/api/v1/configs").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag));
+
+        configRepository.save("aaa", "j2", config("aaa", "j2"));
+        configRepository.archive("bbb", "j1");
+
+        MvcResult delta = mockMvc.perform(get("/api/v1/configs").param("since", cursor).param("view", "summary")
+                        .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(delta))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Config-Delta", "true"))
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].jcode").value("j2"))
+                .andExpect(jsonPath("$[0].header.logo.value").doesNotExist())
+                .andExpect(jsonPath("$[1].pubId").value("bbb"))
+                .andExpect(jsonPath("$[1].removed").value(true));
+    }
+
+    private void setField(String name, Object value) throws Exception {
+        var field = StampController.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(stampController, value);
+    }
+
+    private static Map<String, Object> config(String pubId, String jcode) {
+        Map<String, Object> header = new LinkedHashMap<>();
+        header.put("enabled", true);
+        header.put("logo", new LinkedHashMap<>(Map.of("enabled", true, "value", "data:image/png;base64,AAAA")));
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("pubId", pubId);
+        config.put("jcode", jcode);
+        config.put("header", header);
+        return config;
+    }
 }
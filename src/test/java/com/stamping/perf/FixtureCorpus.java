@@ -0,0 +1,266 @@
+package com.stamping.perf;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.imageio.ImageIO;
+
+import com.itextpdf.io.font.FontProgramFactory;
+import com.itextpdf.io.font.PdfEncodings;
+import com.itextpdf.io.font.constants.StandardFonts;
+import com.itextpdf.io.image.ImageDataFactory;
+import com.itextpdf.kernel.font.PdfFont;
+import com.itextpdf.kernel.font.PdfFontFactory;
+import com.itextpdf.kernel.font.PdfFontFactory.EmbeddingStrategy;
+import com.itextpdf.kernel.geom.PageSize;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.kernel.pdf.action.PdfAction;
+import com.itextpdf.layout.Document;
+import com.itextpdf.layout.element.AreaBreak;
+import com.itextpdf.layout.element.Image;
+import com.itextpdf.layout.element.Link;
+import com.itextpdf.layout.element.Paragraph;
+import com.stamping.model.DynamicStampRequest;
+import com.stamping.model.JournalMetadataRequest;
+import com.stamping.model.StampPosition;
+import com.stamping.model.StampRequest;
+import com.stamping.model.StampType;
+
+/**
+ * Generated fixtures for the benchmarks, the pipeline budgets and the load-test corpus: article
+ * PDFs by page count, links, page size, font and embedded images, plus the HTML, configs and
+ * requests the pipeline is fed. Nothing is read from the network or the working tree; fonts are
+ * the Noto faces shipped inside pdfHTML, embedded in full by default so the pipeline takes its
+ * embedded-font path.
+ */
+public final class FixtureCorpus {
+
+    /**
+     * What to generate.
+     *
+     * @param pageSize     {@code LETTER}, {@code A4}, {@code LEGAL} or {@code A5}
+     * @param font         {@code serif}, {@code sans}, {@code mono} (embedded Noto) or {@code helvetica}
+     *                     (standard, not embedded); a {@code -subset} suffix embeds a subset instead
+     * @param imagesPerPage JPEG figures placed on each page
+     * @param imageSize    pixel width and height of each figure
+     */
+    public record Spec(int pages, int linksPerPage, String pageSize, String font, int imagesPerPage, int imageSize) {
+
+        public static Spec article(int pages, int linksPerPage) {
+            return new Spec(pages, linksPerPage, "LETTER", "serif", 0, 0);
+        }
+
+        /** Short name for generated files, e.g. {@code p20-l10-a4-sans-i2}. */
+        public String name() {
+            return "p" + pages + "-l" + linksPerPage + "-" + pageSize.toLowerCase(Locale.ROOT) + "-" + font
+                    + (imagesPerPage > 0 ? "-i" + imagesPerPage + "x" + imageSize : "");
+        }
+    }
+
+    private static final String FONT_DIR = "com/itextpdf/html2pdf/font/";
+
+    /** Distinct figures per document; pages reuse them in turn */
+    private static final int IMAGE_POOL = 8;
+
+    private static final String TEXT = "Transcriptional regulation of developmental genes depends on enhancer "
+            + "elements that can act over long genomic distances. We mapped chromatin contacts across "
+            + "twelve tissues and found that most enhancer-promoter pairs are tissue specific, while a "
+            + "small set of architectural loops is shared. Deleting shared anchors reduced expression of "
+            + "neighbouring genes by a median of 38 percent. ";
+
+    private static final Map<String, byte[]> ARTICLES = new ConcurrentHashMap<>();
+
+    private FixtureCorpus() {
+    }
+
+    /** A Letter-size article with {@code pages} pages of text and {@code linksPerPage} URI links on each. */
+    public static byte[] article(int pages, int linksPerPage) {
+        return ARTICLES.computeIfAbsent(pages + "x" + linksPerPage, k -> generate(Spec.article(pages, linksPerPage)));
+    }
+
+    /** Writes {@code bytes} under {@code dir} and returns the file. */
+    public static Path write(Path dir, String name, byte[] bytes) {
+        try {
+            Files.createDirectories(dir);
+            return Files.write(dir.resolve(name), bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Overlay HTML as the orchestrator builds it for a FOOTER with title and DOI. */
+    public static String footerHtml() {
+        return "<!DOCTYPE html><html><head><meta charset=\"UTF-8\"/><style>"
+                + "body{margin:0;padding:0;font-family:Times;}</style></head><body>"
+                + "<div style=\"position: absolute; bottom: 0; left: 0; right: 0; text-align: center;\">"
+                + "<div style=\"display: inline-block; padding: 2px 4px;\"><div style=\"text-align: center;\">"
+                + "<p style=\"margin: 4px 0; font-size: 12px; font-weight: bold;\">Long-range enhancer contacts</p>"
+                + "<p style=\"margin: 4px 0; font-size: 11px;\"><a href=\"https://doi.org/10.1101/gr.123456.124\""
+                + " style=\"color: blue; text-decoration: none;\">https://doi.org/10.1101/gr.123456.124</a></p>"
+                + "</div></div></div></body></html>";
+    }
+
+    /** Overlay request for every page, as the orchestrator builds it for a FOOTER. */
+    public static StampRequest footerRequest() {
+        return StampRequest.builder()
+                .stampType(StampType.HTML)
+                .position(StampPosition.CENTER)
+                .opacity(1.0f)
+                .rotation(0f)
+                .scale(1.0f)
+                .pages("ALL")
+                .stampWidth(PageSize.LETTER.getWidth())
+                .stampHeight(PageSize.LETTER.getHeight())
+                .build();
+    }
+
+    /** BAM-style ad creative with {@code links} adclick redirects and root-relative images. */
+    public static String adHtml(int links) {
+        StringBuilder sb = new StringBuilder("<div class=\"bam-ad\">");
+        for (int i = 0; i < links; i++) {
+            sb.append("<a href=\"/adclick/?adid=").append(i)
+                    .append("&amp;url=https%3A%2F%2Fexample.org%2Foffer%2F").append(i)
+                    .append("&amp;t=1\" target=\"_blank\"><img src=\"/ads/creative/").append(i)
+                    .append(".png\" width=\"300\" height=\"50\" alt=\"Offer ").append(i).append("\"/></a>");
+        }
+        return sb.append("</div>").toString();
+    }
+
+    /** Position config with every metadata field switched on and ads off. */
+    public static DynamicStampRequest.Configuration config(String templateName) {
+        DynamicStampRequest.Configuration c = new DynamicStampRequest.Configuration();
+        c.setTemplateName(templateName);
+        c.setIncludeArticleTitle(true);
+        c.setIncludeAuthors(true);
+        c.setIncludeDoi(true);
+        c.setIncludeDate(true);
+        c.setIncludeCopyright(true);
+        c.setIncludeIssn(true);
+        c.setAdsEnabled(false);
+        c.setLinkUrl("https://genome.cshlp.org/");
+        c.setLinkText("Genome Research");
+        return c;
+    }
+
+    /** Article metadata as a site would send it, without source or positions. */
+    public static JournalMetadataRequest request() {
+        JournalMetadataRequest request = new JournalMetadataRequest();
+        request.setPublisherId("perf");
+        request.setJcode("bench");
+        request.setArticleTitle("Long-range enhancer contacts are tissue specific");
+        request.setAuthors("A. Author, B. Author, C. Author and D. Author");
+        request.setDoiValue("10.1101/gr.123456.124");
+        request.setArticleCopyright("© 2026 The Authors");
+        request.setArticleIssn("1088-9051");
+        request.setArticleId("gr.123456.124");
+        return request;
+    }
+
+    /** Generates one article; each page holds a heading, text, its links and its figures. */
+    public static byte[] generate(Spec spec) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PageSize pageSize = pageSize(spec.pageSize());
+        try (PdfDocument pdf = new PdfDocument(new PdfWriter(out));
+             Document doc = new Document(pdf, pageSize)) {
+            doc.setFont(font(spec.font())).setFontSize(10);
+            byte[][] images = new byte[Math.min(spec.imagesPerPage() * spec.pages(), IMAGE_POOL)][];
+            for (int i = 0; i < images.length; i++) {
+                images[i] = jpeg(spec.imageSize(), i);
+            }
+            float figureWidth = (pageSize.getWidth() - 72) / Math.max(1, spec.imagesPerPage());
+            int figure = 0;
+            for (int page = 1; page <= spec.pages(); page++) {
+                if (page > 1) {
+                    doc.add(new AreaBreak());
+                }
+                doc.add(new Paragraph("Section " + page).setFontSize(14));
+                doc.add(new Paragraph(TEXT.repeat(3)));
+                if (spec.linksPerPage() > 0) {
+                    Paragraph refs = new Paragraph().setFontSize(7);
+                    for (int i = 0; i < spec.linksPerPage(); i++) {
+                        String uri = "https://doi.org/10.1101/" + page + "." + i;
+                        refs.add(new Link("[" + i + "] " + uri, PdfAction.createURI(uri))).add(" ");
+                    }
+                    doc.add(refs);
+                }
+                if (spec.imagesPerPage() > 0) {
+                    Paragraph figures = new Paragraph();
+                    for (int i = 0; i < spec.imagesPerPage(); i++) {
+                        figures.add(new Image(ImageDataFactory.create(images[figure++ % images.length]))
+                                .setMaxWidth(figureWidth).setMaxHeight(pageSize.getHeight() / 3));
+                    }
+                    doc.add(figures);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static PageSize pageSize(String name) {
+        return switch (name.toUpperCase(Locale.ROOT)) {
+            case "A4" -> PageSize.A4;
+            case "LEGAL" -> PageSize.LEGAL;
+            case "A5" -> PageSize.A5;
+            default -> PageSize.LETTER;
+        };
+    }
+
+    private static PdfFont font(String name) throws IOException {
+        boolean subset = name.endsWith("-subset");
+        String face = switch (subset ? name.substring(0, name.length() - "-subset".length()) : name) {
+            case "helvetica" -> null;
+            case "sans" -> "NotoSans-Regular.ttf";
+            case "mono" -> "NotoSansMono-Regular.ttf";
+            default -> "NotoSerif-Regular.ttf";
+        };
+        if (face == null) {
+            return PdfFontFactory.createFont(StandardFonts.HELVETICA);
+        }
+        PdfFont font = PdfFontFactory.createFont(FontProgramFactory.createFont(resource(FONT_DIR + face)),
+                PdfEncodings.IDENTITY_H, EmbeddingStrategy.FORCE_EMBEDDED);
+        font.setSubset(subset);
+        return font;
+    }
+
+    /** A noisy gradient, so the JPEG compresses like a photograph or micrograph rather than a flat fill. */
+    private static byte[] jpeg(int size, int seed) throws IOException {
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, new Color(30, 60 + seed * 20, 120), size, size, new Color(220, 200, 90)));
+        g.fillRect(0, 0, size, size);
+        g.dispose();
+        Random random = new Random(seed);
+        for (int i = 0; i < size * size / 4; i++) {
+            int x = random.nextInt(size);
+            int y = random.nextInt(size);
+            image.setRGB(x, y, image.getRGB(x, y) ^ random.nextInt(0x404040));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+
+    private static byte[] resource(String path) throws IOException {
+        try (InputStream in = FixtureCorpus.class.getClassLoader().getResourceAsStream(path)) {
+            if (in == null) {
+                throw new IOException("Not on classpath: " + path);
+            }
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.stamping.perf;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.stamping.StampingApplication;
+
+/**
+ * The service's Spring context, started once per JVM without a web server so that benchmarks
+ * and budget tests measure the same wiring, caches and properties as production. All directories
+ * point into a fresh temp directory, the ad prewarmer is off and pipeline logging is quiet.
+ */
+public final class PerfContext {
+
+    private static ConfigurableApplicationContext context;
+    private static Path workDir;
+
+    private PerfContext() {
+    }
+
+    public static synchronized <T> T bean(Class<T> type) {
+        return start().getBean(type);
+    }
+
+    /** Scratch directory the service is allowed to read source PDFs from. */
+    public static synchronized Path workDir() {
+        start();
+        return workDir;
+    }
+
+    private static ConfigurableApplicationContext start() {
+        if (context == null) {
+            try {
+                workDir = Files.createTempDirectory("stamping-perf");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            context = new SpringApplicationBuilder(StampingApplication.class)
+                    .web(WebApplicationType.NONE)
+                    .logStartupInfo(false)
+                    .properties(
+                            "stamping.temp-dir=" + workDir.resolve("temp"),
+                            "stamping.config-dir=" + workDir.resolve("configs"),
+                            "stamping.archive-dir=" + workDir.resolve("archive_configs"),
+                            "stamping.config-store.log-file=" + workDir.resolve("config-store/configs.log"),
+                            "stamping.allowed-pdf-base-path=" + workDir,
+                            "stamping.ads.prewarm.enabled=false",
+                            "stamping.slow-requests.enabled=false",
+                            "stamping.jobs.dir=" + workDir.resolve("jobs"),
+                            "logging.level.com.stamping=WARN",
+                            "logging.level.com.itextpdf=ERROR")
+                    .run();
+            Runtime.getRuntime().addShutdownHook(new Thread(context::close));
+        }
+        return context;
+    }
+}
@@ -0,0 +1,31 @@
+package com.stamping.perf.budget;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * Budgets for the full pipeline on a fixed fixture corpus that hold on any machine, checked on
+ * every build against the maxima in {@code perf-budgets.properties}:
+ * <ul>
+ *   <li>PDF parses, PDF writes and font providers per request. These are exact, so an extra pass
+ *       over a document fails regardless of machine speed.</li>
+ *   <li>Allocated bytes and output size. These are near-deterministic.</li>
+ * </ul>
+ * The latency budget needs a quiet machine and runs with {@code PerfBudgetTest} under {@code -Pperf}.
+ */
+class PipelineBudgetTest {
+
+    @AfterAll
+    static void writeMeasured() throws IOException {
+        PipelineBudgets.writeMeasured();
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("com.stamping.perf.budget.PipelineBudgets#scenarios")
+    void pipelineStaysWithinBudget(PipelineBudgets.Scenario scenario) {
+        PipelineBudgets.check(scenario, PipelineBudgets.measure(scenario).metrics());
+    }
+}
@@ -0,0 +1,211 @@
+package com.stamping.perf.budget;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import com.stamping.model.DynamicStampRequest;
+import com.stamping.model.JournalMetadataRequest;
+import com.stamping.perf.FixtureCorpus;
+import com.stamping.perf.PerfContext;
+import com.stamping.service.RequestTrace;
+import com.stamping.service.StampOrchestrationService;
+import com.stamping.service.StampOrchestrationService.StampResult;
+import com.stamping.service.config.StoredConfig;
+import com.stamping.service.plan.StampingPlan;
+import com.stamping.service.plan.StampingPlans;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Scenarios, measurement and budget checks shared by {@link PipelineBudgetTest} (work counts,
+ * memory and output size, every build) and the latency-only {@code PerfBudgetTest}
+ * ({@code mvn -Pperf test}). Budgets are read from {@code perf-budgets.properties}; measured
+ * values are merged into {@code target/perf-budgets-measured.properties}.
+ */
+@Slf4j
+final class PipelineBudgets {
+
+    private static final int WARMUP = 3;
+    private static final int RUNS = 5;
+    private static final Path MEASURED_FILE = Path.of("target", "perf-budgets-measured.properties");
+    private static final Map<String, String> MEASURED = new TreeMap<>();
+    private static final Properties BUDGETS = loadBudgets();
+
+    private PipelineBudgets() {
+    }
+
+    /**
+     * One pipeline run in the corpus.
+     *
+     * @param saved stamp with a saved text footer (plan and static overlay cache) instead of inline positions
+     */
+    record Scenario(String name, FixtureCorpus.Spec spec, List<String> positions, boolean saved) {
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * Metrics of the measured runs of a scenario.
+     *
+     * @param metrics   max work count per kind, max output size and median allocation
+     * @param fastestMs wall time of the fastest run
+     */
+    record Measurement(Map<String, Double> metrics, double fastestMs) {}
+
+    static Stream<Scenario> scenarios() {
+        return Stream.of(
+                new Scenario("footer-1p", FixtureCorpus.Spec.article(1, 10), List.of("FOOTER"), false),
+                new Scenario("footer-20p", FixtureCorpus.Spec.article(20, 10), List.of("FOOTER"), false),
+                new Scenario("cover-footer-20p", FixtureCorpus.Spec.article(20, 10),
+                        List.of("NEW_PAGE", "FOOTER"), false),
+                new Scenario("margins-20p", FixtureCorpus.Spec.article(20, 10),
+                        List.of("HEADER", "FOOTER", "LEFT_MARGIN", "RIGHT_MARGIN"), false),
+                new Scenario("cover-figures-12p", new FixtureCorpus.Spec(12, 10, "A4", "sans", 2, 400),
+                        List.of("NEW_PAGE", "FOOTER"), false),
+                new Scenario("saved-text-footer-20p", FixtureCorpus.Spec.article(20, 10), List.of("FOOTER"), true));
+    }
+
+    /** Runs the scenario until warm, then measures it. */
+    static Measurement measure(Scenario scenario) {
+        StampOrchestrationService orchestrationService = PerfContext.bean(StampOrchestrationService.class);
+        Path source = FixtureCorpus.write(PerfContext.workDir().resolve("budget"), scenario.spec().name() + ".pdf",
+                FixtureCorpus.generate(scenario.spec()));
+        StampingPlan plan = scenario.saved() ? savedPlan(scenario) : null;
+
+        for (int i = 0; i < WARMUP; i++) {
+            run(orchestrationService, scenario, source, plan);
+        }
+        long[] allocated = new long[RUNS];
+        double[] latency = new double[RUNS];
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            StampResult result = run(orchestrationService, scenario, source, plan);
+            latency[i] = (System.nanoTime() - start) / 1e6;
+            RequestTrace trace = result.trace();
+            allocated[i] = trace.allocatedBytes();
+            for (RequestTrace.Work kind : RequestTrace.Work.values()) {
+                counts.merge(kind.tag(), trace.work(kind), Math::max);
+            }
+            counts.merge("output-kb", (long) Math.ceil(result.pdfBytes().length / 1024.0), Math::max);
+        }
+        Arrays.sort(allocated);
+        Arrays.sort(latency);
+
+        Map<String, Double> metrics = new LinkedHashMap<>();
+        counts.forEach((metric, value) -> metrics.put(metric, value.doubleValue()));
+        if (allocated[0] >= 0) {
+            metrics.put("allocated-mb", allocated[RUNS / 2] / (1024.0 * 1024));
+        }
+        return new Measurement(metrics, latency[0]);
+    }
+
+    /**
+     * Records the measured values and fails if any exceeds its budget or has none. Metrics listed
+     * in {@code -Dperf.budget.skip} are recorded but not checked.
+     */
+    static void check(Scenario scenario, Map<String, Double> measured) {
+        Set<String> skipped = Set.of(System.getProperty("perf.budget.skip", "").split(","));
+        List<String> exceeded = new ArrayList<>();
+        StringBuilder report = new StringBuilder(scenario.name()).append(':');
+        measured.forEach((metric, value) -> {
+            String key = scenario.name() + "." + metric;
+            String budget = BUDGETS.getProperty(key);
+            MEASURED.put(key, format(value));
+            report.append(String.format(Locale.ROOT, "  %s=%s/%s", metric, format(value), budget));
+            if (skipped.contains(metric)) {
+                return;
+            }
+            if (budget == null) {
+                exceeded.add(key + " has no budget (measured " + format(value) + ")");
+            } else if (value > Double.parseDouble(budget)) {
+                exceeded.add(String.format(Locale.ROOT, "%s = %s exceeds budget %s", key, format(value), budget));
+            }
+        });
+        log.info("{}", report);
+        if (!exceeded.isEmpty()) {
+            fail(String.join("\n", exceeded));
+        }
+    }
+
+    static void record(String key, double value) {
+        MEASURED.put(key, format(value));
+    }
+
+    /** Merges this run's values into the measured file, keeping values of metrics not run this time. */
+    static void writeMeasured() throws IOException {
+        Properties merged = new Properties();
+        if (Files.exists(MEASURED_FILE)) {
+            try (InputStream in = Files.newInputStream(MEASURED_FILE)) {
+                merged.load(in);
+            }
+        }
+        merged.putAll(MEASURED);
+        Files.createDirectories(MEASURED_FILE.getParent());
+        try (OutputStream os = Files.newOutputStream(MEASURED_FILE)) {
+            for (String key : new TreeSet<>(merged.stringPropertyNames())) {
+                os.write((key + "=" + merged.getProperty(key) + "\n").getBytes());
+            }
+        }
+    }
+
+    private static StampResult run(StampOrchestrationService orchestrationService, Scenario scenario, Path source,
+                                   StampingPlan plan) {
+        JournalMetadataRequest request = FixtureCorpus.request();
+        request.setPdfFilePath(source.toString());
+        if (plan != null) {
+            return orchestrationService.processWithPlan(plan, request);
+        }
+        Map<String, DynamicStampRequest.Configuration> configs = new LinkedHashMap<>();
+        for (String position : scenario.positions()) {
+            configs.put(position, FixtureCorpus.config("default_metadata"));
+        }
+        request.setPositions(configs);
+        return orchestrationService.processJournalMetadata(request);
+    }
+
+    /** Plan of a saved config whose footer is a fixed text, so its overlay comes from the static cache. */
+    private static StampingPlan savedPlan(Scenario scenario) {
+        Map<String, Object> footer = Map.of("enabled", true,
+                "text", Map.of("enabled", true, "value", "Downloaded from Genome Research"));
+        StoredConfig stored = new StoredConfig("perf", scenario.name(), Map.of("footer", footer), 1, false,
+                System.currentTimeMillis());
+        StampingPlan plan = PerfContext.bean(StampingPlans.class).compile(stored);
+        assertTrue(plan.isSaved());
+        return plan;
+    }
+
+    private static Properties loadBudgets() {
+        Properties budgets = new Properties();
+        try (InputStream in = PipelineBudgets.class.getResourceAsStream("/perf-budgets.properties")) {
+            budgets.load(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return budgets;
+    }
+
+    static String format(double value) {
+        return value == Math.rint(value) ? String.valueOf((long) value) : String.format(Locale.ROOT, "%.2f", value);
+    }
+}
@@ -1,48 +1,68 @@
 package com.stamping.service;
 
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.springframework.boot.web.client.RestTemplateBuilder;
-import org.springframework.http.MediaType;
-import org.springframework.test.web.client.MockRestServiceServer;
-import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
-import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
-import org.springframework.web.client.RestTemplate;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.stamping.config.StampingProperties;
 import com.stamping.model.ad.AdResponse;
+import com.sun.net.httpserver.HttpServer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 class AdFetchServiceTest {
 
+    private HttpServer server;
+    private String baseUrl;
+    private final AtomicInteger hits = new AtomicInteger();
+    private volatile int status = 200;
+    private volatile String body = "";
+
     private AdFetchService adFetchService;
-    private MockRestServiceServer mockServer;
+    private SimpleMeterRegistry meterRegistry;
 
     @BeforeEach
-    void setUp() {
-        RestTemplate restTemplate = new RestTemplate();
-        RestTemplateBuilder builder = new RestTemplateBuilder()
-                .requestFactory(() -> restTemplate.getRequestFactory());
-        ObjectMapper objectMapper = new ObjectMapper();
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/ads.json", exchange -> {
+            hits.incrementAndGet();
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+
         StampingProperties properties = new StampingProperties();
-        adFetchService = new AdFetchService(builder, objectMapper, properties);
-
-        // Get the actual RestTemplate the service built, via reflection
-        try {
-            java.lang.reflect.Field field = AdFetchService.class.getDeclaredField("restTemplate");
-            field.setAccessible(true);
-            RestTemplate actualTemplate = (RestTemplate) field.get(adFetchService);
-            mockServer = MockRestServiceServer.createServer(actualTemplate);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+        properties.getAds().setBreakerFailureThreshold(2);
+        properties.getAds().setBreakerOpenDuration(60_000);
+        meterRegistry = new SimpleMeterRegistry();
+        adFetchService = new AdFetchService(new ObjectMapper(), properties, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
     }
 
     @Test
     void testFetchAds_Success() {
-        String jsonResponse = "{\n" +
+        body = "{\n" +
                 "  \"publisherId\": \"cshl\",\n" +
                 "  \"journlcode\": \"genome\",\n" +
                 "  \"section\": [\n" +
@@ -64,10 +84,7 @@ class AdFetchServiceTest {
                 "  ]\n" +
                 "}";
 
-        mockServer.expect(requestTo("http://example.com/ads.json"))
-                .andRespond(withSuccess(jsonResponse, MediaType.APPLICATION_JSON));
-
-        AdResponse response = adFetchService.fetchAds("http://example.com/ads.json");
+        AdResponse response = adFetchService.fetchAds(baseUrl + "/ads.json");
 
         assertNotNull(response);
         assertEquals("cshl", response.getPublisherId());
@@ -75,7 +92,57 @@ class AdFetchServiceTest {
         assertEquals("header", response.getSection().get(0).getAdLocation().get(0).getPositionName());
         assertEquals("<div>Ad Content</div>",
                 response.getSection().get(0).getAdLocation().get(0).getAdData().get(0).getAdHtml());
+        assertEquals(1, hits.get());
+    }
+
+    @Test
+    void testFetchAds_BreakerOpensAndFailsFast() {
+        status = 503;
+
+        assertNull(adFetchService.fetchAds(baseUrl + "/ads.json"));
+        assertNull(adFetchService.fetchAds(baseUrl + "/ads.json"));
+        assertEquals(CircuitBreaker.State.OPEN, adFetchService.getBreakerState());
+
+        // Breaker is open: no further requests reach the server
+        assertNull(adFetchService.fetchAds(baseUrl + "/ads.json"));
+        assertEquals(2, hits.get());
+        assertEquals(1.0, meterRegistry.get("stamping.ads.breaker.rejected").counter().count());
+    }
+
+    @Test
+    void testFetchAds_ServedFromCacheWithinTtl() throws Exception {
+        StampingProperties properties = new StampingProperties();
+        properties.getAds().setCacheTtl(300);
+        AdFetchService cached = new AdFetchService(new ObjectMapper(), properties, new SimpleMeterRegistry());
+        body = "{\"publisherId\": \"cshl\"}";
+        String url = baseUrl + "/ads.json";
+        assertEquals(0, cached.cacheExpiry(url));
+
+        AdResponse first = cached.fetchAds(url);
+        assertSame(first, cached.fetchAds(url));
+        assertEquals(1, hits.get());
+        assertTrue(cached.cacheExpiry(url) > System.currentTimeMillis());
+
+        // refresh always goes to BAM and replaces the cached response
+        AdResponse refreshed = cached.refresh(url);
+        assertEquals(2, hits.get());
+        assertSame(refreshed, cached.fetchAds(url));
+
+        Thread.sleep(400);
+        assertNotSame(refreshed, cached.fetchAds(url));
+        assertEquals(3, hits.get());
+    }
+
+    @Test
+    void testFetchAds_UnparsableBodyIsOnlyAFailure() {
+        body = "{\"section\": <html>";
+
+        assertNull(adFetchService.fetchAds(baseUrl + "/ads.json"));
+        assertNull(adFetchService.fetchAds(baseUrl + "/ads.json"));
 
-        mockServer.verify();
+        // Two consecutive failures open the breaker; neither attempt was recorded as a success
+        assertEquals(CircuitBreaker.State.OPEN, adFetchService.getBreakerState());
+        assertEquals(0, meterRegistry.get("stamping.ads.fetch").tag("outcome", "success").timer().count());
+        assertEquals(2, meterRegistry.get("stamping.ads.fetch").tag("outcome", "failure").timer().count());
     }
 }
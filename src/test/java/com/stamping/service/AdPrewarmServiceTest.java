@@ -0,0 +1,161 @@
+package com.stamping.service;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stamping.config.StampingProperties;
+import com.stamping.service.config.ConfigRepository;
+import com.stamping.service.config.StoredConfig;
+import com.stamping.service.stamper.Stamper;
+import com.sun.net.httpserver.HttpServer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class AdPrewarmServiceTest {
+
+    private static final String ADS = "{\"section\":[{\"adLocation\":[{\"positionName\":\"header\","
+            + "\"adData\":[{\"adId\":\"1\",\"adHtml\":\"<img src=\\\"/images/a.png\\\"/>\"}]}]}]}";
+
+    private HttpServer server;
+    /** BAM requests received, by jcode, in arrival order with their arrival time. */
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+    private final List<Long> arrivals = Collections.synchronizedList(new ArrayList<>());
+    private final Set<String> failing = ConcurrentHashMap.newKeySet();
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ConfigRepository configRepository = mock(ConfigRepository.class);
+    private final CachingResourceRetriever resourceRetriever = mock(CachingResourceRetriever.class);
+    private StampingProperties properties;
+    private AdFetchService adFetchService;
+    private AdPrewarmService prewarmService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/ads", exchange -> {
+            String jcode = exchange.getRequestURI().getQuery().replaceAll(".*jcode=([^&]*).*", "$1");
+            requests.add(jcode);
+            arrivals.add(System.nanoTime());
+            byte[] bytes = ADS.getBytes(StandardCharsets.UTF_8);
+            int status = failing.contains(jcode) ? 503 : 200;
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        });
+        server.start();
+
+        properties = new StampingProperties();
+        properties.getAds().setBaseUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/ads");
+        properties.getAds().setHedgeEnabled(false);
+        properties.getAds().getPrewarm().setMaxFetchesPerSecond(0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void testRefreshesOnlyJournalsInsideRefreshAhead() {
+        properties.getAds().setCacheTtl(600_000);
+        properties.getAds().getPrewarm().setRefreshAhead(90_000);
+        createServices("j1", "j2", "j3");
+        adFetchService.refresh(adFetchService.buildAdUrl("pub", "j1"));
+        requests.clear();
+
+        prewarmService.prewarm();
+
+        // j1 was fresh for another ten minutes; only the two uncached journals were fetched
+        assertEquals(List.of("j2", "j3"), requests);
+        assertEquals(2.0, registry.get("stamping.ads.prewarm.refreshed").counter().count());
+        verify(resourceRetriever, times(2)).fetchCached("https://hwmaint.example.org/adsystem/images/a.png");
+
+        prewarmService.prewarm();
+        assertEquals(2, requests.size());
+
+        // A TTL shorter than refresh-ahead puts every journal inside the window on each run
+        properties.getAds().getPrewarm().setRefreshAhead(700_000);
+        prewarmService.prewarm();
+        assertEquals(List.of("j2", "j3", "j1", "j2", "j3"), requests);
+    }
+
+    @Test
+    void testFetchesAreRateLimited() {
+        properties.getAds().getPrewarm().setMaxFetchesPerSecond(10);
+        createServices("j1", "j2", "j3", "j4");
+
+        prewarmService.prewarm();
+
+        assertEquals(4, requests.size());
+        long spreadMillis = (arrivals.get(3) - arrivals.get(0)) / 1_000_000;
+        assertTrue(spreadMillis >= 300, "4 fetches at 10/s must span at least 300 ms, took " + spreadMillis);
+    }
+
+    @Test
+    void testGaugesReportTargetsCoverageAndLag() throws Exception {
+        properties.getAds().setCacheTtl(1000);
+        failing.add("j3");
+        createServices("j1", "j2", "j3");
+        assertEquals(1.0, gauge("stamping.ads.prewarm.coverage"));
+
+        prewarmService.prewarm();
+
+        assertEquals(3.0, gauge("stamping.ads.prewarm.targets"));
+        assertEquals(2.0 / 3, gauge("stamping.ads.prewarm.coverage"), 0.001);
+        assertEquals(0.0, gauge("stamping.ads.prewarm.lag"));
+        assertEquals(1.0, registry.get("stamping.ads.prewarm.failed").counter().count());
+
+        Thread.sleep(1250);
+        assertEquals(0.0, gauge("stamping.ads.prewarm.coverage"));
+        assertTrue(gauge("stamping.ads.prewarm.lag") >= 0.25);
+    }
+
+    private void createServices(String... jcodes) {
+        List<StoredConfig> configs = new ArrayList<>();
+        for (String jcode : jcodes) {
+            configs.add(new StoredConfig("pub", jcode, adsConfig("pub", jcode), 1, false, 0));
+        }
+        when(configRepository.listActive()).thenReturn(configs);
+
+        adFetchService = new AdFetchService(new ObjectMapper(), properties, registry);
+        AdStampService adStampService = new AdStampService(adFetchService, mock(MetadataFrontPageService.class),
+                mock(Stamper.class));
+        prewarmService = new AdPrewarmService(adFetchService, adStampService, resourceRetriever,
+                new DemoConfigGeneratorService(), configRepository, properties, registry);
+    }
+
+    private double gauge(String name) {
+        return registry.get(name).gauge().value();
+    }
+
+    private static Map<String, Object> adsConfig(String pubId, String jcode) {
+        Map<String, Object> header = new LinkedHashMap<>();
+        header.put("enabled", true);
+        header.put("adsBanner", Map.of("enabled", true, "legacyDomain", "hwmaint.example.org"));
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("pubId", pubId);
+        config.put("jcode", jcode);
+        config.put("header", header);
+        return config;
+    }
+}
@@ -6,6 +6,7 @@ import java.util.Collections;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
@@ -21,6 +22,7 @@ import org.mockito.MockitoAnnotations;
 import com.itextpdf.kernel.pdf.PdfDocument;
 import com.itextpdf.kernel.pdf.PdfReader;
 import com.itextpdf.kernel.pdf.PdfWriter;
+import com.stamping.config.StampingProperties;
 import com.stamping.model.StampRequest;
 import com.stamping.model.ad.AdData;
 import com.stamping.model.ad.AdLocation;
@@ -132,7 +134,8 @@ class AdStampServiceTest {
         when(metadataFrontPageService.renderHtmlToPdf(anyString(), any())).thenReturn(adPagePdf);
 
         // Use a real MetadataFrontPageService for prependPdf to get a real merged PDF
-        MetadataFrontPageService realService = new MetadataFrontPageService();
+        MetadataFrontPageService realService =
+                new MetadataFrontPageService(new CachingResourceRetriever(new StampingProperties()), new HtmlFonts());
         byte[] mergedPdf = realService.prependPdf(inputPdf, adPagePdf);
         when(metadataFrontPageService.prependPdf(any(byte[].class), any(byte[].class))).thenReturn(mergedPdf);
 
@@ -151,4 +154,48 @@ class AdStampServiceTest {
         }
         verifyNoInteractions(htmlStamper); // Ensure header stamper wasn't called
     }
+
+    @Test
+    void testProcessHtmlContent_UnwrapsClickThroughAndRewritesRelativePaths() {
+        String html = "<a href=\"/adsystem/adclick.php?id=7&amp;url=https%3A%2F%2Fgenome.org%2Fsubscribe\">"
+                + "<img src=\"/images/banner.png\"/></a><a href=\"/terms\">Terms</a>"
+                + "<a href=\"https://example.org/x\">x</a>";
+
+        String result = adStampService.processHtmlContent(html, "hwmaint.example.org");
+
+        assertEquals("<a href=\"https://genome.org/subscribe\">"
+                + "<img src=\"https://hwmaint.example.org/adsystem/images/banner.png\"/></a>"
+                + "<a href=\"https://hwmaint.example.org/adsystem/terms\">Terms</a>"
+                + "<a href=\"https://example.org/x\">x</a>", result);
+    }
+
+    @Test
+    void testProcessHtmlContent_OnlyUnwrapsUrlParameterOfHrefAndSrc() {
+        String html = "<a href=\"https://login.example.org/?returnurl=%2Fhome&amp;imgurl=x\">a</a>"
+                + "<a href=\"/adclick.php?redirect_url=%2Fno&amp;url=https%3A%2F%2Fa.org%2F\">b</a>"
+                + "<a href=\"/adclick.php?url=https%3A%2F%2Fb.org\">c</a>"
+                + "<div data-href=\"/x\" data-src=\"/y\"><img class=\"ad\" src=\"/z.png\"/></div>";
+
+        String result = adStampService.processHtmlContent(html, null);
+
+        assertEquals("<a href=\"https://login.example.org/?returnurl=%2Fhome&amp;imgurl=x\">a</a>"
+                + "<a href=\"https://a.org/\">b</a>"
+                + "<a href=\"https://b.org\">c</a>"
+                + "<div data-href=\"/x\" data-src=\"/y\">"
+                + "<img class=\"ad\" src=\"https://hwmaint.genome.cshlp.org/adsystem/z.png\"/></div>", result);
+    }
+
+    @Test
+    void testProcessAd_ReusesProcessedCreativeUntilHtmlChanges() {
+        AdData ad = new AdData();
+        ad.setAdId("58009");
+        ad.setAdHtml("<img src=\"/a.png\"/>");
+
+        String first = adStampService.processAd(ad, null);
+        assertSame(first, adStampService.processAd(ad, null));
+
+        ad.setAdHtml("<img src=\"/b.png\"/>");
+        assertEquals("<img src=\"https://hwmaint.genome.cshlp.org/adsystem/b.png\"/>",
+                adStampService.processAd(ad, null));
+    }
 }
@@ -0,0 +1,78 @@
+package com.stamping.service;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.stamping.config.StampingProperties;
+import com.sun.net.httpserver.HttpServer;
+
+class CachingResourceRetrieverTest {
+
+    private static final byte[] IMAGE = {(byte) 0x89, 'P', 'N', 'G', 1, 2, 3, 4};
+
+    @TempDir
+    Path tempDir;
+
+    private HttpServer server;
+    private String baseUrl;
+    private final AtomicInteger hits = new AtomicInteger();
+    private StampingProperties properties;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/adsystem/banner.png", exchange -> {
+            hits.incrementAndGet();
+            exchange.sendResponseHeaders(200, IMAGE.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(IMAGE);
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        properties = new StampingProperties();
+        properties.setTempDir(tempDir.toString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void testRepeatFetchesServedFromCache() throws Exception {
+        CachingResourceRetriever retriever = new CachingResourceRetriever(properties);
+        URL url = new URL(baseUrl + "/adsystem/banner.png");
+
+        assertArrayEquals(IMAGE, retriever.getByteArrayByUrl(url));
+        assertArrayEquals(IMAGE, retriever.getByteArrayByUrl(url));
+        assertEquals(1, hits.get());
+
+        // A fresh instance (empty memory tier) is served from the disk tier
+        CachingResourceRetriever restarted = new CachingResourceRetriever(properties);
+        assertArrayEquals(IMAGE, restarted.getByteArrayByUrl(url));
+        assertEquals(1, hits.get());
+        assertEquals(1, Files.list(tempDir.resolve("resource-cache")).count());
+    }
+
+    @Test
+    void testOversizedResourceRejected() throws Exception {
+        properties.getResourceCache().setMaxResourceSize(4);
+        CachingResourceRetriever retriever = new CachingResourceRetriever(properties);
+
+        assertNull(retriever.getByteArrayByUrl(new URL(baseUrl + "/adsystem/banner.png")));
+    }
+}
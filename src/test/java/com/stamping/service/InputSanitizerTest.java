@@ -0,0 +1,52 @@
+package com.stamping.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import com.stamping.config.StampingProperties;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class InputSanitizerTest {
+
+    private static final String FRAGMENT =
+            "<div style=\"color: red\" onclick=\"steal()\">Free <b>to</b> read<script>alert(1)</script></div>";
+
+    @Test
+    void testMemoizedOutputMatchesPolicy() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        InputSanitizer sanitizer = new InputSanitizer(new StampingProperties(), meterRegistry);
+
+        String first = sanitizer.sanitizeHtml(FRAGMENT);
+        String second = sanitizer.sanitizeHtml(FRAGMENT);
+
+        assertSame(first, second);
+        assertEquals(uncached().sanitizeHtml(FRAGMENT), first);
+        assertFalse(first.contains("script"));
+        assertFalse(first.contains("onclick"));
+        assertTrue(first.contains("<b>to</b>"));
+
+        assertEquals(1.0, meterRegistry.counter("stamping.sanitizer.requests", "result", "hit").count());
+        assertEquals(1.0, meterRegistry.counter("stamping.sanitizer.requests", "result", "miss").count());
+        assertTrue(meterRegistry.counter("stamping.sanitizer.time.saved").count() > 0);
+    }
+
+    @Test
+    void testDistinctInputsAreNotConfused() {
+        InputSanitizer sanitizer = new InputSanitizer(new StampingProperties(), new SimpleMeterRegistry());
+
+        assertEquals("<p>one</p>", sanitizer.sanitizeHtml("<p>one</p>"));
+        assertEquals("<p>two</p>", sanitizer.sanitizeHtml("<p>two</p>"));
+        assertEquals("<p>one</p>", sanitizer.sanitizeHtml("<p>one</p>"));
+        assertEquals(" ", sanitizer.sanitizeHtml(" "));
+    }
+
+    private static InputSanitizer uncached() {
+        StampingProperties properties = new StampingProperties();
+        properties.getSanitizer().setCacheBytes(0);
+        return new InputSanitizer(properties, new SimpleMeterRegistry());
+    }
+}
@@ -2,7 +2,10 @@ package com.stamping.service;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -10,9 +13,19 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import com.itextpdf.kernel.geom.PageSize;
+import com.itextpdf.kernel.geom.Rectangle;
 import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfName;
+import com.itextpdf.kernel.pdf.PdfNameTree;
+import com.itextpdf.kernel.pdf.PdfOutline;
+import com.itextpdf.kernel.pdf.PdfPage;
 import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.PdfString;
 import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.kernel.pdf.action.PdfAction;
+import com.itextpdf.kernel.pdf.annot.PdfLinkAnnotation;
+import com.itextpdf.kernel.pdf.navigation.PdfExplicitDestination;
+import com.stamping.config.StampingProperties;
 
 class MetadataFrontPageServiceTest {
 
@@ -20,7 +33,7 @@ class MetadataFrontPageServiceTest {
 
     @BeforeEach
     void setUp() {
-        metadataFrontPageService = new MetadataFrontPageService();
+        metadataFrontPageService = new MetadataFrontPageService(new CachingResourceRetriever(new StampingProperties()), new HtmlFonts());
     }
 
     private byte[] createMinimalPdf() throws Exception {
@@ -55,4 +68,75 @@ class MetadataFrontPageServiceTest {
         assertEquals(2, resultPages, "Merged PDF should have 2 pages");
         assertTrue(result.length > originalPdf.length, "Output should be larger than input");
     }
+
+    @Test
+    void testRenderAndAppend_UsesArticlePageSize() throws Exception {
+        Rectangle articleSize = new Rectangle(400, 600);
+        byte[] article;
+        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+            PdfDocument pdfDoc = new PdfDocument(new PdfWriter(baos));
+            pdfDoc.addNewPage(new PageSize(articleSize));
+            pdfDoc.close();
+            article = baos.toByteArray();
+        }
+
+        byte[] cover = metadataFrontPageService.renderHtmlToPdf("<html><body><p>Cover</p></body></html>", articleSize);
+        byte[] result = metadataFrontPageService.appendPdf(article, cover);
+
+        try (PdfDocument resultDoc = new PdfDocument(new PdfReader(new ByteArrayInputStream(result)))) {
+            assertEquals(2, resultDoc.getNumberOfPages());
+            assertEquals(400f, resultDoc.getPage(2).getPageSize().getWidth(), 0.01f);
+            assertEquals(600f, resultDoc.getPage(2).getPageSize().getHeight(), 0.01f);
+        }
+    }
+
+    @Test
+    void testPrependInPlace_KeepsNavigationAndOriginalBytes() throws Exception {
+        byte[] originalPdf = createNavigablePdf();
+        byte[] result = metadataFrontPageService.prependPdf(originalPdf, createMinimalPdf());
+
+        // Incremental update: the original file is carried through byte for byte
+        assertArrayEquals(originalPdf, Arrays.copyOf(result, originalPdf.length));
+
+        try (PdfDocument resultDoc = new PdfDocument(new PdfReader(new ByteArrayInputStream(result)))) {
+            assertEquals(3, resultDoc.getNumberOfPages());
+            assertTrue(resultDoc.getPage(1).getAnnotations().isEmpty(), "Cover page comes first");
+
+            PdfPage section = resultDoc.getPage(3);
+            PdfOutline outline = resultDoc.getOutlines(false).getAllChildren().get(0);
+            assertEquals("Section", outline.getTitle());
+            PdfNameTree dests = resultDoc.getCatalog().getNameTree(PdfName.Dests);
+            assertEquals(section.getPdfObject(), outline.getDestination().getDestinationPage(dests));
+            assertTrue(dests.getNames().containsKey(new PdfString("sec2")));
+            assertEquals(1, resultDoc.getPage(2).getAnnotations().size(), "Link annotation kept");
+        }
+    }
+
+    @Test
+    void testAppend_FallsBackToMergeForDamagedXref() throws Exception {
+        String pdf = new String(createMinimalPdf(), StandardCharsets.ISO_8859_1);
+        int startxref = pdf.lastIndexOf("startxref");
+        byte[] damaged = (pdf.substring(0, startxref) + "startxref\n999999\n%%EOF\n")
+                .getBytes(StandardCharsets.ISO_8859_1);
+
+        byte[] result = metadataFrontPageService.appendPdf(damaged, createMinimalPdf());
+
+        try (PdfDocument resultDoc = new PdfDocument(new PdfReader(new ByteArrayInputStream(result)))) {
+            assertEquals(2, resultDoc.getNumberOfPages());
+        }
+    }
+
+    private byte[] createNavigablePdf() throws Exception {
+        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+            PdfDocument pdfDoc = new PdfDocument(new PdfWriter(baos));
+            PdfPage first = pdfDoc.addNewPage();
+            PdfPage second = pdfDoc.addNewPage();
+            pdfDoc.addNamedDestination("sec2", PdfExplicitDestination.createFit(second).getPdfObject());
+            pdfDoc.getOutlines(false).addOutline("Section").addDestination(PdfExplicitDestination.createFit(second));
+            first.addAnnotation(new PdfLinkAnnotation(new Rectangle(50, 50, 100, 20))
+                    .setAction(PdfAction.createGoTo("sec2")));
+            pdfDoc.close();
+            return baos.toByteArray();
+        }
+    }
 }
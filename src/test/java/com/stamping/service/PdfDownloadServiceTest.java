@@ -0,0 +1,248 @@
+package com.stamping.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.stamping.config.StampingProperties;
+import com.stamping.exception.StampingException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class PdfDownloadServiceTest {
+
+    private static final String ETAG = "\"v1\"";
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+    private static final int LARGE_SIZE = 1_000_000;
+
+    @TempDir
+    Path tempDir;
+
+    private HttpServer server;
+    private String baseUrl;
+    private final AtomicInteger fullResponses = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private final AtomicInteger rangeRequests = new AtomicInteger();
+    private final byte[] pdf = "%PDF-1.7 test body".getBytes(StandardCharsets.US_ASCII);
+    private final byte[] large = new byte[LARGE_SIZE];
+    private volatile boolean honourRanges = true;
+    private volatile long rangeDelayMillis;
+    private final AtomicInteger rangesInFlight = new AtomicInteger();
+    private final AtomicInteger peakRangesInFlight = new AtomicInteger();
+
+    private ExecutorService serverExecutor;
+    private StampingProperties properties;
+    private PdfDownloadService service;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/article.pdf", exchange -> {
+            if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            fullResponses.incrementAndGet();
+            exchange.getResponseHeaders().add("ETag", ETAG);
+            exchange.sendResponseHeaders(200, pdf.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(pdf);
+            }
+        });
+        server.createContext("/missing.pdf", exchange -> {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.createContext("/large.pdf", this::serveLarge);
+        server.createContext("/truncated.pdf", exchange -> {
+            if (exchange.getRequestHeaders().containsKey("Range")) {
+                serveLarge(exchange);
+                return;
+            }
+            // Declares the full length but drops the connection inside the first chunk
+            exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+            exchange.sendResponseHeaders(200, large.length);
+            OutputStream os = exchange.getResponseBody();
+            os.write(large, 0, 16 * 1024);
+            os.flush();
+            exchange.close();
+        });
+        serverExecutor = Executors.newFixedThreadPool(4);
+        server.setExecutor(serverExecutor);
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        new Random(42).nextBytes(large);
+
+        properties = new StampingProperties();
+        properties.setTempDir(tempDir.toString());
+        properties.getPdfDownload().setRangeThreshold(64 * 1024);
+        properties.getPdfDownload().setRangeChunkSize(128 * 1024);
+        meterRegistry = new SimpleMeterRegistry();
+        service = new PdfDownloadService(properties, new PdfSourceCache(properties, meterRegistry),
+                new TempStorage(properties, meterRegistry));
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.close();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    /** Serves {@link #large} with Accept-Ranges; answers Range requests with 206 unless disabled. */
+    private void serveLarge(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+        exchange.getResponseHeaders().add("ETag", ETAG);
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        Matcher m = range != null ? RANGE.matcher(range) : null;
+        byte[] body = large;
+        int status = 200;
+        if (m != null && m.matches()) {
+            rangeRequests.incrementAndGet();
+            peakRangesInFlight.accumulateAndGet(rangesInFlight.incrementAndGet(), Math::max);
+            sleep(rangeDelayMillis);
+            rangesInFlight.decrementAndGet();
+            if (honourRanges) {
+                int start = Integer.parseInt(m.group(1));
+                int end = Integer.parseInt(m.group(2));
+                body = Arrays.copyOfRange(large, start, end + 1);
+                status = 206;
+                exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + large.length);
+            }
+        } else {
+            fullResponses.incrementAndGet();
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        } catch (IOException ignored) {
+            // client closed the stream after the first chunk
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void testFetch_RevalidatesCachedCopy() {
+        assertArrayEquals(pdf, service.fetch(baseUrl + "/article.pdf"));
+        assertArrayEquals(pdf, service.fetch(baseUrl + "/article.pdf"));
+
+        assertEquals(1, fullResponses.get());
+        assertEquals(1, notModified.get());
+        assertEquals(pdf.length, meterRegistry.get("stamping.pdf.cache.bytes.saved").counter().count());
+    }
+
+    @Test
+    void testFetch_DiskTierSurvivesRestart() {
+        service.fetch(baseUrl + "/article.pdf");
+
+        // Fresh cache instance over the same temp dir: memory tier is empty, disk tier is not
+        StampingProperties properties = new StampingProperties();
+        properties.setTempDir(tempDir.toString());
+        SimpleMeterRegistry freshRegistry = new SimpleMeterRegistry();
+        PdfDownloadService restarted = new PdfDownloadService(properties,
+                new PdfSourceCache(properties, freshRegistry), new TempStorage(properties, freshRegistry));
+
+        assertArrayEquals(pdf, restarted.fetch(baseUrl + "/article.pdf"));
+        assertEquals(1, fullResponses.get());
+        assertEquals(1.0, freshRegistry.get("stamping.pdf.cache.requests").tag("result", "disk-hit").counter().count());
+    }
+
+    @Test
+    void testFetch_HttpErrorThrows() {
+        assertThrows(StampingException.class, () -> service.fetch(baseUrl + "/missing.pdf"));
+    }
+
+    @Test
+    void testDownload_ParallelRanges() throws Exception {
+        try (TempStorage.Handle handle = service.download(baseUrl + "/large.pdf")) {
+            assertArrayEquals(large, Files.readAllBytes(handle.file().toPath()));
+        }
+        // First 128 KB come from the initial GET, the remaining 7 chunks from range requests
+        assertEquals(1, fullResponses.get());
+        assertEquals(7, rangeRequests.get());
+    }
+
+    @Test
+    void testFetch_UsesParallelRanges() {
+        assertArrayEquals(large, service.fetch(baseUrl + "/large.pdf"));
+        assertEquals(7, rangeRequests.get());
+    }
+
+    @Test
+    void testDownload_RangeWorkersAreSharedAndBounded() throws Exception {
+        properties.getPdfDownload().setRangeWorkers(1);
+        service.close();
+        service = new PdfDownloadService(properties, new PdfSourceCache(properties, meterRegistry),
+                new TempStorage(properties, meterRegistry));
+        rangeDelayMillis = 20;
+
+        try (TempStorage.Handle handle = service.download(baseUrl + "/large.pdf")) {
+            assertArrayEquals(large, Files.readAllBytes(handle.file().toPath()));
+        }
+        // One pool thread plus the download's own thread, although range-concurrency allows four
+        assertEquals(7, rangeRequests.get());
+        assertTrue(peakRangesInFlight.get() <= 2, "peak range requests " + peakRangesInFlight.get());
+    }
+
+    @Test
+    void testDownload_FallsBackWhenRangesIgnored() throws Exception {
+        honourRanges = false;
+
+        try (TempStorage.Handle handle = service.download(baseUrl + "/large.pdf")) {
+            assertArrayEquals(large, Files.readAllBytes(handle.file().toPath()));
+        }
+        assertEquals(2, fullResponses.get());
+    }
+
+    @Test
+    void testDownload_RejectsOversizedBeforeReading() {
+        properties.getPdfDownload().setMaxFileSize(LARGE_SIZE / 2);
+
+        assertThrows(StampingException.class, () -> service.download(baseUrl + "/large.pdf"));
+        assertEquals(0, rangeRequests.get());
+    }
+
+    @Test
+    void testDownload_StopsRangeWorkersWhenFirstChunkFails() {
+        rangeDelayMillis = 200;
+
+        assertThrows(StampingException.class, () -> service.download(baseUrl + "/truncated.pdf"));
+
+        // Workers still running when the call returned would keep requesting the remaining chunks
+        int requested = rangeRequests.get();
+        sleep(500);
+        assertEquals(requested, rangeRequests.get());
+        assertTrue(requested < 7, "remaining chunks were fetched anyway: " + requested);
+    }
+}
@@ -0,0 +1,69 @@
+package com.stamping.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class RequestTraceTest {
+
+    private final StampingMetrics metrics = new StampingMetrics(new SimpleMeterRegistry());
+
+    @Test
+    void testServerTimingSumsRepeatedStages() {
+        RequestTrace trace = new RequestTrace();
+        long t = System.nanoTime();
+        trace.record(StampingMetrics.DOWNLOAD, StampingMetrics.NONE, t, t + 5_000_000);
+        trace.record(StampingMetrics.RENDER, "FOOTER", t, t + 1_250_000);
+        trace.record(StampingMetrics.RENDER, "FOOTER", t, t + 1_000_000);
+        trace.record(StampingMetrics.RENDER, "HEADER", t, t + 2_000_000);
+
+        String header = trace.serverTiming();
+
+        assertTrue(header.startsWith(
+                "download;dur=5.0, render;desc=\"FOOTER\";dur=2.3, render;desc=\"HEADER\";dur=2.0, total;dur="),
+                header);
+    }
+
+    @Test
+    void testStagesAreRecordedIntoTraceWhenGiven() {
+        RequestTrace trace = new RequestTrace();
+
+        metrics.time(trace, StampingMetrics.FONT, () -> "x");
+        metrics.time(StampingMetrics.SANITIZE, "FOOTER", StampingMetrics.NONE, () -> "untraced");
+        metrics.time(trace, StampingMetrics.OVERLAY, "CENTER", StampingMetrics.NONE, () -> { });
+
+        List<RequestTrace.Span> spans = trace.spans();
+        assertEquals(2, spans.size());
+        assertEquals(StampingMetrics.FONT, spans.get(0).stage());
+        assertEquals("CENTER", spans.get(1).position());
+        assertTrue(spans.get(1).startMs() >= spans.get(0).startMs());
+
+        Map<String, Object> summary = trace.summary();
+        assertEquals(2, ((List<?>) summary.get("spans")).size());
+    }
+
+    @Test
+    void testWorkIsCountedAgainstTheStageTrace() {
+        RequestTrace trace = new RequestTrace();
+
+        metrics.time(trace, StampingMetrics.RENDER, "FOOTER", StampingMetrics.NONE, () -> {
+            PdfIo.writer(new ByteArrayOutputStream());
+            metrics.time(StampingMetrics.SANITIZE, "FOOTER", StampingMetrics.NONE,
+                    () -> RequestTrace.count(RequestTrace.Work.FONT_PROVIDER));
+            RequestTrace.count(RequestTrace.Work.PARSE);
+        });
+        PdfIo.writer(new ByteArrayOutputStream());
+
+        assertEquals(1, trace.work(RequestTrace.Work.WRITE));
+        assertEquals(1, trace.work(RequestTrace.Work.FONT_PROVIDER));
+        assertEquals(1, trace.work(RequestTrace.Work.PARSE));
+        assertEquals(Map.of("parse", 1L, "write", 1L, "font-provider", 1L), trace.summary().get("work"));
+    }
+}
@@ -0,0 +1,69 @@
+package com.stamping.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class StampingMetricsTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final StampingMetrics metrics = new StampingMetrics(meterRegistry);
+
+    @Test
+    void testStageTimerTagsAreBounded() {
+        metrics.time(StampingMetrics.RENDER, "footer", StampingMetrics.NONE, () -> "x");
+        metrics.time(StampingMetrics.RENDER, "FOOTER", StampingMetrics.NONE, () -> "x");
+        metrics.time(StampingMetrics.RENDER, "pub-specific-key", StampingMetrics.NONE, () -> "x");
+
+        assertEquals(2, timer(StampingMetrics.RENDER, "FOOTER").count());
+        assertEquals(1, timer(StampingMetrics.RENDER, "other").count());
+        assertNull(meterRegistry.find("stamping.stage").tag("position", "pub-specific-key").timer());
+    }
+
+    @Test
+    void testFailedStageIsStillTimed() {
+        assertThrows(IllegalStateException.class, () -> metrics.time(StampingMetrics.DOWNLOAD, () -> {
+            throw new IllegalStateException("boom");
+        }));
+
+        assertEquals(1, timer(StampingMetrics.DOWNLOAD, StampingMetrics.NONE).count());
+    }
+
+    @Test
+    void testSizeDistributions() {
+        metrics.recordInput(2048, 10);
+        metrics.recordOutput(4096, 11);
+
+        assertEquals(2048, meterRegistry.get("stamping.pdf.bytes").tag("side", "input").summary().totalAmount());
+        assertEquals(11, meterRegistry.get("stamping.pdf.pages").tag("side", "output").summary().totalAmount());
+    }
+
+    @Test
+    void testStageAllocationAndBufferAreRecorded() {
+        RequestTrace trace = new RequestTrace();
+
+        byte[] rendered = metrics.time(trace, StampingMetrics.RENDER, "FOOTER", StampingMetrics.NONE,
+                () -> new byte[256 * 1024]);
+        metrics.recordRequest(trace);
+
+        RequestTrace.Span span = trace.spans().get(0);
+        assertEquals(rendered.length, span.bufferBytes());
+        assertTrue(span.allocatedBytes() >= rendered.length, "allocated " + span.allocatedBytes());
+        assertEquals(rendered.length, trace.peakBufferBytes());
+        assertTrue(trace.allocatedBytes() >= span.allocatedBytes());
+
+        assertEquals(rendered.length, meterRegistry.get("stamping.stage.buffer")
+                .tag("stage", StampingMetrics.RENDER).tag("position", "FOOTER").summary().max());
+        assertEquals(1, meterRegistry.get("stamping.request.allocated").summary().count());
+        assertEquals(rendered.length, meterRegistry.get("stamping.request.buffer.peak").summary().totalAmount());
+    }
+
+    private Timer timer(String stage, String position) {
+        return meterRegistry.get("stamping.stage").tag("stage", stage).tag("position", position).timer();
+    }
+}
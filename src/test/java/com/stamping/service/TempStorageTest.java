@@ -0,0 +1,85 @@
+package com.stamping.service;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.stamping.config.StampingProperties;
+import com.stamping.exception.TempStorageExhaustedException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class TempStorageTest {
+
+    @TempDir
+    Path tempDir;
+
+    private TempStorage tempStorage;
+
+    @BeforeEach
+    void setUp() {
+        StampingProperties properties = new StampingProperties();
+        properties.setTempDir(tempDir.toString());
+        properties.getTempStorage().setQuotaBytes(100);
+        properties.getTempStorage().setAcquireTimeout(200);
+        tempStorage = new TempStorage(properties, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void testHandle_DeletedWhenLastReferenceCloses() {
+        TempStorage.Handle handle = tempStorage.write("test_", ".pdf", new byte[40]);
+        File file = handle.file();
+        handle.retain();
+
+        handle.close();
+        assertTrue(file.exists());
+        assertEquals(40, tempStorage.usedBytes());
+
+        handle.close();
+        assertFalse(file.exists());
+        assertEquals(0, tempStorage.usedBytes());
+    }
+
+    @Test
+    void testAllocate_WaitsForQuotaThenProceeds() throws Exception {
+        TempStorage.Handle first = tempStorage.allocate("test_", ".pdf", 80);
+
+        CompletableFuture<TempStorage.Handle> waiting =
+                CompletableFuture.supplyAsync(() -> tempStorage.allocate("test_", ".pdf", 50));
+        Thread.sleep(50);
+        assertFalse(waiting.isDone());
+
+        first.close();
+        try (TempStorage.Handle second = waiting.get(1, TimeUnit.SECONDS)) {
+            assertEquals(50, tempStorage.usedBytes());
+        }
+    }
+
+    @Test
+    void testGrow_ReservesMoreAndRejectsOverQuota() {
+        try (TempStorage.Handle handle = tempStorage.allocate("test_", ".pdf", 0)) {
+            handle.grow(60);
+            assertEquals(60, tempStorage.usedBytes());
+            assertThrows(TempStorageExhaustedException.class, () -> handle.grow(60));
+            assertEquals(60, tempStorage.usedBytes());
+        }
+        assertEquals(0, tempStorage.usedBytes());
+    }
+
+    @Test
+    void testAllocate_RejectsAfterTimeout() {
+        try (TempStorage.Handle ignored = tempStorage.allocate("test_", ".pdf", 80)) {
+            assertThrows(TempStorageExhaustedException.class, () -> tempStorage.allocate("test_", ".pdf", 50));
+        }
+        assertThrows(TempStorageExhaustedException.class, () -> tempStorage.allocate("test_", ".pdf", 500));
+    }
+}
@@ -0,0 +1,316 @@
+package com.stamping.service.batch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.itextpdf.io.image.ImageDataFactory;
+import com.itextpdf.kernel.geom.PageSize;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfIndirectReference;
+import com.itextpdf.kernel.pdf.PdfName;
+import com.itextpdf.kernel.pdf.PdfObject;
+import com.itextpdf.kernel.pdf.PdfOutline;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.kernel.pdf.canvas.PdfCanvas;
+import com.itextpdf.kernel.pdf.xobject.PdfImageXObject;
+import com.stamping.config.StampingProperties;
+import com.stamping.exception.StampingException;
+import com.stamping.exception.TempStorageExhaustedException;
+import com.stamping.model.DynamicStampRequest;
+import com.stamping.model.IssueCompilationRequest;
+import com.stamping.model.JournalMetadataRequest;
+import com.stamping.service.AdFetchService;
+import com.stamping.service.RequestTrace;
+import com.stamping.service.StampOrchestrationService;
+import com.stamping.service.StampOrchestrationService.StampResult;
+import com.stamping.service.TempStorage;
+import com.stamping.service.plan.PlannedPosition;
+import com.stamping.service.plan.StampingPlan;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class BatchStampServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final StampingPlan plan = new StampingPlan(1, "pub", "jc", null, List.of());
+    private StampingProperties properties;
+    private StampOrchestrationService orchestrationService;
+    private AdFetchService adFetchService;
+    private BatchStampService service;
+
+    @BeforeEach
+    void setUp() {
+        properties = new StampingProperties();
+        properties.getBatch().setParallelism(2);
+        properties.getBatch().setMaxItems(10);
+        orchestrationService = mock(StampOrchestrationService.class);
+        adFetchService = mock(AdFetchService.class);
+        properties.setTempDir(dir.toString());
+        service = newService();
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.close();
+    }
+
+    @Test
+    void testItemsAreStreamedWithManifestAndBoundedParallelism() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        when(orchestrationService.processWithPlan(any(), any())).thenAnswer(call -> {
+            JournalMetadataRequest item = call.getArgument(1);
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(30);
+                if ("bad".equals(item.getArticleId())) {
+                    throw new StampingException("PDF file not found");
+                }
+                return new StampResult(item.getArticleId().getBytes(), item.getArticleId() + "_stamped.pdf",
+                        new RequestTrace());
+            } finally {
+                running.decrementAndGet();
+            }
+        });
+        List<JournalMetadataRequest> items = new ArrayList<>();
+        for (String id : List.of("a", "b", "bad", "d", "e")) {
+            items.add(JournalMetadataRequest.builder().articleId(id).pdfFilePath("/data/" + id + ".pdf").build());
+        }
+
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        BatchStampService.Manifest manifest = service.write(plan, items, zip);
+
+        assertTrue(peak.get() <= 2, "peak parallelism " + peak.get());
+        assertEquals(4, manifest.succeeded());
+        assertEquals(1, manifest.failed());
+        BatchStampService.ItemResult bad = manifest.results().get(2);
+        assertEquals("error", bad.status());
+        assertEquals("PDF file not found", bad.error());
+        assertNull(bad.entry());
+        assertEquals("4-d_stamped.pdf", manifest.results().get(3).entry());
+
+        List<String> names = new ArrayList<>();
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip.toByteArray()))) {
+            for (ZipEntry entry; (entry = in.getNextEntry()) != null; ) {
+                names.add(entry.getName());
+                byte[] content = in.readAllBytes();
+                if (entry.getName().equals("1-a_stamped.pdf")) {
+                    assertEquals(ZipEntry.STORED, entry.getMethod());
+                    assertArrayEquals("a".getBytes(), content);
+                }
+                if (entry.getName().equals(BatchStampService.MANIFEST)) {
+                    Map<?, ?> parsed = objectMapper.readValue(content, Map.class);
+                    assertEquals(5, ((List<?>) parsed.get("results")).size());
+                }
+            }
+        }
+        assertEquals(5, names.size());
+        assertEquals(BatchStampService.MANIFEST, names.get(4));
+        verify(adFetchService, never()).fetchAds(any());
+    }
+
+    @Test
+    void testAdsArePrefetchedOncePerBatch() throws Exception {
+        DynamicStampRequest.Configuration ads = new DynamicStampRequest.Configuration();
+        ads.setAdsEnabled(true);
+        StampingPlan withAds = new StampingPlan(2, "pub", "jc", null,
+                List.of(new PlannedPosition("FOOTER", ads, null, "", false)));
+        when(adFetchService.buildAdUrl("pub", "jc")).thenReturn("http://ads");
+        when(orchestrationService.processWithPlan(any(), any()))
+                .thenReturn(new StampResult(new byte[1], "x.pdf", new RequestTrace()));
+
+        service.write(withAds, List.of(new JournalMetadataRequest(), new JournalMetadataRequest()),
+                new ByteArrayOutputStream());
+
+        verify(adFetchService).fetchAds("http://ads");
+    }
+
+    @Test
+    void testCompilationSharesIdenticalResourcesAndBookmarksArticles() throws Exception {
+        byte[] logo = new byte[64 * 64 * 3];
+        new Random(7).nextBytes(logo);
+        when(orchestrationService.processWithPlan(any(), any())).thenAnswer(call -> {
+            JournalMetadataRequest item = call.getArgument(1);
+            return new StampResult(article(3, logo), item.getArticleId() + ".pdf", new RequestTrace());
+        });
+        when(orchestrationService.renderNewPage(any(), any(), any(), any())).thenReturn(article(1, null));
+        DynamicStampRequest.Configuration cover = new DynamicStampRequest.Configuration();
+        StampingPlan withCover = new StampingPlan(3, "pub", "jc", null,
+                List.of(new PlannedPosition("NEW_PAGE", cover, null, "", false)));
+        List<JournalMetadataRequest> items = new ArrayList<>();
+        for (String id : List.of("a1", "a2", "a3", "a4")) {
+            items.add(JournalMetadataRequest.builder().articleId(id).articleTitle("Title " + id).build());
+        }
+
+        BatchStampService.Compilation compilation = service.compile(withCover,
+                new IssueCompilationRequest("Issue 12/3", JournalMetadataRequest.builder()
+                        .articleTitle("Issue 12").build(), items));
+
+        try (TempStorage.Handle file = compilation.file();
+             PdfDocument doc = new PdfDocument(new PdfReader(file.file()))) {
+            assertEquals("Issue_12_3.pdf", compilation.filename());
+            assertEquals(13, doc.getNumberOfPages());
+            assertEquals("Issue 12/3", doc.getDocumentInfo().getTitle());
+            List<String> bookmarks = doc.getOutlines(false).getAllChildren().stream().map(PdfOutline::getTitle).toList();
+            assertEquals(List.of("Issue 12", "Title a1", "Title a2", "Title a3", "Title a4"), bookmarks);
+            // The logo on all twelve article pages is stored once
+            Set<Integer> images = new HashSet<>();
+            for (int page = 2; page <= doc.getNumberOfPages(); page++) {
+                PdfObject image = doc.getPage(page).getResources().getResource(PdfName.XObject)
+                        .values(false).iterator().next();
+                images.add(((PdfIndirectReference) image).getObjNumber());
+            }
+            assertEquals(1, images.size());
+        }
+        assertFalse(compilation.file().file().exists());
+    }
+
+    @Test
+    void testCompilationFailsOnTheFirstFailedArticle() {
+        when(orchestrationService.processWithPlan(any(), any())).thenThrow(new StampingException("PDF file not found"));
+
+        StampingException e = assertThrows(StampingException.class, () -> service.compile(plan,
+                new IssueCompilationRequest(null, null, List.of(
+                        JournalMetadataRequest.builder().articleId("a1").build()))));
+
+        assertEquals("Article 1 (a1): PDF file not found", e.getMessage());
+        String[] scratch = dir.resolve("scratch").toFile().list();
+        assertTrue(scratch == null || scratch.length == 0);
+    }
+
+    @Test
+    void testCompilationReservesTempStorageForEachArticle() throws Exception {
+        byte[] pdf = article(2, null);
+        when(orchestrationService.processWithPlan(any(), any()))
+                .thenAnswer(call -> new StampResult(pdf, "a.pdf", new RequestTrace()));
+        properties.getTempStorage().setQuotaBytes(pdf.length * 2L + pdf.length / 2);
+        properties.getTempStorage().setAcquireTimeout(50);
+        service.close();
+        service = newService();
+        List<JournalMetadataRequest> items = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            items.add(JournalMetadataRequest.builder().articleId("a" + i).build());
+        }
+
+        assertThrows(TempStorageExhaustedException.class,
+                () -> service.compile(plan, new IssueCompilationRequest(null, null, items)));
+        String[] scratch = dir.resolve("scratch").toFile().list();
+        assertTrue(scratch == null || scratch.length == 0);
+    }
+
+    private BatchStampService newService() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        return new BatchStampService(properties, orchestrationService, adFetchService, objectMapper,
+                new TempStorage(properties, registry), registry);
+    }
+
+    /** A PDF of {@code pages} pages, each drawing its own copy of {@code image} when given. */
+    private static byte[] article(int pages, byte[] image) throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (PdfDocument doc = new PdfDocument(new PdfWriter(os))) {
+            for (int i = 0; i < pages; i++) {
+                PdfCanvas canvas = new PdfCanvas(doc.addNewPage(PageSize.A4));
+                if (image != null) {
+                    canvas.addXObjectAt(new PdfImageXObject(ImageDataFactory.create(64, 64, 3, 8, image, null)), 10, 10);
+                }
+            }
+        }
+        return os.toByteArray();
+    }
+
+    @Test
+    void testBatchesShareABoundedPoolThatStopsOnClose() throws Exception {
+        properties.getBatch().setWorkers(1);
+        service.close();
+        service = newService();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        when(orchestrationService.processWithPlan(any(), any())).thenAnswer(call -> {
+            JournalMetadataRequest item = call.getArgument(1);
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            threads.add(Thread.currentThread().getName());
+            Thread.sleep(20);
+            running.decrementAndGet();
+            return new StampResult(item.getArticleId().getBytes(), item.getArticleId() + ".pdf", new RequestTrace());
+        });
+        List<JournalMetadataRequest> items = new ArrayList<>();
+        for (String id : List.of("a", "b", "c")) {
+            items.add(JournalMetadataRequest.builder().articleId(id).pdfFilePath("/data/" + id + ".pdf").build());
+        }
+
+        // Two batches at once, each allowed two items in flight, still get the single worker
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<BatchStampService.Manifest>> batches = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                batches.add(callers.submit(() -> service.write(plan, items, new ByteArrayOutputStream())));
+            }
+            for (Future<BatchStampService.Manifest> batch : batches) {
+                assertEquals(3, batch.get(10, TimeUnit.SECONDS).succeeded());
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+        assertEquals(1, peak.get());
+        assertEquals(Set.of("stamp-batch-1"), threads);
+
+        service.close();
+        assertThrows(RejectedExecutionException.class,
+                () -> service.write(plan, items, new ByteArrayOutputStream()));
+    }
+
+    @Test
+    void testInvalidBatchesAreRejected() {
+        assertThrows(StampingException.class, () -> service.validate(List.of()));
+        List<JournalMetadataRequest> tooMany = new ArrayList<>();
+        for (int i = 0; i < 11; i++) {
+            tooMany.add(new JournalMetadataRequest());
+        }
+        assertThrows(StampingException.class, () -> service.validate(tooMany));
+        JournalMetadataRequest withPositions = JournalMetadataRequest.builder()
+                .positions(Map.of("FOOTER", new DynamicStampRequest.Configuration())).build();
+        assertThrows(StampingException.class, () -> service.validate(List.of(withPositions)));
+
+        properties.getBatch().setMaxCompilationItems(3);
+        service.validateCompilation(tooMany.subList(0, 3));
+        assertThrows(StampingException.class, () -> service.validateCompilation(tooMany.subList(0, 4)));
+    }
+}
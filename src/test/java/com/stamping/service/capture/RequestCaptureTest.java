@@ -0,0 +1,137 @@
+package com.stamping.service.capture;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stamping.config.StampingProperties;
+import com.stamping.model.DynamicStampRequest;
+import com.stamping.model.JournalMetadataRequest;
+import com.stamping.service.plan.PlannedPosition;
+import com.stamping.service.plan.StampingPlan;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class RequestCaptureTest {
+
+    private static final String LOGO = "iVBORw0KGgoAAAANSUhEUgAAAAEAAAABCAYAAAAfFcSJAAAADUlEQVR42mNk";
+
+    @TempDir
+    Path dir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void testCapturedRecordIsSanitizedWithBlobReferences() throws Exception {
+        RequestCapture capture = capture(true);
+        byte[] pdf = "%PDF-1.7 source".getBytes(StandardCharsets.US_ASCII);
+
+        capture.record(plan(), request(), pdf, 4096, 123.4);
+        capture.record(plan(), request(), pdf, 4096, 120.0);
+        capture.awaitIdle(5000);
+
+        List<String> lines = Files.readAllLines(onlyJsonl());
+        assertEquals(2, lines.size());
+        JsonNode record = objectMapper.readTree(lines.get(0));
+        JsonNode request = record.get("request");
+
+        assertEquals("inline", record.get("mode").asText());
+        assertEquals(123.4, record.get("durationMs").asDouble());
+        assertEquals(4096, record.get("outputBytes").asLong());
+        assertFalse(request.has("pdfUrl"));
+        assertFalse(request.has("outputPath"));
+        assertEquals("x".repeat("reader@example.org".length()), request.get("downloadedBy").asText());
+        assertEquals("Captured title", request.get("articleTitle").asText());
+
+        String source = record.get("source").asText();
+        String logo = request.get("positions").get("NEW_PAGE").get("logo").asText();
+        assertTrue(source.startsWith(RequestCapture.BLOB_REF));
+        assertTrue(logo.startsWith(RequestCapture.BLOB_REF));
+        assertArrayEquals(pdf, Files.readAllBytes(blob(source)));
+        assertEquals(LOGO, Files.readString(blob(logo)));
+        assertFalse(lines.get(0).contains(LOGO));
+        try (Stream<Path> blobs = Files.list(dir.resolve("blobs"))) {
+            assertEquals(2, blobs.count());
+        }
+    }
+
+    @Test
+    void testDisabledCaptureWritesNothing() throws Exception {
+        RequestCapture capture = capture(false);
+
+        capture.record(plan(), request(), new byte[] {1}, 1, 1.0);
+        capture.awaitIdle(5000);
+
+        assertFalse(Files.exists(dir.resolve("blobs")));
+    }
+
+    @Test
+    void testRecordsOverTheByteBudgetAreDropped() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        StampingProperties properties = properties(true);
+        properties.getCapture().setQueueMaxBytes(16);
+        RequestCapture capture = new RequestCapture(properties, objectMapper, registry);
+
+        capture.record(plan(), request(), new byte[12], 1, 1.0);
+        capture.awaitIdle(5000);
+        capture.record(plan(), request(), new byte[12], 1, 1.0);
+        capture.record(plan(), request(), new byte[64], 1, 1.0);
+        capture.awaitIdle(5000);
+
+        assertEquals(2, Files.readAllLines(onlyJsonl()).size());
+        assertEquals(1.0, registry.get("stamping.capture.records").tag("result", "dropped").counter().count());
+    }
+
+    private RequestCapture capture(boolean enabled) {
+        return new RequestCapture(properties(enabled), objectMapper, new SimpleMeterRegistry());
+    }
+
+    private StampingProperties properties(boolean enabled) {
+        StampingProperties properties = new StampingProperties();
+        properties.getCapture().setEnabled(enabled);
+        properties.getCapture().setDir(dir.toString());
+        return properties;
+    }
+
+    private static StampingPlan plan() {
+        DynamicStampRequest.Configuration config = new DynamicStampRequest.Configuration();
+        config.setTemplateName("default_metadata");
+        config.setLogo(LOGO);
+        return new StampingPlan(0, "pub", "jc", null,
+                List.of(new PlannedPosition("NEW_PAGE", config, "<html></html>", null, false)));
+    }
+
+    private static JournalMetadataRequest request() {
+        JournalMetadataRequest request = new JournalMetadataRequest();
+        request.setPublisherId("pub");
+        request.setJcode("jc");
+        request.setPdfUrl("https://example.org/private/article.pdf?token=secret");
+        request.setOutputPath("/tmp/out.pdf");
+        request.setArticleTitle("Captured title");
+        request.setDownloadedBy("reader@example.org");
+        return request;
+    }
+
+    private Path onlyJsonl() throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Path> jsonl = files.filter(f -> f.toString().endsWith(".jsonl")).toList();
+            assertEquals(1, jsonl.size());
+            return jsonl.get(0);
+        }
+    }
+
+    private Path blob(String ref) {
+        return dir.resolve("blobs").resolve(ref.substring(RequestCapture.BLOB_REF.length()));
+    }
+}
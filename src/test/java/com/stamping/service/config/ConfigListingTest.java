@@ -0,0 +1,120 @@
+package com.stamping.service.config;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stamping.config.StampingProperties;
+import com.stamping.exception.StampingException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ConfigListingTest {
+
+    @TempDir
+    Path root;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private FileConfigRepository repository;
+    private ConfigListing listing;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        StampingProperties properties = new StampingProperties();
+        properties.setConfigDir(Files.createDirectories(root.resolve("configs")).toString());
+        properties.setArchiveDir(root.resolve("archive").toString());
+        repository = new FileConfigRepository(objectMapper, properties, new SimpleMeterRegistry());
+        listing = new ConfigListing(repository, objectMapper);
+
+        repository.save("aaa", "j1", config("aaa", "j1", true));
+        repository.save("aaa", "j2", config("aaa", "j2", false));
+        repository.save("bbb", "j1", config("bbb", "j1", true));
+    }
+
+    @Test
+    void testSummaryViewOmitsLogoPayload() throws Exception {
+        List<Map<String, Object>> full = write(listing.query(query(null, null, false, null, null)));
+        List<Map<String, Object>> summary = write(listing.query(query(null, null, true, null, null)));
+
+        assertEquals(3, summary.size());
+        assertEquals("data:image/png;base64,AAAA", logo(full.get(0)).get("value"));
+        assertFalse(logo(summary.get(0)).containsKey("value"));
+        assertEquals(true, logo(summary.get(0)).get("enabled"));
+    }
+
+    @Test
+    void testFiltersAndPaging() {
+        assertEquals(2, listing.query(query("aaa", null, true, null, null)).items().size());
+        assertEquals(2, listing.query(new ConfigListing.Query(null, null, "header", true, 0, null, null)).items().size());
+        assertEquals(1, listing.query(new ConfigListing.Query("aaa", null, "header", true, 0, null, null)).items().size());
+        assertEquals(2, listing.query(new ConfigListing.Query(null, "j1", null, true, 0, null, null)).items().size());
+
+        ConfigListing.Result page = listing.query(new ConfigListing.Query(null, null, null, true, 1, 2, null));
+        assertEquals(3, page.total());
+        assertEquals(List.of("bbb"), page.items().stream().map(StoredConfig::pubId).toList());
+
+        assertThrows(StampingException.class,
+                () -> listing.query(new ConfigListing.Query(null, null, null, true, 0, ConfigListing.MAX_PAGE_SIZE + 1, null)));
+    }
+
+    @Test
+    void testDeltaSinceCursor() throws Exception {
+        String cursor = listing.query(query(null, null, true, null, null)).cursor();
+        assertTrue(listing.query(query(null, null, true, null, cursor)).items().isEmpty());
+
+        repository.save("aaa", "j2", config("aaa", "j2", true));
+        repository.archive("bbb", "j1");
+
+        ConfigListing.Result delta = listing.query(query(null, null, true, null, cursor));
+        assertTrue(delta.delta());
+        assertEquals(List.of("aaa_j2"), delta.items().stream().map(c -> c.pubId() + "_" + c.jcode()).toList());
+        assertEquals(List.of("bbb"), delta.removed().stream().map(StoredConfig::pubId).toList());
+
+        List<Map<String, Object>> body = write(delta);
+        assertEquals(Map.of("pubId", "bbb", "jcode", "j1", "removed", true), body.get(1));
+
+        // A cursor from another run (different epoch) falls back to a full listing
+        ConfigListing.Result fallback = listing.query(query(null, null, true, null, "old.1"));
+        assertFalse(fallback.delta());
+        assertEquals(2, fallback.items().size());
+    }
+
+    private static ConfigListing.Query query(String pubId, String section, boolean summary, Integer size, String since) {
+        return new ConfigListing.Query(pubId, null, section, summary, 0, size, since);
+    }
+
+    private List<Map<String, Object>> write(ConfigListing.Result result) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        listing.write(result, out);
+        return objectMapper.readValue(out.toByteArray(), new TypeReference<>() {});
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> logo(Map<String, Object> config) {
+        return (Map<String, Object>) ((Map<String, Object>) config.get("header")).get("logo");
+    }
+
+    private static Map<String, Object> config(String pubId, String jcode, boolean headerEnabled) {
+        Map<String, Object> header = new LinkedHashMap<>();
+        header.put("enabled", headerEnabled);
+        header.put("logo", new LinkedHashMap<>(Map.of("enabled", true, "value", "data:image/png;base64,AAAA")));
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("pubId", pubId);
+        config.put("jcode", jcode);
+        config.put("header", header);
+        return config;
+    }
+}
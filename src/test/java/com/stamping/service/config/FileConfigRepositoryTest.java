@@ -0,0 +1,160 @@
+package com.stamping.service.config;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stamping.config.StampingProperties;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class FileConfigRepositoryTest {
+
+    @TempDir
+    Path root;
+
+    private Path configDir;
+    private FileConfigRepository repository;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        configDir = Files.createDirectories(root.resolve("configs"));
+        write("config_cshl_genome.json", "{\"pubId\":\"cshl\",\"jcode\":\"genome\"}");
+        write("notes.txt", "ignored");
+
+        StampingProperties properties = new StampingProperties();
+        properties.setConfigDir(configDir.toString());
+        properties.setArchiveDir(root.resolve("archive").toString());
+        repository = new FileConfigRepository(new ObjectMapper(), properties, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        repository.stopWatcher();
+    }
+
+    @Test
+    void testInitialLoadAndLookup() {
+        assertEquals(1, repository.listActive().size());
+        StoredConfig entry = repository.get("cshl", "genome");
+        assertNotNull(entry);
+        assertEquals("genome", entry.config().get("jcode"));
+        assertNull(repository.get("cshl", "other"));
+    }
+
+    @Test
+    void testSaveArchiveRestore() {
+        long generation = repository.generation();
+
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("pubId", "aaa");
+        config.put("jcode", "bbb");
+        repository.save("aaa", "bbb", config);
+        assertEquals("config_aaa_bbb.json", repository.listActive().get(0).key());
+        assertTrue(Files.exists(configDir.resolve("config_aaa_bbb.json")));
+
+        assertTrue(repository.archive("cshl", "genome"));
+        assertNull(repository.get("cshl", "genome"));
+        assertFalse(repository.archive("cshl", "genome"));
+        assertEquals(2, repository.listAll().size());
+
+        assertTrue(repository.restore("cshl", "genome"));
+        assertNotNull(repository.get("cshl", "genome"));
+        assertEquals(generation + 3, repository.generation());
+    }
+
+    @Test
+    void testWatcherPicksUpExternalEdits() throws Exception {
+        repository.startWatcher();
+        write("config_ext_j1.json", "{\"pubId\":\"ext\",\"jcode\":\"j1\"}");
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (repository.get("ext", "j1") == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertNotNull(repository.get("ext", "j1"));
+        assertEquals(1, repository.listByPublisher("ext").size());
+    }
+
+    @Test
+    void testVersionIncreasesOnEverySaveArchiveAndRestore() throws Exception {
+        Path file = configDir.resolve("config_cshl_genome.json");
+        long fileTime = Files.getLastModifiedTime(file).toMillis();
+        StoredConfig initial = repository.get("cshl", "genome");
+        assertEquals(fileTime, initial.version());
+
+        // Re-reading an unchanged file is not a change
+        repository.refresh("config_cshl_genome.json");
+        assertSame(initial, repository.get("cshl", "genome"));
+
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("pubId", "cshl");
+        config.put("jcode", "genome");
+        config.put("label", "v2");
+        repository.save("cshl", "genome", config);
+        // Same timestamp as before, as with two saves inside the file system's time resolution
+        file.toFile().setLastModified(fileTime);
+        repository.refresh("config_cshl_genome.json");
+        long saved = repository.get("cshl", "genome").version();
+        assertTrue(saved > initial.version());
+
+        assertTrue(repository.archive("cshl", "genome"));
+        long archived = repository.listAll().stream()
+                .filter(c -> c.archived() && c.jcode().equals("genome")).findFirst().orElseThrow().version();
+        assertTrue(archived > saved);
+
+        // The move keeps the old timestamp; the version must still go up
+        assertTrue(repository.restore("cshl", "genome"));
+        assertTrue(repository.get("cshl", "genome").version() > archived);
+    }
+
+    @Test
+    void testConcurrentSavesOfOneJournalDoNotCollide() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<StoredConfig>> saves = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                Map<String, Object> config = new LinkedHashMap<>();
+                config.put("pubId", "aaa");
+                config.put("jcode", "bbb");
+                config.put("label", "rev" + i);
+                saves.add(pool.submit(() -> repository.save("aaa", "bbb", config)));
+            }
+            for (Future<StoredConfig> save : saves) {
+                assertNotNull(save.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        try (Stream<Path> files = Files.list(configDir)) {
+            assertEquals(List.of(), files.filter(f -> f.toString().endsWith(".part")).toList());
+        }
+        Map<?, ?> saved = new ObjectMapper().readValue(configDir.resolve("config_aaa_bbb.json").toFile(), Map.class);
+        assertTrue(saved.get("label").toString().startsWith("rev"));
+    }
+
+    private void write(String name, String json) throws Exception {
+        Files.writeString(configDir.resolve(name), json, StandardCharsets.UTF_8);
+    }
+}
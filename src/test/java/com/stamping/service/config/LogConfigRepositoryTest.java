@@ -0,0 +1,239 @@
+package com.stamping.service.config;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stamping.config.StampingProperties;
+import com.stamping.exception.StampingException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class LogConfigRepositoryTest {
+
+    @TempDir
+    Path root;
+
+    private StampingProperties properties;
+    private LogConfigRepository repository;
+    private volatile boolean failWrites;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Path configDir = Files.createDirectories(root.resolve("configs"));
+        Files.writeString(configDir.resolve("config_cshl_genome.json"),
+                "{\"pubId\":\"cshl\",\"jcode\":\"genome\",\"newPage\":{\"enabled\":true}}", StandardCharsets.UTF_8);
+
+        properties = new StampingProperties();
+        properties.setConfigDir(configDir.toString());
+        properties.setArchiveDir(root.resolve("archive").toString());
+        properties.getConfigStore().setType("log");
+        properties.getConfigStore().setLogFile(root.resolve("store/configs.log").toString());
+        properties.getConfigStore().setFsync(false);
+        repository = open();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        repository.close();
+    }
+
+    @Test
+    void testImportsFileLayoutOnFirstStart() {
+        StoredConfig imported = repository.get("cshl", "genome");
+        assertNotNull(imported);
+        assertEquals(1, imported.version());
+        assertEquals(Map.of("enabled", true), imported.config().get("newPage"));
+    }
+
+    @Test
+    void testImportCutShortRunsAgainInFull() throws Exception {
+        repository.close();
+        Path log = Path.of(properties.getConfigStore().getLogFile());
+        Files.delete(log);
+        Path configDir = Path.of(properties.getConfigDir());
+        Files.writeString(configDir.resolve("config_cshl_other.json"),
+                "{\"pubId\":\"cshl\",\"jcode\":\"other\"}", StandardCharsets.UTF_8);
+        // What a crash half way through the import leaves behind: a partial import file, no log
+        Path partial = log.resolveSibling("configs.log.import");
+        Files.write(partial, new byte[] {0, 0, 1, 0, 7});
+
+        repository = open();
+
+        assertNotNull(repository.get("cshl", "genome"));
+        assertNotNull(repository.get("cshl", "other"));
+        assertFalse(Files.exists(partial));
+    }
+
+    @Test
+    void testVersionsIncreaseAndSurviveRestart() throws Exception {
+        repository.save("cshl", "genome", config("cshl", "genome", "v2"));
+        assertTrue(repository.archive("cshl", "genome"));
+        assertFalse(repository.archive("cshl", "genome"));
+        assertNull(repository.get("cshl", "genome"));
+        assertTrue(repository.restore("cshl", "genome"));
+        repository.save("cshl", "other", config("cshl", "other", "v1"));
+
+        repository.close();
+        repository = open();
+
+        StoredConfig genome = repository.get("cshl", "genome");
+        assertEquals(4, genome.version());
+        assertEquals("v2", genome.config().get("label"));
+        assertEquals(2, repository.listByPublisher("cshl").size());
+        assertEquals(0, repository.listByPublisher("other").size());
+    }
+
+    @Test
+    void testTornTailIsTruncatedOnRecovery() throws Exception {
+        repository.save("aaa", "bbb", config("aaa", "bbb", "kept"));
+        repository.close();
+
+        Path log = Path.of(properties.getConfigStore().getLogFile());
+        long goodSize = Files.size(log);
+        try (FileChannel ch = FileChannel.open(log, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            // Header announcing 500 bytes, followed by only a few: a write cut off by a crash
+            ch.write(ByteBuffer.allocate(12).putInt(500).putInt(0).putInt(42).flip());
+        }
+
+        repository = open();
+        assertEquals("kept", repository.get("aaa", "bbb").config().get("label"));
+        assertEquals(goodSize, Files.size(log));
+    }
+
+    @Test
+    void testCompactionKeepsLatestRecords() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            repository.save("aaa", "bbb", config("aaa", "bbb", "rev" + i));
+        }
+        Path log = Path.of(properties.getConfigStore().getLogFile());
+        long before = Files.size(log);
+
+        repository.compact();
+        assertTrue(Files.size(log) < before);
+
+        repository.close();
+        repository = open();
+        assertEquals("rev49", repository.get("aaa", "bbb").config().get("label"));
+        assertEquals(50, repository.get("aaa", "bbb").version());
+        assertEquals(2, repository.listAll().size());
+    }
+
+    @Test
+    void testCompactionFailureDoesNotFailTheSave() throws Exception {
+        properties.getConfigStore().setCompactionMinBytes(0);
+        repository.close();
+        repository = open();
+        Path log = Path.of(properties.getConfigStore().getLogFile());
+        // A non-empty directory where compaction writes its new log
+        Files.createDirectories(log.resolveSibling(log.getFileName() + ".compact").resolve("occupied"));
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i + 1, repository.save("aaa", "bbb", config("aaa", "bbb", "rev" + i)).version());
+        }
+        assertThrows(IOException.class, () -> repository.compact());
+        repository.save("aaa", "ccc", config("aaa", "ccc", "after"));
+
+        repository.close();
+        repository = open();
+        assertEquals("rev4", repository.get("aaa", "bbb").config().get("label"));
+        assertEquals("after", repository.get("aaa", "ccc").config().get("label"));
+    }
+
+    @Test
+    void testFailedAppendLeavesNoPartialRecord() throws Exception {
+        repository.close();
+        repository = new LogConfigRepository(new ObjectMapper(), properties, new SimpleMeterRegistry()) {
+            @Override
+            FileChannel openChannel() throws IOException {
+                return new FailingChannel(super.openChannel());
+            }
+        };
+        repository.save("aaa", "bbb", config("aaa", "bbb", "v1"));
+        Path log = Path.of(properties.getConfigStore().getLogFile());
+        long goodSize = Files.size(log);
+
+        failWrites = true;
+        assertThrows(StampingException.class, () -> repository.save("aaa", "bbb", config("aaa", "bbb", "lost")));
+        assertEquals(goodSize, Files.size(log));
+        assertEquals("v1", repository.get("aaa", "bbb").config().get("label"));
+
+        failWrites = false;
+        repository.save("aaa", "bbb", config("aaa", "bbb", "v2"));
+        repository.close();
+        repository = open();
+
+        // Without the truncation the torn record would hide v2 on replay
+        assertEquals("v2", repository.get("aaa", "bbb").config().get("label"));
+        assertEquals(2, repository.get("aaa", "bbb").version());
+    }
+
+    private LogConfigRepository open() {
+        return new LogConfigRepository(new ObjectMapper(), properties, new SimpleMeterRegistry());
+    }
+
+    /** Delegating channel whose positional writes store a few bytes and then fail while failWrites is set. */
+    private class FailingChannel extends FileChannel {
+
+        private final FileChannel delegate;
+
+        FailingChannel(FileChannel delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            if (!failWrites) return delegate.write(src, position);
+            ByteBuffer partial = src.slice().limit(Math.min(src.remaining(), 10));
+            delegate.write(partial, position);
+            throw new IOException("No space left on device");
+        }
+
+        @Override public int read(ByteBuffer dst) throws IOException { return delegate.read(dst); }
+        @Override public long read(ByteBuffer[] dsts, int offset, int length) throws IOException { return delegate.read(dsts, offset, length); }
+        @Override public int write(ByteBuffer src) throws IOException { return delegate.write(src); }
+        @Override public long write(ByteBuffer[] srcs, int offset, int length) throws IOException { return delegate.write(srcs, offset, length); }
+        @Override public long position() throws IOException { return delegate.position(); }
+        @Override public FileChannel position(long newPosition) throws IOException { delegate.position(newPosition); return this; }
+        @Override public long size() throws IOException { return delegate.size(); }
+        @Override public FileChannel truncate(long size) throws IOException { delegate.truncate(size); return this; }
+        @Override public void force(boolean metaData) throws IOException { delegate.force(metaData); }
+        @Override public long transferTo(long position, long count, WritableByteChannel target) throws IOException { return delegate.transferTo(position, count, target); }
+        @Override public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException { return delegate.transferFrom(src, position, count); }
+        @Override public int read(ByteBuffer dst, long position) throws IOException { return delegate.read(dst, position); }
+        @Override public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException { return delegate.map(mode, position, size); }
+        @Override public FileLock lock(long position, long size, boolean shared) throws IOException { return delegate.lock(position, size, shared); }
+        @Override public FileLock tryLock(long position, long size, boolean shared) throws IOException { return delegate.tryLock(position, size, shared); }
+        @Override protected void implCloseChannel() throws IOException { delegate.close(); }
+    }
+
+    private static Map<String, Object> config(String pubId, String jcode, String label) {
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("pubId", pubId);
+        config.put("jcode", jcode);
+        config.put("label", label);
+        return config;
+    }
+}
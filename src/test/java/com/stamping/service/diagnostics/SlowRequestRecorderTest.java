@@ -0,0 +1,106 @@
+package com.stamping.service.diagnostics;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stamping.config.StampingProperties;
+import com.stamping.service.RequestTrace;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+class SlowRequestRecorderTest {
+
+    @TempDir
+    Path dir;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private SlowRequestRecorder recorder;
+
+    @AfterEach
+    void tearDown() {
+        if (recorder != null) {
+            recorder.stop();
+        }
+    }
+
+    @Test
+    void testSlowRequestDumpsRecordingOncePerInterval() throws Exception {
+        recorder = recorder(0);
+        RequestTrace first = new RequestTrace();
+        recorder.end(recorder.begin(first, "pub", "jc/1"), first, false);
+        RequestTrace second = new RequestTrace();
+        recorder.end(recorder.begin(second, "pub", "jc"), second, true);
+        recorder.awaitIdle(10000);
+
+        List<Map<String, Object>> dumps = recorder.dumps();
+        assertEquals(1, dumps.size());
+        Map<String, Object> dump = dumps.get(0);
+        assertEquals(first.id(), dump.get("id"));
+        assertEquals("jc/1", dump.get("jcode"));
+        assertTrue(((String) dump.get("serverTiming")).contains("total;dur="));
+        String name = (String) dump.get("name");
+        assertTrue(name.endsWith(first.id() + "-pub-jc_1"));
+        assertEquals(1.0, registry.counter("stamping.slow.dumps", "result", "written").count());
+        assertEquals(1.0, registry.counter("stamping.slow.dumps", "result", "suppressed").count());
+
+        Path jfr = recorder.dumpFile(name);
+        assertNotNull(jfr);
+        List<RecordedEvent> requests = RecordingFile.readAllEvents(jfr).stream()
+                .filter(e -> e.getEventType().getName().equals("com.stamping.Request"))
+                .toList();
+        assertTrue(requests.stream().anyMatch(e -> first.id().equals(e.getString("requestId"))));
+    }
+
+    @Test
+    void testDumpLeavesOutEnvironmentAndSystemProperties() throws Exception {
+        recorder = recorder(0);
+        RequestTrace trace = new RequestTrace();
+        recorder.end(recorder.begin(trace, "pub", "jc"), trace, false);
+        recorder.awaitIdle(10000);
+
+        Path jfr = recorder.dumpFile((String) recorder.dumps().get(0).get("name"));
+        List<String> types = RecordingFile.readAllEvents(jfr).stream()
+                .map(e -> e.getEventType().getName())
+                .distinct()
+                .toList();
+        assertTrue(types.contains("com.stamping.Request"));
+        for (String excluded : SlowRequestRecorder.EXCLUDED_EVENTS) {
+            assertFalse(types.contains(excluded), excluded);
+        }
+    }
+
+    @Test
+    void testFastRequestIsNotDumped() throws Exception {
+        recorder = recorder(60000);
+        RequestTrace trace = new RequestTrace();
+        recorder.end(recorder.begin(trace, "pub", "jc"), trace, false);
+        recorder.awaitIdle(10000);
+
+        assertTrue(recorder.dumps().isEmpty());
+        assertFalse(Files.exists(dir.resolve("dumps")));
+        assertNull(recorder.dumpFile("missing"));
+    }
+
+    private SlowRequestRecorder recorder(long threshold) {
+        StampingProperties properties = new StampingProperties();
+        properties.getSlowRequests().setThreshold(threshold);
+        properties.getSlowRequests().setDir(dir.resolve("dumps").toString());
+        SlowRequestRecorder recorder = new SlowRequestRecorder(properties, new ObjectMapper(), registry);
+        recorder.start();
+        return recorder;
+    }
+}
@@ -0,0 +1,206 @@
+package com.stamping.service.job;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stamping.config.StampingProperties;
+import com.stamping.exception.JobQueueFullException;
+import com.stamping.model.DynamicStampRequest;
+import com.stamping.model.JournalMetadataRequest;
+import com.stamping.service.RequestTrace;
+import com.stamping.service.StampOrchestrationService;
+import com.stamping.service.StampOrchestrationService.StampResult;
+import com.stamping.service.plan.StampingPlans;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class StampJobServiceTest {
+
+    private static final byte[] PDF = "%PDF-1.7 stamped".getBytes();
+
+    @TempDir
+    Path dir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private StampingProperties properties;
+    private StampOrchestrationService orchestrationService;
+    private StampJobService service;
+
+    @BeforeEach
+    void setUp() {
+        properties = new StampingProperties();
+        properties.getJobs().setDir(dir.toString());
+        orchestrationService = mock(StampOrchestrationService.class);
+        when(orchestrationService.processJournalMetadata(any(), any())).thenAnswer(call -> {
+            RequestTrace trace = call.getArgument(1);
+            trace.record("render", "FOOTER", System.nanoTime(), System.nanoTime());
+            return new StampResult(PDF, "out.pdf", trace);
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) {
+            service.close();
+        }
+    }
+
+    @Test
+    void testSubmittedJobRunsAndKeepsResult() throws Exception {
+        service = newService();
+        StampJob queued = service.submitInline(request(), "key-1");
+        assertEquals(StampJob.Status.QUEUED, queued.status());
+        service.awaitIdle(10000);
+
+        StampJob job = service.get(queued.id());
+        assertEquals(StampJob.Status.SUCCEEDED, job.status());
+        assertEquals(1, job.attempts());
+        assertEquals(1, job.stagesCompleted());
+        assertEquals("render FOOTER", job.stage());
+        assertEquals("out.pdf", job.filename());
+        assertArrayEquals(PDF, Files.readAllBytes(service.result(queued.id())));
+        assertEquals(job, objectMapper.readValue(dir.resolve(job.id()).resolve("job.json").toFile(), StampJob.class));
+
+        // Retried submission with the same key returns the same job
+        assertEquals(job.id(), service.submitInline(request(), "key-1").id());
+        assertEquals(1.0, registry.counter("stamping.jobs.completed", "result", "succeeded").count());
+    }
+
+    @Test
+    void testQueuedAndInterruptedJobsAreRecoveredAfterRestart() throws Exception {
+        StampJobService stopped = newService();
+        stopped.close();
+        StampJob queued = stopped.submitInline(request(), null);
+
+        // A job that was running when the process died, for the last allowed time
+        StampJob crashed = StampJob.queued("crashed", StampJob.INLINE, "pub", "jc", null).running().running();
+        Files.createDirectories(dir.resolve("crashed"));
+        Files.write(dir.resolve("crashed").resolve("job.json"), objectMapper.writeValueAsBytes(crashed));
+        // A submission that never got its job.json
+        Files.createDirectories(dir.resolve("partial"));
+        Files.write(dir.resolve("partial").resolve("request.json"), "{}".getBytes());
+
+        service = newService();
+        service.recover();
+        service.awaitIdle(10000);
+
+        assertEquals(StampJob.Status.SUCCEEDED, service.get(queued.id()).status());
+        StampJob failed = service.get("crashed");
+        assertEquals(StampJob.Status.FAILED, failed.status());
+        assertNull(service.result("crashed"));
+        assertFalse(Files.exists(dir.resolve("partial")));
+    }
+
+    @Test
+    void testRecoveryLeavesJobsAlreadyHeldAlone() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(call -> {
+            release.await(10, TimeUnit.SECONDS);
+            return new StampResult(PDF, "out.pdf", call.getArgument(1));
+        }).when(orchestrationService).processJournalMetadata(any(), any());
+        service = newService();
+        StampJob submitted = service.submitInline(request(), null);
+        while (service.get(submitted.id()).status() != StampJob.Status.RUNNING) {
+            Thread.sleep(5);
+        }
+
+        service.recover();
+        release.countDown();
+        service.awaitIdle(10000);
+
+        StampJob job = service.get(submitted.id());
+        assertEquals(StampJob.Status.SUCCEEDED, job.status());
+        assertEquals(1, job.attempts());
+        verify(orchestrationService, times(1)).processJournalMetadata(any(), any());
+    }
+
+    @Test
+    void testFinishedJobsExpireAfterTtl() throws Exception {
+        properties.getJobs().setResultTtl(0);
+        service = newService();
+        StampJob job = service.submitInline(request(), "key-2");
+        service.awaitIdle(10000);
+        Thread.sleep(5);
+
+        service.expire();
+
+        assertNull(service.get(job.id()));
+        assertFalse(Files.exists(dir.resolve(job.id())));
+        // The key is free again
+        assertFalse(job.id().equals(service.submitInline(request(), "key-2").id()));
+    }
+
+    @Test
+    void testFullQueueRejectsSubmission() {
+        properties.getJobs().setMaxQueued(1);
+        service = newService();
+        service.close();
+        StampJob first = service.submitInline(request(), null);
+
+        assertThrows(JobQueueFullException.class, () -> service.submitInline(request(), null));
+        assertSame(first, service.delete(first.id()));
+        assertNull(service.get(first.id()));
+        assertNotNull(service.submitInline(request(), null));
+    }
+
+    @Test
+    void testJobFailsWhenItsStateCannotBeSaved() throws Exception {
+        properties.getJobs().setWorkers(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(call -> {
+            release.await(10, TimeUnit.SECONDS);
+            return new StampResult(PDF, "out.pdf", call.getArgument(1));
+        }).when(orchestrationService).processJournalMetadata(any(), any());
+        service = newService();
+        StampJob first = service.submitInline(request(), null);
+        StampJob second = service.submitInline(request(), null);
+
+        // While the only worker is busy, put a directory where the second job's state is saved
+        Path state = dir.resolve(second.id()).resolve("job.json");
+        Files.delete(state);
+        Files.createDirectories(state.resolve("occupied"));
+        release.countDown();
+        service.awaitIdle(10000);
+
+        assertEquals(StampJob.Status.SUCCEEDED, service.get(first.id()).status());
+        StampJob failed = service.get(second.id());
+        assertEquals(StampJob.Status.FAILED, failed.status());
+        assertEquals("An unexpected error occurred", failed.error());
+        assertEquals(1.0, registry.counter("stamping.jobs.completed", "result", "failed").count());
+    }
+
+    private StampJobService newService() {
+        return new StampJobService(properties, objectMapper, orchestrationService, mock(StampingPlans.class),
+                registry);
+    }
+
+    private static JournalMetadataRequest request() {
+        return JournalMetadataRequest.builder()
+                .publisherId("pub").jcode("jc").pdfFilePath("/data/a.pdf").articleTitle("Title")
+                .positions(Map.of("FOOTER", new DynamicStampRequest.Configuration()))
+                .build();
+    }
+}
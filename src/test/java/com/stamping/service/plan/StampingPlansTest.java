@@ -0,0 +1,142 @@
+package com.stamping.service.plan;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.mockito.Mockito.mock;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stamping.config.StampingProperties;
+import com.stamping.model.JournalMetadataRequest;
+import com.stamping.service.AdFetchService;
+import com.stamping.service.AdStampService;
+import com.stamping.service.DemoConfigGeneratorService;
+import com.stamping.service.InputSanitizer;
+import com.stamping.service.PdfFontExtractor;
+import com.stamping.service.StampingMetrics;
+import com.stamping.service.TemplateService;
+import com.stamping.service.config.FileConfigRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class StampingPlansTest {
+
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 1, 2, 3};
+
+    @TempDir
+    Path root;
+
+    private FileConfigRepository repository;
+    private TemplateService templateService;
+    private StampingPlans plans;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        StampingProperties properties = new StampingProperties();
+        properties.setConfigDir(Files.createDirectories(root.resolve("configs")).toString());
+        properties.setArchiveDir(root.resolve("archive").toString());
+        meterRegistry = new SimpleMeterRegistry();
+        repository = new FileConfigRepository(new ObjectMapper(), properties, meterRegistry);
+        StampingMetrics metrics = new StampingMetrics(meterRegistry);
+        templateService = new TemplateService(mock(AdFetchService.class), mock(AdStampService.class),
+                mock(PdfFontExtractor.class), properties, metrics);
+        StampingPlanCompiler compiler = new StampingPlanCompiler(templateService,
+                new InputSanitizer(properties, meterRegistry), new DemoConfigGeneratorService(), metrics);
+        plans = new StampingPlans(repository, compiler, properties, meterRegistry);
+    }
+
+    @Test
+    void testPlanReusedUntilSourceChanges() {
+        assertNull(plans.get("aaa", "j1"));
+
+        repository.save("aaa", "j1", config("Free to read"));
+        StampingPlan first = plans.get("aaa", "j1");
+        assertSame(first, plans.get("aaa", "j1"));
+        assertEquals(List.of("NEW_PAGE", "FOOTER"), first.positionNames());
+
+        repository.save("aaa", "j1", config("Open access"));
+        StampingPlan second = plans.get("aaa", "j1");
+        assertNotSame(first, second);
+        assertTrue(second.positions().get(1).fragment().contains("Open access"));
+        assertEquals(2.0, meterRegistry.counter("stamping.plans.compiled").count());
+
+        repository.archive("aaa", "j1");
+        assertNull(plans.get("aaa", "j1"));
+    }
+
+    @Test
+    void testStaticOverlaysAndLogoNormalisation() {
+        Map<String, Object> raw = config("Free to read");
+        String wrapped = Base64.getMimeEncoder(4, "\r\n".getBytes()).encodeToString(PNG);
+        section(raw, "header").put("logo", Map.of("enabled", true, "value", wrapped));
+        section(raw, "header").put("dateOfDownload", true);
+        section(raw, "leftMargin").put("logo", Map.of("enabled", true, "value", "not*base64"));
+
+        StampingPlan plan = plans.compile(repository.save("aaa", "j1", raw));
+        Map<String, PlannedPosition> byName = new LinkedHashMap<>();
+        plan.positions().forEach(p -> byName.put(p.position(), p));
+
+        PlannedPosition header = byName.get("HEADER");
+        assertFalse(header.staticOverlay());
+        assertEquals(Base64.getEncoder().encodeToString(PNG), header.config().getLogo());
+        assertEquals("image/png", header.config().getLogoMimeType());
+
+        assertTrue(byName.get("FOOTER").staticOverlay());
+        assertNull(byName.get("LEFT_MARGIN").config().getLogo());
+        assertFalse(byName.get("LEFT_MARGIN").fragment().contains("<img"));
+
+        // Saved config is not touched by compilation
+        Map<?, ?> savedHeader = (Map<?, ?>) repository.get("aaa", "j1").config().get("header");
+        assertEquals(wrapped, ((Map<?, ?>) savedHeader.get("logo")).get("value"));
+    }
+
+    @Test
+    void testCompiledTemplateFilledPerRequest() {
+        StampingPlan plan = plans.compile(repository.save("aaa", "j1", config("Free to read")));
+        PlannedPosition newPage = plan.positions().get(0);
+        assertTrue(newPage.isNewPage());
+        assertTrue(newPage.template().contains("{{ARTICLE_TITLE}}"));
+
+        JournalMetadataRequest request = JournalMetadataRequest.builder()
+                .articleTitle("On Stamping").authors("A. Author").build();
+        String html = templateService.fillTemplate(newPage.template(), newPage.config(), request, null);
+
+        assertEquals(templateService.renderTemplate(newPage.config(), request, null), html);
+        assertTrue(html.contains("On Stamping"));
+        assertFalse(html.contains("{{"));
+    }
+
+    private static Map<String, Object> config(String footerText) {
+        Map<String, Object> raw = new LinkedHashMap<>();
+        raw.put("pubId", "aaa");
+        raw.put("jcode", "j1");
+        raw.put("templateName", "default_metadata");
+        raw.put("newPage", new LinkedHashMap<>(Map.of("enabled", true, "articleTitle", true, "articleAuthors", true)));
+        raw.put("header", new LinkedHashMap<>(Map.of("enabled", false)));
+        raw.put("footer", new LinkedHashMap<>(Map.of("enabled", true,
+                "text", Map.of("enabled", true, "value", footerText))));
+        raw.put("leftMargin", new LinkedHashMap<>(Map.of("enabled", false)));
+        return raw;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> section(Map<String, Object> raw, String name) {
+        Map<String, Object> section = (Map<String, Object>) raw.get(name);
+        section.put("enabled", true);
+        return section;
+    }
+}